@@ -54,6 +54,18 @@ public class CommonConfigurationKeysPublic {
   public static final String  FS_DF_INTERVAL_KEY = "fs.df.interval"; 
   /** Default value for FS_DF_INTERVAL_KEY */
   public static final long    FS_DF_INTERVAL_DEFAULT = 60000;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  FS_DU_INTERVAL_KEY = "fs.du.interval";
+  /** Default value for FS_DU_INTERVAL_KEY */
+  public static final long    FS_DU_INTERVAL_DEFAULT = 600000;
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  FS_GETSPACEUSED_CLASSNAME_KEY =
+    "fs.getspaceused.classname";
+  /** See <a href="{@docRoot}/../core-default.html">core-default.xml</a> */
+  public static final String  FS_GETSPACEUSED_WALK_RATE_KEY =
+    "fs.getspaceused.walk.files-per-second";
+  /** Default value for FS_GETSPACEUSED_WALK_RATE_KEY */
+  public static final int     FS_GETSPACEUSED_WALK_RATE_DEFAULT = 2000;
 
 
   //Defaults are not specified for following keys
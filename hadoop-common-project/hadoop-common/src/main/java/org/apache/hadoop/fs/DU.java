@@ -30,7 +30,7 @@
 /** Filesystem disk space usage statistics.  Uses the unix 'du' program*/
 @InterfaceAudience.LimitedPrivate({"HDFS", "MapReduce"})
 @InterfaceStability.Evolving
-public class DU extends Shell {
+public class DU extends Shell implements GetSpaceUsed {
   private String  dirPath;
 
   private AtomicLong used = new AtomicLong();
@@ -46,6 +46,18 @@ public class DU extends Shell {
    * @throws IOException if we fail to refresh the disk usage
    */
   public DU(File path, long interval) throws IOException {
+    this(path, interval, -1);
+  }
+
+  /**
+   * Keeps track of disk usage.
+   * @param path the path to check disk usage in
+   * @param interval refresh the disk usage at this interval
+   * @param initialUsed the disk usage to start with, or a negative value
+   *        to run du now
+   * @throws IOException if we fail to refresh the disk usage
+   */
+  public DU(File path, long interval, long initialUsed) throws IOException {
     super(0);
     
     //we set the Shell interval to 0 so it will always run our command
@@ -53,8 +65,21 @@ public DU(File path, long interval) throws IOException {
     this.refreshInterval = interval;
     this.dirPath = path.getCanonicalPath();
     
-    //populate the used variable
-    run();
+    if (initialUsed >= 0) {
+      used.set(initialUsed);
+    } else {
+      //populate the used variable
+      run();
+    }
+  }
+
+  /**
+   * Keeps track of disk usage.
+   * @param builder the path, interval and initial usage
+   * @throws IOException if we fail to refresh the disk usage
+   */
+  public DU(GetSpaceUsed.Builder builder) throws IOException {
+    this(builder.getPath(), builder.getInterval(), builder.getInitialUsed());
   }
   
   /**
@@ -64,8 +89,8 @@ public DU(File path, long interval) throws IOException {
    * @throws IOException if we fail to refresh the disk usage
    */
   public DU(File path, Configuration conf) throws IOException {
-    this(path, 600000L);
-    //10 minutes default refresh interval
+    this(path, conf.getLong(CommonConfigurationKeysPublic.FS_DU_INTERVAL_KEY,
+        CommonConfigurationKeysPublic.FS_DU_INTERVAL_DEFAULT));
   }
 
   /**
@@ -105,6 +130,7 @@ public void run() {
    * Decrease how much disk space we use.
    * @param value decrease by this value
    */
+  @Override
   public void decDfsUsed(long value) {
     used.addAndGet(-value);
   }
@@ -113,6 +139,7 @@ public void decDfsUsed(long value) {
    * Increase how much disk space we use.
    * @param value increase by this value
    */
+  @Override
   public void incDfsUsed(long value) {
     used.addAndGet(value);
   }
@@ -121,6 +148,7 @@ public void incDfsUsed(long value) {
    * @return disk space used 
    * @throws IOException if the shell command fails
    */
+  @Override
   public long getUsed() throws IOException {
     //if the updating thread isn't started, update on demand
     if(refreshUsed == null) {
@@ -163,6 +191,7 @@ protected void run() throws IOException {
   /**
    * Start the disk usage checking thread.
    */
+  @Override
   public void start() {
     //only start the thread if the interval is sane
     if(refreshInterval > 0) {
@@ -176,6 +205,7 @@ public void start() {
   /**
    * Shut down the refreshing thread.
    */
+  @Override
   public void shutdown() {
     this.shouldRun = false;
     
@@ -46,6 +46,7 @@
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.Options.ChecksumCombineMode;
 import org.apache.hadoop.fs.Options.ChecksumOpt;
 import org.apache.hadoop.fs.Options.Rename;
 import org.apache.hadoop.fs.permission.FsPermission;
@@ -1764,6 +1765,50 @@ public LocatedFileStatus next() throws IOException {
     };
   }
 
+  /**
+   * List the statuses of the files/directories in each of the given paths,
+   * including the block locations of the files. The results are filtered
+   * by the given path filter and returned in the order of the paths.
+   * <p>
+   * The default implementation lists the paths one at a time; file systems
+   * that can list several directories in a single call override it.
+   *
+   * @param paths the paths to list
+   * @param filter a path filter
+   * @return an iterator that traverses statuses of the files/directories
+   *         in all of the given paths
+   * @throws FileNotFoundException if any of the paths does not exist
+   * @throws IOException if any I/O error occurred
+   */
+  public RemoteIterator<LocatedFileStatus> listLocatedStatus(
+      final Path[] paths, final PathFilter filter)
+  throws FileNotFoundException, IOException {
+    return new RemoteIterator<LocatedFileStatus>() {
+      private int i = 0;
+      private RemoteIterator<LocatedFileStatus> curItor;
+
+      @Override
+      public boolean hasNext() throws IOException {
+        while (curItor == null || !curItor.hasNext()) {
+          if (i >= paths.length) {
+            return false;
+          }
+          curItor = listLocatedStatus(paths[i++], filter);
+        }
+        return true;
+      }
+
+      @Override
+      public LocatedFileStatus next() throws IOException {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more entry in " +
+              Arrays.toString(paths));
+        }
+        return curItor.next();
+      }
+    };
+  }
+
   /**
    * List the statuses and block locations of the files in the given path.
    * 
@@ -2149,6 +2194,22 @@ public short getDefaultReplication(Path path) {
   public FileChecksum getFileChecksum(Path f) throws IOException {
     return null;
   }
+
+  /**
+   * Get the checksum of a file, combining the checksums of its chunks as
+   * requested.
+   *
+   * @param f The file path
+   * @param combineMode how the checksums of the chunks are combined
+   * @return The file checksum, or null if the FileSystem does not implement
+   *  the combine mode. By default, only {@link ChecksumCombineMode#MD5MD5CRC}
+   *  is implemented, by {@link #getFileChecksum(Path)}.
+   */
+  public FileChecksum getFileChecksum(Path f, ChecksumCombineMode combineMode)
+      throws IOException {
+    return combineMode == ChecksumCombineMode.MD5MD5CRC
+        ? getFileChecksum(f) : null;
+  }
   
   /**
    * Set the verify checksum flag. This is only applicable if the 
@@ -845,6 +845,10 @@ public static void setOwner(File file, String username,
     if (username == null && groupname == null) {
       throw new IOException("username == null && groupname == null");
     }
+    if (NativeIO.isAvailable() && !Shell.WINDOWS) {
+      NativeIO.POSIX.chown(file.getCanonicalPath(), username, groupname);
+      return;
+    }
     String arg = (username == null ? "" : username)
         + (groupname == null ? "" : ":" + groupname);
     String [] cmd = Shell.getSetOwnerCommand(arg);
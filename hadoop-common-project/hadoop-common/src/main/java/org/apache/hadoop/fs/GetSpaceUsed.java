@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Keeps track of the disk space used by a directory.
+ * <p>
+ * The users of the directory report the space they add and remove with
+ * {@link #incDfsUsed(long)} and {@link #decDfsUsed(long)}; implementations
+ * may also measure the directory from time to time, once {@link #start()}
+ * is called. Implementations are created by a {@link Builder}, and must
+ * have a public constructor taking it.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS", "MapReduce", "YARN"})
+@InterfaceStability.Evolving
+public interface GetSpaceUsed {
+
+  /**
+   * @return the disk space used
+   * @throws IOException if the space used cannot be measured
+   */
+  long getUsed() throws IOException;
+
+  /**
+   * Increase how much disk space we use.
+   * @param value increase by this value
+   */
+  void incDfsUsed(long value);
+
+  /**
+   * Decrease how much disk space we use.
+   * @param value decrease by this value
+   */
+  void decDfsUsed(long value);
+
+  /** Start measuring the directory periodically. */
+  void start();
+
+  /** Stop measuring the directory. */
+  void shutdown();
+
+  /**
+   * Creates the {@link GetSpaceUsed} implementation configured by
+   * <code>fs.getspaceused.classname</code>, or the one given to
+   * {@link #setKlass(Class)}.
+   */
+  public static class Builder {
+    private Configuration conf;
+    private Class<? extends GetSpaceUsed> klass;
+    private File path;
+    private Long interval;
+    private long initialUsed = -1;
+
+    public Builder setConf(Configuration conf) {
+      this.conf = conf;
+      return this;
+    }
+
+    public Configuration getConf() {
+      return conf == null ? new Configuration() : conf;
+    }
+
+    public Builder setKlass(Class<? extends GetSpaceUsed> klass) {
+      this.klass = klass;
+      return this;
+    }
+
+    public Class<? extends GetSpaceUsed> getKlass() {
+      if (klass != null) {
+        return klass;
+      }
+      return getConf().getClass(
+          CommonConfigurationKeysPublic.FS_GETSPACEUSED_CLASSNAME_KEY,
+          DU.class, GetSpaceUsed.class);
+    }
+
+    /** @param path the directory to keep track of */
+    public Builder setPath(File path) {
+      this.path = path;
+      return this;
+    }
+
+    public File getPath() {
+      return path;
+    }
+
+    /**
+     * @param interval how often to measure the directory, in msec; defaults
+     *        to <code>fs.du.interval</code>
+     */
+    public Builder setInterval(long interval) {
+      this.interval = interval;
+      return this;
+    }
+
+    public long getInterval() {
+      if (interval != null) {
+        return interval;
+      }
+      return getConf().getLong(
+          CommonConfigurationKeysPublic.FS_DU_INTERVAL_KEY,
+          CommonConfigurationKeysPublic.FS_DU_INTERVAL_DEFAULT);
+    }
+
+    /**
+     * @param initialUsed the space known to be used, for instance saved
+     *        when the directory was last used, or a negative value to
+     *        measure the directory when the instance is created
+     */
+    public Builder setInitialUsed(long initialUsed) {
+      this.initialUsed = initialUsed;
+      return this;
+    }
+
+    public long getInitialUsed() {
+      return initialUsed;
+    }
+
+    /**
+     * @return a new instance of the configured implementation
+     * @throws IOException if the instance cannot be created, or fails to
+     *         measure the directory
+     */
+    public GetSpaceUsed build() throws IOException {
+      Class<? extends GetSpaceUsed> c = getKlass();
+      try {
+        Constructor<? extends GetSpaceUsed> ctor =
+            c.getConstructor(Builder.class);
+        return ctor.newInstance(this);
+      } catch (InvocationTargetException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException("Failed to create " + c.getName() + " for "
+            + path, e.getCause());
+      } catch (Exception e) {
+        throw new IOException("Failed to create " + c.getName() + " for "
+            + path, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Keeps track of the space used by a directory from the changes its users
+ * report, without running du.
+ * <p>
+ * The usage starts from the value given to the constructor, typically
+ * saved when the directory was last used, or from a walk of the
+ * directory. From then on only the reported changes are applied, and the
+ * directory is walked again every refresh interval to correct the changes
+ * made without being reported. The walk sums the lengths of the files, and
+ * looks at no more than the configured number of files per second, so
+ * that it does not take the disk away from its users.
+ */
+@InterfaceAudience.LimitedPrivate({"HDFS", "MapReduce", "YARN"})
+@InterfaceStability.Evolving
+public class IncrementalSpaceUsed implements GetSpaceUsed {
+  private static final Log LOG =
+      LogFactory.getLog(IncrementalSpaceUsed.class);
+
+  /** The number of files to look at between checks of the walk rate. */
+  private static final int FILES_PER_CHECK = 100;
+
+  private final File dir;
+  private final long refreshInterval;
+  private final int filesPerSecond;
+  private final AtomicLong used = new AtomicLong();
+  private volatile boolean shouldRun = true;
+  private Thread refreshUsed;
+
+  /**
+   * @param path the directory to keep track of
+   * @param interval how often to walk the directory, in msec
+   * @param initialUsed the space used to start with, or a negative value to
+   *        walk the directory now, without limiting the walk rate
+   * @param filesPerSecond the maximum walk rate, or 0 for no limit
+   * @throws IOException if the directory cannot be walked
+   */
+  public IncrementalSpaceUsed(File path, long interval, long initialUsed,
+      int filesPerSecond) throws IOException {
+    this.dir = path.getCanonicalFile();
+    this.refreshInterval = interval;
+    this.filesPerSecond = filesPerSecond;
+    if (initialUsed >= 0) {
+      used.set(initialUsed);
+    } else {
+      used.set(walk(0));
+    }
+  }
+
+  /**
+   * @param builder the path, interval, initial usage and configuration
+   * @throws IOException if the directory cannot be walked
+   */
+  public IncrementalSpaceUsed(GetSpaceUsed.Builder builder)
+      throws IOException {
+    this(builder.getPath(), builder.getInterval(), builder.getInitialUsed(),
+        builder.getConf().getInt(
+            CommonConfigurationKeysPublic.FS_GETSPACEUSED_WALK_RATE_KEY,
+            CommonConfigurationKeysPublic.FS_GETSPACEUSED_WALK_RATE_DEFAULT));
+  }
+
+  @Override
+  public long getUsed() {
+    return Math.max(used.get(), 0L);
+  }
+
+  @Override
+  public void incDfsUsed(long value) {
+    used.addAndGet(value);
+  }
+
+  @Override
+  public void decDfsUsed(long value) {
+    used.addAndGet(-value);
+  }
+
+  /** @return the directory being tracked */
+  public File getDir() {
+    return dir;
+  }
+
+  /**
+   * Walk the directory at the configured rate, and replace the space used
+   * with the result. Changes reported during the walk may be lost or
+   * counted twice, depending on whether the walk had already gone through
+   * their directories.
+   *
+   * @throws IOException if the directory cannot be walked
+   */
+  public void refresh() throws IOException {
+    long start = Time.monotonicNow();
+    long walked = walk(filesPerSecond);
+    long previous = used.getAndSet(walked);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Walked " + dir + " in " + (Time.monotonicNow() - start)
+          + " ms: " + walked + " bytes used, " + previous + " tracked");
+    }
+  }
+
+  /**
+   * @param rate the maximum number of files per second, or 0 for no limit
+   * @return the total length of the files under the directory
+   */
+  private long walk(int rate) throws IOException {
+    long start = Time.monotonicNow();
+    long total = 0;
+    long files = 0;
+    List<File> dirs = new ArrayList<File>();
+    dirs.add(dir);
+    while (!dirs.isEmpty()) {
+      File d = dirs.remove(dirs.size() - 1);
+      File[] children = d.listFiles();
+      if (children == null) {
+        if (d == dir) {
+          throw new IOException("Cannot list the files of " + dir);
+        }
+        continue; // removed since it was listed
+      }
+      for (File f : children) {
+        if (f.isDirectory()) {
+          dirs.add(f);
+        } else {
+          total += f.length();
+        }
+        if (++files % FILES_PER_CHECK == 0 && rate > 0) {
+          long wait = files * 1000 / rate - (Time.monotonicNow() - start);
+          if (wait > 0) {
+            try {
+              Thread.sleep(wait);
+            } catch (InterruptedException e) {
+              throw new InterruptedIOException("Interrupted walking " + dir);
+            }
+          }
+        }
+      }
+    }
+    return total;
+  }
+
+  /** Start the thread which walks the directory every refresh interval. */
+  @Override
+  public void start() {
+    if (refreshInterval <= 0) {
+      return;
+    }
+    refreshUsed = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (shouldRun) {
+          try {
+            Thread.sleep(refreshInterval);
+            refresh();
+          } catch (InterruptedException e) {
+            // shut down, or woken up early
+          } catch (InterruptedIOException e) {
+            // shut down
+          } catch (IOException e) {
+            LOG.warn("Could not walk " + dir, e);
+          }
+        }
+      }
+    }, "refreshUsed-" + dir);
+    refreshUsed.setDaemon(true);
+    refreshUsed.start();
+  }
+
+  @Override
+  public void shutdown() {
+    shouldRun = false;
+    if (refreshUsed != null) {
+      refreshUsed.interrupt();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getUsed() + "\t" + dir;
+  }
+}
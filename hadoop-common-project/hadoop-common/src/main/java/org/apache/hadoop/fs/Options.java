@@ -221,6 +221,17 @@ public byte value() {
     }
   }
 
+  /**
+   * How the checksums of the chunks of a file are combined into the
+   * checksum of the file.
+   */
+  public static enum ChecksumCombineMode {
+    /** MD5 of the MD5s of the CRCs of each block, see MD5MD5CRC32FileChecksum */
+    MD5MD5CRC,
+    /** CRC of the whole file, see CompositeCrcFileChecksum */
+    COMPOSITE_CRC
+  }
+
   /**
    * This is used in FileSystem and FileContext to specify checksum options.
    */
@@ -37,7 +37,9 @@
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.io.nativeio.Errno;
 import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.io.nativeio.NativeIOException;
 import org.apache.hadoop.util.Progressable;
 import org.apache.hadoop.util.Shell;
 import org.apache.hadoop.util.StringUtils;
@@ -538,8 +540,13 @@ public String getGroup() {
       return super.getGroup();
     }
 
-    /// loads permissions, owner, and group from `ls -ld`
+    /// loads permissions, owner, and group with stat(2) if native code is
+    /// available, or from `ls -ld` otherwise
     private void loadPermissionInfo() {
+      if (NativeIO.isAvailable() && !Shell.WINDOWS) {
+        loadPermissionInfoByNativeIO();
+        return;
+      }
       IOException e = null;
       try {
         String output = FileUtil.execCommand(new File(getPath().toUri()), 
@@ -585,6 +592,28 @@ private void loadPermissionInfo() {
       }
     }
 
+    private void loadPermissionInfoByNativeIO() {
+      try {
+        NativeIO.POSIX.Stat stat = NativeIO.POSIX.getStat(
+            new File(getPath().toUri()).getPath());
+        setPermission(new FsPermission((short) (stat.getMode() & 01777)));
+        setOwner(stat.getOwner());
+        setGroup(stat.getGroup());
+      } catch (NativeIOException nioe) {
+        if (nioe.getErrno() != Errno.ENOENT) {
+          throw new RuntimeException("Error while getting file permissions : "
+              + StringUtils.stringifyException(nioe));
+        }
+        // the file is gone, as when ls exits with 1
+        setPermission(null);
+        setOwner(null);
+        setGroup(null);
+      } catch (IOException ioe) {
+        throw new RuntimeException("Error while getting file permissions : "
+            + StringUtils.stringifyException(ioe));
+      }
+    }
+
     @Override
     public void write(DataOutput out) throws IOException {
       if (!isPermissionLoaded()) {
@@ -595,7 +624,8 @@ public void write(DataOutput out) throws IOException {
   }
 
   /**
-   * Use the command chown to set owner.
+   * Use chown(2) if native code is available, or the command chown, to set
+   * owner.
    */
   @Override
   public void setOwner(Path p, String username, String groupname)
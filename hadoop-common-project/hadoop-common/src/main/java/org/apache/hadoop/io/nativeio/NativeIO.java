@@ -140,6 +140,8 @@ public static boolean isAvailable() {
     public static native FileDescriptor open(String path, int flags, int mode) throws IOException;
     /** Wrapper around fstat(2) */
     private static native Stat fstat(FileDescriptor fd) throws IOException;
+    /** Wrapper around stat(2) */
+    private static native Stat stat(String path) throws IOException;
 
     /** Native chmod implementation. On UNIX, it is a wrapper around chmod(2) */
     private static native void chmodImpl(String path, int mode) throws IOException;
@@ -213,6 +215,24 @@ public static void syncFileRangeIfPossible(
       }
     }
 
+    /** Wrapper around chown(2), taking a user and a group name */
+    private static native void chownImpl(String path, String username,
+        String groupname) throws IOException;
+
+    /**
+     * Change the owner and/or the group of a file. Names which are not
+     * found are taken as ids if they are numbers, as chown(1) does.
+     *
+     * @param path the file
+     * @param username the new owner, or null to keep the owner
+     * @param groupname the new group, or null to keep the group
+     * @throws IOException if the owner or group could not be changed
+     */
+    public static void chown(String path, String username, String groupname)
+        throws IOException {
+      chownImpl(path, username, groupname);
+    }
+
     /** Linux only methods used for getOwner() implementation */
     private static native long getUIDforFDOwnerforOwner(FileDescriptor fd) throws IOException;
     private static native String getUserName(long uid) throws IOException;
@@ -279,7 +299,21 @@ public static Stat getFstat(FileDescriptor fd) throws IOException {
       return stat;
     }
 
-    private static String getName(IdCache domain, int id) throws IOException {
+    /**
+     * Returns the file stat for a path, following symbolic links.
+     *
+     * @param path the file path.
+     * @return the file stat.
+     * @throws IOException thrown if there was an IO error while obtaining the file stat.
+     */
+    public static Stat getStat(String path) throws IOException {
+      Stat stat = stat(path);
+      stat.owner = getName(IdCache.USER, stat.ownerId);
+      stat.group = getName(IdCache.GROUP, stat.groupId);
+      return stat;
+    }
+
+    private static String getName(IdCache domain, int id) {
       Map<Integer, CachedName> idNameCache = (domain == IdCache.USER)
         ? USER_ID_NAME_CACHE : GROUP_ID_NAME_CACHE;
       String name;
@@ -288,7 +322,16 @@ private static String getName(IdCache domain, int id) throws IOException {
       if (cachedName != null && (cachedName.timestamp + cacheTimeout) > now) {
         name = cachedName.name;
       } else {
-        name = (domain == IdCache.USER) ? getUserName(id) : getGroupName(id);
+        try {
+          name = (domain == IdCache.USER) ? getUserName(id) : getGroupName(id);
+        } catch (IOException e) {
+          // no passwd or group entry, e.g. files extracted from a tarball
+          // or on an NFS mount: use the numeric id, as ls does
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Using the numeric id " + id + ": " + e.getMessage());
+          }
+          name = Integer.toString(id);
+        }
         if (LOG.isDebugEnabled()) {
           String type = (domain == IdCache.USER) ? "UserName" : "GroupName";
           LOG.debug("Got " + type + " " + name + " for ID " + id +
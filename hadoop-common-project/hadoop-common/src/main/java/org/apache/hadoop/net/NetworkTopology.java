@@ -19,7 +19,10 @@
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -374,6 +377,8 @@ int getNumOfLeaves() {
   protected int numOfRacks = 0;
   /** the lock used to manage access */
   protected ReadWriteLock netlock = new ReentrantReadWriteLock();
+  /** snapshot of the tree for distance lookups, or null if out of date */
+  private volatile DistanceIndex distanceIndex;
 
   public NetworkTopology() {
     clusterMap = new InnerNode(InnerNode.ROOT);
@@ -408,6 +413,8 @@ public void add(Node node) {
                                            + node.toString() 
                                            + " at an illegal network location");
       }
+      // also when the node replaces a node of the same name
+      invalidateDistanceIndex();
       if (clusterMap.add(node)) {
         LOG.info("Adding a new node: "+NodeBase.getPath(node));
         if (rack == null) {
@@ -459,6 +466,7 @@ public void remove(Node node) {
     LOG.info("Removing a node: "+NodeBase.getPath(node));
     netlock.writeLock().lock();
     try {
+      invalidateDistanceIndex();
       if (clusterMap.remove(node)) {
         InnerNode rack = (InnerNode)getNode(node.getNetworkLocation());
         if (rack == null) {
@@ -560,6 +568,12 @@ public int getDistance(Node node1, Node node2) {
     if (node1 == node2) {
       return 0;
     }
+    DistanceIndex index = getDistanceIndex();
+    int[] path1 = index.getLeafPath(node1);
+    int[] path2 = index.getLeafPath(node2);
+    if (path1 != null && path2 != null) {
+      return DistanceIndex.getDistance(path1, path2);
+    }
     Node n1=node1, n2=node2;
     int dis = 0;
     netlock.readLock().lock();
@@ -854,4 +868,171 @@ public void pseudoSortByDistance( Node reader, Node[] nodes ) {
     }
   }
   
+  /**
+   * Sort nodes array by their weight, which is their distance to
+   * <i>reader</i>, and, if <i>loads</i> is given, their load. A node one
+   * level further away from the reader (for instance off-rack instead of
+   * rack-local) weighs as much as <i>loadPerLevel</i> more load. Nodes of
+   * equal weight are shuffled, to spread the reads over them.
+   * <p>
+   * If the reader is not a leaf of the tree, its network location is used:
+   * nodes in that location are nearest to it. If the location is not in the
+   * tree either, the nodes are only sorted by their load.
+   * <p>
+   * Distances are looked up in a snapshot of the tree, which is only
+   * rebuilt after the topology changes, so sorting does not take the
+   * topology lock.
+   *
+   * @param reader the node that wishes to read a block from one of the nodes
+   * @param nodes the list of nodes containing data for the reader
+   * @param loads the loads of the nodes, in the same order, or null
+   * @param loadPerLevel the load weighing as much as a level of distance
+   */
+  public void sortByDistance(Node reader, Node[] nodes, int[] loads,
+      int loadPerLevel) {
+    if (nodes.length <= 1) {
+      return;
+    }
+    DistanceIndex index = getDistanceIndex();
+    int[] readerPath = null;
+    if (reader != null) {
+      readerPath = index.getLeafPath(reader);
+      if (readerPath == null) {
+        readerPath = index.getLocationPath(reader.getNetworkLocation());
+      }
+    }
+
+    long[] weights = new long[nodes.length];
+    for (int i = 0; i < nodes.length; i++) {
+      int level = 0;
+      if (readerPath != null && nodes[i] != reader) {
+        int[] path = index.getLeafPath(nodes[i]);
+        level = path == null ? Integer.MAX_VALUE / 2
+            : DistanceIndex.getDistance(readerPath, path) / 2;
+      }
+      weights[i] = loads == null ? level
+          : (long) level * loadPerLevel + loads[i];
+    }
+
+    // shuffle, then stable insertion sort: the arrays are small
+    for (int i = nodes.length - 1; i > 0; i--) {
+      int j = r.nextInt(i + 1);
+      swap(nodes, i, j);
+      swap(weights, i, j);
+      if (loads != null) {
+        swap(loads, i, j);
+      }
+    }
+    for (int i = 1; i < nodes.length; i++) {
+      for (int j = i; j > 0 && weights[j - 1] > weights[j]; j--) {
+        swap(nodes, j - 1, j);
+        swap(weights, j - 1, j);
+        if (loads != null) {
+          swap(loads, j - 1, j);
+        }
+      }
+    }
+  }
+
+  private static void swap(long[] a, int i, int j) {
+    long tmp = a[i];
+    a[i] = a[j];
+    a[j] = tmp;
+  }
+
+  private static void swap(int[] a, int i, int j) {
+    int tmp = a[i];
+    a[i] = a[j];
+    a[j] = tmp;
+  }
+
+  /**
+   * Drop the distance snapshot after the tree changed. Must be called with
+   * the write lock held.
+   */
+  protected void invalidateDistanceIndex() {
+    distanceIndex = null;
+  }
+
+  /** @return the distance snapshot of the tree, building it if needed */
+  private DistanceIndex getDistanceIndex() {
+    DistanceIndex index = distanceIndex;
+    if (index != null) {
+      return index;
+    }
+    netlock.readLock().lock();
+    try {
+      index = distanceIndex;
+      if (index == null) {
+        index = new DistanceIndex(clusterMap);
+        distanceIndex = index;
+      }
+      return index;
+    } finally {
+      netlock.readLock().unlock();
+    }
+  }
+
+  /**
+   * An immutable snapshot of the tree for distance lookups. Each inner node
+   * gets an integer id, and each leaf and inner node the ids of the inner
+   * nodes from the root down to it. The distance between two nodes follows
+   * from the length of the common prefix of their paths, without walking
+   * the tree or taking its lock.
+   */
+  private static class DistanceIndex {
+    private static final int[] ROOT_PATH = new int[0];
+
+    /** The paths to the parents of the leaves, by leaf */
+    private final Map<Node, int[]> leafPaths =
+        new IdentityHashMap<Node, int[]>();
+    /** The paths to the inner nodes, including them, by location */
+    private final Map<String, int[]> locationPaths =
+        new HashMap<String, int[]>();
+    private int nextId = 0;
+
+    DistanceIndex(InnerNode root) {
+      add(root, ROOT_PATH);
+    }
+
+    private void add(InnerNode node, int[] parentPath) {
+      int[] path = new int[parentPath.length + 1];
+      System.arraycopy(parentPath, 0, path, 0, parentPath.length);
+      path[parentPath.length] = nextId++;
+      locationPaths.put(NodeBase.getPath(node), path);
+      for (Node child : node.getChildren()) {
+        if (child instanceof InnerNode) {
+          add((InnerNode) child, path);
+        } else {
+          leafPaths.put(child, path);
+        }
+      }
+    }
+
+    /** @return the path to the parent of a leaf, or null if not a leaf */
+    int[] getLeafPath(Node node) {
+      return leafPaths.get(node);
+    }
+
+    /**
+     * @return the path to a node at the given location, or null if the
+     *         location is not in the tree
+     */
+    int[] getLocationPath(String location) {
+      return location == null ? null : locationPaths.get(location);
+    }
+
+    /**
+     * @return the distance between two distinct leaves with the given paths
+     *         to their parents
+     */
+    static int getDistance(int[] path1, int[] path2) {
+      int common = 0;
+      int len = Math.min(path1.length, path2.length);
+      while (common < len && path1[common] == path2[common]) {
+        common++;
+      }
+      return path1.length + path2.length - 2 * common + 2;
+    }
+  }
 }
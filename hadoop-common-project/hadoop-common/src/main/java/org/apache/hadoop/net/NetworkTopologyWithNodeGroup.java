@@ -196,6 +196,8 @@ public void add(Node node) {
             + node.toString() 
             + " at an illegal network location");
       }
+      // also when the node replaces a node of the same name
+      invalidateDistanceIndex();
       if (clusterMap.add(node)) {
         LOG.info("Adding a new node: " + NodeBase.getPath(node));
         if (rack == null) {
@@ -225,6 +227,7 @@ public void remove(Node node) {
     LOG.info("Removing a node: "+NodeBase.getPath(node));
     netlock.writeLock().lock();
     try {
+      invalidateDistanceIndex();
       if (clusterMap.remove(node)) {
         Node nodeGroup = getNode(node.getNetworkLocation());
         if (nodeGroup == null) {
@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import java.io.IOException;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * Arithmetic on CRC32 values, to compute the CRC of a concatenation of
+ * byte sequences from the CRCs and the lengths of the sequences, without
+ * reading them again:
+ * <pre>
+ *   crc(A + B) = crc(A) * x^(8 * length(B)) mod P  xor  crc(B)
+ * </pre>
+ * where P is the polynomial of the CRC. This holds for the CRC32 and the
+ * CRC32C of {@link DataChecksum}, whose initial value and final xor are
+ * both all ones.
+ * <p>
+ * The CRCs are polynomials over GF(2) in the bit-reflected representation
+ * used by {@link java.util.zip.CRC32} and {@link PureJavaCrc32C}: the most
+ * significant bit of an int is the coefficient of x^0.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class CrcUtil {
+  /** The polynomial 1, that is x^0. */
+  public static final int MULTIPLICATIVE_IDENTITY = 0x80000000;
+  /** The reflected polynomial of {@link DataChecksum.Type#CRC32}. */
+  public static final int GZIP_POLYNOMIAL = 0xEDB88320;
+  /** The reflected polynomial of {@link DataChecksum.Type#CRC32C}. */
+  public static final int CASTAGNOLI_POLYNOMIAL = 0x82F63B78;
+
+  private CrcUtil() {
+  }
+
+  /**
+   * @return the reflected polynomial of the given type of checksum
+   * @throws IOException if the type is not a CRC32
+   */
+  public static int getCrcPolynomialForType(DataChecksum.Type type)
+      throws IOException {
+    switch (type) {
+      case CRC32:
+        return GZIP_POLYNOMIAL;
+      case CRC32C:
+        return CASTAGNOLI_POLYNOMIAL;
+      default:
+        throw new IOException(
+            "No CRC polynomial could be associated with type: " + type);
+    }
+  }
+
+  /**
+   * @return x^(8 * lengthBytes) mod the given polynomial, to compose a CRC
+   *         with the CRC of a sequence of lengthBytes bytes
+   */
+  public static int getMonomial(long lengthBytes, int mod) {
+    if (lengthBytes < 0) {
+      throw new IllegalArgumentException(
+          "lengthBytes must be non-negative, got " + lengthBytes);
+    }
+    // square-and-multiply, starting from x^8
+    int multiplier = MULTIPLICATIVE_IDENTITY >>> 8;
+    int product = MULTIPLICATIVE_IDENTITY;
+    while (lengthBytes > 0) {
+      if ((lengthBytes & 1) != 0) {
+        product = galoisFieldMultiply(product, multiplier, mod);
+      }
+      multiplier = galoisFieldMultiply(multiplier, multiplier, mod);
+      lengthBytes >>= 1;
+    }
+    return product;
+  }
+
+  /**
+   * @param monomial the result of {@link #getMonomial(long, int)} for the
+   *          length of the sequence of crcB
+   * @return the CRC of the concatenation of the sequences of crcA and crcB
+   */
+  public static int composeWithMonomial(int crcA, int crcB, int monomial,
+      int mod) {
+    return galoisFieldMultiply(crcA, monomial, mod) ^ crcB;
+  }
+
+  /**
+   * @return the CRC of the concatenation of the sequence of crcA and the
+   *         sequence of lengthB bytes of crcB
+   */
+  public static int compose(int crcA, int crcB, long lengthB, int mod) {
+    return composeWithMonomial(crcA, crcB, getMonomial(lengthB, mod), mod);
+  }
+
+  /**
+   * @return p * q mod m, with the polynomials in the reflected
+   *         representation
+   */
+  public static int galoisFieldMultiply(int p, int q, int m) {
+    int summation = 0;
+    // the terms of q, from x^0 to x^31, and p multiplied by each of them
+    int curTerm = MULTIPLICATIVE_IDENTITY;
+    int px = p;
+    while (curTerm != 0) {
+      if ((q & curTerm) != 0) {
+        summation ^= px;
+      }
+      // multiply px by x, reducing x^32 mod m
+      final boolean hasMaxDegree = (px & 1) != 0;
+      px >>>= 1;
+      if (hasMaxDegree) {
+        px ^= m;
+      }
+      curTerm >>>= 1;
+    }
+    return summation;
+  }
+
+  /** @return the 4 big-endian bytes of a CRC. */
+  public static byte[] intToBytes(int value) {
+    return new byte[] {
+        (byte)(value >>> 24), (byte)(value >>> 16),
+        (byte)(value >>> 8), (byte)value };
+  }
+
+  /** @return the CRC of 4 big-endian bytes at the given offset. */
+  public static int readInt(byte[] buf, int offset) {
+    return ((buf[offset] & 0xff) << 24)
+        | ((buf[offset + 1] & 0xff) << 16)
+        | ((buf[offset + 2] & 0xff) << 8)
+        | (buf[offset + 3] & 0xff);
+  }
+}
@@ -0,0 +1,279 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.io.IOUtils;
+
+/**
+ * A child process launched with vfork(2) and execve(2) by the native hadoop
+ * library.
+ * <p>
+ * Before Java 7, {@link ProcessBuilder} launches commands with fork(2),
+ * which has to copy the page tables of the whole JVM: with the heaps of
+ * NameNodes, DataNodes and NodeManagers this takes milliseconds, and it
+ * fails when the kernel does not allow the memory to be overcommitted.
+ * vfork(2) lends the memory of the JVM to the child until it calls
+ * execve(2), so launching a command costs the same whatever the size of
+ * the JVM.
+ * <p>
+ * The child gets pipes for its standard streams and no other file
+ * descriptors of the JVM, like a process started by {@link ProcessBuilder}.
+ * {@link Shell} launches its commands with this class when it is
+ * {@link #isAvailable() available}.
+ */
+@InterfaceAudience.Private
+public class NativeProcess extends Process {
+  private static final Log LOG = LogFactory.getLog(NativeProcess.class);
+
+  /**
+   * The system property which disables launching commands natively when
+   * set to false.
+   */
+  public static final String NATIVE_LAUNCH_PROPERTY =
+      "hadoop.shell.native.launch";
+
+  /** The exit code returned by {@link #waitPid} for a running process. */
+  private static final int RUNNING = -1;
+  private static final int SIGTERM = 15;
+  /** The longest time between two checks of a child which is waited for. */
+  private static final long MAX_POLL_INTERVAL_MS = 10;
+
+  private static boolean nativeLoaded = false;
+
+  static {
+    if (NativeCodeLoader.isNativeCodeLoaded() && !Shell.WINDOWS &&
+        Boolean.parseBoolean(
+            System.getProperty(NATIVE_LAUNCH_PROPERTY, "true"))) {
+      try {
+        initNative();
+        nativeLoaded = true;
+      } catch (Throwable t) {
+        // This can happen if the user has an older version of libhadoop.so
+        // installed - in this case commands are launched by ProcessBuilder
+        LOG.debug("Unable to initialize the native process launcher", t);
+      }
+    }
+  }
+
+  /**
+   * @return whether commands can be launched by the native hadoop library
+   */
+  public static boolean isAvailable() {
+    return nativeLoaded;
+  }
+
+  private static native void initNative();
+
+  /**
+   * Launch a command.
+   *
+   * @param cmd the command and its arguments; the command is looked up in
+   *        the PATH of the JVM if it does not contain a slash
+   * @param env the environment of the command, as name=value strings
+   * @param dir the working directory of the command, or null to use the
+   *        working directory of the JVM
+   * @param fds filled in with the stdin, stdout and stderr pipes
+   * @return the pid of the child
+   */
+  private static native int spawn(String[] cmd, String[] env, String dir,
+      FileDescriptor[] fds) throws IOException;
+
+  /**
+   * Reap a child if it has exited.
+   *
+   * @param pid the pid of the child
+   * @return the exit code of the child, 0x80 plus the signal number if the
+   *         child was killed by a signal, or {@link #RUNNING} if the child
+   *         has not exited
+   */
+  private static native int waitPid(int pid) throws IOException;
+
+  private static native void kill(int pid, int signal) throws IOException;
+
+  private final int pid;
+  private final OutputStream stdin;
+  private final InputStream stdout;
+  private final InputStream stderr;
+
+  /**
+   * Held to reap the child or to signal it, so that a signal never reaches
+   * another process reusing the pid of the reaped child. It is never held
+   * while waiting for the child to exit.
+   */
+  private final ReentrantLock reapLock = new ReentrantLock();
+  private volatile boolean reaped = false;
+  private int exitCode;
+
+  private NativeProcess(int pid, FileDescriptor[] fds) {
+    this.pid = pid;
+    this.stdin = new BufferedOutputStream(new FileOutputStream(fds[0]));
+    this.stdout = new BufferedInputStream(new FileInputStream(fds[1]));
+    this.stderr = new BufferedInputStream(new FileInputStream(fds[2]));
+  }
+
+  /**
+   * Launch a command, like {@link ProcessBuilder#start()}.
+   *
+   * @param cmd the command and its arguments
+   * @param environment the variables to add to the environment of the JVM
+   *        for the command, or null
+   * @param dir the working directory of the command, or null
+   * @return the process running the command
+   * @throws IOException if the command cannot be launched
+   */
+  public static NativeProcess start(String[] cmd,
+      Map<String, String> environment, File dir) throws IOException {
+    Map<String, String> env = new HashMap<String, String>(System.getenv());
+    if (environment != null) {
+      env.putAll(environment);
+    }
+    String[] envp = new String[env.size()];
+    int i = 0;
+    for (Map.Entry<String, String> e : env.entrySet()) {
+      envp[i++] = e.getKey() + "=" + e.getValue();
+    }
+    FileDescriptor[] fds = new FileDescriptor[3];
+    int pid = spawn(cmd, envp, dir == null ? null : dir.getPath(), fds);
+    return new NativeProcess(pid, fds);
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return stdin;
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return stdout;
+  }
+
+  @Override
+  public InputStream getErrorStream() {
+    return stderr;
+  }
+
+  /**
+   * Reap the child if it has exited.
+   *
+   * @return whether the child has been reaped
+   */
+  private boolean reap() throws IOException {
+    reapLock.lock();
+    try {
+      if (!reaped) {
+        int code = waitPid(pid);
+        if (code != RUNNING) {
+          exitCode = code;
+          reaped = true;
+        }
+      }
+      return reaped;
+    } finally {
+      reapLock.unlock();
+    }
+  }
+
+  /**
+   * Wait for the child to exit, checking it more and more seldom, so that
+   * the wait can be interrupted as with {@link Process#waitFor()}.
+   */
+  @Override
+  public int waitFor() throws InterruptedException {
+    long interval = 1;
+    try {
+      while (!reap()) {
+        Thread.sleep(interval);
+        interval = Math.min(interval * 2, MAX_POLL_INTERVAL_MS);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to wait for process " + pid, e);
+    }
+    return exitCode;
+  }
+
+  @Override
+  public int exitValue() {
+    boolean exited;
+    try {
+      exited = reap();
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to wait for process " + pid, e);
+    }
+    if (!exited) {
+      throw new IllegalThreadStateException("process hasn't exited");
+    }
+    return exitCode;
+  }
+
+  @Override
+  public void destroy() {
+    reapLock.lock();
+    try {
+      if (!reaped) {
+        kill(pid, SIGTERM);
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to kill process " + pid, e);
+    } finally {
+      reapLock.unlock();
+    }
+    IOUtils.cleanup(LOG, stdin, stdout, stderr);
+    try {
+      if (reap()) {
+        return;
+      }
+    } catch (IOException e) {
+      LOG.warn("Failed to wait for process " + pid, e);
+      return;
+    }
+    // reap the child once it exits, so that it does not linger as a zombie
+    Thread reaper = new Thread("Reaper for process " + pid) {
+      @Override
+      public void run() {
+        try {
+          waitFor();
+        } catch (Exception e) {
+          LOG.warn("Failed to wait for process " + pid, e);
+        }
+      }
+    };
+    reaper.setDaemon(true);
+    reaper.start();
+  }
+
+  @Override
+  public String toString() {
+    return "NativeProcess(pid=" + pid + ")";
+  }
+}
@@ -294,30 +294,16 @@ protected void run() throws IOException {
 
   /** Run a command */
   private void runCommand() throws IOException { 
-    ProcessBuilder builder = new ProcessBuilder(getExecString());
     Timer timeOutTimer = null;
     ShellTimeoutTimerTask timeoutTimerTask = null;
     timedOut = new AtomicBoolean(false);
     completed = new AtomicBoolean(false);
     
-    if (environment != null) {
-      builder.environment().putAll(this.environment);
-    }
-    if (dir != null) {
-      builder.directory(this.dir);
-    }
-    
-    if (Shell.WINDOWS) {
-      synchronized (WindowsProcessLaunchLock) {
-        // To workaround the race condition issue with child processes
-        // inheriting unintended handles during process launch that can
-        // lead to hangs on reading output and error streams, we
-        // serialize process creation. More info available at:
-        // http://support.microsoft.com/kb/315939
-        process = builder.start();
-      }
+    if (NativeProcess.isAvailable()) {
+      // launching with vfork does not copy the memory of the JVM
+      process = NativeProcess.start(getExecString(), environment, dir);
     } else {
-      process = builder.start();
+      process = startProcess();
     }
 
     if (timeOutInterval > 0) {
@@ -401,6 +387,30 @@ public void run() {
     }
   }
 
+  /** Launch the command with a {@link ProcessBuilder}. */
+  private Process startProcess() throws IOException {
+    ProcessBuilder builder = new ProcessBuilder(getExecString());
+    if (environment != null) {
+      builder.environment().putAll(this.environment);
+    }
+    if (dir != null) {
+      builder.directory(this.dir);
+    }
+    
+    if (Shell.WINDOWS) {
+      synchronized (WindowsProcessLaunchLock) {
+        // To workaround the race condition issue with child processes
+        // inheriting unintended handles during process launch that can
+        // lead to hangs on reading output and error streams, we
+        // serialize process creation. More info available at:
+        // http://support.microsoft.com/kb/315939
+        return builder.start();
+      }
+    } else {
+      return builder.start();
+    }
+  }
+
   /** return an array containing the command name & its parameters */ 
   protected abstract String[] getExecString();
   
@@ -237,6 +237,163 @@ cleanup:
 
 
 
+/*
+ * Class:     org_apache_hadoop_io_nativeio_NativeIO_POSIX
+ * Method:    stat
+ * Signature: (Ljava/lang/String;)Lorg/apache/hadoop/io/nativeio/NativeIO$POSIX$Stat;
+ * public static native Stat stat(String path);
+ */
+JNIEXPORT jobject JNICALL
+Java_org_apache_hadoop_io_nativeio_NativeIO_00024POSIX_stat(
+  JNIEnv *env, jclass clazz, jstring j_path)
+{
+#ifdef UNIX
+  jobject ret = NULL;
+
+  const char *path = (*env)->GetStringUTFChars(env, j_path, NULL);
+  if (path == NULL) return NULL; // JVM throws Exception for us
+
+  struct stat s;
+  int rc = stat(path, &s);
+  if (rc != 0) {
+    throw_ioe(env, errno);
+    goto cleanup;
+  }
+
+  // Construct result
+  ret = (*env)->NewObject(env, stat_clazz, stat_ctor,
+    (jint)s.st_uid, (jint)s.st_gid, (jint)s.st_mode);
+
+cleanup:
+  (*env)->ReleaseStringUTFChars(env, j_path, path);
+  return ret;
+#endif
+
+#ifdef WINDOWS
+  THROW(env, "java/io/IOException",
+    "The function POSIX.stat() is not supported on Windows");
+  return NULL;
+#endif
+}
+
+#ifdef UNIX
+/*
+ * Look up the id of a user, or of a group if is_group is set, by name.
+ * Names which are not found but are numbers are taken as ids, as chown(1)
+ * does. Throws an exception and returns -1 on failure.
+ */
+static int lookup_id(JNIEnv *env, const char *name, int is_group, id_t *id)
+{
+  int ret = -1;
+  int rc;
+  int pw_lock_locked = 0;
+  char *pw_buf = NULL;
+  size_t pw_buflen = get_pw_buflen();
+  struct passwd pwd, *pwdp = NULL;
+  struct group grp, *grpp = NULL;
+
+  if (pw_lock_object != NULL) {
+    if ((*env)->MonitorEnter(env, pw_lock_object) != JNI_OK) {
+      goto cleanup;
+    }
+    pw_lock_locked = 1;
+  }
+
+  if ((pw_buf = malloc(pw_buflen)) == NULL) {
+    THROW(env, "java/lang/OutOfMemoryError", "Couldn't allocate memory for pw buffer");
+    goto cleanup;
+  }
+  while ((rc = is_group ?
+          getgrnam_r(name, &grp, pw_buf, pw_buflen, &grpp) :
+          getpwnam_r(name, &pwd, pw_buf, pw_buflen, &pwdp)) != 0) {
+    if (rc != ERANGE) {
+      throw_ioe(env, rc);
+      goto cleanup;
+    }
+    free(pw_buf);
+    pw_buflen *= 2;
+    if ((pw_buf = malloc(pw_buflen)) == NULL) {
+      THROW(env, "java/lang/OutOfMemoryError", "Couldn't allocate memory for pw buffer");
+      goto cleanup;
+    }
+  }
+
+  if (is_group && grpp != NULL) {
+    *id = grpp->gr_gid;
+  } else if (!is_group && pwdp != NULL) {
+    *id = pwdp->pw_uid;
+  } else {
+    char *end;
+    long num;
+    errno = 0;
+    num = strtol(name, &end, 10);
+    if (*name == '\0' || *end != '\0' || errno != 0 || num < 0) {
+      char msg[80];
+      snprintf(msg, sizeof(msg), "%s not found: %.40s",
+        is_group ? "group" : "user", name);
+      THROW(env, "java/io/IOException", msg);
+      goto cleanup;
+    }
+    *id = (id_t)num;
+  }
+  ret = 0;
+
+cleanup:
+  if (pw_lock_locked) {
+    (*env)->MonitorExit(env, pw_lock_object);
+  }
+  if (pw_buf != NULL) free(pw_buf);
+  return ret;
+}
+#endif
+
+/*
+ * Class:     org_apache_hadoop_io_nativeio_NativeIO_POSIX
+ * Method:    chownImpl
+ * Signature: (Ljava/lang/String;Ljava/lang/String;Ljava/lang/String;)V
+ * private static native void chownImpl(String path, String user,
+ *   String group);
+ *
+ * A null user or group is left unchanged.
+ */
+JNIEXPORT void JNICALL
+Java_org_apache_hadoop_io_nativeio_NativeIO_00024POSIX_chownImpl(
+  JNIEnv *env, jclass clazz, jstring j_path, jstring j_user, jstring j_group)
+{
+#ifdef UNIX
+  const char *path = NULL, *user = NULL, *group = NULL;
+  id_t uid = (id_t)-1, gid = (id_t)-1;
+
+  path = (*env)->GetStringUTFChars(env, j_path, NULL);
+  if (path == NULL) goto cleanup; // JVM throws Exception for us
+
+  if (j_user != NULL) {
+    user = (*env)->GetStringUTFChars(env, j_user, NULL);
+    if (user == NULL) goto cleanup;
+    if (lookup_id(env, user, 0, &uid) != 0) goto cleanup;
+  }
+  if (j_group != NULL) {
+    group = (*env)->GetStringUTFChars(env, j_group, NULL);
+    if (group == NULL) goto cleanup;
+    if (lookup_id(env, group, 1, &gid) != 0) goto cleanup;
+  }
+
+  if (chown(path, (uid_t)uid, (gid_t)gid) != 0) {
+    throw_ioe(env, errno);
+  }
+
+cleanup:
+  if (path != NULL) (*env)->ReleaseStringUTFChars(env, j_path, path);
+  if (user != NULL) (*env)->ReleaseStringUTFChars(env, j_user, user);
+  if (group != NULL) (*env)->ReleaseStringUTFChars(env, j_group, group);
+#endif
+
+#ifdef WINDOWS
+  THROW(env, "java/io/IOException",
+    "The function POSIX.chown() is not supported on Windows");
+#endif
+}
+
 /**
  * public static native void posix_fadvise(
  *   FileDescriptor fd, long offset, long len, int flags);
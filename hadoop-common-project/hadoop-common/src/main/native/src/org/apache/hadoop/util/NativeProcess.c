@@ -0,0 +1,450 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#define _GNU_SOURCE
+
+#include "org_apache_hadoop.h"
+#include "org_apache_hadoop_util_NativeProcess.h"
+
+#include <errno.h>
+#include <fcntl.h>
+#include <limits.h>
+#include <signal.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
+#include <sys/stat.h>
+#include <sys/syscall.h>
+#include <sys/types.h>
+#include <sys/wait.h>
+#include <unistd.h>
+
+#include "org/apache/hadoop/io/nativeio/file_descriptor.h"
+
+// the highest file descriptor the child may have to close
+static int max_fd;
+
+static void throw_ioe(JNIEnv *env, const char *what, int err)
+{
+  char message[PATH_MAX + 128];
+  snprintf(message, sizeof(message), "%s: error=%d, %s",
+           what, err, strerror(err));
+  THROW(env, "java/io/IOException", message);
+}
+
+/*
+ * Close the write end of a pipe on exec, so that the parent sees EOF on
+ * the read end once the child exec'ed.
+ */
+static int set_cloexec(int fd)
+{
+  int flags = fcntl(fd, F_GETFD);
+  if (flags == -1) return -1;
+  return fcntl(fd, F_SETFD, flags | FD_CLOEXEC);
+}
+
+static int make_pipe(int fds[2])
+{
+  if (pipe(fds) != 0) return -1;
+  if (set_cloexec(fds[0]) != 0 || set_cloexec(fds[1]) != 0) {
+    int err = errno;
+    close(fds[0]);
+    close(fds[1]);
+    errno = err;
+    return -1;
+  }
+  return 0;
+}
+
+static void close_pipe(int fds[2])
+{
+  if (fds[0] >= 0) close(fds[0]);
+  if (fds[1] >= 0) close(fds[1]);
+}
+
+/*
+ * Close the file descriptors the child inherited from the JVM, except for
+ * stdin, stdout, stderr and the given one. Runs in the vfork'ed child, so
+ * it must neither allocate memory nor touch the memory of the parent.
+ */
+static void close_descriptors(int keep_fd)
+{
+  int fd;
+#ifdef __linux__
+  struct linux_dirent64 {
+    unsigned long long d_ino;
+    long long d_off;
+    unsigned short d_reclen;
+    unsigned char d_type;
+    char d_name[];
+  };
+  char buf[4096];
+  int dir = open("/proc/self/fd", O_RDONLY | O_DIRECTORY);
+  if (dir >= 0) {
+    long n;
+    while ((n = syscall(SYS_getdents64, dir, buf, sizeof(buf))) > 0) {
+      long off = 0;
+      while (off < n) {
+        struct linux_dirent64 *d = (struct linux_dirent64 *)(buf + off);
+        const char *p = d->d_name;
+        off += d->d_reclen;
+        if (*p < '0' || *p > '9') continue;
+        for (fd = 0; *p >= '0' && *p <= '9'; p++) {
+          fd = fd * 10 + (*p - '0');
+        }
+        if (fd > 2 && fd != dir && fd != keep_fd) {
+          close(fd);
+        }
+      }
+    }
+    close(dir);
+    return;
+  }
+#endif
+  for (fd = 3; fd < max_fd; fd++) {
+    if (fd != keep_fd) {
+      close(fd);
+    }
+  }
+}
+
+/*
+ * Find the file to execute for the given command, as execvp(3) would,
+ * using the PATH of the JVM. Returns 0 or an errno value.
+ */
+static int find_executable(const char *cmd, char *path, size_t len)
+{
+  const char *dirs, *end;
+  int err = ENOENT;
+
+  if (cmd[0] == '\0') {
+    return ENOENT;
+  }
+  if (strchr(cmd, '/') != NULL) {
+    if (strlen(cmd) >= len) return ENAMETOOLONG;
+    strcpy(path, cmd);
+    return 0;
+  }
+  dirs = getenv("PATH");
+  if (dirs == NULL) {
+    dirs = "/bin:/usr/bin";
+  }
+  for (;;) {
+    size_t dir_len;
+    end = strchr(dirs, ':');
+    dir_len = end == NULL ? strlen(dirs) : (size_t)(end - dirs);
+    if (dir_len == 0) {
+      // an empty entry means the working directory
+      snprintf(path, len, "%s", cmd);
+    } else {
+      snprintf(path, len, "%.*s/%s", (int)dir_len, dirs, cmd);
+    }
+    if (access(path, X_OK) == 0) {
+      struct stat st;
+      if (stat(path, &st) == 0 && S_ISREG(st.st_mode)) {
+        return 0;
+      }
+    } else if (errno == EACCES) {
+      err = EACCES;
+    }
+    if (end == NULL) break;
+    dirs = end + 1;
+  }
+  return err;
+}
+
+/*
+ * Copy a Java String[] into a NULL-terminated array of C strings.
+ */
+static char **to_c_array(JNIEnv *env, jobjectArray jarr)
+{
+  jsize i, n = (*env)->GetArrayLength(env, jarr);
+  char **arr = calloc(n + 1, sizeof(char *));
+  if (arr == NULL) {
+    THROW(env, "java/lang/OutOfMemoryError", NULL);
+    return NULL;
+  }
+  for (i = 0; i < n; i++) {
+    jstring jstr = (jstring)(*env)->GetObjectArrayElement(env, jarr, i);
+    const char *str;
+    if (jstr == NULL) {
+      THROW(env, "java/lang/NullPointerException", NULL);
+      goto error;
+    }
+    str = (*env)->GetStringUTFChars(env, jstr, NULL);
+    if (str == NULL) goto error; // OOME thrown
+    arr[i] = strdup(str);
+    (*env)->ReleaseStringUTFChars(env, jstr, str);
+    (*env)->DeleteLocalRef(env, jstr);
+    if (arr[i] == NULL) {
+      THROW(env, "java/lang/OutOfMemoryError", NULL);
+      goto error;
+    }
+  }
+  return arr;
+
+error:
+  for (i = 0; arr[i] != NULL; i++) {
+    free(arr[i]);
+  }
+  free(arr);
+  return NULL;
+}
+
+static void free_c_array(char **arr)
+{
+  int i;
+  if (arr == NULL) return;
+  for (i = 0; arr[i] != NULL; i++) {
+    free(arr[i]);
+  }
+  free(arr);
+}
+
+/*
+ * What the child needs, prepared by the parent: the child may not allocate
+ * memory.
+ */
+struct child_args {
+  const char *path;
+  char **argv;
+  char **envp;
+  const char *dir;
+  int in, out, err, fail;
+};
+
+/*
+ * Set up the standard streams and the working directory of the child, and
+ * exec the command. Runs in the vfork'ed child, which shares the memory of
+ * the JVM until it exec's: it may only use its own stack and
+ * async-signal-safe calls. On failure the errno is written to the fail
+ * pipe.
+ */
+static void __attribute__((noreturn))
+child_process(const struct child_args *a)
+{
+  int child_errno, argc, i;
+  ssize_t rc;
+
+  if (dup2(a->in, STDIN_FILENO) == -1 ||
+      dup2(a->out, STDOUT_FILENO) == -1 ||
+      dup2(a->err, STDERR_FILENO) == -1) {
+    goto error;
+  }
+  close_descriptors(a->fail);
+  if (a->dir != NULL && chdir(a->dir) != 0) {
+    goto error;
+  }
+  execve(a->path, a->argv, a->envp);
+  if (errno == ENOEXEC) {
+    // a script without a #! line, run it with the shell like execvp(3)
+    for (argc = 0; a->argv[argc] != NULL; argc++) {
+    }
+    {
+      char *sh_argv[argc + 2];
+      sh_argv[0] = "/bin/sh";
+      sh_argv[1] = (char *)a->path;
+      for (i = 1; i <= argc; i++) {
+        sh_argv[i + 1] = a->argv[i];
+      }
+      execve("/bin/sh", sh_argv, a->envp);
+    }
+  }
+
+error:
+  child_errno = errno;
+  do {
+    rc = write(a->fail, &child_errno, sizeof(child_errno));
+  } while (rc == -1 && errno == EINTR);
+  _exit(127);
+}
+
+/*
+ * vfork(2) the child. Kept apart from the caller, so that the child, which
+ * runs on the stack of the parent until it exec's, cannot clobber the
+ * variables the caller keeps in registers.
+ */
+static pid_t __attribute__((noinline)) start_child(const struct child_args *a)
+{
+  pid_t pid = vfork();
+  if (pid == 0) {
+    child_process(a);
+  }
+  return pid;
+}
+
+JNIEXPORT void JNICALL
+Java_org_apache_hadoop_util_NativeProcess_initNative(
+  JNIEnv *env, jclass clazz)
+{
+  long open_max = sysconf(_SC_OPEN_MAX);
+  max_fd = (open_max <= 0 || open_max > INT_MAX) ? 65536 : (int)open_max;
+  fd_init(env);
+}
+
+JNIEXPORT jint JNICALL
+Java_org_apache_hadoop_util_NativeProcess_spawn(
+  JNIEnv *env, jclass clazz, jobjectArray jcmd, jobjectArray jenv,
+  jstring jdir, jobjectArray jfds)
+{
+  char **argv = NULL, **envp = NULL;
+  char *dir = NULL;
+  char path[PATH_MAX];
+  int in[2] = { -1, -1 }, out[2] = { -1, -1 }, err[2] = { -1, -1 };
+  int fail[2] = { -1, -1 };
+  int child_errno = 0, rc;
+  ssize_t n;
+  pid_t pid = -1;
+  jobject fd_obj;
+  struct child_args child;
+
+  argv = to_c_array(env, jcmd);
+  if (argv == NULL) goto cleanup;
+  if (argv[0] == NULL) {
+    THROW(env, "java/lang/IndexOutOfBoundsException", "empty command");
+    goto cleanup;
+  }
+  envp = to_c_array(env, jenv);
+  if (envp == NULL) goto cleanup;
+  if (jdir != NULL) {
+    const char *str = (*env)->GetStringUTFChars(env, jdir, NULL);
+    if (str == NULL) goto cleanup; // OOME thrown
+    dir = strdup(str);
+    (*env)->ReleaseStringUTFChars(env, jdir, str);
+    if (dir == NULL) {
+      THROW(env, "java/lang/OutOfMemoryError", NULL);
+      goto cleanup;
+    }
+  }
+
+  rc = find_executable(argv[0], path, sizeof(path));
+  if (rc != 0) {
+    char what[PATH_MAX + 32];
+    snprintf(what, sizeof(what), "Cannot run program \"%s\"", argv[0]);
+    throw_ioe(env, what, rc);
+    goto cleanup;
+  }
+
+  if (make_pipe(in) != 0 || make_pipe(out) != 0 || make_pipe(err) != 0 ||
+      make_pipe(fail) != 0) {
+    throw_ioe(env, "Cannot create pipes", errno);
+    goto cleanup;
+  }
+
+  child.path = path;
+  child.argv = argv;
+  child.envp = envp;
+  child.dir = dir;
+  child.in = in[0];
+  child.out = out[1];
+  child.err = err[1];
+  child.fail = fail[1];
+  pid = start_child(&child);
+  if (pid < 0) {
+    throw_ioe(env, "Cannot fork", errno);
+    goto cleanup;
+  }
+
+  // the fail pipe is closed by exec, or carries the errno of the child
+  close(fail[1]);
+  fail[1] = -1;
+  do {
+    n = read(fail[0], &child_errno, sizeof(child_errno));
+  } while (n == -1 && errno == EINTR);
+  if (n == sizeof(child_errno)) {
+    char what[PATH_MAX + 64];
+    while (waitpid(pid, NULL, 0) == -1 && errno == EINTR);
+    pid = -1;
+    if (dir != NULL && child_errno == ENOENT) {
+      snprintf(what, sizeof(what), "Cannot run program \"%s\" "
+               "(in directory \"%s\")", argv[0], dir);
+    } else {
+      snprintf(what, sizeof(what), "Cannot run program \"%s\"", argv[0]);
+    }
+    throw_ioe(env, what, child_errno);
+    goto cleanup;
+  }
+
+  close(in[0]);
+  in[0] = -1;
+  close(out[1]);
+  out[1] = -1;
+  close(err[1]);
+  err[1] = -1;
+  fd_obj = fd_create(env, in[1]);
+  if (fd_obj == NULL) goto cleanup;
+  in[1] = -1;
+  (*env)->SetObjectArrayElement(env, jfds, 0, fd_obj);
+  fd_obj = fd_create(env, out[0]);
+  if (fd_obj == NULL) goto cleanup;
+  out[0] = -1;
+  (*env)->SetObjectArrayElement(env, jfds, 1, fd_obj);
+  fd_obj = fd_create(env, err[0]);
+  if (fd_obj == NULL) goto cleanup;
+  err[0] = -1;
+  (*env)->SetObjectArrayElement(env, jfds, 2, fd_obj);
+
+cleanup:
+  if ((*env)->ExceptionCheck(env) && pid > 0) {
+    kill(pid, SIGKILL);
+    while (waitpid(pid, NULL, 0) == -1 && errno == EINTR);
+    pid = -1;
+  }
+  close_pipe(in);
+  close_pipe(out);
+  close_pipe(err);
+  close_pipe(fail);
+  free_c_array(argv);
+  free_c_array(envp);
+  free(dir);
+  return pid;
+}
+
+JNIEXPORT jint JNICALL
+Java_org_apache_hadoop_util_NativeProcess_waitPid(
+  JNIEnv *env, jclass clazz, jint pid)
+{
+  int status;
+  pid_t rc;
+  do {
+    rc = waitpid(pid, &status, WNOHANG);
+  } while (rc == -1 && errno == EINTR);
+  if (rc == -1) {
+    throw_ioe(env, "waitpid", errno);
+    return -1;
+  }
+  if (rc == 0) {
+    return -1; // still running
+  }
+  if (WIFEXITED(status)) {
+    return WEXITSTATUS(status);
+  }
+  if (WIFSIGNALED(status)) {
+    return 0x80 + WTERMSIG(status);
+  }
+  return status;
+}
+
+JNIEXPORT void JNICALL
+Java_org_apache_hadoop_util_NativeProcess_kill(
+  JNIEnv *env, jclass clazz, jint pid, jint sig)
+{
+  if (kill(pid, sig) != 0 && errno != ESRCH) {
+    throw_ioe(env, "kill", errno);
+  }
+}
@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.io.nativeio.NativeIO;
+import org.apache.hadoop.util.Shell;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * This class benchmarks listing a large local directory with
+ * {@link RawLocalFileSystem} and reading the permission, owner and group of
+ * every file, as done by the localization of YARN and the local
+ * directories handling of MapReduce. It also compares the two ways of
+ * loading the permissions of a file: running <code>ls -ld</code>, and
+ * stat(2) through native code when it is available.
+ * The user should invoke the main of this class and optionally include the
+ * number of files in the directory and the directory to use.
+ */
+public class BenchmarkLocalListStatus extends Configured implements Tool {
+
+  private static void printUsage() {
+    System.err.println("BenchmarkLocalListStatus [files [directory]]");
+  }
+
+  /** @return files per second listed with their permissions */
+  private double listStatus(FileSystem fs, Path dir) throws IOException {
+    long start = Time.monotonicNow();
+    FileStatus[] statuses = fs.listStatus(dir);
+    for (FileStatus status : statuses) {
+      if (status.getPermission() == null || status.getOwner() == null
+          || status.getGroup() == null) {
+        throw new IOException("No permissions for " + status.getPath());
+      }
+    }
+    return rate(statuses.length, start);
+  }
+
+  /** @return files per second whose permissions are read with ls */
+  private double lsFiles(File[] files) throws IOException {
+    long start = Time.monotonicNow();
+    for (File f : files) {
+      FileUtil.execCommand(f, Shell.getGetPermissionCommand());
+    }
+    return rate(files.length, start);
+  }
+
+  /** @return files per second whose permissions are read with stat(2) */
+  private double statFiles(File[] files) throws IOException {
+    long start = Time.monotonicNow();
+    for (File f : files) {
+      NativeIO.POSIX.getStat(f.getPath());
+    }
+    return rate(files.length, start);
+  }
+
+  private static double rate(int files, long start) {
+    long elapsed = Math.max(1, Time.monotonicNow() - start);
+    return files / (elapsed / 1000.0);
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    int numFiles = 10000;
+    File dir = new File(System.getProperty("java.io.tmpdir"),
+        "BenchmarkLocalListStatus");
+    try {
+      if (args.length > 0) {
+        numFiles = Integer.parseInt(args[0]);
+      }
+    } catch (NumberFormatException e) {
+      printUsage();
+      return -1;
+    }
+    if (args.length > 1) {
+      dir = new File(args[1]);
+    }
+    if (args.length > 2) {
+      printUsage();
+      return -1;
+    }
+
+    Configuration conf = getConf();
+    FileSystem fs = FileSystem.getLocal(conf).getRaw();
+    FileUtil.fullyDelete(dir);
+    if (!dir.mkdirs()) {
+      throw new IOException("Cannot create " + dir);
+    }
+    try {
+      for (int i = 0; i < numFiles; i++) {
+        if (!new File(dir, "file" + i).createNewFile()) {
+          throw new IOException("Cannot create file " + i + " in " + dir);
+        }
+      }
+      File[] files = dir.listFiles();
+      boolean nativeStat = NativeIO.isAvailable() && !Shell.WINDOWS;
+
+      System.out.println("Files: " + numFiles + ", native stat: " +
+          (nativeStat ? "yes" : "no"));
+      // warm up the JIT before measuring
+      listStatus(fs, new Path(dir.getPath()));
+      System.out.println(String.format("%-25s %10.1f files/s",
+          "listStatus+permissions", listStatus(fs, new Path(dir.getPath()))));
+      System.out.println(String.format("%-25s %10.1f files/s",
+          "ls -ld", lsFiles(files)));
+      if (nativeStat) {
+        System.out.println(String.format("%-25s %10.1f files/s",
+            "stat", statFiles(files)));
+      }
+    } finally {
+      FileUtil.fullyDelete(dir);
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int res = ToolRunner.run(new Configuration(),
+        new BenchmarkLocalListStatus(), args);
+    System.exit(res);
+  }
+}
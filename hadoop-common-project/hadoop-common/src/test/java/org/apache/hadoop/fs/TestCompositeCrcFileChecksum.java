@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.fs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.apache.hadoop.util.DataChecksum;
+import org.junit.Test;
+
+public class TestCompositeCrcFileChecksum {
+
+  /**
+   * Check that a composite CRC read back from its serialized form is the
+   * same as the one written.
+   */
+  @Test
+  public void testWritable() throws Exception {
+    CompositeCrcFileChecksum[] tests = {
+        new CompositeCrcFileChecksum(0x12345678, DataChecksum.Type.CRC32,
+            512),
+        new CompositeCrcFileChecksum(0xcafebabe, DataChecksum.Type.CRC32C,
+            1024)
+    };
+
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(baos);
+    for (CompositeCrcFileChecksum checksum : tests) {
+      checksum.write(out);
+    }
+
+    DataInputStream in =
+        new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+    CompositeCrcFileChecksum dest = new CompositeCrcFileChecksum();
+    for (CompositeCrcFileChecksum checksum : tests) {
+      dest.readFields(in);
+      assertEquals(checksum, dest);
+      assertEquals(checksum.getAlgorithmName(), dest.getAlgorithmName());
+      assertEquals(checksum.getCrc(), dest.getCrc());
+      assertEquals(checksum.getCrcType(), dest.getCrcType());
+      assertEquals(checksum.getChecksumOpt().getBytesPerChecksum(),
+          dest.getChecksumOpt().getBytesPerChecksum());
+      assertEquals(checksum.toString(), dest.toString());
+    }
+  }
+}
@@ -24,6 +24,8 @@
 import java.io.RandomAccessFile;
 import java.util.Random;
 
+import org.apache.hadoop.conf.Configuration;
+
 /** This test makes sure that "DU" does not get to run on each call to getUsed */ 
 public class TestDU extends TestCase {
   final static private File DU_DIR = new File(
@@ -111,4 +113,45 @@ public void testDUGetUsedWillNotReturnNegative() throws IOException {
     long duSize = du.getUsed();
     assertTrue(String.valueOf(duSize), duSize >= 0L);
   }
+
+  public void testGetSpaceUsedBuilder() throws IOException {
+    GetSpaceUsed used = new GetSpaceUsed.Builder().setPath(DU_DIR)
+        .setInterval(60000).setInitialUsed(1234).build();
+    assertTrue(used instanceof DU);
+    used.start();
+    // the initial usage is not overwritten by du before the first refresh
+    assertEquals(1234, used.getUsed());
+    used.shutdown();
+
+    Configuration conf = new Configuration();
+    conf.setClass(CommonConfigurationKeysPublic.FS_GETSPACEUSED_CLASSNAME_KEY,
+        IncrementalSpaceUsed.class, GetSpaceUsed.class);
+    used = new GetSpaceUsed.Builder().setConf(conf).setPath(DU_DIR).build();
+    assertTrue(used instanceof IncrementalSpaceUsed);
+  }
+
+  public void testIncrementalSpaceUsed() throws IOException {
+    File subDir = new File(DU_DIR, "sub");
+    assertTrue(subDir.mkdirs());
+    createFile(new File(DU_DIR, "a"), 1000);
+    createFile(new File(subDir, "b"), 3000);
+
+    // the directory is walked if there is no initial usage
+    IncrementalSpaceUsed used = new IncrementalSpaceUsed(DU_DIR, 0, -1, 0);
+    assertEquals(4000, used.getUsed());
+
+    // the reported changes are applied without looking at the directory
+    createFile(new File(subDir, "c"), 500);
+    used.incDfsUsed(500);
+    assertEquals(4500, used.getUsed());
+    used.decDfsUsed(Long.MAX_VALUE);
+    assertEquals(0, used.getUsed());
+
+    // walking the directory corrects the usage, at a limited rate
+    used = new IncrementalSpaceUsed(DU_DIR, 0, 100, 10);
+    assertEquals(100, used.getUsed());
+    assertTrue(new File(DU_DIR, "a").delete());
+    used.refresh();
+    assertEquals(3500, used.getUsed());
+  }
 }
@@ -32,6 +32,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.Options.ChecksumCombineMode;
 import org.apache.hadoop.fs.Options.ChecksumOpt;
 import org.apache.hadoop.fs.Options.CreateOpts;
 import org.apache.hadoop.fs.Options.Rename;
@@ -178,6 +179,14 @@ public Iterator<LocatedFileStatus> listLocatedStatus(Path f,
         final PathFilter filter) {
       return null;
     }
+    public Iterator<LocatedFileStatus> listLocatedStatus(Path[] files,
+        final PathFilter filter) {
+      return null;
+    }
+    public FileChecksum getFileChecksum(Path f,
+        ChecksumCombineMode combineMode) {
+      return null;
+    }
     public void copyFromLocalFile(Path src, Path dst) { }
     public void moveFromLocalFile(Path[] srcs, Path dst) { }
     public void moveFromLocalFile(Path src, Path dst) { }
@@ -38,6 +38,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -337,6 +338,105 @@ public void testChmod() throws Exception {
     assertPermissions(toChmod, 0644);
   }
 
+  @Test (timeout = 30000)
+  public void testStat() throws Exception {
+    if (Path.WINDOWS) {
+      return;
+    }
+
+    try {
+      NativeIO.POSIX.getStat("/this/file/doesnt/exist");
+      fail("Stat of non-existent file didn't fail");
+    } catch (NativeIOException nioe) {
+      assertEquals(Errno.ENOENT, nioe.getErrno());
+    }
+
+    File toStat = new File(TEST_DIR, "testStat");
+    assertTrue("Create test subject", toStat.createNewFile());
+    NativeIO.POSIX.chmod(toStat.getAbsolutePath(), 0640);
+    NativeIO.POSIX.Stat stat = NativeIO.POSIX.getStat(toStat.getPath());
+    LOG.info("Stat: " + String.valueOf(stat));
+
+    assertEquals(System.getProperty("user.name"), stat.getOwner());
+    assertNotNull(stat.getGroup());
+    assertTrue(!stat.getGroup().isEmpty());
+    assertEquals(NativeIO.POSIX.Stat.S_IFREG,
+      stat.getMode() & NativeIO.POSIX.Stat.S_IFMT);
+    assertEquals(0640, stat.getMode() & 0777);
+  }
+
+  /**
+   * The owner and group without a passwd or group entry are the numeric ids,
+   * as with ls.
+   */
+  @Test (timeout = 30000)
+  public void testStatUnmappedIds() throws Exception {
+    assumeTrue(!Path.WINDOWS && "root".equals(System.getProperty("user.name")));
+    int id = 54321;
+    while (isMapped(id)) {
+      id++;
+    }
+
+    File toStat = new File(TEST_DIR, "testStatUnmappedIds");
+    assertTrue("Create test subject", toStat.createNewFile());
+    Process p = new ProcessBuilder("chown", id + ":" + id,
+        toStat.getPath()).start();
+    assertEquals(0, p.waitFor());
+
+    // twice, the second time from the cache
+    for (int i = 0; i < 2; i++) {
+      NativeIO.POSIX.Stat stat = NativeIO.POSIX.getStat(toStat.getPath());
+      assertEquals(Integer.toString(id), stat.getOwner());
+      assertEquals(Integer.toString(id), stat.getGroup());
+    }
+    FileStatus status = FileSystem.getLocal(new Configuration())
+        .getFileStatus(new Path(toStat.getPath()));
+    assertEquals(Integer.toString(id), status.getOwner());
+    assertEquals(Integer.toString(id), status.getGroup());
+  }
+
+  private static boolean isMapped(int id) {
+    try {
+      NativeIO.POSIX.getUserName(id);
+      return true;
+    } catch (IOException e) {
+      // no user
+    }
+    try {
+      NativeIO.POSIX.getGroupName(id);
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Test (timeout = 30000)
+  public void testChown() throws Exception {
+    if (Path.WINDOWS) {
+      return;
+    }
+
+    File toChown = new File(TEST_DIR, "testChown");
+    assertTrue("Create test subject", toChown.createNewFile());
+    NativeIO.POSIX.Stat stat = NativeIO.POSIX.getStat(toChown.getPath());
+
+    // setting the current owner and group is always allowed
+    NativeIO.POSIX.chown(toChown.getPath(), stat.getOwner(), null);
+    NativeIO.POSIX.chown(toChown.getPath(), null, stat.getGroup());
+    NativeIO.POSIX.chown(toChown.getPath(), stat.getOwner(),
+        stat.getGroup());
+    NativeIO.POSIX.Stat after = NativeIO.POSIX.getStat(toChown.getPath());
+    assertEquals(stat.getOwner(), after.getOwner());
+    assertEquals(stat.getGroup(), after.getGroup());
+
+    try {
+      NativeIO.POSIX.chown(toChown.getPath(), "nonexistentuser-12345", null);
+      fail("Chown to a non-existent user didn't fail");
+    } catch (IOException ioe) {
+      // expected
+    }
+  }
+
 
   @Test (timeout = 30000)
   public void testPosixFadvise() throws Exception {
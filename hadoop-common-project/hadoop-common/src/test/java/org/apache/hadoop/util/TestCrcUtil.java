@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import java.util.zip.Checksum;
+
+import org.junit.Test;
+
+public class TestCrcUtil {
+  private static final DataChecksum.Type CHECKSUM_TYPES[] = {
+    DataChecksum.Type.CRC32, DataChecksum.Type.CRC32C
+  };
+
+  private final Random rand = new Random(1234);
+
+  private static int crc(DataChecksum.Type type, byte[] data, int off,
+      int len) {
+    final Checksum sum = DataChecksum.newDataChecksum(type, 512);
+    sum.update(data, off, len);
+    return (int)sum.getValue();
+  }
+
+  @Test
+  public void testMonomial() throws Exception {
+    for (DataChecksum.Type type : CHECKSUM_TYPES) {
+      final int mod = CrcUtil.getCrcPolynomialForType(type);
+      assertEquals(CrcUtil.MULTIPLICATIVE_IDENTITY,
+          CrcUtil.getMonomial(0, mod));
+      // x^8 * x^8 = x^16
+      int x8 = CrcUtil.getMonomial(1, mod);
+      assertEquals(CrcUtil.getMonomial(2, mod),
+          CrcUtil.galoisFieldMultiply(x8, x8, mod));
+      assertEquals(CrcUtil.getMonomial(1000, mod), CrcUtil.galoisFieldMultiply(
+          CrcUtil.getMonomial(999, mod), x8, mod));
+    }
+  }
+
+  @Test
+  public void testCompose() throws Exception {
+    final byte[] data = new byte[10000];
+    rand.nextBytes(data);
+    for (DataChecksum.Type type : CHECKSUM_TYPES) {
+      final int mod = CrcUtil.getCrcPolynomialForType(type);
+      final int expected = crc(type, data, 0, data.length);
+      for (int split : new int[] {0, 1, 512, 4095, 9999, 10000}) {
+        assertEquals(expected, CrcUtil.compose(crc(type, data, 0, split),
+            crc(type, data, split, data.length - split),
+            data.length - split, mod));
+      }
+
+      // the composed CRCs of chunks, with a partial last chunk, from the
+      // CRC of an empty sequence
+      for (int bytesPerCrc : new int[] {1, 512, 3000}) {
+        int composed = 0;
+        for (int off = 0; off < data.length; off += bytesPerCrc) {
+          final int len = Math.min(bytesPerCrc, data.length - off);
+          composed = CrcUtil.compose(composed, crc(type, data, off, len),
+              len, mod);
+        }
+        assertEquals(expected, composed);
+      }
+    }
+  }
+
+  @Test
+  public void testIntToBytes() {
+    final int value = rand.nextInt();
+    assertEquals(value, CrcUtil.readInt(CrcUtil.intToBytes(value), 0));
+    assertEquals(0x01020304,
+        CrcUtil.readInt(new byte[] {0, 1, 2, 3, 4}, 1));
+  }
+}
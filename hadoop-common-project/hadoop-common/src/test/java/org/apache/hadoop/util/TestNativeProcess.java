@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.util.Shell.ShellCommandExecutor;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestNativeProcess {
+  private static final File TEST_DIR = new File(
+      System.getProperty("test.build.data", "/tmp"), "testNativeProcess");
+
+  @Before
+  public void checkLoaded() {
+    assumeTrue(NativeProcess.isAvailable());
+  }
+
+  private static String readFully(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    byte[] buf = new byte[1024];
+    int n;
+    while ((n = in.read(buf)) > 0) {
+      sb.append(new String(buf, 0, n, "UTF-8"));
+    }
+    return sb.toString();
+  }
+
+  @Test(timeout=30000)
+  public void testStreamsAndExitCode() throws Exception {
+    Process p = NativeProcess.start(new String[] {
+        "sh", "-c", "read x; echo out $x; echo err >&2; exit 3"}, null, null);
+    p.getOutputStream().write("in\n".getBytes("UTF-8"));
+    p.getOutputStream().close();
+    assertEquals("out in\n", readFully(p.getInputStream()));
+    assertEquals("err\n", readFully(p.getErrorStream()));
+    assertEquals(3, p.waitFor());
+    assertEquals(3, p.exitValue());
+    p.destroy();
+  }
+
+  @Test(timeout=30000)
+  public void testEnvironmentAndDirectory() throws Exception {
+    TEST_DIR.mkdirs();
+    Process p = NativeProcess.start(new String[] {
+        "sh", "-c", "echo $FOO; pwd; echo $PATH"},
+        Collections.singletonMap("FOO", "bar"), TEST_DIR);
+    String[] lines = readFully(p.getInputStream()).split("\n");
+    assertEquals(0, p.waitFor());
+    assertEquals("bar", lines[0]);
+    assertEquals(TEST_DIR.getCanonicalPath(),
+        new File(lines[1]).getCanonicalPath());
+    // the environment of the JVM is inherited
+    assertEquals(System.getenv("PATH"), lines[2]);
+    p.destroy();
+  }
+
+  @Test(timeout=30000)
+  public void testMissingCommand() throws Exception {
+    try {
+      NativeProcess.start(new String[] {"no-such-command-really"}, null, null);
+      fail("Started a command which does not exist");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("error=2"));
+    }
+    try {
+      NativeProcess.start(new String[] {"true"}, null,
+          new File(TEST_DIR, "no-such-dir"));
+      fail("Started a command in a directory which does not exist");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("no-such-dir"));
+    }
+  }
+
+  @Test(timeout=30000)
+  public void testDestroy() throws Exception {
+    Process p = NativeProcess.start(new String[] {"sleep", "100"}, null,
+        null);
+    try {
+      p.exitValue();
+      fail("exitValue of a running process");
+    } catch (IllegalThreadStateException e) {
+      // expected
+    }
+    p.destroy();
+    assertEquals(0x80 + 15, p.waitFor());
+  }
+
+  /** A thread waiting for the child should not block its destruction. */
+  @Test(timeout=30000)
+  public void testDestroyWhileWaiting() throws Exception {
+    final Process p = NativeProcess.start(new String[] {"sleep", "100"},
+        null, null);
+    final int[] exitCode = {-1};
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          exitCode[0] = p.waitFor();
+        } catch (InterruptedException e) {
+          // leave the exit code unset
+        }
+      }
+    };
+    waiter.start();
+    Thread.sleep(100);
+    p.destroy();
+    waiter.join();
+    assertEquals(0x80 + 15, exitCode[0]);
+    assertEquals(0x80 + 15, p.exitValue());
+  }
+
+  /** A thread waiting for the child should be interruptible. */
+  @Test(timeout=30000)
+  public void testInterruptWaiting() throws Exception {
+    final Process p = NativeProcess.start(new String[] {"sleep", "100"},
+        null, null);
+    final boolean[] interrupted = {false};
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          p.waitFor();
+        } catch (InterruptedException e) {
+          interrupted[0] = true;
+        }
+      }
+    };
+    waiter.start();
+    Thread.sleep(100);
+    waiter.interrupt();
+    waiter.join();
+    assertTrue(interrupted[0]);
+    try {
+      p.exitValue();
+      fail("exitValue of a running process");
+    } catch (IllegalThreadStateException e) {
+      // expected
+    }
+    p.destroy();
+    assertEquals(0x80 + 15, p.waitFor());
+  }
+
+  /** The child should not get the file descriptors of the JVM. */
+  @Test(timeout=30000)
+  public void testNoInheritedDescriptors() throws Exception {
+    assumeTrue(new File("/proc/self/fd").isDirectory());
+    TEST_DIR.mkdirs();
+    RandomAccessFile file = new RandomAccessFile(
+        new File(TEST_DIR, "open"), "rw");
+    try {
+      // ls has its stdin, stdout, stderr and the listed directory open
+      Process p = NativeProcess.start(new String[] {"ls", "/proc/self/fd"},
+          null, null);
+      String[] fds = readFully(p.getInputStream()).trim().split("\\s+");
+      assertEquals(0, p.waitFor());
+      assertEquals(4, fds.length);
+      p.destroy();
+    } finally {
+      IOUtils.closeStream(file);
+    }
+  }
+
+  @Test(timeout=30000)
+  public void testShell() throws Exception {
+    ShellCommandExecutor shexec = new ShellCommandExecutor(
+        new String[] {"echo", "hello"});
+    shexec.execute();
+    assertTrue(shexec.getProcess() instanceof NativeProcess);
+    assertEquals("hello\n", shexec.getOutput());
+    assertEquals(0, shexec.getExitCode());
+
+    shexec = new ShellCommandExecutor(new String[] {"sleep", "100"}, null,
+        null, 100);
+    try {
+      shexec.execute();
+      fail("sleep was not timed out");
+    } catch (IOException e) {
+      // killed by the timeout
+    }
+    assertTrue(shexec.isTimedOut());
+  }
+}
@@ -450,6 +450,9 @@ private FSDataOutputStream uploadData(String method, Path f, Map<String, String>
         if (location != null) {
           conn = getConnection(new URL(location), method);
           conn.setRequestProperty("Content-Type", UPLOAD_CONTENT_TYPE);
+          // stream the data as it is written instead of buffering all of it
+          // in memory to compute the content length
+          conn.setChunkedStreamingMode(bufferSize);
           try {
             OutputStream os = new BufferedOutputStream(conn.getOutputStream(), bufferSize);
             return new HttpFSDataOutputStream(conn, os, expectedStatus, statistics);
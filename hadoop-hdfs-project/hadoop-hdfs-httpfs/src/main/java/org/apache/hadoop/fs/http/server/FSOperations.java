@@ -189,7 +189,7 @@ public FSAppend(InputStream is, String path) {
      */
     @Override
     public Void execute(FileSystem fs) throws IOException {
-      int bufferSize = fs.getConf().getInt("httpfs.buffer.size", 4096);
+      int bufferSize = HttpFSServer.getBufferSize();
       OutputStream os = fs.append(path, bufferSize);
       IOUtils.copyBytes(is, os, bufferSize, true);
       os.close();
@@ -322,7 +322,7 @@ public Void execute(FileSystem fs) throws IOException {
         blockSize = fs.getDefaultBlockSize(path);
       }
       FsPermission fsPermission = new FsPermission(permission);
-      int bufferSize = fs.getConf().getInt("httpfs.buffer.size", 4096);
+      int bufferSize = HttpFSServer.getBufferSize();
       OutputStream os = fs.create(path, fsPermission, override, bufferSize, replication, blockSize, null);
       IOUtils.copyBytes(is, os, bufferSize, true);
       os.close();
@@ -570,7 +570,7 @@ public FSOpen(String path) {
      */
     @Override
     public InputStream execute(FileSystem fs) throws IOException {
-      int bufferSize = HttpFSServerWebApp.get().getConfig().getInt("httpfs.buffer.size", 4096);
+      int bufferSize = HttpFSServer.getBufferSize();
       return fs.open(path, bufferSize);
     }
 
@@ -21,6 +21,7 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Seekable;
 import org.apache.hadoop.fs.http.client.HttpFSFileSystem;
 import org.apache.hadoop.fs.http.server.HttpFSParametersProvider.AccessTimeParam;
 import org.apache.hadoop.fs.http.server.HttpFSParametersProvider.BlockSizeParam;
@@ -147,6 +148,31 @@ private <T> T fsExecute(Principal user, String doAs, FileSystemAccess.FileSystem
     return fsAccess.execute(hadoopUser, conf, executor);
   }
 
+  /**
+   * Returns the buffer size used when streaming data from/to HDFS.
+   *
+   * @return the value of <code>httpfs.buffer.size</code>.
+   */
+  static int getBufferSize() {
+    return HttpFSServerWebApp.get().getConfig().getInt("httpfs.buffer.size",
+                                                       4096);
+  }
+
+  /**
+   * Wraps the data stream of an operation to report its throughput and
+   * latency to the instrumentation service.
+   *
+   * @param is data stream of the operation.
+   * @param name name of the operation.
+   *
+   * @return the instrumented stream.
+   */
+  private InputStream instrument(InputStream is, String name) {
+    Instrumentation instrumentation =
+      HttpFSServerWebApp.get().get(Instrumentation.class);
+    return new InstrumentedInputStream(is, instrumentation, name);
+  }
+
   /**
    * Returns a filesystem instance. The fileystem instance is wired for release at the completion of
    * the current Servlet request via the {@link FileSystemReleaseFilter}.
@@ -249,7 +275,15 @@ public Response get(@Context Principal user,
         Long len = params.get(LenParam.NAME, LenParam.class);
         AUDIT_LOG.info("[{}] offset [{}] len [{}]",
                        new Object[]{path, offset, len});
-        InputStreamEntity entity = new InputStreamEntity(is, offset, len);
+        long skip = offset;
+        if (offset > 0 && is instanceof Seekable) {
+          //seeking does not read the data before the offset
+          ((Seekable) is).seek(offset);
+          skip = 0;
+        }
+        is = instrument(is, "open");
+        InputStreamEntity entity =
+          new InputStreamEntity(is, skip, len, getBufferSize());
         response =
           Response.ok(entity).type(MediaType.APPLICATION_OCTET_STREAM).build();
         break;
@@ -414,7 +448,7 @@ public Response post(InputStream is,
               HttpFSFileSystem.Operation.APPEND)).build();
         } else {
           FSOperations.FSAppend command =
-            new FSOperations.FSAppend(is, path);
+            new FSOperations.FSAppend(instrument(is, "append"), path);
           fsExecute(user, doAs, command);
           AUDIT_LOG.info("[{}]", path);
           response = Response.ok().type(MediaType.APPLICATION_JSON).build();
@@ -508,8 +542,9 @@ public Response put(InputStream is,
           Long blockSize = params.get(BlockSizeParam.NAME,
                                       BlockSizeParam.class);
           FSOperations.FSCreate command =
-            new FSOperations.FSCreate(is, path, permission, override,
-                                      replication, blockSize);
+            new FSOperations.FSCreate(instrument(is, "create"), path,
+                                      permission, override, replication,
+                                      blockSize);
           fsExecute(user, doAs, command);
           AUDIT_LOG.info(
             "[{}] permission [{}] override [{}] replication [{}] blockSize [{}]",
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.http.server;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.lib.service.Instrumentation;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream that reports to the instrumentation, when closed, the time it
+ * has been open as the <code>[name]</code> timer and the bytes read from it
+ * as the <code>[name].bytes</code> counter, so the throughput of the data
+ * streamed by an operation is the ratio of the two.
+ */
+@InterfaceAudience.Private
+class InstrumentedInputStream extends FilterInputStream {
+  static final String INSTRUMENTATION_GROUP = "httpfs";
+
+  private Instrumentation instrumentation;
+  private String name;
+  private Instrumentation.Cron cron;
+  private long bytes;
+  private boolean closed;
+
+  /**
+   * Creates an instrumented stream, the timer starts with its creation.
+   *
+   * @param is stream to instrument.
+   * @param instrumentation instrumentation to report to.
+   * @param name name of the timer and prefix of the counter.
+   */
+  public InstrumentedInputStream(InputStream is,
+                                 Instrumentation instrumentation,
+                                 String name) {
+    super(is);
+    this.instrumentation = instrumentation;
+    this.name = name;
+    cron = instrumentation.createCron().start();
+  }
+
+  @Override
+  public int read() throws IOException {
+    int b = super.read();
+    if (b != -1) {
+      bytes++;
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    int n = super.read(b, off, len);
+    if (n > 0) {
+      bytes += n;
+    }
+    return n;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      super.close();
+    } finally {
+      if (!closed) {
+        closed = true;
+        cron.stop();
+        instrumentation.addCron(INSTRUMENTATION_GROUP, name, cron);
+        instrumentation.incr(INSTRUMENTATION_GROUP, name + ".bytes", bytes);
+      }
+    }
+  }
+
+}
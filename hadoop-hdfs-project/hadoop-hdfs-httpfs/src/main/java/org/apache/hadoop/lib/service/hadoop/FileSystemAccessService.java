@@ -40,13 +40,17 @@
 import java.io.IOException;
 import java.net.URI;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @InterfaceAudience.Private
 public class FileSystemAccessService extends BaseService implements FileSystemAccess {
@@ -61,6 +65,7 @@ public class FileSystemAccessService extends BaseService implements FileSystemAc
   public static final String KERBEROS_PRINCIPAL = "authentication.kerberos.principal";
   public static final String FS_CACHE_PURGE_FREQUENCY = "filesystem.cache.purge.frequency";
   public static final String FS_CACHE_PURGE_TIMEOUT = "filesystem.cache.purge.timeout";
+  public static final String FS_CACHE_MAX_SIZE = "filesystem.cache.max.size";
 
   public static final String NAME_NODE_WHITELIST = "name.node.whitelist";
 
@@ -75,6 +80,7 @@ private static class CachedFileSystem {
     private long lastUse;
     private long timeout;
     private int count;
+    private boolean evicted;
 
     public CachedFileSystem(long timeout) {
       this.timeout = timeout;
@@ -82,8 +88,15 @@ public CachedFileSystem(long timeout) {
       count = 0;
     }
 
+    /**
+     * Returns the filesystem, or null if the entry has been evicted from the
+     * cache, in which case a new entry must be used.
+     */
     synchronized FileSystem getFileSytem(Configuration conf)
       throws IOException {
+      if (evicted) {
+        return null;
+      }
       if (fs == null) {
         fs = FileSystem.get(conf);
       }
@@ -92,35 +105,65 @@ synchronized FileSystem getFileSytem(Configuration conf)
       return fs;
     }
 
-    synchronized void release() throws IOException {
-      count--;
-      if (count == 0) {
-        if (timeout == 0) {
-          fs.close();
-          fs = null;
-          lastUse = -1;
-        }
-        else {
-          lastUse = System.currentTimeMillis();
+    void release() throws IOException {
+      FileSystem toClose = null;
+      synchronized (this) {
+        count--;
+        if (count == 0) {
+          if (timeout == 0) {
+            toClose = fs;
+            fs = null;
+            lastUse = -1;
+          }
+          else {
+            lastUse = System.currentTimeMillis();
+          }
         }
       }
+      if (toClose != null) {
+        toClose.close();
+      }
+    }
+
+    // an entry in use is never removed from the cache, so the entry of a
+    // filesystem being released is always the one in the cache. An entry
+    // not in use is removed only when the cache is over its maximum size,
+    // the least recently used first, otherwise it just closes/opens
+    // filesystems based on their utilization. The filesystem of an evicted
+    // entry is closed by closeEvicted(), outside of the cache lock.
+    synchronized boolean evictIfUnused() {
+      if (count > 0) {
+        return false;
+      }
+      evicted = true;
+      return true;
     }
 
-    // to avoid race conditions in the map cache adding removing entries
-    // an entry in the cache remains forever, it just closes/opens filesystems
-    // based on their utilization. Worse case scenario, the penalty we'll
-    // pay is that the amount of entries in the cache will be the total
-    // number of users in HDFS (which seems a resonable overhead).
-    synchronized boolean purgeIfIdle() throws IOException {
-      boolean ret = false;
-      if (count == 0 && lastUse != -1 &&
-          (System.currentTimeMillis() - lastUse) > timeout) {
-        fs.close();
+    void closeEvicted() throws IOException {
+      FileSystem toClose;
+      synchronized (this) {
+        toClose = fs;
         fs = null;
-        lastUse = -1;
-        ret = true;
       }
-      return ret;
+      if (toClose != null) {
+        toClose.close();
+      }
+    }
+
+    boolean purgeIfIdle() throws IOException {
+      FileSystem toClose = null;
+      synchronized (this) {
+        if (count == 0 && lastUse != -1 &&
+            (System.currentTimeMillis() - lastUse) > timeout) {
+          toClose = fs;
+          fs = null;
+          lastUse = -1;
+        }
+      }
+      if (toClose != null) {
+        toClose.close();
+      }
+      return toClose != null;
     }
 
   }
@@ -135,11 +178,16 @@ public FileSystemAccessService() {
 
   private AtomicInteger unmanagedFileSystems = new AtomicInteger();
 
-  private ConcurrentHashMap<String, CachedFileSystem> fsCache =
-    new ConcurrentHashMap<String, CachedFileSystem>();
+  // the least recently used first, guarded by itself
+  private final LinkedHashMap<String, CachedFileSystem> fsCache =
+    new LinkedHashMap<String, CachedFileSystem>(16, 0.75f, true);
+
+  private AtomicLong evictedFileSystems = new AtomicLong();
 
   private long purgeTimeout;
 
+  private int maxCacheSize;
+
   @Override
   protected void init() throws ServiceException {
     LOG.info("Using FileSystemAccess JARs version [{}]", VersionInfo.getVersion());
@@ -224,10 +272,25 @@ public Long getValue() {
         return (long) unmanagedFileSystems.get();
       }
     });
+    instrumentation.addVariable(INSTRUMENTATION_GROUP, "cached.fs", new Instrumentation.Variable<Integer>() {
+      @Override
+      public Integer getValue() {
+        synchronized (fsCache) {
+          return fsCache.size();
+        }
+      }
+    });
+    instrumentation.addVariable(INSTRUMENTATION_GROUP, "evicted.fs", new Instrumentation.Variable<Long>() {
+      @Override
+      public Long getValue() {
+        return evictedFileSystems.get();
+      }
+    });
     Scheduler scheduler = getServer().get(Scheduler.class);
     int purgeInterval = getServiceConfig().getInt(FS_CACHE_PURGE_FREQUENCY, 60);
     purgeTimeout = getServiceConfig().getLong(FS_CACHE_PURGE_TIMEOUT, 60);
     purgeTimeout = (purgeTimeout > 0) ? purgeTimeout : 0;
+    maxCacheSize = getServiceConfig().getInt(FS_CACHE_MAX_SIZE, 1000);
     if (purgeTimeout > 0) {
       scheduler.schedule(new FileSystemCachePurger(),
                          purgeInterval, purgeInterval, TimeUnit.SECONDS);
@@ -239,7 +302,11 @@ private class FileSystemCachePurger implements Runnable {
     @Override
     public void run() {
       int count = 0;
-      for (CachedFileSystem cacheFs : fsCache.values()) {
+      List<CachedFileSystem> cachedFileSystems;
+      synchronized (fsCache) {
+        cachedFileSystems = new ArrayList<CachedFileSystem>(fsCache.values());
+      }
+      for (CachedFileSystem cacheFs : cachedFileSystems) {
         try {
           count += cacheFs.purgeIfIdle() ? 1 : 0;
         } catch (Throwable ex) {
@@ -281,19 +348,60 @@ protected void setRequiredServiceHadoopConf(Configuration conf) {
   protected FileSystem createFileSystem(Configuration namenodeConf)
     throws IOException {
     String user = UserGroupInformation.getCurrentUser().getShortUserName();
-    CachedFileSystem newCachedFS = new CachedFileSystem(purgeTimeout);
-    CachedFileSystem cachedFS = fsCache.putIfAbsent(user, newCachedFS);
-    if (cachedFS == null) {
-      cachedFS = newCachedFS;
-    }
     Configuration conf = new Configuration(namenodeConf);
     conf.set(HTTPFS_FS_USER, user);
-    return cachedFS.getFileSytem(conf);
+    while (true) {
+      CachedFileSystem cachedFS;
+      synchronized (fsCache) {
+        cachedFS = fsCache.get(user);
+        if (cachedFS == null) {
+          cachedFS = new CachedFileSystem(purgeTimeout);
+          fsCache.put(user, cachedFS);
+        }
+      }
+      FileSystem fs = cachedFS.getFileSytem(conf);
+      if (fs != null) {
+        evictUnusedFileSystems();
+        return fs;
+      }
+      // evicted between the lookup and its use, retrying with a new entry
+    }
+  }
+
+  /**
+   * Evicts the least recently used filesystems not in use while the cache
+   * is over its maximum size. The evicted filesystems are closed after
+   * releasing the cache lock.
+   */
+  private void evictUnusedFileSystems() {
+    List<CachedFileSystem> evicted = new ArrayList<CachedFileSystem>();
+    synchronized (fsCache) {
+      Iterator<CachedFileSystem> it = fsCache.values().iterator();
+      while (fsCache.size() > maxCacheSize && it.hasNext()) {
+        CachedFileSystem cachedFS = it.next();
+        if (cachedFS.evictIfUnused()) {
+          it.remove();
+          evicted.add(cachedFS);
+        }
+      }
+    }
+    for (CachedFileSystem cachedFS : evicted) {
+      evictedFileSystems.incrementAndGet();
+      try {
+        cachedFS.closeEvicted();
+      } catch (IOException ex) {
+        LOG.warn("Error while evicting filesystem, " + ex.toString(), ex);
+      }
+    }
   }
 
   protected void closeFileSystem(FileSystem fs) throws IOException {
-    if (fsCache.containsKey(fs.getConf().get(HTTPFS_FS_USER))) {
-      fsCache.get(fs.getConf().get(HTTPFS_FS_USER)).release();
+    CachedFileSystem cachedFS;
+    synchronized (fsCache) {
+      cachedFS = fsCache.get(fs.getConf().get(HTTPFS_FS_USER));
+    }
+    if (cachedFS != null) {
+      cachedFS.release();
     }
   }
 
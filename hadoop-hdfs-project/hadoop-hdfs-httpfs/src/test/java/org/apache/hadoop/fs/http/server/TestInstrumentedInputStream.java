@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.fs.http.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import org.apache.hadoop.lib.service.Instrumentation;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestInstrumentedInputStream {
+
+  private static class TestCron implements Instrumentation.Cron {
+    private long start = -1;
+    private long stop = -1;
+
+    @Override
+    public Instrumentation.Cron start() {
+      start = System.currentTimeMillis();
+      return this;
+    }
+
+    @Override
+    public Instrumentation.Cron stop() {
+      stop = System.currentTimeMillis();
+      return this;
+    }
+  }
+
+  @Test
+  public void bytesAndTime() throws Exception {
+    Instrumentation instrumentation = Mockito.mock(Instrumentation.class);
+    TestCron cron = new TestCron();
+    Mockito.when(instrumentation.createCron()).thenReturn(cron);
+
+    InputStream is = new InstrumentedInputStream(
+      new ByteArrayInputStream(new byte[100]), instrumentation, "op");
+    Assert.assertTrue(cron.start != -1);
+    Assert.assertEquals(-1, cron.stop);
+
+    Assert.assertEquals(0, is.read());
+    Assert.assertEquals(10, is.read(new byte[10]));
+    Assert.assertEquals(20, is.read(new byte[30], 5, 20));
+    Assert.assertEquals(5, is.skip(5));
+    Assert.assertEquals(64, is.read(new byte[100]));
+    // the end of the stream is not counted
+    Assert.assertEquals(-1, is.read());
+    Assert.assertEquals(-1, is.read(new byte[10]));
+    Thread.sleep(50);
+    Mockito.verify(instrumentation, Mockito.never()).incr(
+      Mockito.anyString(), Mockito.anyString(), Mockito.anyLong());
+
+    is.close();
+    Assert.assertTrue(cron.stop - cron.start >= 50);
+    Mockito.verify(instrumentation).addCron(
+      InstrumentedInputStream.INSTRUMENTATION_GROUP, "op", cron);
+    // the skipped bytes are not counted
+    Mockito.verify(instrumentation).incr(
+      InstrumentedInputStream.INSTRUMENTATION_GROUP, "op.bytes", 95);
+
+    // closing again does not report twice
+    is.close();
+    Mockito.verify(instrumentation).addCron(
+      Mockito.anyString(), Mockito.anyString(),
+      Mockito.any(Instrumentation.Cron.class));
+    Mockito.verify(instrumentation).incr(
+      Mockito.anyString(), Mockito.anyString(), Mockito.anyLong());
+  }
+
+}
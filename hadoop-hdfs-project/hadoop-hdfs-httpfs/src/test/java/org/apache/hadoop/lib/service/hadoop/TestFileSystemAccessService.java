@@ -463,4 +463,59 @@ public void fileSystemCache() throws Exception {
     }
   }
 
+  @Test
+  @TestDir
+  @TestHdfs
+  public void fileSystemCacheMaxSize() throws Exception {
+    String dir = TestDirHelper.getTestDir().getAbsolutePath();
+    String services = StringUtils.join(",",
+      Arrays.asList(InstrumentationService.class.getName(),
+                    SchedulerService.class.getName(),
+                    FileSystemAccessService.class.getName()));
+
+    Configuration hadoopConf = new Configuration(false);
+    hadoopConf.set(CommonConfigurationKeysPublic.FS_DEFAULT_NAME_KEY,
+      TestHdfsHelper.getHdfsConf().get(CommonConfigurationKeysPublic.FS_DEFAULT_NAME_KEY));
+    createHadoopConf(hadoopConf);
+
+    Configuration conf = new Configuration(false);
+    conf.set("server.services", services);
+    conf.set("server.hadoop.filesystem.cache.max.size", "1");
+    Server server = new Server("server", dir, dir, dir, dir, conf);
+    try {
+      server.init();
+      FileSystemAccess hadoop = server.get(FileSystemAccess.class);
+
+      FileSystem fs1 =
+        hadoop.createFileSystem("u1", hadoop.getFileSystemConfiguration());
+      FileSystem fs2 =
+        hadoop.createFileSystem("u2", hadoop.getFileSystemConfiguration());
+
+      //both around, filesystems in use are not evicted
+      fs1.mkdirs(new Path("/tmp/foo1"));
+      fs2.mkdirs(new Path("/tmp/foo2"));
+
+      hadoop.releaseFileSystem(fs1);
+      hadoop.releaseFileSystem(fs2);
+      FileSystem fs3 =
+        hadoop.createFileSystem("u2", hadoop.getFileSystemConfiguration());
+
+      //should be same instance because of caching
+      Assert.assertEquals(fs2, fs3);
+      fs3.mkdirs(new Path("/tmp/foo3"));
+      hadoop.releaseFileSystem(fs3);
+
+      //should not be around as it was the least recently used one
+      try {
+        fs1.mkdirs(new Path("/tmp/foo"));
+        Assert.fail();
+      } catch (IOException ex) {
+      } catch (Exception ex) {
+        Assert.fail();
+      }
+    } finally {
+      server.destroy();
+    }
+  }
+
 }
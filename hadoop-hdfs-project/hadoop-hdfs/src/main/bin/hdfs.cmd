@@ -107,6 +107,10 @@ goto :eof
   set CLASS=org.apache.hadoop.hdfs.tools.offlineImageViewer.OfflineImageViewer
   goto :eof
 
+:oiv_index
+  set CLASS=org.apache.hadoop.hdfs.tools.offlineImageViewer.OfflineImageIndex
+  goto :eof
+
 :oev
   set CLASS=org.apache.hadoop.hdfs.tools.offlineEditsViewer.OfflineEditsViewer
   goto :eof
@@ -160,6 +164,7 @@ goto :eof
   @echo   balancer             run a cluster balancing utility
   @echo   jmxget               get JMX exported values from NameNode or DataNode.
   @echo   oiv                  apply the offline fsimage viewer to an fsimage
+  @echo   oiv_index            query or serve the index of an fsimage
   @echo   oev                  apply the offline edits viewer to an edits file
   @echo   fetchdt              fetch a delegation token from the NameNode
   @echo   getconf              get config values from configuration
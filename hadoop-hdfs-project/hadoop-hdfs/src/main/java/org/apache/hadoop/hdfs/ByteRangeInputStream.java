@@ -187,6 +187,35 @@ public int read(byte b[], int off, int len) throws IOException {
     return update(getInputStream().read(b, off, len));
   }
   
+  /**
+   * @return the maximum number of bytes that a forward seek reads through
+   *         from the current stream, rather than opening a new connection
+   *         at the new offset; 0 to always open a new connection.
+   */
+  protected long getMaxForwardSeekSkip() {
+    return 0;
+  }
+
+  /**
+   * Skip the given number of bytes of the current stream.
+   * @return true if all the bytes were skipped
+   */
+  private boolean skipForward(long n) {
+    try {
+      while (n > 0) {
+        final long skipped = in.skip(n);
+        if (skipped <= 0) {
+          return false;
+        }
+        n -= skipped;
+        currentPos += skipped;
+      }
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
   /**
    * Seek to the given offset from the start of the file.
    * The next read() will be from that location.  Can't
@@ -195,6 +224,11 @@ public int read(byte b[], int off, int len) throws IOException {
   @Override
   public void seek(long pos) throws IOException {
     if (pos != currentPos) {
+      if (status == StreamStatus.NORMAL && pos > currentPos
+          && pos - currentPos <= getMaxForwardSeekSkip()
+          && skipForward(pos - currentPos)) {
+        return;
+      }
       startPos = pos;
       currentPos = pos;
       if (status != StreamStatus.CLOSED) {
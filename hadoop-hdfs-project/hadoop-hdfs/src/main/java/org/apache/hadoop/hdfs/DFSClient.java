@@ -41,11 +41,17 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_SOCKET_CACHE_CAPACITY_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_SLOW_DATANODE_THRESHOLD_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_SLOW_DATANODE_THRESHOLD_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_FAILED_DATANODE_EXPIRY_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_FAILED_DATANODE_EXPIRY_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_WRITE_EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_WRITE_EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_SOCKET_TIMEOUT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_USE_LEGACY_BLOCKREADER;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_USE_LEGACY_BLOCKREADER_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_SIZE_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_SIZE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SOCKET_WRITE_TIMEOUT_KEY;
@@ -60,6 +66,7 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -75,6 +82,11 @@
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.net.SocketFactory;
 
@@ -85,9 +97,11 @@
 import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.BlockStorageLocation;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.fs.CompositeCrcFileChecksum;
 import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.FileAlreadyExistsException;
+import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FsServerDefaults;
 import org.apache.hadoop.fs.FsStatus;
@@ -97,6 +111,7 @@
 import org.apache.hadoop.fs.MD5MD5CRC32FileChecksum;
 import org.apache.hadoop.fs.MD5MD5CRC32GzipFileChecksum;
 import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Options.ChecksumCombineMode;
 import org.apache.hadoop.fs.Options.ChecksumOpt;
 import org.apache.hadoop.fs.ParentNotDirectoryException;
 import org.apache.hadoop.fs.Path;
@@ -136,6 +151,7 @@
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.SafeModeException;
+import org.apache.hadoop.hdfs.util.ByteArrayPool;
 import org.apache.hadoop.io.DataOutputBuffer;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.IOUtils;
@@ -151,6 +167,7 @@
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.security.token.TokenRenewer;
+import org.apache.hadoop.util.CrcUtil;
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DataChecksum.Type;
 import org.apache.hadoop.util.Progressable;
@@ -160,6 +177,7 @@
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.net.InetAddresses;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /********************************************************
  * DFSClient can connect to a Hadoop Filesystem and 
@@ -194,6 +212,8 @@ public class DFSClient implements java.io.Closeable {
   final int hdfsTimeout;    // timeout value for a DFS operation.
   private final String authority;
   final SocketCache socketCache;
+  /** The buffers of the packets written, shared by the output streams. */
+  final ByteArrayPool packetBufferPool;
   final Conf dfsClientConf;
   private Random r = new Random();
   private SocketAddress[] localInterfaceAddrs;
@@ -211,9 +231,12 @@ static class Conf {
     final int ioBufferSize;
     final ChecksumOpt defaultChecksumOpt;
     final int writePacketSize;
+    final long writePacketPoolSize;
     final int socketTimeout;
     final int socketCacheCapacity;
     final long socketCacheExpiry;
+    final long slowDatanodeThreshold;
+    final long failedDatanodeExpiry;
     final long excludedNodesCacheExpiry;
     /** Wait time window (in msec) if BlockMissingException is caught */
     final int timeWindow;
@@ -230,6 +253,8 @@ static class Conf {
     final boolean getHdfsBlocksMetadataEnabled;
     final int getFileBlockStorageLocationsNumThreads;
     final int getFileBlockStorageLocationsTimeout;
+    final int batchedListingSize;
+    final int fileChecksumNumThreads;
 
     Conf(Configuration conf) {
       maxFailoverAttempts = conf.getInt(
@@ -256,6 +281,8 @@ static class Conf {
       /** dfs.write.packet.size is an internal config variable */
       writePacketSize = conf.getInt(DFS_CLIENT_WRITE_PACKET_SIZE_KEY,
           DFS_CLIENT_WRITE_PACKET_SIZE_DEFAULT);
+      writePacketPoolSize = conf.getLong(DFS_CLIENT_WRITE_PACKET_POOL_SIZE_KEY,
+          DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT);
       defaultBlockSize = conf.getLongBytes(DFS_BLOCK_SIZE_KEY,
           DFS_BLOCK_SIZE_DEFAULT);
       defaultReplication = (short) conf.getInt(
@@ -265,6 +292,12 @@ static class Conf {
           DFS_CLIENT_SOCKET_CACHE_CAPACITY_DEFAULT);
       socketCacheExpiry = conf.getLong(DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY,
           DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_DEFAULT);
+      slowDatanodeThreshold = conf.getLong(
+          DFS_CLIENT_SLOW_DATANODE_THRESHOLD_MS_KEY,
+          DFS_CLIENT_SLOW_DATANODE_THRESHOLD_MS_DEFAULT);
+      failedDatanodeExpiry = conf.getLong(
+          DFS_CLIENT_FAILED_DATANODE_EXPIRY_MS_KEY,
+          DFS_CLIENT_FAILED_DATANODE_EXPIRY_MS_DEFAULT);
       excludedNodesCacheExpiry = conf.getLong(
           DFS_CLIENT_WRITE_EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL,
           DFS_CLIENT_WRITE_EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_DEFAULT);
@@ -294,6 +327,12 @@ static class Conf {
       getFileBlockStorageLocationsTimeout = conf.getInt(
           DFSConfigKeys.DFS_CLIENT_FILE_BLOCK_STORAGE_LOCATIONS_TIMEOUT,
           DFSConfigKeys.DFS_CLIENT_FILE_BLOCK_STORAGE_LOCATIONS_TIMEOUT_DEFAULT);
+      batchedListingSize = Math.max(1, conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_BATCHED_LISTING_SIZE_KEY,
+          DFSConfigKeys.DFS_CLIENT_BATCHED_LISTING_SIZE_DEFAULT));
+      fileChecksumNumThreads = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_FILE_CHECKSUM_NUM_THREADS_KEY,
+          DFSConfigKeys.DFS_CLIENT_FILE_CHECKSUM_NUM_THREADS_DEFAULT);
     }
 
     private DataChecksum.Type getChecksumType(Configuration conf) {
@@ -440,6 +479,8 @@ public DFSClient(URI nameNodeUri, Configuration conf,
     }
     
     this.socketCache = SocketCache.getInstance(dfsClientConf.socketCacheCapacity, dfsClientConf.socketCacheExpiry);
+    this.packetBufferPool =
+        new ByteArrayPool(dfsClientConf.writePacketPoolSize);
   }
 
   /**
@@ -1526,6 +1567,25 @@ public DirectoryListing listPaths(String src,  byte[] startAfter,
     }
   }
 
+  /**
+   * Get the first partial listing of each of the indicated directories
+   * in one call. The namenode may list only a prefix of <code>srcs</code>;
+   * callers should keep batches to
+   * {@link DFSConfigKeys#DFS_CLIENT_BATCHED_LISTING_SIZE_KEY} paths.
+   *
+   * @see ClientProtocol#getBatchedListing(String[], boolean)
+   */
+  public DirectoryListing[] listPaths(String[] srcs, boolean needLocation)
+      throws IOException {
+    checkOpen();
+    try {
+      return namenode.getBatchedListing(srcs, needLocation);
+    } catch(RemoteException re) {
+      throw re.unwrapRemoteException(AccessControlException.class,
+                                     UnresolvedPathException.class);
+    }
+  }
+
   /**
    * Get the file info for a specific file or directory.
    * @param src The string representation of the path to the file
@@ -1563,17 +1623,30 @@ public HdfsFileStatus getFileLinkInfo(String src) throws IOException {
      }
    }
 
+  /**
+   * Get the MD5-of-MD5-of-CRC32 checksum of a file.
+   * @param src The file path
+   * @return The checksum 
+   */
+  public MD5MD5CRC32FileChecksum getFileChecksum(String src) throws IOException {
+    return (MD5MD5CRC32FileChecksum)getFileChecksum(src,
+        ChecksumCombineMode.MD5MD5CRC);
+  }
+
   /**
    * Get the checksum of a file.
    * @param src The file path
+   * @param combineMode how the CRCs of the chunks of the file are combined
    * @return The checksum 
    * @see DistributedFileSystem#getFileChecksum(Path)
    */
-  public MD5MD5CRC32FileChecksum getFileChecksum(String src) throws IOException {
+  public FileChecksum getFileChecksum(String src,
+      ChecksumCombineMode combineMode) throws IOException {
     checkOpen();
     return getFileChecksum(src, clientName, namenode, socketFactory,
         dfsClientConf.socketTimeout, getDataEncryptionKey(),
-        dfsClientConf.connectToDnViaHostname);
+        dfsClientConf.connectToDnViaHostname,
+        dfsClientConf.fileChecksumNumThreads, combineMode);
   }
   
   @InterfaceAudience.Private
@@ -1620,156 +1693,104 @@ public DataEncryptionKey getDataEncryptionKey()
    * @param socketTimeout timeout to use when connecting and waiting for a response
    * @param encryptionKey the key needed to communicate with DNs in this cluster
    * @param connectToDnViaHostname {@link #connectToDnViaHostname()}
+   * @param numThreads the maximum number of blocks whose checksums are
+   *          requested in parallel
+   * @param combineMode how the CRCs of the chunks of the file are combined
    * @return The checksum 
    */
-  static MD5MD5CRC32FileChecksum getFileChecksum(String src,
-      String clientName,
-      ClientProtocol namenode, SocketFactory socketFactory, int socketTimeout,
-      DataEncryptionKey encryptionKey, boolean connectToDnViaHostname)
-      throws IOException {
+  static FileChecksum getFileChecksum(final String src,
+      final String clientName,
+      ClientProtocol namenode, final SocketFactory socketFactory,
+      final int socketTimeout, final DataEncryptionKey encryptionKey,
+      final boolean connectToDnViaHostname, int numThreads,
+      final ChecksumCombineMode combineMode) throws IOException {
     //get all block locations
     LocatedBlocks blockLocations = callGetBlockLocations(namenode, src, 0, Long.MAX_VALUE);
     if (null == blockLocations) {
       throw new FileNotFoundException("File does not exist: " + src);
     }
     List<LocatedBlock> locatedblocks = blockLocations.getLocatedBlocks();
-    final DataOutputBuffer md5out = new DataOutputBuffer();
-    int bytesPerCRC = -1;
-    DataChecksum.Type crcType = DataChecksum.Type.DEFAULT;
-    long crcPerBlock = 0;
-    boolean refetchBlocks = false;
-    int lastRetriedIndex = -1;
-
-    //get block checksum for each block
-    for(int i = 0; i < locatedblocks.size(); i++) {
-      if (refetchBlocks) {  // refetch to get fresh tokens
-        blockLocations = callGetBlockLocations(namenode, src, 0, Long.MAX_VALUE);
-        if (null == blockLocations) {
-          throw new FileNotFoundException("File does not exist: " + src);
-        }
-        locatedblocks = blockLocations.getLocatedBlocks();
-        refetchBlocks = false;
-      }
-      LocatedBlock lb = locatedblocks.get(i);
-      final ExtendedBlock block = lb.getBlock();
-      final DatanodeInfo[] datanodes = lb.getLocations();
-      
-      //try each datanode location of the block
-      final int timeout = 3000 * datanodes.length + socketTimeout;
-      boolean done = false;
-      for(int j = 0; !done && j < datanodes.length; j++) {
-        DataOutputStream out = null;
-        DataInputStream in = null;
-        
-        try {
-          //connect to a datanode
-          IOStreamPair pair = connectToDN(socketFactory, connectToDnViaHostname,
-              encryptionKey, datanodes[j], timeout);
-          out = new DataOutputStream(new BufferedOutputStream(pair.out,
-              HdfsConstants.SMALL_BUFFER_SIZE));
-          in = new DataInputStream(pair.in);
-
-          if (LOG.isDebugEnabled()) {
-            LOG.debug("write to " + datanodes[j] + ": "
-                + Op.BLOCK_CHECKSUM + ", block=" + block);
-          }
-          // get block MD5
-          new Sender(out).blockChecksum(block, lb.getBlockToken());
-
-          final BlockOpResponseProto reply =
-            BlockOpResponseProto.parseFrom(PBHelper.vintPrefixed(in));
-
-          if (reply.getStatus() != Status.SUCCESS) {
-            if (reply.getStatus() == Status.ERROR_ACCESS_TOKEN) {
-              throw new InvalidBlockTokenException();
-            } else {
-              throw new IOException("Bad response " + reply + " for block "
-                  + block + " from datanode " + datanodes[j]);
-            }
-          }
-          
-          OpBlockChecksumResponseProto checksumData =
-            reply.getChecksumResponse();
-
-          //read byte-per-checksum
-          final int bpc = checksumData.getBytesPerCrc();
-          if (i == 0) { //first block
-            bytesPerCRC = bpc;
-          }
-          else if (bpc != bytesPerCRC) {
-            throw new IOException("Byte-per-checksum not matched: bpc=" + bpc
-                + " but bytesPerCRC=" + bytesPerCRC);
-          }
-          
-          //read crc-per-block
-          final long cpb = checksumData.getCrcPerBlock();
-          if (locatedblocks.size() > 1 && i == 0) {
-            crcPerBlock = cpb;
-          }
-
-          //read md5
-          final MD5Hash md5 = new MD5Hash(
-              checksumData.getMd5().toByteArray());
-          md5.write(md5out);
-          
-          // read crc-type
-          final DataChecksum.Type ct;
-          if (checksumData.hasCrcType()) {
-            ct = PBHelper.convert(checksumData
-                .getCrcType());
-          } else {
-            LOG.debug("Retrieving checksum from an earlier-version DataNode: " +
-                      "inferring checksum by reading first byte");
-            ct = inferChecksumTypeByReading(
-                clientName, socketFactory, socketTimeout, lb, datanodes[j],
-                encryptionKey, connectToDnViaHostname);
-          }
-
-          if (i == 0) { // first block
-            crcType = ct;
-          } else if (crcType != DataChecksum.Type.MIXED
-              && crcType != ct) {
-            // if crc types are mixed in a file
-            crcType = DataChecksum.Type.MIXED;
+    final BlockChecksum[] checksums = new BlockChecksum[locatedblocks.size()];
+    List<Integer> indices = new ArrayList<Integer>(locatedblocks.size());
+    for (int i = 0; i < locatedblocks.size(); i++) {
+      indices.add(i);
+    }
+
+    //get block checksum for each block, in parallel
+    final ExecutorService executor = numThreads > 1 && indices.size() > 1 ?
+        Executors.newFixedThreadPool(Math.min(numThreads, indices.size()),
+            new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("getFileChecksum #%d").build())
+        : null;
+    try {
+      for (int retry = 0; !indices.isEmpty(); retry++) {
+        if (retry > 0) { // refetch to get fresh tokens
+          blockLocations = callGetBlockLocations(namenode, src, 0,
+              Long.MAX_VALUE);
+          if (null == blockLocations) {
+            throw new FileNotFoundException("File does not exist: " + src);
           }
-
-          done = true;
-
-          if (LOG.isDebugEnabled()) {
-            if (i == 0) {
-              LOG.debug("set bytesPerCRC=" + bytesPerCRC
-                  + ", crcPerBlock=" + crcPerBlock);
-            }
-            LOG.debug("got reply from " + datanodes[j] + ": md5=" + md5);
+          locatedblocks = blockLocations.getLocatedBlocks();
+          if (locatedblocks.size() < checksums.length) {
+            throw new IOException("The blocks of " + src + " changed while"
+                + " getting its checksum");
           }
-        } catch (InvalidBlockTokenException ibte) {
-          if (i > lastRetriedIndex) {
-            if (LOG.isDebugEnabled()) {
-              LOG.debug("Got access token error in response to OP_BLOCK_CHECKSUM "
-                  + "for file " + src + " for block " + block
-                  + " from datanode " + datanodes[j]
-                  + ". Will retry the block once.");
+        }
+        final boolean retryOnInvalidToken = retry == 0;
+        final List<Callable<BlockChecksum>> calls =
+            new ArrayList<Callable<BlockChecksum>>(indices.size());
+        for (final int i : indices) {
+          final LocatedBlock lb = locatedblocks.get(i);
+          calls.add(new Callable<BlockChecksum>() {
+            @Override
+            public BlockChecksum call() throws IOException {
+              return getBlockChecksum(src, lb, clientName, socketFactory,
+                  socketTimeout, encryptionKey, connectToDnViaHostname,
+                  combineMode, retryOnInvalidToken);
             }
-            lastRetriedIndex = i;
-            done = true; // actually it's not done; but we'll retry
-            i--; // repeat at i-th block
-            refetchBlocks = true;
-            break;
-          }
-        } catch (IOException ie) {
-          LOG.warn("src=" + src + ", datanodes["+j+"]=" + datanodes[j], ie);
-        } finally {
-          IOUtils.closeStream(in);
-          IOUtils.closeStream(out);
+          });
         }
+        indices = getBlockChecksums(indices, calls, executor, checksums);
       }
-
-      if (!done) {
-        throw new IOException("Fail to get block MD5 for " + block);
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
       }
     }
 
+    if (combineMode == ChecksumCombineMode.COMPOSITE_CRC) {
+      return composeFileCrc(checksums);
+    }
+
     //compute file MD5
+    final DataOutputBuffer md5out = new DataOutputBuffer();
+    int bytesPerCRC = -1;
+    DataChecksum.Type crcType = DataChecksum.Type.DEFAULT;
+    long crcPerBlock = 0;
+    for (int i = 0; i < checksums.length; i++) {
+      final BlockChecksum c = checksums[i];
+      if (i == 0) { //first block
+        bytesPerCRC = c.bytesPerCRC;
+        crcType = c.crcType;
+        if (checksums.length > 1) {
+          crcPerBlock = c.crcPerBlock;
+        }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("set bytesPerCRC=" + bytesPerCRC
+              + ", crcPerBlock=" + crcPerBlock);
+        }
+      } else {
+        if (c.bytesPerCRC != bytesPerCRC) {
+          throw new IOException("Byte-per-checksum not matched: bpc="
+              + c.bytesPerCRC + " but bytesPerCRC=" + bytesPerCRC);
+        }
+        if (crcType != DataChecksum.Type.MIXED && crcType != c.crcType) {
+          // if crc types are mixed in a file
+          crcType = DataChecksum.Type.MIXED;
+        }
+      }
+      c.md5.write(md5out);
+    }
     final MD5Hash fileMD5 = MD5Hash.digest(md5out.getData()); 
     switch (crcType) {
       case CRC32:
@@ -1792,6 +1813,212 @@ else if (bpc != bytesPerCRC) {
     }
   }
 
+  /**
+   * Compose the CRCs of the blocks of a file into the CRC of the file.
+   * Unlike the MD5 of the blocks, the blocks may have different bytes per
+   * checksum, but they must have the same CRC type.
+   */
+  private static CompositeCrcFileChecksum composeFileCrc(
+      BlockChecksum[] checksums) throws IOException {
+    if (checksums.length == 0) {
+      return new CompositeCrcFileChecksum(0, DataChecksum.Type.CRC32, 0);
+    }
+    final DataChecksum.Type crcType = checksums[0].crcType;
+    final int mod = CrcUtil.getCrcPolynomialForType(crcType);
+    int crc = 0;
+    for (BlockChecksum c : checksums) {
+      if (c.crcType != crcType) {
+        throw new IOException("Cannot compose the CRC of a file with mixed"
+            + " CRC types: " + crcType + " and " + c.crcType);
+      }
+      crc = CrcUtil.compose(crc, c.compositeCrc, c.numBytes, mod);
+    }
+    return new CompositeCrcFileChecksum(crc, crcType,
+        checksums[0].bytesPerCRC);
+  }
+
+  /** The checksum of a block, as returned by a datanode. */
+  private static class BlockChecksum {
+    final int bytesPerCRC;
+    final long crcPerBlock;
+    final MD5Hash md5;
+    final DataChecksum.Type crcType;
+    /** The composite CRC of the first numBytes of the block. */
+    final int compositeCrc;
+    final long numBytes;
+
+    BlockChecksum(int bytesPerCRC, long crcPerBlock, MD5Hash md5,
+        DataChecksum.Type crcType, int compositeCrc, long numBytes) {
+      this.bytesPerCRC = bytesPerCRC;
+      this.crcPerBlock = crcPerBlock;
+      this.md5 = md5;
+      this.crcType = crcType;
+      this.compositeCrc = compositeCrc;
+      this.numBytes = numBytes;
+    }
+  }
+
+  /**
+   * Run the calls getting the checksums of the blocks with the given
+   * indices, with the given executor or in the current thread if it is
+   * null, and store the checksums they return.
+   * @return the indices of the blocks whose token was invalid
+   */
+  private static List<Integer> getBlockChecksums(List<Integer> indices,
+      List<Callable<BlockChecksum>> calls, ExecutorService executor,
+      BlockChecksum[] checksums) throws IOException {
+    final List<Integer> invalidTokens = new ArrayList<Integer>();
+    if (executor == null) {
+      for (int k = 0; k < calls.size(); k++) {
+        try {
+          checksums[indices.get(k)] = calls.get(k).call();
+        } catch (InvalidBlockTokenException ibte) {
+          invalidTokens.add(indices.get(k));
+        } catch (IOException ioe) {
+          throw ioe;
+        } catch (Exception e) {
+          throw new IOException(e);
+        }
+      }
+      return invalidTokens;
+    }
+
+    final List<Future<BlockChecksum>> futures =
+        new ArrayList<Future<BlockChecksum>>(calls.size());
+    for (Callable<BlockChecksum> c : calls) {
+      futures.add(executor.submit(c));
+    }
+    try {
+      for (int k = 0; k < futures.size(); k++) {
+        try {
+          checksums[indices.get(k)] = futures.get(k).get();
+        } catch (ExecutionException e) {
+          final Throwable t = e.getCause();
+          if (t instanceof InvalidBlockTokenException) {
+            invalidTokens.add(indices.get(k));
+          } else if (t instanceof IOException) {
+            throw (IOException)t;
+          } else {
+            throw new IOException(t);
+          }
+        }
+      }
+    } catch (InterruptedException ie) {
+      throw new InterruptedIOException("Interrupted while getting the"
+          + " checksums of the blocks");
+    } finally {
+      for (Future<BlockChecksum> f : futures) {
+        f.cancel(true);
+      }
+    }
+    return invalidTokens;
+  }
+
+  /**
+   * Get the checksum of a block from one of its datanodes.
+   * @param combineMode how the CRCs of the chunks of the block are combined
+   * @param retryOnInvalidToken whether to throw
+   *          {@link InvalidBlockTokenException} so that the block is retried
+   *          with a fresh token, or to try the other datanodes
+   */
+  private static BlockChecksum getBlockChecksum(String src, LocatedBlock lb,
+      String clientName, SocketFactory socketFactory, int socketTimeout,
+      DataEncryptionKey encryptionKey, boolean connectToDnViaHostname,
+      ChecksumCombineMode combineMode, boolean retryOnInvalidToken)
+      throws IOException {
+    final ExtendedBlock block = lb.getBlock();
+    final DatanodeInfo[] datanodes = lb.getLocations();
+
+    //try each datanode location of the block
+    final int timeout = 3000 * datanodes.length + socketTimeout;
+    for(int j = 0; j < datanodes.length; j++) {
+      DataOutputStream out = null;
+      DataInputStream in = null;
+      
+      try {
+        //connect to a datanode
+        IOStreamPair pair = connectToDN(socketFactory, connectToDnViaHostname,
+            encryptionKey, datanodes[j], timeout);
+        out = new DataOutputStream(new BufferedOutputStream(pair.out,
+            HdfsConstants.SMALL_BUFFER_SIZE));
+        in = new DataInputStream(pair.in);
+
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("write to " + datanodes[j] + ": "
+              + Op.BLOCK_CHECKSUM + ", block=" + block);
+        }
+        // get block MD5, or composite CRC
+        new Sender(out).blockChecksum(block, lb.getBlockToken(), combineMode);
+
+        final BlockOpResponseProto reply =
+          BlockOpResponseProto.parseFrom(PBHelper.vintPrefixed(in));
+
+        if (reply.getStatus() != Status.SUCCESS) {
+          if (reply.getStatus() == Status.ERROR_ACCESS_TOKEN) {
+            throw new InvalidBlockTokenException();
+          } else {
+            throw new IOException("Bad response " + reply + " for block "
+                + block + " from datanode " + datanodes[j]);
+          }
+        }
+        
+        OpBlockChecksumResponseProto checksumData =
+          reply.getChecksumResponse();
+
+        //read md5, or composite crc
+        final MD5Hash md5;
+        if (combineMode == ChecksumCombineMode.COMPOSITE_CRC) {
+          if (!checksumData.hasCompositeCrc()) {
+            throw new IOException("Datanode " + datanodes[j]
+                + " does not support composite CRCs");
+          }
+          md5 = null;
+        } else {
+          md5 = new MD5Hash(checksumData.getMd5().toByteArray());
+        }
+        
+        // read crc-type
+        final DataChecksum.Type ct;
+        if (checksumData.hasCrcType()) {
+          ct = PBHelper.convert(checksumData
+              .getCrcType());
+        } else {
+          LOG.debug("Retrieving checksum from an earlier-version DataNode: " +
+                    "inferring checksum by reading first byte");
+          ct = inferChecksumTypeByReading(
+              clientName, socketFactory, socketTimeout, lb, datanodes[j],
+              encryptionKey, connectToDnViaHostname);
+        }
+
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("got reply from " + datanodes[j] + ": " + (md5 != null
+              ? "md5=" + md5
+              : "compositeCrc=" + Integer.toHexString(
+                  checksumData.getCompositeCrc())));
+        }
+        return new BlockChecksum(checksumData.getBytesPerCrc(),
+            checksumData.getCrcPerBlock(), md5, ct,
+            checksumData.getCompositeCrc(), block.getNumBytes());
+      } catch (InvalidBlockTokenException ibte) {
+        if (retryOnInvalidToken) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Got access token error in response to OP_BLOCK_CHECKSUM "
+                + "for file " + src + " for block " + block
+                + " from datanode " + datanodes[j]
+                + ". Will retry the block once.");
+          }
+          throw ibte;
+        }
+      } catch (IOException ie) {
+        LOG.warn("src=" + src + ", datanodes["+j+"]=" + datanodes[j], ie);
+      } finally {
+        IOUtils.closeStream(in);
+        IOUtils.closeStream(out);
+      }
+    }
+    throw new IOException("Fail to get block MD5 for " + block);
+  }
+
   /**
    * Connect to the given datanode's datantrasfer port, and return
    * the resulting IOStreamPair. This includes encryption wrapping, etc.
@@ -44,8 +44,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_CLIENT_RETRY_POLICY_SPEC_DEFAULT = "10000,6,60000,10"; //t1,n1,t2,n2,... 
   public static final String  DFS_CHECKSUM_TYPE_KEY = "dfs.checksum.type";
   public static final String  DFS_CHECKSUM_TYPE_DEFAULT = "CRC32C";
+  public static final String  DFS_CHECKSUM_COMBINE_MODE_KEY = "dfs.checksum.combine.mode";
+  public static final String  DFS_CHECKSUM_COMBINE_MODE_DEFAULT = "MD5MD5CRC";
   public static final String  DFS_CLIENT_WRITE_PACKET_SIZE_KEY = "dfs.client-write-packet-size";
   public static final int     DFS_CLIENT_WRITE_PACKET_SIZE_DEFAULT = 64*1024;
+  public static final String  DFS_CLIENT_WRITE_PACKET_POOL_SIZE_KEY = "dfs.client.write.packet.pool.size";
+  public static final long    DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT = 16*1024*1024;
   public static final String  DFS_CLIENT_WRITE_REPLACE_DATANODE_ON_FAILURE_ENABLE_KEY = "dfs.client.block.write.replace-datanode-on-failure.enable";
   public static final boolean DFS_CLIENT_WRITE_REPLACE_DATANODE_ON_FAILURE_ENABLE_DEFAULT = true;
   public static final String  DFS_CLIENT_WRITE_REPLACE_DATANODE_ON_FAILURE_POLICY_KEY = "dfs.client.block.write.replace-datanode-on-failure.policy";
@@ -60,6 +64,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CLIENT_FILE_BLOCK_STORAGE_LOCATIONS_NUM_THREADS_DEFAULT = 10;
   public static final String  DFS_CLIENT_FILE_BLOCK_STORAGE_LOCATIONS_TIMEOUT = "dfs.client.file-block-storage-locations.timeout";
   public static final int     DFS_CLIENT_FILE_BLOCK_STORAGE_LOCATIONS_TIMEOUT_DEFAULT = 60;
+  public static final String  DFS_CLIENT_BATCHED_LISTING_SIZE_KEY = "dfs.client.batched-listing.size";
+  public static final int     DFS_CLIENT_BATCHED_LISTING_SIZE_DEFAULT = 1000;
+  public static final String  DFS_CLIENT_FILE_CHECKSUM_NUM_THREADS_KEY = "dfs.client.file-checksum.num-threads";
+  public static final int     DFS_CLIENT_FILE_CHECKSUM_NUM_THREADS_DEFAULT = 10;
 
   // HA related configuration
   public static final String  DFS_CLIENT_FAILOVER_PROXY_PROVIDER_KEY_PREFIX = "dfs.client.failover.proxy.provider";
@@ -73,9 +81,17 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_CLIENT_FAILOVER_CONNECTION_RETRIES_DEFAULT = 0;
   public static final String  DFS_CLIENT_FAILOVER_CONNECTION_RETRIES_ON_SOCKET_TIMEOUTS_KEY = "dfs.client.failover.connection.retries.on.timeouts";
   public static final int     DFS_CLIENT_FAILOVER_CONNECTION_RETRIES_ON_SOCKET_TIMEOUTS_DEFAULT = 0;
+  public static final String  DFS_CLIENT_STANDBY_READS_ENABLED_KEY = "dfs.client.standby-reads.enabled";
+  public static final boolean DFS_CLIENT_STANDBY_READS_ENABLED_DEFAULT = false;
+  public static final String  DFS_CLIENT_STANDBY_READS_RECHECK_INTERVAL_KEY = "dfs.client.standby-reads.recheck-interval.ms";
+  public static final long    DFS_CLIENT_STANDBY_READS_RECHECK_INTERVAL_DEFAULT = 1000;
   
   public static final String  DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_KEY = "dfs.client.socketcache.expiryMsec";
   public static final long    DFS_CLIENT_SOCKET_CACHE_EXPIRY_MSEC_DEFAULT = 2 * 60 * 1000;
+  public static final String  DFS_CLIENT_SLOW_DATANODE_THRESHOLD_MS_KEY = "dfs.client.read.slow-datanode.threshold.ms";
+  public static final long    DFS_CLIENT_SLOW_DATANODE_THRESHOLD_MS_DEFAULT = 500;
+  public static final String  DFS_CLIENT_FAILED_DATANODE_EXPIRY_MS_KEY = "dfs.client.read.failed-datanode.expiry.ms";
+  public static final long    DFS_CLIENT_FAILED_DATANODE_EXPIRY_MS_DEFAULT = 60 * 1000;
   public static final String  DFS_CLIENT_WRITE_EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL = "dfs.client.write.exclude.nodes.cache.expiry.interval.millis";
   public static final long    DFS_CLIENT_WRITE_EXCLUDE_NODES_CACHE_EXPIRY_INTERVAL_DEFAULT = 10 * 60 * 1000; // 10 minutes, in ms
   public static final String  DFS_NAMENODE_BACKUP_ADDRESS_KEY = "dfs.namenode.backup.address";
@@ -85,6 +101,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_BACKUP_SERVICE_RPC_ADDRESS_KEY = "dfs.namenode.backup.dnrpc-address";
   public static final String  DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_KEY = "dfs.datanode.balance.bandwidthPerSec";
   public static final long    DFS_DATANODE_BALANCE_BANDWIDTHPERSEC_DEFAULT = 1024*1024;
+  public static final String  DFS_DATANODE_DISK_BALANCER_BANDWIDTHPERSEC_KEY = "dfs.datanode.disk.balancer.bandwidthPerSec";
+  public static final long    DFS_DATANODE_DISK_BALANCER_BANDWIDTHPERSEC_DEFAULT = 10*1024*1024;
+  public static final String  DFS_DATANODE_DISK_BALANCER_MAX_ERRORS_KEY = "dfs.datanode.disk.balancer.max.errors";
+  public static final int     DFS_DATANODE_DISK_BALANCER_MAX_ERRORS_DEFAULT = 5;
   public static final String  DFS_DATANODE_READAHEAD_BYTES_KEY = "dfs.datanode.readahead.bytes";
   public static final long    DFS_DATANODE_READAHEAD_BYTES_DEFAULT = 4 * 1024 * 1024; // 4MB
   public static final String  DFS_DATANODE_DROP_CACHE_BEHIND_WRITES_KEY = "dfs.datanode.drop.cache.behind.writes";
@@ -104,6 +124,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_NAMENODE_SERVICE_RPC_ADDRESS_KEY = "dfs.namenode.servicerpc-address";
   public static final String  DFS_NAMENODE_MAX_OBJECTS_KEY = "dfs.namenode.max.objects";
   public static final long    DFS_NAMENODE_MAX_OBJECTS_DEFAULT = 0;
+  public static final String  DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_KEY = "dfs.namenode.max-lock-hold-to-release-lease-ms";
+  public static final long    DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_DEFAULT = 25;
   public static final String  DFS_NAMENODE_SAFEMODE_EXTENSION_KEY = "dfs.namenode.safemode.extension";
   public static final int     DFS_NAMENODE_SAFEMODE_EXTENSION_DEFAULT = 30000;
   public static final String  DFS_NAMENODE_SAFEMODE_THRESHOLD_PCT_KEY = "dfs.namenode.safemode.threshold-pct";
@@ -149,8 +171,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_REPLICATION_MAX_STREAMS_DEFAULT = 2;
   public static final String  DFS_NAMENODE_REPLICATION_STREAMS_HARD_LIMIT_KEY = "dfs.namenode.replication.max-streams-hard-limit";
   public static final int     DFS_NAMENODE_REPLICATION_STREAMS_HARD_LIMIT_DEFAULT = 4;
+  public static final String  DFS_NAMENODE_REPLICATION_ADAPTIVE_KEY = "dfs.namenode.replication.adaptive";
+  public static final boolean DFS_NAMENODE_REPLICATION_ADAPTIVE_DEFAULT = false;
   public static final String  DFS_WEBHDFS_ENABLED_KEY = "dfs.webhdfs.enabled";
   public static final boolean DFS_WEBHDFS_ENABLED_DEFAULT = false;
+  public static final String  DFS_WEBHDFS_CLIENT_REDIRECT_CACHE_SIZE_KEY = "dfs.webhdfs.client.redirect-cache.size";
+  public static final int     DFS_WEBHDFS_CLIENT_REDIRECT_CACHE_SIZE_DEFAULT = 1000;
+  public static final String  DFS_WEBHDFS_CLIENT_READ_AHEAD_KEY = "dfs.webhdfs.client.read-ahead.bytes";
+  public static final int     DFS_WEBHDFS_CLIENT_READ_AHEAD_DEFAULT = 64 * 1024;
   public static final String  DFS_PERMISSIONS_ENABLED_KEY = "dfs.permissions.enabled";
   public static final boolean DFS_PERMISSIONS_ENABLED_DEFAULT = true;
   public static final String  DFS_PERSIST_BLOCKS_KEY = "dfs.persist.blocks";
@@ -184,10 +212,17 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final boolean DFS_DATANODE_SYNCONCLOSE_DEFAULT = false;
   public static final String  DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_KEY = "dfs.datanode.socket.reuse.keepalive";
   public static final int     DFS_DATANODE_SOCKET_REUSE_KEEPALIVE_DEFAULT = 1000;
+  public static final String  DFS_DATANODE_BLOCK_CHECKSUM_CACHE_SIZE_KEY = "dfs.datanode.block-checksum.cache.size";
+  public static final int     DFS_DATANODE_BLOCK_CHECKSUM_CACHE_SIZE_DEFAULT = 10000;
   
   // Whether to enable datanode's stale state detection and usage for reads
   public static final String DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_READ_KEY = "dfs.namenode.avoid.read.stale.datanode";
   public static final boolean DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_READ_DEFAULT = false;
+  // Whether to order the replicas of a block for reading by load as well as distance
+  public static final String DFS_NAMENODE_READ_CONSIDERLOAD_KEY = "dfs.namenode.read.considerLoad";
+  public static final boolean DFS_NAMENODE_READ_CONSIDERLOAD_DEFAULT = false;
+  public static final String DFS_NAMENODE_READ_LOAD_PER_LEVEL_KEY = "dfs.namenode.read.load-per-level";
+  public static final int DFS_NAMENODE_READ_LOAD_PER_LEVEL_DEFAULT = 8;
   // Whether to enable datanode's stale state detection and usage for writes
   public static final String DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_KEY = "dfs.namenode.avoid.write.stale.datanode";
   public static final boolean DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_DEFAULT = false;
@@ -255,6 +290,16 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_CLIENT_LOCAL_INTERFACES = "dfs.client.local.interfaces";
   public static final String  DFS_NAMENODE_AUDIT_LOGGERS_KEY = "dfs.namenode.audit.loggers";
   public static final String  DFS_NAMENODE_DEFAULT_AUDIT_LOGGER_NAME = "default";
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY = "dfs.namenode.audit.log.async";
+  public static final boolean DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT = false;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY = "dfs.namenode.audit.log.async.queue.size";
+  public static final int     DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_DEFAULT = 65536;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_KEY = "dfs.namenode.audit.log.async.batch.size";
+  public static final int     DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_DEFAULT = 1024;
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_KEY = "dfs.namenode.audit.log.async.overflow.policy";
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_DEFAULT = "BLOCK";
+  public static final String  DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCK_TIMEOUT_MS_KEY = "dfs.namenode.audit.log.async.block.timeout.ms";
+  public static final long    DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCK_TIMEOUT_MS_DEFAULT = 1000;
 
   // Much code in hdfs is not yet updated to use these keys.
   public static final String  DFS_CLIENT_BLOCK_WRITE_LOCATEFOLLOWINGBLOCK_RETRIES_KEY = "dfs.client.block.write.locateFollowingBlock.retries";
@@ -287,10 +332,23 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_HTTP_ADDRESS_KEY = "dfs.datanode.http.address";
   public static final int     DFS_DATANODE_HTTP_DEFAULT_PORT = 50075;
   public static final String  DFS_DATANODE_HTTP_ADDRESS_DEFAULT = "0.0.0.0:" + DFS_DATANODE_HTTP_DEFAULT_PORT;
+  public static final String  DFS_DATANODE_WEBHDFS_NETTY_ENABLED_KEY = "dfs.datanode.webhdfs.netty.enabled";
+  public static final boolean DFS_DATANODE_WEBHDFS_NETTY_ENABLED_DEFAULT = false;
+  public static final String  DFS_DATANODE_WEBHDFS_NETTY_THREADS_KEY = "dfs.datanode.webhdfs.netty.threads";
+  public static final int     DFS_DATANODE_WEBHDFS_NETTY_THREADS_DEFAULT = 32;
+  public static final String  DFS_DATANODE_WEBHDFS_NETTY_MAX_CHANNEL_MEMORY_KEY = "dfs.datanode.webhdfs.netty.max-channel-memory";
+  public static final long    DFS_DATANODE_WEBHDFS_NETTY_MAX_CHANNEL_MEMORY_DEFAULT = 1024 * 1024;
+  public static final String  DFS_DATANODE_WEBHDFS_NETTY_TRANSFERTO_KEY = "dfs.datanode.webhdfs.netty.transferTo.allowed";
+  public static final boolean DFS_DATANODE_WEBHDFS_NETTY_TRANSFERTO_DEFAULT = false;
   public static final String  DFS_DATANODE_MAX_RECEIVER_THREADS_KEY = "dfs.datanode.max.transfer.threads";
   public static final int     DFS_DATANODE_MAX_RECEIVER_THREADS_DEFAULT = 4096;
   public static final String  DFS_DATANODE_NUMBLOCKS_KEY = "dfs.datanode.numblocks";
   public static final int     DFS_DATANODE_NUMBLOCKS_DEFAULT = 64;
+  public static final String  DFS_DATANODE_SPACE_USED_CLASS_KEY = "dfs.datanode.space-used.class";
+  public static final String  DFS_DATANODE_SPACE_USED_REFRESH_INTERVAL_KEY = "dfs.datanode.space-used.refresh.interval.ms";
+  public static final long    DFS_DATANODE_SPACE_USED_REFRESH_INTERVAL_DEFAULT = 24 * 60 * 60 * 1000L;
+  public static final String  DFS_DATANODE_CACHED_DFSUSED_CHECK_INTERVAL_KEY = "dfs.datanode.cached-dfsused.check.interval.ms";
+  public static final long    DFS_DATANODE_CACHED_DFSUSED_CHECK_INTERVAL_DEFAULT = 600000;
   public static final String  DFS_DATANODE_SCAN_PERIOD_HOURS_KEY = "dfs.datanode.scan.period.hours";
   public static final int     DFS_DATANODE_SCAN_PERIOD_HOURS_DEFAULT = 0;
   public static final String  DFS_DATANODE_TRANSFERTO_ALLOWED_KEY = "dfs.datanode.transferTo.allowed";
@@ -301,6 +359,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int     DFS_NAMENODE_DECOMMISSION_INTERVAL_DEFAULT = 30;
   public static final String  DFS_NAMENODE_DECOMMISSION_NODES_PER_INTERVAL_KEY = "dfs.namenode.decommission.nodes.per.interval";
   public static final int     DFS_NAMENODE_DECOMMISSION_NODES_PER_INTERVAL_DEFAULT = 5;
+  public static final String  DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_KEY = "dfs.namenode.decommission.blocks.per.lock";
+  public static final int     DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_DEFAULT = 1000;
   public static final String  DFS_NAMENODE_HANDLER_COUNT_KEY = "dfs.namenode.handler.count";
   public static final int     DFS_NAMENODE_HANDLER_COUNT_DEFAULT = 10;
   public static final String  DFS_NAMENODE_SERVICE_HANDLER_COUNT_KEY = "dfs.namenode.service.handler.count";
@@ -328,6 +388,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long    DFS_BLOCK_ACCESS_KEY_UPDATE_INTERVAL_DEFAULT = 600L;
   public static final String  DFS_BLOCK_ACCESS_TOKEN_LIFETIME_KEY = "dfs.block.access.token.lifetime";
   public static final long    DFS_BLOCK_ACCESS_TOKEN_LIFETIME_DEFAULT = 600L;
+  public static final String  DFS_BLOCK_ACCESS_TOKEN_CACHE_SIZE_KEY = "dfs.block.access.token.cache.size";
+  public static final int     DFS_BLOCK_ACCESS_TOKEN_CACHE_SIZE_DEFAULT = 10000;
 
   public static final String  DFS_REPLICATION_MAX_KEY = "dfs.replication.max";
   public static final int     DFS_REPLICATION_MAX_DEFAULT = 512;
@@ -369,6 +431,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_DATANODE_PLUGINS_KEY = "dfs.datanode.plugins";
   public static final String  DFS_DATANODE_FSDATASET_FACTORY_KEY = "dfs.datanode.fsdataset.factory";
   public static final String  DFS_DATANODE_FSDATASET_VOLUME_CHOOSING_POLICY_KEY = "dfs.datanode.fsdataset.volume.choosing.policy";
+  public static final String  DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_KEY = "dfs.datanode.available-space-volume-choosing-policy.balanced-space-threshold";
+  public static final long    DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_DEFAULT = 1024L * 1024L * 1024L * 10L; // 10 GB
+  public static final String  DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY = "dfs.datanode.available-space-volume-choosing-policy.balanced-space-preference-fraction";
+  public static final float   DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_DEFAULT = 0.75f;
   public static final String  DFS_DATANODE_SOCKET_WRITE_TIMEOUT_KEY = "dfs.datanode.socket.write.timeout";
   public static final String  DFS_DATANODE_STARTUP_KEY = "dfs.datanode.startup";
   public static final String  DFS_NAMENODE_PLUGINS_KEY = "dfs.namenode.plugins";
@@ -384,6 +450,12 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_SECONDARY_NAMENODE_INTERNAL_SPNEGO_USER_NAME_KEY = "dfs.secondary.namenode.kerberos.internal.spnego.principal";
   public static final String  DFS_NAMENODE_NAME_CACHE_THRESHOLD_KEY = "dfs.namenode.name.cache.threshold";
   public static final int     DFS_NAMENODE_NAME_CACHE_THRESHOLD_DEFAULT = 10;
+  public static final String  DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_KEY = "dfs.namenode.content-summary.cache.enabled";
+  public static final boolean DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_DEFAULT = true;
+  public static final String  DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_INTERVAL_KEY = "dfs.namenode.content-summary.verify.interval";
+  public static final long    DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_INTERVAL_DEFAULT = 60 * 60 * 1000; // 1 hour
+  public static final String  DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_BATCH_SIZE_KEY = "dfs.namenode.content-summary.verify.batch-size";
+  public static final int     DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_BATCH_SIZE_DEFAULT = 10000;
   
   public static final String  DFS_NAMESERVICES = "dfs.nameservices";
   public static final String  DFS_NAMESERVICE_ID = "dfs.nameservice.id";
@@ -410,6 +482,14 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_HA_LOGROLL_PERIOD_DEFAULT = 2 * 60; // 2m
   public static final String DFS_HA_TAILEDITS_PERIOD_KEY = "dfs.ha.tail-edits.period";
   public static final int DFS_HA_TAILEDITS_PERIOD_DEFAULT = 60; // 1m
+  public static final String DFS_HA_TAILEDITS_INPROGRESS_KEY = "dfs.ha.tail-edits.in-progress";
+  public static final boolean DFS_HA_TAILEDITS_INPROGRESS_DEFAULT = false;
+  public static final String DFS_HA_TAILEDITS_INPROGRESS_PERIOD_KEY = "dfs.ha.tail-edits.in-progress.period.ms";
+  public static final long DFS_HA_TAILEDITS_INPROGRESS_PERIOD_DEFAULT = 100;
+  public static final String DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY = "dfs.ha.tail-edits.qjm.rpc.max-txns";
+  public static final int DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT = 5000;
+  public static final String DFS_HA_STANDBY_READS_MAX_WAIT_KEY = "dfs.ha.standby-reads.max-wait.ms";
+  public static final long DFS_HA_STANDBY_READS_MAX_WAIT_DEFAULT = 100;
   public static final String DFS_HA_FENCE_METHODS_KEY = "dfs.ha.fencing.methods";
   public static final String DFS_HA_AUTO_FAILOVER_ENABLED_KEY = "dfs.ha.automatic-failover.enabled";
   public static final boolean DFS_HA_AUTO_FAILOVER_ENABLED_DEFAULT = false;
@@ -420,6 +500,7 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_ENCRYPT_DATA_TRANSFER_KEY = "dfs.encrypt.data.transfer";
   public static final boolean DFS_ENCRYPT_DATA_TRANSFER_DEFAULT = false;
   public static final String DFS_DATA_ENCRYPTION_ALGORITHM_KEY = "dfs.encrypt.data.transfer.algorithm";
+  public static final String DFS_ENCRYPT_DATA_TRANSFER_CIPHER_SUITES_KEY = "dfs.encrypt.data.transfer.cipher.suites";
   
   // Journal-node related configs. These are read on the JN side.
   public static final String  DFS_JOURNALNODE_EDITS_DIR_KEY = "dfs.journalnode.edits.dir";
@@ -435,6 +516,8 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String  DFS_JOURNALNODE_KEYTAB_FILE_KEY = "dfs.journalnode.keytab.file";
   public static final String  DFS_JOURNALNODE_USER_NAME_KEY = "dfs.journalnode.kerberos.principal";
   public static final String  DFS_JOURNALNODE_INTERNAL_SPNEGO_USER_NAME_KEY = "dfs.journalnode.kerberos.internal.spnego.principal";
+  public static final String  DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY = "dfs.journalnode.edit-cache-size.bytes";
+  public static final long    DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT = 1024 * 1024;
 
   // Journal-node related configs for the client side.
   public static final String  DFS_QJOURNAL_QUEUE_SIZE_LIMIT_KEY = "dfs.qjournal.queued-edits.limit.mb";
@@ -53,6 +53,7 @@
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.AccessControlException;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.Time;
 
 /****************************************************************
  * DFSInputStream provides bytes from a named file.  It handles 
@@ -102,6 +103,7 @@ public class DFSInputStream extends FSInputStream implements ByteBufferReadable
 
   void addToDeadNodes(DatanodeInfo dnInfo) {
     deadNodes.put(dnInfo, dnInfo);
+    socketCache.addPeerError(dnInfo);
   }
   
   DFSInputStream(DFSClient dfsClient, String src, int buffersize, boolean verifyChecksum
@@ -886,12 +888,16 @@ protected BlockReader getBlockReader(InetSocketAddress dnAddr,
                                        String clientName)
       throws IOException {
     
+    final long startTime = Time.monotonicNow();
     // Can't local read a block under construction, see HDFS-2757
     if (dfsClient.shouldTryShortCircuitRead(dnAddr) &&
         !blockUnderConstruction()) {
-      return DFSClient.getLocalBlockReader(dfsClient.ugi, dfsClient.conf,
-          src, block, blockToken, chosenNode, dfsClient.hdfsTimeout,
-          startOffset, dfsClient.connectToDnViaHostname());
+      BlockReader reader = DFSClient.getLocalBlockReader(dfsClient.ugi,
+          dfsClient.conf, src, block, blockToken, chosenNode,
+          dfsClient.hdfsTimeout, startOffset,
+          dfsClient.connectToDnViaHostname());
+      socketCache.addPeerLatency(chosenNode, Time.monotonicNow() - startTime);
+      return reader;
     }
     
     IOException err = null;
@@ -947,6 +953,7 @@ protected BlockReader getBlockReader(InetSocketAddress dnAddr,
                                        clientName,
                                        dfsClient.getDataEncryptionKey(),
                                        sockAndStreams == null ? null : sockAndStreams.ioStreams);
+        socketCache.addPeerLatency(chosenNode, Time.monotonicNow() - startTime);
         return reader;
       } catch (IOException ex) {
         // Our socket is no good.
@@ -1187,18 +1194,35 @@ public void reset() throws IOException {
 
   /**
    * Pick the best node from which to stream the data.
-   * Entries in <i>nodes</i> are already in the priority order
+   * Entries in <i>nodes</i> are already in the priority order.
+   * The live nodes which the client found to be slow or failing are only
+   * picked if no other live node holds the block.
    */
-  static DatanodeInfo bestNode(DatanodeInfo nodes[], 
-                               AbstractMap<DatanodeInfo, DatanodeInfo> deadNodes)
-                               throws IOException {
+  private DatanodeInfo bestNode(DatanodeInfo nodes[], 
+                                AbstractMap<DatanodeInfo, DatanodeInfo> deadNodes)
+                                throws IOException {
+    DatanodeInfo firstLive = null;
     if (nodes != null) { 
       for (int i = 0; i < nodes.length; i++) {
         if (!deadNodes.containsKey(nodes[i])) {
-          return nodes[i];
+          if (!socketCache.isSlowOrFailingPeer(nodes[i],
+              dfsClient.getConf().slowDatanodeThreshold,
+              dfsClient.getConf().failedDatanodeExpiry)) {
+            return nodes[i];
+          }
+          if (firstLive == null) {
+            firstLive = nodes[i];
+          }
         }
       }
     }
+    if (firstLive != null) {
+      if (DFSClient.LOG.isDebugEnabled()) {
+        DFSClient.LOG.debug("All live nodes are slow or failing, using "
+            + firstLive + ": " + socketCache.getPeerStats(firstLive));
+      }
+      return firstLive;
+    }
     throw new IOException("No live nodes contain current block");
   }
 
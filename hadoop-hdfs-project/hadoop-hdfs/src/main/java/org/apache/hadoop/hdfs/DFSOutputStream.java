@@ -179,25 +179,27 @@ private static class Packet {
      * Create a heartbeat packet.
      */
     Packet(int checksumSize) {
-      this(0, 0, 0, HEART_BEAT_SEQNO, checksumSize);
+      this(new byte[PacketHeader.PKT_MAX_HEADER_LEN], 0, 0, HEART_BEAT_SEQNO,
+          checksumSize);
     }
     
     /**
      * Create a new packet.
      * 
-     * @param pktSize maximum size of the packet, 
-     *                including checksum data and actual data.
+     * @param buf the buffer of the packet, of PKT_MAX_HEADER_LEN bytes
+     *            plus the maximum size of the packet,
+     *            including checksum data and actual data.
      * @param chunksPerPkt maximum number of chunks per packet.
      * @param offsetInBlock offset in bytes into the HDFS block.
      */
-    Packet(int pktSize, int chunksPerPkt, long offsetInBlock, 
+    Packet(byte[] buf, int chunksPerPkt, long offsetInBlock,
                               long seqno, int checksumSize) {
       this.lastPacketInBlock = false;
       this.numChunks = 0;
       this.offsetInBlock = offsetInBlock;
       this.seqno = seqno;
       
-      buf = new byte[PacketHeader.PKT_MAX_HEADER_LEN + pktSize];
+      this.buf = buf;
       
       checksumStart = PacketHeader.PKT_MAX_HEADER_LEN;
       checksumPos = checksumStart;
@@ -731,6 +733,8 @@ public void run() {
               ackQueue.removeFirst();
               dataQueue.notifyAll();
             }
+            // the packet is not resent anymore
+            releaseBuffer(one);
           } catch (Exception e) {
             if (!responderClosed) {
               if (e instanceof IOException) {
@@ -793,6 +797,7 @@ private boolean processDatanodeError() throws IOException {
             assert lastAckedSeqno == endOfBlockPacket.seqno - 1;
             lastAckedSeqno = endOfBlockPacket.seqno;
             dataQueue.notifyAll();
+            releaseBuffer(endOfBlockPacket);
           }
           endBlock();
         } else {
@@ -1392,6 +1397,26 @@ private void computePacketChunkSize(int psize, int csize) {
     }
   }
 
+  /**
+   * Create a packet with a buffer from the packet buffer pool of the client.
+   */
+  private Packet createPacket(int pktSize, int chunksPerPkt,
+      long offsetInBlock, long seqno) {
+    final byte[] buf = dfsClient.packetBufferPool.getArray(
+        PacketHeader.PKT_MAX_HEADER_LEN + pktSize);
+    return new Packet(buf, chunksPerPkt, offsetInBlock, seqno,
+        checksum.getChecksumSize());
+  }
+
+  /**
+   * Return the buffer of a packet which will not be sent anymore to the
+   * packet buffer pool of the client.
+   */
+  private void releaseBuffer(Packet packet) {
+    dfsClient.packetBufferPool.returnArray(packet.buf);
+    packet.buf = null;
+  }
+
   private void queueCurrentPacket() {
     synchronized (dataQueue) {
       if (currentPacket == null) return;
@@ -1449,8 +1474,8 @@ protected synchronized void writeChunk(byte[] b, int offset, int len, byte[] che
     }
 
     if (currentPacket == null) {
-      currentPacket = new Packet(packetSize, chunksPerPacket, 
-          bytesCurBlock, currentSeqno++, this.checksum.getChecksumSize());
+      currentPacket = createPacket(packetSize, chunksPerPacket,
+          bytesCurBlock, currentSeqno++);
       if (DFSClient.LOG.isDebugEnabled()) {
         DFSClient.LOG.debug("DFSClient writeChunk allocating new packet seqno=" + 
             currentPacket.seqno +
@@ -1497,8 +1522,8 @@ protected synchronized void writeChunk(byte[] b, int offset, int len, byte[] che
       // indicate the end of block and reset bytesCurBlock.
       //
       if (bytesCurBlock == blockSize) {
-        currentPacket = new Packet(0, 0, bytesCurBlock, 
-            currentSeqno++, this.checksum.getChecksumSize());
+        currentPacket = createPacket(0, 0, bytesCurBlock,
+            currentSeqno++);
         currentPacket.lastPacketInBlock = true;
         currentPacket.syncBlock = shouldSyncBlock;
         waitAndQueueCurrentPacket();
@@ -1592,8 +1617,8 @@ private void flushOrSync(boolean isSync, EnumSet<SyncFlag> syncFlags)
             // Nothing to send right now,
             // but sync was requested.
             // Send an empty packet
-            currentPacket = new Packet(packetSize, chunksPerPacket,
-                bytesCurBlock, currentSeqno++, this.checksum.getChecksumSize());
+            currentPacket = createPacket(packetSize, chunksPerPacket,
+                bytesCurBlock, currentSeqno++);
           }
         } else {
           // We already flushed up to this offset.
@@ -1609,8 +1634,8 @@ private void flushOrSync(boolean isSync, EnumSet<SyncFlag> syncFlags)
             // and the block was partially written,
             // and sync was requested.
             // So send an empty sync packet.
-            currentPacket = new Packet(packetSize, chunksPerPacket,
-                bytesCurBlock, currentSeqno++, this.checksum.getChecksumSize());
+            currentPacket = createPacket(packetSize, chunksPerPacket,
+                bytesCurBlock, currentSeqno++);
           } else {
             // just discard the current packet since it is already been sent.
             currentPacket = null;
@@ -1802,8 +1827,8 @@ public synchronized void close() throws IOException {
 
       if (bytesCurBlock != 0) {
         // send an empty packet to mark the end of the block
-        currentPacket = new Packet(0, 0, bytesCurBlock, 
-            currentSeqno++, this.checksum.getChecksumSize());
+        currentPacket = createPacket(0, 0, bytesCurBlock,
+            currentSeqno++);
         currentPacket.lastPacketInBlock = true;
         currentPacket.syncBlock = shouldSyncBlock;
       }
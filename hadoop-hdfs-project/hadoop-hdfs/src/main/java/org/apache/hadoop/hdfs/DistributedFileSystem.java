@@ -23,18 +23,22 @@
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.LinkedList;
 import java.util.List;
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.CompositeCrcFileChecksum;
 import org.apache.hadoop.fs.ContentSummary;
 import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.BlockStorageLocation;
 import org.apache.hadoop.fs.VolumeId;
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FsServerDefaults;
@@ -42,6 +46,7 @@
 import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.MD5MD5CRC32FileChecksum;
 import org.apache.hadoop.fs.Options;
+import org.apache.hadoop.fs.Options.ChecksumCombineMode;
 import org.apache.hadoop.fs.Options.ChecksumOpt;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
@@ -509,6 +514,75 @@ public LocatedFileStatus next() throws IOException {
       }
     };
   }
+
+  /**
+   * List the given paths with batched listing calls to the namenode, so
+   * that many small directories cost one round trip per batch instead of
+   * one per directory. Statuses of files carry their block locations.
+   */
+  @Override
+  public RemoteIterator<LocatedFileStatus> listLocatedStatus(
+      final Path[] paths, final PathFilter filter) throws IOException {
+    final String[] srcs = new String[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      srcs[i] = getPathName(paths[i]);
+    }
+    return new RemoteIterator<LocatedFileStatus>() {
+      /** index of the first path that has not been listed yet */
+      private int nextPath = 0;
+      private final LinkedList<LocatedFileStatus> batch =
+          new LinkedList<LocatedFileStatus>();
+
+      @Override
+      public boolean hasNext() throws IOException {
+        while (batch.isEmpty() && nextPath < srcs.length) {
+          fetchNextBatch();
+        }
+        return !batch.isEmpty();
+      }
+
+      private void fetchNextBatch() throws IOException {
+        int end = Math.min(srcs.length,
+            nextPath + dfs.getConf().batchedListingSize);
+        DirectoryListing[] listings = dfs.listPaths(
+            Arrays.copyOfRange(srcs, nextPath, end), true);
+        statistics.incrementReadOps(1);
+        for (DirectoryListing thisListing : listings) {
+          Path p = paths[nextPath];
+          String src = srcs[nextPath];
+          nextPath++;
+          while (true) {
+            if (thisListing == null) { // the directory does not exist
+              throw new FileNotFoundException(
+                  "File " + p + " does not exist.");
+            }
+            for (HdfsFileStatus stat : thisListing.getPartialListing()) {
+              LocatedFileStatus next =
+                  makeQualifiedLocated((HdfsLocatedFileStatus)stat, p);
+              if (filter.accept(next.getPath())) {
+                batch.add(next);
+              }
+            }
+            if (!thisListing.hasMore()) {
+              break;
+            }
+            // a large directory: fetch the rest of it on its own
+            thisListing = dfs.listPaths(src, thisListing.getLastName(), true);
+            statistics.incrementReadOps(1);
+          }
+        }
+      }
+
+      @Override
+      public LocatedFileStatus next() throws IOException {
+        if (hasNext()) {
+          return batch.removeFirst();
+        }
+        throw new java.util.NoSuchElementException("No more entry in " +
+            Arrays.toString(paths));
+      }
+    };
+  }
   
   /**
    * Create a directory, only when the parent directories exist.
@@ -780,6 +854,20 @@ public MD5MD5CRC32FileChecksum getFileChecksum(Path f) throws IOException {
     return dfs.getFileChecksum(getPathName(f));
   }
 
+  /**
+   * {@inheritDoc}
+   * 
+   * The checksum is an {@link MD5MD5CRC32FileChecksum}, or a
+   * {@link CompositeCrcFileChecksum} for
+   * {@link ChecksumCombineMode#COMPOSITE_CRC}.
+   */
+  @Override
+  public FileChecksum getFileChecksum(Path f, ChecksumCombineMode combineMode)
+      throws IOException {
+    statistics.incrementReadOps(1);
+    return dfs.getFileChecksum(getPathName(f), combineMode);
+  }
+
   @Override
   public void setPermission(Path p, FsPermission permission
       ) throws IOException {
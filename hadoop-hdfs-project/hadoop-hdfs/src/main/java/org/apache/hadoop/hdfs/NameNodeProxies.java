@@ -21,6 +21,7 @@
 
 import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Proxy;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.HashMap;
@@ -48,6 +49,8 @@
 import org.apache.hadoop.hdfs.protocolPB.RefreshUserMappingsProtocolPB;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.SafeModeException;
+import org.apache.hadoop.hdfs.server.namenode.ha.ConfiguredFailoverProxyProvider;
+import org.apache.hadoop.hdfs.server.namenode.ha.StandbyReadInvocationHandler;
 import org.apache.hadoop.hdfs.server.protocol.JournalProtocol;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
@@ -138,6 +141,17 @@ public static <T> ProxyAndInfo<T> createProxy(Configuration conf,
           .failoverOnNetworkException(RetryPolicies.TRY_ONCE_THEN_FAIL,
               config.maxFailoverAttempts, config.failoverSleepBaseMillis,
               config.failoverSleepMaxMillis));
+      if (xface == ClientProtocol.class &&
+          failoverProxyProvider instanceof ConfiguredFailoverProxyProvider &&
+          conf.getBoolean(DFSConfigKeys.DFS_CLIENT_STANDBY_READS_ENABLED_KEY,
+              DFSConfigKeys.DFS_CLIENT_STANDBY_READS_ENABLED_DEFAULT)) {
+        // send reads to the standbys, everything else to the active NN
+        proxy = (T) Proxy.newProxyInstance(xface.getClassLoader(),
+            new Class<?>[] { xface }, new StandbyReadInvocationHandler(
+                (ClientProtocol) proxy,
+                (ConfiguredFailoverProxyProvider<ClientProtocol>)
+                    failoverProxyProvider, conf));
+      }
       
       Text dtService = HAUtil.buildTokenServiceForLogicalUri(nameNodeUri);
       return new ProxyAndInfo<T>(proxy, dtService);
@@ -22,26 +22,41 @@
 import java.net.Socket;
 import java.net.SocketAddress;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import java.io.IOException;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
-import com.google.common.collect.LinkedListMultimap;
 import org.apache.commons.logging.Log;
-import org.apache.hadoop.HadoopIllegalArgumentException;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.datatransfer.IOStreamPair;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.util.Daemon;
-import org.apache.hadoop.util.StringUtils;
 import org.apache.hadoop.util.Time;
 
 /**
  * A cache of input stream sockets to Data Node.
+ * <p>
+ * The sockets are pooled per remote address. Each pool has its own lock,
+ * so that streams reading from different datanodes do not contend on the
+ * cache. A socket, along with the encrypted streams wrapping it if any, is
+ * given back to the pool of its datanode once a block reader is done with
+ * it. When the cache is full, the socket which was cached first among all
+ * the pools is evicted; sockets idle for longer than the expiry period are
+ * closed by a daemon which sweeps every pool twice per expiry period.
+ * <p>
+ * The cache also keeps the {@link PeerStats} of the datanodes, so that the
+ * clients of this process can avoid the datanodes which were found to be
+ * slow or failing.
  */
 class SocketCache {
   private static final Log LOG = LogFactory.getLog(SocketCache.class);
@@ -51,6 +66,8 @@ static class SocketAndStreams implements Closeable {
     public final Socket sock;
     public final IOStreamPair ioStreams;
     long createTime;
+    /** The order in which the sockets were cached, to evict the oldest. */
+    long sequence;
     
     public SocketAndStreams(Socket s, IOStreamPair ioStreams) {
       this.sock = s;
@@ -72,10 +89,107 @@ public long getCreateTime() {
     }
   }
 
-  private Daemon daemon;
-  /** A map for per user per datanode. */
-  private static LinkedListMultimap<SocketAddress, SocketAndStreams> multimap =
-    LinkedListMultimap.create();
+  /**
+   * The latency and the errors of the block reads from a datanode.
+   */
+  @InterfaceAudience.Private
+  static class PeerStats {
+    /** The weight of a new sample in the average latency. */
+    static final double LATENCY_ALPHA = 0.25;
+    /** The number of samples needed before a datanode is found slow. */
+    static final int MIN_LATENCY_SAMPLES = 3;
+
+    private final AtomicLong operations = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private double averageLatency = -1;
+    private int latencySamples = 0;
+    private long lastLatencyTime = 0;
+    private int consecutiveErrors = 0;
+    private long lastErrorTime = 0;
+
+    synchronized void addLatency(long latency) {
+      operations.incrementAndGet();
+      averageLatency = averageLatency < 0 ? latency
+          : LATENCY_ALPHA * latency + (1 - LATENCY_ALPHA) * averageLatency;
+      latencySamples++;
+      lastLatencyTime = Time.monotonicNow();
+      consecutiveErrors = 0;
+    }
+
+    synchronized void addError() {
+      operations.incrementAndGet();
+      errors.incrementAndGet();
+      consecutiveErrors++;
+      lastErrorTime = Time.monotonicNow();
+    }
+
+    /** @return the number of block readers created or failed */
+    public long getOperations() {
+      return operations.get();
+    }
+
+    /** @return the number of failed reads */
+    public long getErrors() {
+      return errors.get();
+    }
+
+    /**
+     * @return the moving average of the time to set up a block reader in
+     *         milliseconds, or -1 if no block reader was created yet
+     */
+    public synchronized double getAverageLatency() {
+      return averageLatency;
+    }
+
+    /** @return the number of errors since the last successful read */
+    public synchronized int getConsecutiveErrors() {
+      return consecutiveErrors;
+    }
+
+    /**
+     * A datanode found slow is not read from, so its average latency is
+     * dropped once it has not been updated for expiry milliseconds, and
+     * the next reads measure it again.
+     *
+     * @return whether the last read failed less than expiry milliseconds
+     *         ago, or the average latency of at least
+     *         {@link #MIN_LATENCY_SAMPLES} reads, the last one less than
+     *         expiry milliseconds ago, is above slowThreshold milliseconds
+     */
+    synchronized boolean isSlowOrFailing(long slowThreshold, long expiry) {
+      final long now = Time.monotonicNow();
+      if (consecutiveErrors > 0 && now - lastErrorTime < expiry) {
+        return true;
+      }
+      if (slowThreshold <= 0 || latencySamples < MIN_LATENCY_SAMPLES
+          || averageLatency <= slowThreshold) {
+        return false;
+      }
+      if (now - lastLatencyTime >= expiry) {
+        averageLatency = -1;
+        latencySamples = 0;
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+      return "operations=" + operations + ", errors=" + errors
+          + ", averageLatency=" + averageLatency
+          + ", consecutiveErrors=" + consecutiveErrors;
+    }
+  }
+
+  private volatile Daemon daemon;
+  /** The sockets per datanode, the first one being the oldest. */
+  private static final ConcurrentMap<SocketAddress, LinkedList<SocketAndStreams>>
+      pools = new ConcurrentHashMap<SocketAddress, LinkedList<SocketAndStreams>>();
+  private static final AtomicInteger size = new AtomicInteger();
+  private static final AtomicLong sequence = new AtomicLong();
+  /** The stats of the datanodes, by transfer address. */
+  private static final ConcurrentMap<String, PeerStats> peerStats =
+      new ConcurrentHashMap<String, PeerStats>();
   private static int capacity;
   private static long expiryPeriod;
   private static SocketCache scInstance = new SocketCache();
@@ -141,23 +255,24 @@ public String toString() {
    * @param remote  Remote address the socket is connected to.
    * @return  A socket with unknown state, possibly closed underneath. Or null.
    */
-  public synchronized SocketAndStreams get(SocketAddress remote) {
+  public SocketAndStreams get(SocketAddress remote) {
 
     if (capacity <= 0) { // disabled
       return null;
     }
 
-    List<SocketAndStreams> sockStreamList = multimap.get(remote);
-    if (sockStreamList == null) {
+    LinkedList<SocketAndStreams> pool = pools.get(remote);
+    if (pool == null) {
       return null;
     }
 
-    Iterator<SocketAndStreams> iter = sockStreamList.iterator();
-    while (iter.hasNext()) {
-      SocketAndStreams candidate = iter.next();
-      iter.remove();
-      if (!candidate.sock.isClosed()) {
-        return candidate;
+    synchronized (pool) {
+      while (!pool.isEmpty()) {
+        SocketAndStreams candidate = pool.removeFirst();
+        size.decrementAndGet();
+        if (!candidate.sock.isClosed()) {
+          return candidate;
+        }
       }
     }
     return null;
@@ -167,7 +282,7 @@ public synchronized SocketAndStreams get(SocketAddress remote) {
    * Give an unused socket to the cache.
    * @param sock socket not used by anyone.
    */
-  public synchronized void put(Socket sock, IOStreamPair ioStreams) {
+  public void put(Socket sock, IOStreamPair ioStreams) {
 
     Preconditions.checkNotNull(sock);
     SocketAndStreams s = new SocketAndStreams(sock, ioStreams);
@@ -177,7 +292,9 @@ public synchronized void put(Socket sock, IOStreamPair ioStreams) {
       return;
     }
  
-    startExpiryDaemon();
+    if (!isDaemonStarted()) {
+      startExpiryDaemon();
+    }
 
     SocketAddress remoteAddr = sock.getRemoteSocketAddress();
     if (remoteAddr == null) {
@@ -187,50 +304,79 @@ public synchronized void put(Socket sock, IOStreamPair ioStreams) {
       return;
     }
 
-    if (capacity == multimap.size()) {
-      evictOldest();
+    LinkedList<SocketAndStreams> pool = pools.get(remoteAddr);
+    if (pool == null) {
+      pool = new LinkedList<SocketAndStreams>();
+      LinkedList<SocketAndStreams> existing = pools.putIfAbsent(remoteAddr, pool);
+      if (existing != null) {
+        pool = existing;
+      }
+    }
+    synchronized (pool) {
+      s.sequence = sequence.getAndIncrement();
+      pool.addLast(s);
+    }
+    size.incrementAndGet();
+    while (size.get() > capacity && evictOldest()) {
+      // evicted the oldest socket of all the pools
     }
-    multimap.put(remoteAddr, s);
   }
 
-  public synchronized int size() {
-    return multimap.size();
+  public int size() {
+    return size.get();
   }
 
   /**
    * Evict and close sockets older than expiry period from the cache.
    */
-  private synchronized void evictExpired(long expiryPeriod) {
-    while (multimap.size() != 0) {
-      Iterator<Entry<SocketAddress, SocketAndStreams>> iter =
-        multimap.entries().iterator();
-      Entry<SocketAddress, SocketAndStreams> entry = iter.next();
-      // if oldest socket expired, remove it
-      if (entry == null || 
-        Time.monotonicNow() - entry.getValue().getCreateTime() < 
-        expiryPeriod) {
-        break;
+  private void evictExpired(long expiryPeriod) {
+    final List<SocketAndStreams> expired = new ArrayList<SocketAndStreams>();
+    for (LinkedList<SocketAndStreams> pool : pools.values()) {
+      synchronized (pool) {
+        // the first socket of a pool is the oldest
+        while (!pool.isEmpty() && Time.monotonicNow() -
+            pool.getFirst().getCreateTime() >= expiryPeriod) {
+          expired.add(pool.removeFirst());
+          size.decrementAndGet();
+        }
       }
-      iter.remove();
-      SocketAndStreams s = entry.getValue();
+    }
+    for (SocketAndStreams s : expired) {
       s.close();
     }
   }
 
   /**
    * Evict the oldest entry in the cache.
+   * @return false if the cache is empty
    */
-  private synchronized void evictOldest() {
-    Iterator<Entry<SocketAddress, SocketAndStreams>> iter =
-      multimap.entries().iterator();
-    if (!iter.hasNext()) {
-      throw new IllegalStateException("Cannot evict from empty cache! " +
-        "capacity: " + capacity);
+  private boolean evictOldest() {
+    while (true) {
+      LinkedList<SocketAndStreams> oldestPool = null;
+      SocketAndStreams oldest = null;
+      for (LinkedList<SocketAndStreams> pool : pools.values()) {
+        synchronized (pool) {
+          if (!pool.isEmpty() && (oldest == null
+              || pool.getFirst().sequence < oldest.sequence)) {
+            oldestPool = pool;
+            oldest = pool.getFirst();
+          }
+        }
+      }
+      if (oldest == null) {
+        return false;
+      }
+      synchronized (oldestPool) {
+        // the socket may have been taken since the scan
+        if (oldestPool.isEmpty() || oldestPool.getFirst() != oldest) {
+          continue;
+        }
+        oldestPool.removeFirst();
+        size.decrementAndGet();
+      }
+      oldest.close();
+      return true;
     }
-    Entry<SocketAddress, SocketAndStreams> entry = iter.next();
-    iter.remove();
-    SocketAndStreams s = entry.getValue();
-    s.close();
   }
 
   /**
@@ -238,14 +384,10 @@ private synchronized void evictOldest() {
    * older than expiryPeriod minutes
    */
   private void run() throws InterruptedException {
-    for(long lastExpiryTime = Time.monotonicNow();
-        !Thread.interrupted();
-        Thread.sleep(expiryPeriod)) {
-      final long elapsed = Time.monotonicNow() - lastExpiryTime;
-      if (elapsed >= expiryPeriod) {
-        evictExpired(expiryPeriod);
-        lastExpiryTime = Time.monotonicNow();
-      }
+    final long sweepPeriod = Math.max(expiryPeriod / 2, 1);
+    while (!Thread.interrupted()) {
+      Thread.sleep(sweepPeriod);
+      evictExpired(expiryPeriod);
     }
     clear();
     throw new InterruptedException("Daemon Interrupted");
@@ -255,11 +397,69 @@ private void run() throws InterruptedException {
    * Empty the cache, and close all sockets.
    */
   @VisibleForTesting
-  protected synchronized void clear() {
-    for (SocketAndStreams sockAndStream : multimap.values()) {
+  protected void clear() {
+    final List<SocketAndStreams> removed = new ArrayList<SocketAndStreams>();
+    for (LinkedList<SocketAndStreams> pool : pools.values()) {
+      synchronized (pool) {
+        removed.addAll(pool);
+        size.addAndGet(-pool.size());
+        pool.clear();
+      }
+    }
+    for (SocketAndStreams sockAndStream : removed) {
       sockAndStream.close();
     }
-    multimap.clear();
   }
 
+  private static PeerStats getOrCreatePeerStats(DatanodeID dn) {
+    final String addr = dn.getXferAddr();
+    PeerStats stats = peerStats.get(addr);
+    if (stats == null) {
+      stats = new PeerStats();
+      PeerStats existing = peerStats.putIfAbsent(addr, stats);
+      if (existing != null) {
+        stats = existing;
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Record the time taken to set up a block reader from a datanode.
+   * @param latency the time in milliseconds
+   */
+  void addPeerLatency(DatanodeID dn, long latency) {
+    getOrCreatePeerStats(dn).addLatency(latency);
+  }
+
+  /** Record a failure to read from a datanode. */
+  void addPeerError(DatanodeID dn) {
+    getOrCreatePeerStats(dn).addError();
+  }
+
+  /**
+   * @return whether the reads from the given datanode were slow, or failed
+   *         recently
+   * @see PeerStats#isSlowOrFailing(long, long)
+   */
+  boolean isSlowOrFailingPeer(DatanodeID dn, long slowThreshold,
+      long expiry) {
+    final PeerStats stats = peerStats.get(dn.getXferAddr());
+    return stats != null && stats.isSlowOrFailing(slowThreshold, expiry);
+  }
+
+  /** @return the stats of the given datanode, or null if it was not used */
+  PeerStats getPeerStats(DatanodeID dn) {
+    return peerStats.get(dn.getXferAddr());
+  }
+
+  /** @return a snapshot of the stats of the datanodes, by address */
+  Map<String, PeerStats> getAllPeerStats() {
+    return new TreeMap<String, PeerStats>(peerStats);
+  }
+
+  @VisibleForTesting
+  void clearPeerStats() {
+    peerStats.clear();
+  }
 }
@@ -124,4 +124,29 @@ BlockLocalPathInfo getBlockLocalPathInfo(ExtendedBlock block,
    */
   HdfsBlocksMetadata getHdfsBlocksMetadata(List<ExtendedBlock> blocks,
       List<Token<BlockTokenIdentifier>> tokens) throws IOException; 
+
+  /**
+   * Plan moves of finalized replicas from the fuller volumes of the datanode
+   * to the emptier ones, and start making them in the background.
+   *
+   * @param threshold percentage of the capacity of a volume by which the
+   *          usage of the volume may exceed the usage of the datanode
+   *          before replicas are moved off it
+   * @throws IOException if a plan is already being carried out
+   */
+  void startDiskBalancer(double threshold) throws IOException;
+
+  /**
+   * Stop making the moves of the disk balancer plan. The replica being
+   * moved is finished first.
+   *
+   * @throws IOException on error
+   */
+  void cancelDiskBalancer() throws IOException;
+
+  /**
+   * @return the progress of the last disk balancer plan
+   * @throws IOException on error
+   */
+  DiskBalancerStatus getDiskBalancerStatus() throws IOException;
 }
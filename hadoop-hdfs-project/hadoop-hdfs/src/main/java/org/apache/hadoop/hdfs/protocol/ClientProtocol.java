@@ -519,6 +519,33 @@ public DirectoryListing getListing(String src,
       throws AccessControlException, FileNotFoundException,
       UnresolvedLinkException, IOException;
 
+  /**
+   * Get the first partial listing of each of the indicated directories
+   * in a single call.
+   * <p>
+   * The namenode stops adding listings once the total number of returned
+   * entries reaches its listing limit, so the returned array may be shorter
+   * than <code>srcs</code>; it always contains at least one listing when
+   * <code>srcs</code> is not empty. The caller should issue another call
+   * for the paths that were not listed, and use
+   * {@link #getListing(String, byte[], boolean)} to fetch the remaining
+   * entries of any listing that {@link DirectoryListing#hasMore()}.
+   *
+   * @param srcs the directory names
+   * @param needLocation if the FileStatus should contain block locations
+   *
+   * @return the partial listings in the order of <code>srcs</code>;
+   *         an element is null if the corresponding path does not exist
+   *
+   * @throws AccessControlException permission denied on any of the paths
+   * @throws UnresolvedLinkException If a path contains a symlink
+   * @throws IOException If an I/O error occurred
+   */
+  @Idempotent
+  public DirectoryListing[] getBatchedListing(String[] srcs,
+                                              boolean needLocation)
+      throws AccessControlException, UnresolvedLinkException, IOException;
+
   ///////////////////////////////////////
   // System issues and management
   ///////////////////////////////////////
@@ -957,4 +984,20 @@ public void cancelDelegationToken(Token<DelegationTokenIdentifier> token)
    * @throws IOException
    */
   public DataEncryptionKey getDataEncryptionKey() throws IOException;
+
+  /**
+   * Get the id of the last transaction reflected in the namespace of this
+   * namenode. On the active namenode this is the last transaction written
+   * to the edit log. A standby namenode first waits, up to a configured
+   * time, for the edits it tails to reach <code>minTxId</code>, and then
+   * returns the last transaction it has applied; clients use this to make
+   * sure a standby has seen their own changes before reading from it.
+   *
+   * @param minTxId the transaction id the caller would like to see applied
+   * @return the id of the last applied transaction, which may be less than
+   *         <code>minTxId</code> if the wait timed out
+   * @throws IOException
+   */
+  @Idempotent
+  public long getAppliedTxId(long minTxId) throws IOException;
 }
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * The progress of the disk balancer of a datanode, which moves replicas
+ * from its fuller volumes to its emptier ones.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Unstable
+public class DiskBalancerStatus {
+
+  /** The state of the last plan of the disk balancer. */
+  public enum State {
+    /** No plan was started since the datanode started. */
+    NO_PLAN,
+    /** The moves of the plan are being made. */
+    PLAN_UNDER_PROGRESS,
+    /** All the moves of the plan were made. */
+    PLAN_DONE,
+    /** The plan was cancelled before all its moves were made. */
+    PLAN_CANCELLED
+  }
+
+  /** A planned move of data from one volume to another, and its progress. */
+  public static class Step {
+    private final String source;
+    private final String destination;
+    private final long bytesToMove;
+    private final long bytesMoved;
+    private final long blocksMoved;
+    private final long errors;
+
+    public Step(String source, String destination, long bytesToMove,
+        long bytesMoved, long blocksMoved, long errors) {
+      this.source = source;
+      this.destination = destination;
+      this.bytesToMove = bytesToMove;
+      this.bytesMoved = bytesMoved;
+      this.blocksMoved = blocksMoved;
+      this.errors = errors;
+    }
+
+    /** @return the path of the volume the replicas are moved from */
+    public String getSource() {
+      return source;
+    }
+
+    /** @return the path of the volume the replicas are moved to */
+    public String getDestination() {
+      return destination;
+    }
+
+    /** @return the number of bytes the plan moves */
+    public long getBytesToMove() {
+      return bytesToMove;
+    }
+
+    /** @return the number of bytes moved so far */
+    public long getBytesMoved() {
+      return bytesMoved;
+    }
+
+    /** @return the number of replicas moved so far */
+    public long getBlocksMoved() {
+      return blocksMoved;
+    }
+
+    /** @return the number of replicas which failed to be moved */
+    public long getErrors() {
+      return errors;
+    }
+
+    @Override
+    public String toString() {
+      return source + " -> " + destination + ": moved "
+          + StringUtils.byteDesc(bytesMoved) + " of "
+          + StringUtils.byteDesc(bytesToMove) + " in " + blocksMoved
+          + " blocks, " + errors + " errors";
+    }
+  }
+
+  private final State state;
+  private final List<Step> steps;
+
+  public DiskBalancerStatus(State state, List<Step> steps) {
+    this.state = state;
+    this.steps = Collections.unmodifiableList(steps);
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  /** @return the moves of the plan, in the order they are made */
+  public List<Step> getSteps() {
+    return steps;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder b = new StringBuilder(state.toString());
+    for (Step step : steps) {
+      b.append("\n  ").append(step);
+    }
+    return b.toString();
+  }
+}
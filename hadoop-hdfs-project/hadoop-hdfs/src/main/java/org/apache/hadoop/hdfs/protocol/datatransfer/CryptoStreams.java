@@ -0,0 +1,322 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol.datatransfer;
+
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * Streams which encrypt or decrypt the data going through them with AES in
+ * counter mode, and authenticate it with HMAC-SHA256.
+ * <p>
+ * The data is sent in frames, each made of the length of the data, the
+ * encrypted data and an HMAC of the IV, the sequence number of the frame,
+ * the length and the encrypted data. The output stream sends a frame when it
+ * is flushed or its buffer is full. The input stream only returns the data
+ * of a frame once its HMAC has been verified, so that data modified,
+ * reordered or replayed on the wire, or decrypted with a modified IV, is
+ * rejected rather than passed on. The key of each HMAC is exchanged with
+ * the AES keys under the SASL security layer.
+ */
+@InterfaceAudience.Private
+class CryptoStreams {
+  static final String AES_CTR_NOPADDING = "AES/CTR/NoPadding";
+  static final String HMAC_SHA256 = "HmacSHA256";
+
+  /** Maximum length of the data of a frame */
+  private static final int BUFFER_SIZE = 64 * 1024;
+  /** Length of the frame header, holding the length of the data */
+  private static final int HEADER_LENGTH = 4;
+  /** Length of the HMAC ending each frame */
+  private static final int MAC_LENGTH = 32;
+
+  private CryptoStreams() {}
+
+  static Cipher createCipher(int mode, byte[] key, byte[] iv)
+      throws IOException {
+    try {
+      Cipher cipher = Cipher.getInstance(AES_CTR_NOPADDING);
+      cipher.init(mode, new SecretKeySpec(key, "AES"),
+          new IvParameterSpec(iv));
+      return cipher;
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Failed to create cipher " + AES_CTR_NOPADDING, e);
+    }
+  }
+
+  static Mac createMac(byte[] key) throws IOException {
+    try {
+      Mac mac = Mac.getInstance(HMAC_SHA256);
+      mac.init(new SecretKeySpec(key, HMAC_SHA256));
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Failed to create MAC " + HMAC_SHA256, e);
+    }
+  }
+
+  /**
+   * Start the HMAC of a frame with the IV and the sequence number of the
+   * frame. The header and the encrypted data follow.
+   */
+  private static void startMac(Mac mac, byte[] iv, long sequence) {
+    mac.update(iv);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      mac.update((byte) (sequence >>> shift));
+    }
+  }
+
+  /** Encrypts and authenticates all the data written to it. */
+  static class CryptoOutputStream extends FilterOutputStream {
+    private final Cipher cipher;
+    private final Mac mac;
+    private final byte[] iv;
+    /** The frame being filled, the data starting after the header */
+    private final byte[] frame =
+        new byte[HEADER_LENGTH + BUFFER_SIZE + MAC_LENGTH];
+    private int count = 0;
+    private long sequence = 0;
+
+    CryptoOutputStream(OutputStream out, byte[] key, byte[] iv,
+        byte[] macKey) throws IOException {
+      super(out);
+      this.cipher = createCipher(Cipher.ENCRYPT_MODE, key, iv);
+      this.mac = createMac(macKey);
+      this.iv = iv.clone();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (count == BUFFER_SIZE) {
+        writeFrame();
+      }
+      frame[HEADER_LENGTH + count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        if (count == BUFFER_SIZE) {
+          writeFrame();
+        }
+        int n = Math.min(len, BUFFER_SIZE - count);
+        System.arraycopy(b, off, frame, HEADER_LENGTH + count, n);
+        count += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      writeFrame();
+      out.flush();
+    }
+
+    /** Encrypt the buffered data, and send it as a frame. */
+    private void writeFrame() throws IOException {
+      if (count == 0) {
+        return;
+      }
+      frame[0] = (byte) (count >>> 24);
+      frame[1] = (byte) (count >>> 16);
+      frame[2] = (byte) (count >>> 8);
+      frame[3] = (byte) count;
+      try {
+        // encrypted in place, which counter mode allows
+        cipher.update(frame, HEADER_LENGTH, count, frame, HEADER_LENGTH);
+        startMac(mac, iv, sequence++);
+        mac.update(frame, 0, HEADER_LENGTH + count);
+        mac.doFinal(frame, HEADER_LENGTH + count);
+      } catch (ShortBufferException e) {
+        throw new IOException(e);
+      }
+      out.write(frame, 0, HEADER_LENGTH + count + MAC_LENGTH);
+      count = 0;
+    }
+  }
+
+  /** Verifies and decrypts all the data read from it. */
+  static class CryptoInputStream extends FilterInputStream
+      implements ReadableByteChannel {
+    private final Cipher cipher;
+    private final Mac mac;
+    private final byte[] iv;
+    private final DataInputStream din;
+    /** The last frame read, the decrypted data starting after the header */
+    private final byte[] frame =
+        new byte[HEADER_LENGTH + BUFFER_SIZE + MAC_LENGTH];
+    /** The decrypted data not read yet is frame[pos, limit) */
+    private int pos = 0;
+    private int limit = 0;
+    private long sequence = 0;
+    /** The error which left the stream in the middle of a frame, if any */
+    private IOException failure = null;
+    private boolean open = true;
+
+    CryptoInputStream(InputStream in, byte[] key, byte[] iv, byte[] macKey)
+        throws IOException {
+      super(in);
+      this.din = new DataInputStream(in);
+      this.cipher = createCipher(Cipher.DECRYPT_MODE, key, iv);
+      this.mac = createMac(macKey);
+      this.iv = iv.clone();
+    }
+
+    /**
+     * Read the next frame, and decrypt its data once it is verified.
+     * @return false at the end of the stream
+     */
+    private boolean readFrame() throws IOException {
+      if (failure != null) {
+        throw failure;
+      }
+      // the stream may end, or a read time out, between frames
+      int first = in.read();
+      if (first < 0) {
+        return false;
+      }
+      try {
+        frame[0] = (byte) first;
+        din.readFully(frame, 1, HEADER_LENGTH - 1);
+        int len = ((frame[0] & 0xff) << 24) | ((frame[1] & 0xff) << 16)
+            | ((frame[2] & 0xff) << 8) | (frame[3] & 0xff);
+        if (len <= 0 || len > BUFFER_SIZE) {
+          throw new IOException("Invalid length " + len +
+              " of encrypted frame " + sequence);
+        }
+        din.readFully(frame, HEADER_LENGTH, len + MAC_LENGTH);
+
+        startMac(mac, iv, sequence);
+        mac.update(frame, 0, HEADER_LENGTH + len);
+        if (!MessageDigest.isEqual(mac.doFinal(), Arrays.copyOfRange(frame,
+            HEADER_LENGTH + len, HEADER_LENGTH + len + MAC_LENGTH))) {
+          throw new IOException("Integrity check failed for encrypted frame "
+              + sequence);
+        }
+        sequence++;
+        cipher.update(frame, HEADER_LENGTH, len, frame, HEADER_LENGTH);
+        pos = HEADER_LENGTH;
+        limit = HEADER_LENGTH + len;
+        return true;
+      } catch (ShortBufferException e) {
+        failure = new IOException(e);
+        throw failure;
+      } catch (IOException e) {
+        failure = e;
+        throw e;
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (pos == limit && !readFrame()) {
+        return -1;
+      }
+      return frame[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (pos == limit && !readFrame()) {
+        return -1;
+      }
+      int n = Math.min(len, limit - pos);
+      System.arraycopy(frame, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      if (!dst.hasRemaining()) {
+        return 0;
+      }
+      if (pos == limit && !readFrame()) {
+        return -1;
+      }
+      int n = Math.min(dst.remaining(), limit - pos);
+      dst.put(frame, pos, n);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = 0;
+      while (skipped < n) {
+        if (pos == limit && !readFrame()) {
+          break;
+        }
+        int r = (int) Math.min(n - skipped, limit - pos);
+        pos += r;
+        skipped += r;
+      }
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return limit - pos;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+      open = false;
+      super.close();
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+      throw new IOException("Mark/reset not supported");
+    }
+  }
+}
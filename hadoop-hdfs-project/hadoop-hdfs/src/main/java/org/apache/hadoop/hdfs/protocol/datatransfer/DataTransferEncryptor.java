@@ -24,6 +24,7 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.SecureRandom;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -44,6 +45,9 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.datatransfer.CryptoStreams.CryptoInputStream;
+import org.apache.hadoop.hdfs.protocol.datatransfer.CryptoStreams.CryptoOutputStream;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.CipherOptionProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.DataTransferEncryptorMessageProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.DataTransferEncryptorMessageProto.DataTransferEncryptorStatus;
 import org.apache.hadoop.hdfs.security.token.block.BlockPoolTokenSecretManager;
@@ -61,6 +65,13 @@
  * streams which will encrypt/decrypt all data written/read from said streams.
  * Much of this is inspired by or borrowed from the TSaslTransport in Apache
  * Thrift, but with some HDFS-specific tweaks.
+ * <p>
+ * Clients offer to stream the data with AES in counter mode. If the server
+ * is configured to accept it, it sends random AES and HMAC keys to the
+ * client, wrapped by the SASL security layer, and the data is then encrypted
+ * with AES, which is much faster than the ciphers of the SASL security layer,
+ * and authenticated with HMAC-SHA256 in frames. Otherwise the data is wrapped
+ * by the SASL security layer.
  */
 @InterfaceAudience.Private
 public class DataTransferEncryptor {
@@ -91,6 +102,19 @@ public class DataTransferEncryptor {
     SASL_PROPS.put(Sasl.QOP, "auth-conf");
     SASL_PROPS.put(Sasl.SERVER_AUTH, "true");
   }
+
+  /** The cipher suite which may be negotiated to stream the data with. */
+  public static final String AES_CTR_NOPADDING =
+      CryptoStreams.AES_CTR_NOPADDING;
+
+  /** Length of the AES keys, in bytes. */
+  private static final int AES_KEY_LENGTH = 16;
+  /** Length of the AES counter mode IVs, in bytes. */
+  private static final int AES_IV_LENGTH = 16;
+  /** Length of the HMAC-SHA256 keys, in bytes. */
+  private static final int MAC_KEY_LENGTH = 32;
+
+  private static final SecureRandom RANDOM = new SecureRandom();
   
   /**
    * Factory method for DNs, where the nonce, keyId, and encryption key are not
@@ -109,6 +133,9 @@ public class DataTransferEncryptor {
    * @param underlyingIn input stream to read from the other party
    * @param blockPoolTokenSecretManager secret manager capable of constructing
    *        encryption key based on keyId, blockPoolId, and nonce
+   * @param encryptionAlgorithm the cipher of the SASL security layer
+   * @param cipherSuites the cipher suites the data may be streamed with
+   *        instead of the SASL security layer, comma separated, or null
    * @return a pair of streams which wrap the given streams and encrypt/decrypt
    *         all data read/written
    * @throws IOException in the event of error
@@ -116,7 +143,7 @@ public class DataTransferEncryptor {
   public static IOStreamPair getEncryptedStreams(
       OutputStream underlyingOut, InputStream underlyingIn,
       BlockPoolTokenSecretManager blockPoolTokenSecretManager,
-      String encryptionAlgorithm) throws IOException {
+      String encryptionAlgorithm, String cipherSuites) throws IOException {
     
     DataInputStream in = new DataInputStream(underlyingIn);
     DataOutputStream out = new DataOutputStream(underlyingOut);
@@ -141,13 +168,31 @@ public static IOStreamPair getEncryptedStreams(
       performSaslStep1(out, in, sasl);
       
       // step 2 (server-side only)
-      byte[] remoteResponse = readSaslMessage(in);
-      byte[] localResponse = sasl.evaluateChallengeOrResponse(remoteResponse);
-      sendSaslMessage(out, localResponse);
+      DataTransferEncryptorMessageProto remoteMessage =
+          readSaslMessageProto(in);
+      byte[] localResponse = sasl.evaluateChallengeOrResponse(
+          remoteMessage.getPayload().toByteArray());
       
       // SASL handshake is complete
       checkSaslComplete(sasl);
       
+      CipherOptionProto cipherOption = null;
+      if (remoteMessage.hasCipherOption() && isCipherSuiteEnabled(
+          cipherSuites, remoteMessage.getCipherOption().getSuite())) {
+        cipherOption = createCipherOption();
+      }
+      sendSaslMessage(out, DataTransferEncryptorStatus.SUCCESS, localResponse,
+          null, cipherOption == null ? null : wrap(cipherOption, sasl));
+      
+      if (cipherOption != null) {
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Server using cipher suite " + cipherOption.getSuite());
+        }
+        return createCryptoStreamPair(out, in, cipherOption.getInKey(),
+            cipherOption.getInIv(), cipherOption.getInMacKey(),
+            cipherOption.getOutKey(), cipherOption.getOutIv(),
+            cipherOption.getOutMacKey());
+      }
       return sasl.createEncryptedStreamPair(out, in);
     } catch (IOException ioe) {
       if (ioe instanceof SaslException &&
@@ -211,17 +256,39 @@ public static IOStreamPair getEncryptedStreams(
       // Start of handshake - "initial response" in SASL terminology.
       sendSaslMessage(out, new byte[0]);
       
-      // step 1
-      performSaslStep1(out, in, sasl);
-      
-      // step 2 (client-side only)
+      // step 1, offering to stream the data with AES
       byte[] remoteResponse = readSaslMessage(in);
       byte[] localResponse = sasl.evaluateChallengeOrResponse(remoteResponse);
+      sendSaslMessage(out, DataTransferEncryptorStatus.SUCCESS, localResponse,
+          null, CipherOptionProto.newBuilder().setSuite(AES_CTR_NOPADDING)
+              .build());
+      
+      // step 2 (client-side only)
+      DataTransferEncryptorMessageProto remoteMessage =
+          readSaslMessageProto(in);
+      localResponse = sasl.evaluateChallengeOrResponse(
+          remoteMessage.getPayload().toByteArray());
       assert localResponse == null;
       
       // SASL handshake is complete
       checkSaslComplete(sasl);
       
+      if (remoteMessage.hasCipherOption()) {
+        CipherOptionProto cipherOption =
+            unwrap(remoteMessage.getCipherOption(), sasl);
+        if (!AES_CTR_NOPADDING.equals(cipherOption.getSuite())) {
+          throw new IOException("Server chose unsupported cipher suite " +
+              cipherOption.getSuite());
+        }
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("Client using cipher suite " + cipherOption.getSuite());
+        }
+        // the server's out stream is the client's in stream
+        return createCryptoStreamPair(out, in, cipherOption.getOutKey(),
+            cipherOption.getOutIv(), cipherOption.getOutMacKey(),
+            cipherOption.getInKey(), cipherOption.getInIv(),
+            cipherOption.getInMacKey());
+      }
       return sasl.createEncryptedStreamPair(out, in);
     } catch (IOException ioe) {
       sendGenericSaslErrorMessage(out, ioe.getMessage());
@@ -266,6 +333,12 @@ private static void sendGenericSaslErrorMessage(DataOutputStream out,
   private static void sendSaslMessage(OutputStream out,
       DataTransferEncryptorStatus status, byte[] payload, String message)
           throws IOException {
+    sendSaslMessage(out, status, payload, message, null);
+  }
+  
+  private static void sendSaslMessage(OutputStream out,
+      DataTransferEncryptorStatus status, byte[] payload, String message,
+      CipherOptionProto cipherOption) throws IOException {
     DataTransferEncryptorMessageProto.Builder builder =
         DataTransferEncryptorMessageProto.newBuilder();
     
@@ -276,6 +349,9 @@ private static void sendSaslMessage(OutputStream out,
     if (message != null) {
       builder.setMessage(message);
     }
+    if (cipherOption != null) {
+      builder.setCipherOption(cipherOption);
+    }
     
     DataTransferEncryptorMessageProto proto = builder.build();
     proto.writeDelimitedTo(out);
@@ -283,6 +359,11 @@ private static void sendSaslMessage(OutputStream out,
   }
   
   private static byte[] readSaslMessage(DataInputStream in) throws IOException {
+    return readSaslMessageProto(in).getPayload().toByteArray();
+  }
+  
+  private static DataTransferEncryptorMessageProto readSaslMessageProto(
+      DataInputStream in) throws IOException {
     DataTransferEncryptorMessageProto proto =
         DataTransferEncryptorMessageProto.parseFrom(vintPrefixed(in));
     if (proto.getStatus() == DataTransferEncryptorStatus.ERROR_UNKNOWN_KEY) {
@@ -290,10 +371,92 @@ private static byte[] readSaslMessage(DataInputStream in) throws IOException {
     } else if (proto.getStatus() == DataTransferEncryptorStatus.ERROR) {
       throw new IOException(proto.getMessage());
     } else {
-      return proto.getPayload().toByteArray();
+      return proto;
     }
   }
   
+  /**
+   * @param cipherSuites comma separated cipher suites, or null
+   * @return whether the given suite is one of them, and is supported
+   */
+  private static boolean isCipherSuiteEnabled(String cipherSuites,
+      String suite) {
+    if (cipherSuites == null || !AES_CTR_NOPADDING.equals(suite)) {
+      return false;
+    }
+    for (String enabled : cipherSuites.split(",")) {
+      if (enabled.trim().equals(suite)) {
+        return true;
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * @return AES counter mode keys and IVs, and HMAC keys, for both
+   *         directions
+   */
+  private static CipherOptionProto createCipherOption() {
+    return CipherOptionProto.newBuilder()
+        .setSuite(AES_CTR_NOPADDING)
+        .setInKey(randomBytes(AES_KEY_LENGTH))
+        .setInIv(randomBytes(AES_IV_LENGTH))
+        .setInMacKey(randomBytes(MAC_KEY_LENGTH))
+        .setOutKey(randomBytes(AES_KEY_LENGTH))
+        .setOutIv(randomBytes(AES_IV_LENGTH))
+        .setOutMacKey(randomBytes(MAC_KEY_LENGTH))
+        .build();
+  }
+  
+  private static ByteString randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    RANDOM.nextBytes(bytes);
+    return ByteString.copyFrom(bytes);
+  }
+  
+  /** Encrypt the keys of a cipher option with the SASL security layer. */
+  private static CipherOptionProto wrap(CipherOptionProto option,
+      SaslParticipant sasl) throws SaslException {
+    return CipherOptionProto.newBuilder()
+        .setSuite(option.getSuite())
+        .setInKey(sasl.wrap(option.getInKey()))
+        .setInIv(option.getInIv())
+        .setInMacKey(sasl.wrap(option.getInMacKey()))
+        .setOutKey(sasl.wrap(option.getOutKey()))
+        .setOutIv(option.getOutIv())
+        .setOutMacKey(sasl.wrap(option.getOutMacKey()))
+        .build();
+  }
+  
+  /** Decrypt the keys of a cipher option with the SASL security layer. */
+  private static CipherOptionProto unwrap(CipherOptionProto option,
+      SaslParticipant sasl) throws IOException {
+    if (!option.hasInKey() || !option.hasInIv() || !option.hasInMacKey() ||
+        !option.hasOutKey() || !option.hasOutIv() || !option.hasOutMacKey()) {
+      throw new IOException("Server sent incomplete cipher option");
+    }
+    return CipherOptionProto.newBuilder()
+        .setSuite(option.getSuite())
+        .setInKey(sasl.unwrap(option.getInKey()))
+        .setInIv(option.getInIv())
+        .setInMacKey(sasl.unwrap(option.getInMacKey()))
+        .setOutKey(sasl.unwrap(option.getOutKey()))
+        .setOutIv(option.getOutIv())
+        .setOutMacKey(sasl.unwrap(option.getOutMacKey()))
+        .build();
+  }
+  
+  private static IOStreamPair createCryptoStreamPair(DataOutputStream out,
+      DataInputStream in, ByteString inKey, ByteString inIv,
+      ByteString inMacKey, ByteString outKey, ByteString outIv,
+      ByteString outMacKey) throws IOException {
+    return new IOStreamPair(
+        new CryptoInputStream(in, inKey.toByteArray(), inIv.toByteArray(),
+            inMacKey.toByteArray()),
+        new CryptoOutputStream(out, outKey.toByteArray(),
+            outIv.toByteArray(), outMacKey.toByteArray()));
+  }
+  
   /**
    * Set the encryption key when asked by the server-side SASL object.
    */
@@ -459,6 +622,20 @@ public byte[] evaluateChallengeOrResponse(byte[] challengeOrResponse) throws Sas
       }
     }
 
+    public ByteString wrap(ByteString data) throws SaslException {
+      byte[] bytes = data.toByteArray();
+      return ByteString.copyFrom(saslClient != null ?
+          saslClient.wrap(bytes, 0, bytes.length) :
+          saslServer.wrap(bytes, 0, bytes.length));
+    }
+
+    public ByteString unwrap(ByteString data) throws SaslException {
+      byte[] bytes = data.toByteArray();
+      return ByteString.copyFrom(saslClient != null ?
+          saslClient.unwrap(bytes, 0, bytes.length) :
+          saslServer.unwrap(bytes, 0, bytes.length));
+    }
+
     public boolean isComplete() {
       if (saslClient != null)
         return saslClient.isComplete();
@@ -20,8 +20,10 @@
 
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.Options.ChecksumCombineMode;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.BaseHeaderProto;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ChecksumCombineModeProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ChecksumProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.ClientOperationHeaderProto;
 import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpWriteBlockProto;
@@ -49,6 +51,14 @@ static OpWriteBlockProto.BlockConstructionStage toProto(
     return OpWriteBlockProto.BlockConstructionStage.valueOf(stage.name());
   }
 
+  static ChecksumCombineMode fromProto(ChecksumCombineModeProto mode) {
+    return ChecksumCombineMode.valueOf(mode.name());
+  }
+
+  static ChecksumCombineModeProto toProto(ChecksumCombineMode mode) {
+    return ChecksumCombineModeProto.valueOf(mode.name());
+  }
+
   public static ChecksumProto toProto(DataChecksum checksum) {
     ChecksumTypeProto type = PBHelper.convert(checksum.getChecksumType());
     // ChecksumType#valueOf never returns null
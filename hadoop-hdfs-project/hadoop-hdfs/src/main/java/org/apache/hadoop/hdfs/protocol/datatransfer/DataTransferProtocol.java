@@ -23,6 +23,7 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.fs.Options.ChecksumCombineMode;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
@@ -135,12 +136,15 @@ public void copyBlock(final ExtendedBlock blk,
       final Token<BlockTokenIdentifier> blockToken) throws IOException;
 
   /**
-   * Get block checksum (MD5 of CRC32).
+   * Get block checksum (MD5 of CRC32, or composite CRC32).
    * 
    * @param blk a block.
    * @param blockToken security token for accessing the block.
+   * @param combineMode how the CRCs of the chunks of the block are combined;
+   *          a composite CRC covers the first blk.getNumBytes() bytes.
    * @throws IOException
    */
   public void blockChecksum(final ExtendedBlock blk,
-      final Token<BlockTokenIdentifier> blockToken) throws IOException;
+      final Token<BlockTokenIdentifier> blockToken,
+      final ChecksumCombineMode combineMode) throws IOException;
 }
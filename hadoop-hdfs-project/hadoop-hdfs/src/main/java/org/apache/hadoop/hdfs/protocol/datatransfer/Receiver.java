@@ -138,6 +138,7 @@ private void opBlockChecksum(DataInputStream in) throws IOException {
     OpBlockChecksumProto proto = OpBlockChecksumProto.parseFrom(vintPrefixed(in));
     
     blockChecksum(PBHelper.convert(proto.getHeader().getBlock()),
-        PBHelper.convert(proto.getHeader().getToken()));
+        PBHelper.convert(proto.getHeader().getToken()),
+        fromProto(proto.getCombineMode()));
   }
 }
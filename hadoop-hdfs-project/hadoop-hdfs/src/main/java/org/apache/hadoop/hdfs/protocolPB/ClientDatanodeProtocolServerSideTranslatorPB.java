@@ -24,12 +24,18 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.hdfs.protocol.BlockLocalPathInfo;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
+import org.apache.hadoop.hdfs.protocol.DiskBalancerStatus;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsBlocksMetadata;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.CancelDiskBalancerRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.CancelDiskBalancerResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.DeleteBlockPoolRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.DeleteBlockPoolResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.DiskBalancerStepProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetBlockLocalPathInfoRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetBlockLocalPathInfoResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetDiskBalancerStatusRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetDiskBalancerStatusResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetHdfsBlockLocationsRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetHdfsBlockLocationsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetHdfsBlockLocationsResponseProto.Builder;
@@ -37,6 +43,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetReplicaVisibleLengthResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.RefreshNamenodesRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.RefreshNamenodesResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.StartDiskBalancerRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.StartDiskBalancerResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.ExtendedBlockProto;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.security.proto.SecurityProtos.TokenProto;
@@ -58,6 +66,11 @@ public class ClientDatanodeProtocolServerSideTranslatorPB implements
       RefreshNamenodesResponseProto.newBuilder().build();
   private final static DeleteBlockPoolResponseProto DELETE_BLOCKPOOL_RESP =
       DeleteBlockPoolResponseProto.newBuilder().build();
+  private final static StartDiskBalancerResponseProto START_DISK_BALANCER_RESP =
+      StartDiskBalancerResponseProto.newBuilder().build();
+  private final static CancelDiskBalancerResponseProto
+      CANCEL_DISK_BALANCER_RESP =
+      CancelDiskBalancerResponseProto.newBuilder().build();
   
   private final ClientDatanodeProtocol impl;
 
@@ -152,4 +165,54 @@ public GetHdfsBlockLocationsResponseProto getHdfsBlockLocations(
     builder.addAllVolumeIndexes(resp.getVolumeIndexes());
     return builder.build();
   }
+
+  @Override
+  public StartDiskBalancerResponseProto startDiskBalancer(
+      RpcController unused, StartDiskBalancerRequestProto request)
+      throws ServiceException {
+    try {
+      impl.startDiskBalancer(request.getThreshold());
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+    return START_DISK_BALANCER_RESP;
+  }
+
+  @Override
+  public CancelDiskBalancerResponseProto cancelDiskBalancer(
+      RpcController unused, CancelDiskBalancerRequestProto request)
+      throws ServiceException {
+    try {
+      impl.cancelDiskBalancer();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+    return CANCEL_DISK_BALANCER_RESP;
+  }
+
+  @Override
+  public GetDiskBalancerStatusResponseProto getDiskBalancerStatus(
+      RpcController unused, GetDiskBalancerStatusRequestProto request)
+      throws ServiceException {
+    DiskBalancerStatus status;
+    try {
+      status = impl.getDiskBalancerStatus();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+    GetDiskBalancerStatusResponseProto.Builder builder =
+        GetDiskBalancerStatusResponseProto.newBuilder()
+        .setState(GetDiskBalancerStatusResponseProto.State.valueOf(
+            status.getState().name()));
+    for (DiskBalancerStatus.Step step : status.getSteps()) {
+      builder.addSteps(DiskBalancerStepProto.newBuilder()
+          .setSource(step.getSource())
+          .setDestination(step.getDestination())
+          .setBytesToMove(step.getBytesToMove())
+          .setBytesMoved(step.getBytesMoved())
+          .setBlocksMoved(step.getBlocksMoved())
+          .setErrors(step.getErrors()));
+    }
+    return builder.build();
+  }
 }
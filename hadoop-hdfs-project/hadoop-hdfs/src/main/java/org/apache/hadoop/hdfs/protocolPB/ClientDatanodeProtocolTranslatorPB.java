@@ -34,16 +34,22 @@
 import org.apache.hadoop.hdfs.protocol.BlockLocalPathInfo;
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
+import org.apache.hadoop.hdfs.protocol.DiskBalancerStatus;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsBlocksMetadata;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.CancelDiskBalancerRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.DeleteBlockPoolRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.DiskBalancerStepProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetBlockLocalPathInfoRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetBlockLocalPathInfoResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetDiskBalancerStatusRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetDiskBalancerStatusResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetHdfsBlockLocationsRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetHdfsBlockLocationsResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.GetReplicaVisibleLengthRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.RefreshNamenodesRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientDatanodeProtocolProtos.StartDiskBalancerRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos.ExtendedBlockProto;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.ipc.ProtobufHelper;
@@ -79,6 +85,11 @@ public class ClientDatanodeProtocolTranslatorPB implements
   private final ClientDatanodeProtocolPB rpcProxy;
   private final static RefreshNamenodesRequestProto VOID_REFRESH_NAMENODES = 
       RefreshNamenodesRequestProto.newBuilder().build();
+  private final static CancelDiskBalancerRequestProto VOID_CANCEL_DISK_BALANCER =
+      CancelDiskBalancerRequestProto.newBuilder().build();
+  private final static GetDiskBalancerStatusRequestProto
+      VOID_GET_DISK_BALANCER_STATUS =
+      GetDiskBalancerStatusRequestProto.newBuilder().build();
 
   public ClientDatanodeProtocolTranslatorPB(DatanodeID datanodeid,
       Configuration conf, int socketTimeout, boolean connectToDnViaHostname,
@@ -255,4 +266,44 @@ public HdfsBlocksMetadata getHdfsBlocksMetadata(List<ExtendedBlock> blocks,
     return new HdfsBlocksMetadata(blocks.toArray(new ExtendedBlock[] {}), 
         volumeIds, volumeIndexes);
   }
+
+  @Override
+  public void startDiskBalancer(double threshold) throws IOException {
+    StartDiskBalancerRequestProto req = StartDiskBalancerRequestProto
+        .newBuilder().setThreshold(threshold).build();
+    try {
+      rpcProxy.startDiskBalancer(NULL_CONTROLLER, req);
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public void cancelDiskBalancer() throws IOException {
+    try {
+      rpcProxy.cancelDiskBalancer(NULL_CONTROLLER, VOID_CANCEL_DISK_BALANCER);
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
+  @Override
+  public DiskBalancerStatus getDiskBalancerStatus() throws IOException {
+    GetDiskBalancerStatusResponseProto resp;
+    try {
+      resp = rpcProxy.getDiskBalancerStatus(NULL_CONTROLLER,
+          VOID_GET_DISK_BALANCER_STATUS);
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+    List<DiskBalancerStatus.Step> steps =
+        new ArrayList<DiskBalancerStatus.Step>(resp.getStepsCount());
+    for (DiskBalancerStepProto step : resp.getStepsList()) {
+      steps.add(new DiskBalancerStatus.Step(step.getSource(),
+          step.getDestination(), step.getBytesToMove(), step.getBytesMoved(),
+          step.getBlocksMoved(), step.getErrors()));
+    }
+    return new DiskBalancerStatus(
+        DiskBalancerStatus.State.valueOf(resp.getState().name()), steps);
+  }
 }
@@ -37,6 +37,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AddBlockResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AppendRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.AppendResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.BatchedListingEntryProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.CompleteResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.ConcatRequestProto;
@@ -53,6 +54,10 @@
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.FsyncResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetAdditionalDatanodeRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetAdditionalDatanodeResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetAppliedTxIdRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetAppliedTxIdResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBatchedListingRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBatchedListingResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetDataEncryptionKeyRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetDataEncryptionKeyResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.ClientNamenodeProtocolProtos.GetBlockLocationsRequestProto;
@@ -175,6 +180,9 @@ public class ClientNamenodeProtocolServerSideTranslatorPB implements
   private static final GetListingResponseProto VOID_GETLISTING_RESPONSE = 
   GetListingResponseProto.newBuilder().build();
 
+  private static final BatchedListingEntryProto VOID_BATCHED_LISTING_ENTRY =
+  BatchedListingEntryProto.newBuilder().build();
+
   private static final RenewLeaseResponseProto VOID_RENEWLEASE_RESPONSE = 
   RenewLeaseResponseProto.newBuilder().build();
 
@@ -490,6 +498,30 @@ public GetListingResponseProto getListing(RpcController controller,
       throw new ServiceException(e);
     }
   }
+
+  @Override
+  public GetBatchedListingResponseProto getBatchedListing(
+      RpcController controller, GetBatchedListingRequestProto req)
+      throws ServiceException {
+    try {
+      List<String> srcs = req.getSrcsList();
+      DirectoryListing[] result = server.getBatchedListing(
+          srcs.toArray(new String[srcs.size()]), req.getNeedLocation());
+      GetBatchedListingResponseProto.Builder builder =
+          GetBatchedListingResponseProto.newBuilder();
+      for (DirectoryListing listing : result) {
+        if (listing != null) {
+          builder.addListings(BatchedListingEntryProto.newBuilder()
+              .setDirList(PBHelper.convert(listing)));
+        } else {
+          builder.addListings(VOID_BATCHED_LISTING_ENTRY);
+        }
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
   
   @Override
   public RenewLeaseResponseProto renewLease(RpcController controller,
@@ -864,4 +896,15 @@ public GetDataEncryptionKeyResponseProto getDataEncryptionKey(
       throw new ServiceException(e);
     }
   }
+
+  @Override
+  public GetAppliedTxIdResponseProto getAppliedTxId(RpcController controller,
+      GetAppliedTxIdRequestProto req) throws ServiceException {
+    try {
+      long txId = server.getAppliedTxId(req.getMinTxId());
+      return GetAppliedTxIdResponseProto.newBuilder().setTxId(txId).build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
 }
@@ -34,6 +34,7 @@
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -87,6 +88,13 @@ public class QuorumJournalManager implements JournalManager {
   private final AsyncLoggerSet loggers;
 
   private int outputBufferCapacity = 512 * 1024;
+
+  /**
+   * Whether readers of in-progress segments fetch the edits from the
+   * JournalNodes' caches over RPC, and how many at a time.
+   */
+  private final boolean rpcTailingEnabled;
+  private final int maxTxnsPerRpc;
   
   public QuorumJournalManager(Configuration conf,
       URI uri, NamespaceInfo nsInfo) throws IOException {
@@ -128,6 +136,13 @@ public QuorumJournalManager(Configuration conf,
     this.writeTxnsTimeoutMs = conf.getInt(
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_KEY,
         DFSConfigKeys.DFS_QJOURNAL_WRITE_TXNS_TIMEOUT_DEFAULT);
+
+    this.rpcTailingEnabled = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    this.maxTxnsPerRpc = conf.getInt(
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_QJM_RPC_MAX_TXNS_DEFAULT);
   }
   
   protected List<AsyncLogger> createLoggers(
@@ -449,6 +464,16 @@ public void close() throws IOException {
   @Override
   public void selectInputStreams(Collection<EditLogInputStream> streams,
       long fromTxnId, boolean inProgressOk) throws IOException {
+    if (inProgressOk && rpcTailingEnabled) {
+      try {
+        selectRpcInputStreams(streams, fromTxnId);
+        return;
+      } catch (IOException ioe) {
+        // Most likely the reader is too far behind for the caches
+        LOG.debug("Could not fetch edits from txid " + fromTxnId +
+            " from the JournalNode caches; reading the segments instead", ioe);
+      }
+    }
 
     QuorumCall<AsyncLogger, RemoteEditLogManifest> q =
         loggers.getEditLogManifest(fromTxnId);
@@ -479,6 +504,58 @@ public void selectInputStreams(Collection<EditLogInputStream> streams,
         streams, allStreams, fromTxnId, inProgressOk);
   }
   
+  /**
+   * Select a stream of the durable edits from the given transaction
+   * onwards, as held in the JournalNodes' caches of recent edits. This
+   * includes the edits of the in-progress segment.
+   *
+   * @throws IOException if a quorum of JournalNodes do not have the edits
+   *         cached, in which case they must be read from the segments
+   */
+  private void selectRpcInputStreams(Collection<EditLogInputStream> streams,
+      long fromTxnId) throws IOException {
+    QuorumCall<AsyncLogger, GetJournaledEditsResponseProto> q =
+        loggers.getJournaledEdits(fromTxnId, maxTxnsPerRpc);
+    Map<AsyncLogger, GetJournaledEditsResponseProto> resps =
+        loggers.waitForWriteQuorum(q, selectInputStreamsTimeoutMs,
+            "selectRpcInputStreams");
+
+    // A transaction written to a majority of the JournalNodes survives any
+    // recovery, even if the writer has not learnt it is committed yet.
+    // Read those from the node with the most edits.
+    GetJournaledEditsResponseProto best = null;
+    List<Long> lastTxIds = Lists.newArrayListWithCapacity(resps.size());
+    for (GetJournaledEditsResponseProto resp : resps.values()) {
+      if (resp.getTxnCount() == 0) {
+        lastTxIds.add(fromTxnId - 1);
+        continue;
+      }
+      long lastTxId = resp.getFirstTxId() + resp.getTxnCount() - 1;
+      lastTxIds.add(lastTxId);
+      if (best == null || resp.getTxnCount() > best.getTxnCount()) {
+        best = resp;
+      }
+    }
+    Collections.sort(lastTxIds);
+    long durableTxId = lastTxIds.get(
+        lastTxIds.size() - loggers.getMajoritySize());
+    if (best == null || durableTxId < fromTxnId) {
+      return;
+    }
+
+    // the stream ends at durableTxId, even if the node returned more
+    long firstTxId = best.getFirstTxId();
+    EditLogInputStream elis = EditLogFileInputStream.fromByteArray(
+        "journaled edits " + firstTxId + "-" + durableTxId + " of " + uri,
+        best.getEditLog().toByteArray(), firstTxId, durableTxId, true);
+    PriorityQueue<EditLogInputStream> allStreams =
+        new PriorityQueue<EditLogInputStream>(1,
+            JournalSet.EDIT_LOG_INPUT_STREAM_COMPARATOR);
+    allStreams.add(elis);
+    JournalSet.chainAndMakeRedundantStreams(
+        streams, allStreams, fromTxnId, true);
+  }
+
   @Override
   public String toString() {
     return "QJM to " + loggers;
@@ -24,6 +24,7 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.client.QuorumJournalManager;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetEditLogManifestResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -127,6 +128,20 @@ public void purgeLogsOlderThan(RequestInfo requestInfo, long minTxIdToKeep)
    */
   public GetEditLogManifestResponseProto getEditLogManifest(
       String jid, long sinceTxId) throws IOException;
+
+  /**
+   * Fetch recent edits from the JournalNode's in-memory cache, for readers
+   * tailing the in-progress segment. The edits may not be committed yet:
+   * readers should only apply those returned by a quorum of nodes.
+   * @param jid the journal from which to fetch edits
+   * @param sinceTxId the first transaction which the client cares about
+   * @param maxTxns the maximum number of transactions to return
+   * @return the edits, starting at or before <code>sinceTxId</code>
+   * @throws IOException if the edits are no longer in the cache, in which
+   *         case they must be read from the segment files
+   */
+  public GetJournaledEditsResponseProto getJournaledEdits(String jid,
+      long sinceTxId, int maxTxns) throws IOException;
   
   /**
    * Begin the recovery process for a given segment. See the HDFS-3077
@@ -32,6 +32,7 @@
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.qjournal.protocol.JournalNotFormattedException;
@@ -42,6 +43,8 @@
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.RequestInfo;
+import org.apache.hadoop.hdfs.qjournal.server.JournaledEditsCache.CacheMissException;
+import org.apache.hadoop.hdfs.qjournal.server.JournaledEditsCache.CachedEdits;
 import org.apache.hadoop.hdfs.server.common.StorageErrorReporter;
 import org.apache.hadoop.hdfs.server.namenode.EditLogOutputStream;
 import org.apache.hadoop.hdfs.server.namenode.FileJournalManager;
@@ -128,11 +131,15 @@ class Journal implements Closeable {
 
   private final JournalMetrics metrics;
 
+  /** The most recently written edits, served to tailing readers. */
+  private final JournaledEditsCache cache;
 
-  Journal(File logDir, String journalId,
+
+  Journal(Configuration conf, File logDir, String journalId,
       StorageErrorReporter errorReporter) throws IOException {
     storage = new JNStorage(logDir, errorReporter);
     this.journalId = journalId;
+    this.cache = new JournaledEditsCache(conf);
 
     refreshCachedData();
     
@@ -207,6 +214,7 @@ void format(NamespaceInfo nsInfo) throws IOException {
         nsInfo);
     storage.format(nsInfo);
     refreshCachedData();
+    cache.clear();
   }
 
   /**
@@ -312,6 +320,8 @@ private void updateLastPromisedEpoch(long newEpoch) throws IOException {
   }
 
   private void abortCurSegment() throws IOException {
+    // the uncommitted end of the segment may be replaced by recovery
+    cache.clear();
     if (curSegment == null) {
       return;
     }
@@ -383,6 +393,7 @@ synchronized void journal(RequestInfo reqInfo,
     
     highestWrittenTxId = lastTxnId;
     nextTxId = lastTxnId + 1;
+    cache.storeEdits(records, firstTxnId, lastTxnId);
   }
 
   public void heartbeat(RequestInfo reqInfo) throws IOException {
@@ -625,11 +636,34 @@ public RemoteEditLogManifest getEditLogManifest(long sinceTxId)
     // of segments.
     checkFormatted();
     
+    // readers tailing edits over RPC may ask from the middle of a segment
     RemoteEditLogManifest manifest = new RemoteEditLogManifest(
-        fjm.getRemoteEditLogs(sinceTxId));
+        fjm.getRemoteEditLogs(sinceTxId, true));
     return manifest;
   }
 
+  /**
+   * @see QJournalProtocol#getJournaledEdits(String, long, int)
+   */
+  CachedEdits getJournaledEdits(long sinceTxId, int maxTxns)
+      throws IOException {
+    // Like the manifest, anyone may read the edits. The reader only trusts
+    // the edits which a quorum of JournalNodes return.
+    checkFormatted();
+    try {
+      CachedEdits edits = cache.retrieveEdits(sinceTxId, maxTxns);
+      metrics.editsCacheHits.incr();
+      return edits;
+    } catch (CacheMissException cme) {
+      metrics.editsCacheMisses.incr();
+      throw cme;
+    }
+  }
+
+  long getEditsCacheSize() {
+    return cache.getSize();
+  }
+
   /**
    * @return the current state of the given segment, or null if the
    * segment does not exist.
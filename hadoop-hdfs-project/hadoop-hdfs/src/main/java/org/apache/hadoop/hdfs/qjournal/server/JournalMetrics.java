@@ -45,6 +45,12 @@ class JournalMetrics {
   
   @Metric("Number of batches written where this node was lagging")
   MutableCounterLong batchesWrittenWhileLagging;
+
+  @Metric("Number of edit fetches served from the edits cache")
+  MutableCounterLong editsCacheHits;
+
+  @Metric("Number of edit fetches for txns no longer in the edits cache")
+  MutableCounterLong editsCacheMisses;
   
   private final int[] QUANTILE_INTERVALS = new int[] {
       1*60, // 1m
@@ -110,6 +116,11 @@ public long getCurrentLagTxns() {
     }
   }
   
+  @Metric("Number of bytes of edits held in the edits cache")
+  public long getEditsCacheSize() {
+    return journal.getEditsCacheSize();
+  }
+
   void addSync(long us) {
     for (MutableQuantiles q : syncsQuantiles) {
       q.add(us);
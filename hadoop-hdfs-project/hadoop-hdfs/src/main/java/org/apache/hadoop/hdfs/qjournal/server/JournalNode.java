@@ -76,7 +76,7 @@ synchronized Journal getOrCreateJournal(String jid) throws IOException {
     if (journal == null) {
       File logDir = getLogDir(jid);
       LOG.info("Initializing journal in directory " + logDir);      
-      journal = new Journal(logDir, jid, new ErrorReporter());
+      journal = new Journal(conf, logDir, jid, new ErrorReporter());
       journalsById.put(jid, journal);
     }
     
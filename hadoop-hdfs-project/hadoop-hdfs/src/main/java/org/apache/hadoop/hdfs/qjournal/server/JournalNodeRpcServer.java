@@ -29,6 +29,7 @@
 import org.apache.hadoop.hdfs.protocolPB.PBHelper;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocol;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetEditLogManifestResponseProto;
+import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournaledEditsResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.GetJournalStateResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.PrepareRecoveryResponseProto;
@@ -37,6 +38,7 @@
 import org.apache.hadoop.hdfs.qjournal.protocol.RequestInfo;
 import org.apache.hadoop.hdfs.qjournal.protocolPB.QJournalProtocolPB;
 import org.apache.hadoop.hdfs.qjournal.protocolPB.QJournalProtocolServerSideTranslatorPB;
+import org.apache.hadoop.hdfs.qjournal.server.JournaledEditsCache.CachedEdits;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.RemoteEditLogManifest;
 import org.apache.hadoop.ipc.ProtobufRpcEngine;
@@ -45,6 +47,7 @@
 import org.apache.hadoop.net.NetUtils;
 
 import com.google.protobuf.BlockingService;
+import com.google.protobuf.ByteString;
 
 class JournalNodeRpcServer implements QJournalProtocol {
 
@@ -125,6 +128,22 @@ public GetJournalStateResponseProto getJournalState(String journalId)
         .build();
   }
 
+  @Override
+  public GetJournaledEditsResponseProto getJournaledEdits(String jid,
+      long sinceTxId, int maxTxns) throws IOException {
+    CachedEdits edits = jn.getOrCreateJournal(jid)
+        .getJournaledEdits(sinceTxId, maxTxns);
+
+    GetJournaledEditsResponseProto.Builder builder =
+        GetJournaledEditsResponseProto.newBuilder()
+        .setTxnCount(edits.numTxns);
+    if (edits.numTxns > 0) {
+      builder.setFirstTxId(edits.firstTxId)
+          .setEditLog(ByteString.copyFrom(edits.data));
+    }
+    return builder.build();
+  }
+
   @Override
   public NewEpochResponseProto newEpoch(String journalId,
       NamespaceInfo nsInfo,
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.qjournal.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants;
+import org.apache.hadoop.hdfs.server.namenode.EditLogFileOutputStream;
+
+/**
+ * An in-memory cache of the edits most recently written to a
+ * {@link Journal}, from which readers tailing the journal, such as a
+ * standby NameNode, can fetch them over RPC instead of reading segment
+ * files over HTTP.
+ * <p>
+ * Edits are kept as the batches sent by the writer, keyed by the first
+ * transaction of each batch. The oldest batches are evicted once the cache
+ * holds more bytes than its capacity. The cached batches are always
+ * contiguous: a batch which does not follow the cached ones, as written
+ * after a restart of the writer, replaces them all.
+ */
+class JournaledEditsCache {
+
+  /**
+   * Thrown when the requested transactions are not in the cache, either
+   * because they were evicted or because they were never written to it.
+   */
+  static class CacheMissException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    CacheMissException(String msg) {
+      super(msg);
+    }
+  }
+
+  /** Edits read from the cache, in the format of an edit log file. */
+  static class CachedEdits {
+    final long firstTxId;
+    final int numTxns;
+    final byte[] data;
+
+    CachedEdits(long firstTxId, int numTxns, byte[] data) {
+      this.firstTxId = firstTxId;
+      this.numTxns = numTxns;
+      this.data = data;
+    }
+  }
+
+  private static final CachedEdits NO_EDITS = new CachedEdits(
+      HdfsConstants.INVALID_TXID, 0, null);
+
+  private final long capacity;
+  private final TreeMap<Long, byte[]> batches = new TreeMap<Long, byte[]>();
+  private long size = 0;
+  private long highestTxId = HdfsConstants.INVALID_TXID;
+
+  JournaledEditsCache(Configuration conf) {
+    this.capacity = conf.getLong(
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_JOURNALNODE_EDIT_CACHE_SIZE_DEFAULT);
+  }
+
+  /**
+   * Add a batch of edits, as written to the journal.
+   * @param records the serialized edits
+   * @param firstTxId the first transaction in the batch
+   * @param lastTxId the last transaction in the batch
+   */
+  synchronized void storeEdits(byte[] records, long firstTxId,
+      long lastTxId) {
+    if (firstTxId != highestTxId + 1) {
+      clear();
+    }
+    batches.put(firstTxId, records);
+    size += records.length;
+    highestTxId = lastTxId;
+    while (size > capacity && !batches.isEmpty()) {
+      size -= batches.pollFirstEntry().getValue().length;
+    }
+  }
+
+  /** Discard all the cached edits. */
+  synchronized void clear() {
+    batches.clear();
+    size = 0;
+    highestTxId = HdfsConstants.INVALID_TXID;
+  }
+
+  /**
+   * Get the cached edits starting with the batch containing
+   * <code>sinceTxId</code>. Whole batches are returned, until at least
+   * <code>maxTxns</code> transactions are returned or the cache runs out.
+   *
+   * @param sinceTxId the first transaction the caller wants
+   * @param maxTxns the number of transactions after which to stop
+   * @return the edits, preceded by an edit log header, or no edits if
+   *         <code>sinceTxId</code> has not been written yet
+   * @throws CacheMissException if <code>sinceTxId</code> is not cached
+   */
+  synchronized CachedEdits retrieveEdits(long sinceTxId, int maxTxns)
+      throws IOException {
+    if (batches.isEmpty() || sinceTxId < batches.firstKey()) {
+      throw new CacheMissException("Transaction " + sinceTxId +
+          " is not cached; cached transactions: " + (batches.isEmpty() ?
+              "none" : batches.firstKey() + "-" + highestTxId));
+    }
+    if (sinceTxId > highestTxId) {
+      return NO_EDITS;
+    }
+
+    long firstTxId = batches.floorKey(sinceTxId);
+    long lastTxId = firstTxId - 1;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    EditLogFileOutputStream.writeHeader(out);
+    for (Map.Entry<Long, byte[]> batch :
+        batches.tailMap(firstTxId, true).entrySet()) {
+      Long next = batches.higherKey(batch.getKey());
+      out.write(batch.getValue());
+      lastTxId = next == null ? highestTxId : next - 1;
+      if (lastTxId - sinceTxId + 1 >= maxTxns) {
+        break;
+      }
+    }
+    out.flush();
+    return new CachedEdits(firstTxId, (int) (lastTxId - firstTxId + 1),
+        bytes.toByteArray());
+  }
+
+  /** @return the number of bytes of edits in the cache */
+  synchronized long getSize() {
+    return size;
+  }
+}
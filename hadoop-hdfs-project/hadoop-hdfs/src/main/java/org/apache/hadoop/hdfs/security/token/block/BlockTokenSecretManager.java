@@ -77,6 +77,7 @@ public class BlockTokenSecretManager extends
   private Map<Integer, BlockKey> allKeys;
   private String blockPoolId;
   private String encryptionAlgorithm;
+  private volatile BlockTokenVerificationCache tokenCache;
   
   private SecureRandom nonceGenerator = new SecureRandom();
 
@@ -289,6 +290,27 @@ public void checkAccess(BlockTokenIdentifier id, String userId,
   /** Check if access should be allowed. userID is not checked if null */
   public void checkAccess(Token<BlockTokenIdentifier> token, String userId,
       ExtendedBlock block, AccessMode mode) throws InvalidToken {
+    final BlockTokenVerificationCache cache = tokenCache;
+    if (cache != null) {
+      BlockTokenVerificationCache.VerifiedToken cached = cache.get(token);
+      if (cached != null && isCurrentKey(cached.key)) {
+        try {
+          checkAccess(cached.id, userId, block, mode);
+        } catch (InvalidToken e) {
+          if (isExpired(cached.id.getExpiryDate())) {
+            cache.remove(token);
+          }
+          throw e;
+        }
+        cache.hit();
+        return;
+      } else if (cached != null) {
+        // the key was removed since the token was verified
+        cache.remove(token);
+      }
+      cache.miss();
+    }
+
     BlockTokenIdentifier id = new BlockTokenIdentifier();
     try {
       id.readFields(new DataInputStream(new ByteArrayInputStream(token
@@ -299,10 +321,37 @@ public void checkAccess(Token<BlockTokenIdentifier> token, String userId,
               + ", block=" + block + ", access mode=" + mode);
     }
     checkAccess(id, userId, block, mode);
-    if (!Arrays.equals(retrievePassword(id), token.getPassword())) {
+    BlockKey key = getKey(id);
+    if (!Arrays.equals(createPassword(id.getBytes(), key.getKey()),
+        token.getPassword())) {
       throw new InvalidToken("Block token with " + id.toString()
           + " doesn't have the correct token password");
     }
+    if (cache != null) {
+      cache.put(token, id, key);
+    }
+  }
+
+  /**
+   * @return whether the key is still held under its id. Keys re-sent by the
+   *         NameNode with a new expiry date are the same key.
+   */
+  private boolean isCurrentKey(BlockKey key) {
+    BlockKey current;
+    synchronized (this) {
+      current = allKeys.get(key.getKeyId());
+    }
+    return current == key || (current != null
+        && Arrays.equals(current.getEncodedKey(), key.getEncodedKey()));
+  }
+
+  /**
+   * Use a cache of verified tokens in
+   * {@link #checkAccess(Token, String, ExtendedBlock, AccessMode)}, or none
+   * if null.
+   */
+  public void setTokenCache(BlockTokenVerificationCache tokenCache) {
+    this.tokenCache = tokenCache;
   }
 
   private static boolean isExpired(long expiryDate) {
@@ -374,6 +423,12 @@ public byte[] retrievePassword(BlockTokenIdentifier identifier)
       throw new InvalidToken("Block token with " + identifier.toString()
           + " is expired.");
     }
+    return createPassword(identifier.getBytes(), getKey(identifier).getKey());
+  }
+
+  /** @return the block key the token was created with */
+  private BlockKey getKey(BlockTokenIdentifier identifier)
+      throws InvalidToken {
     BlockKey key = null;
     synchronized (this) {
       key = allKeys.get(identifier.getKeyId());
@@ -383,7 +438,7 @@ public byte[] retrievePassword(BlockTokenIdentifier identifier)
           + identifier.toString() + ", since the required block key (keyID="
           + identifier.getKeyId() + ") doesn't exist.");
     }
-    return createPassword(identifier.getBytes(), key.getKey());
+    return key;
   }
   
   /**
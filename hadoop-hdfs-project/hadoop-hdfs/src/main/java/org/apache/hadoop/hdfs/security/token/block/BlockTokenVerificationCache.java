@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.security.token.block;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.security.token.Token;
+
+/**
+ * A bounded cache of the block tokens whose password was verified, so that
+ * a token used for many operations, as by a client doing random reads, has
+ * its HMAC computed only once.
+ * <p>
+ * A cached token is only trusted while the block key it was verified with
+ * is still held by its {@link BlockTokenSecretManager}: once the key is
+ * removed, or replaced with another secret, the token is dropped from the
+ * cache and verified again on its next use. The other
+ * checks, including the expiry of the token, are still done on every use,
+ * and expired tokens are dropped from the cache when they are looked up.
+ * The least recently used tokens are evicted once the cache is full.
+ */
+@InterfaceAudience.Private
+public class BlockTokenVerificationCache {
+
+  /** A token, by the bytes of its identifier and password. */
+  private static class TokenKey {
+    private final byte[] identifier;
+    private final byte[] password;
+    private final int hash;
+
+    TokenKey(byte[] identifier, byte[] password) {
+      this.identifier = identifier;
+      this.password = password;
+      this.hash = 31 * Arrays.hashCode(identifier) + Arrays.hashCode(password);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof TokenKey)) {
+        return false;
+      }
+      TokenKey that = (TokenKey) obj;
+      return hash == that.hash && Arrays.equals(identifier, that.identifier)
+          && Arrays.equals(password, that.password);
+    }
+  }
+
+  /** A verified token and the key it was verified with. */
+  static class VerifiedToken {
+    final BlockTokenIdentifier id;
+    final BlockKey key;
+
+    VerifiedToken(BlockTokenIdentifier id, BlockKey key) {
+      this.id = id;
+      this.key = key;
+    }
+  }
+
+  private final int capacity;
+  private final Map<TokenKey, VerifiedToken> tokens;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param capacity the maximum number of tokens to keep
+   */
+  public BlockTokenVerificationCache(final int capacity) {
+    this.capacity = capacity;
+    this.tokens = new LinkedHashMap<TokenKey, VerifiedToken>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<TokenKey, VerifiedToken> eldest) {
+        return size() > BlockTokenVerificationCache.this.capacity;
+      }
+    };
+  }
+
+  /**
+   * @return the verified token with the identifier and password of the
+   *         given token, or null if it is not cached
+   */
+  synchronized VerifiedToken get(Token<BlockTokenIdentifier> token) {
+    return tokens.get(new TokenKey(token.getIdentifier(),
+        token.getPassword()));
+  }
+
+  /** Cache a token whose password was verified with the given key. */
+  synchronized void put(Token<BlockTokenIdentifier> token,
+      BlockTokenIdentifier id, BlockKey key) {
+    tokens.put(new TokenKey(token.getIdentifier(), token.getPassword()),
+        new VerifiedToken(id, key));
+  }
+
+  /** Drop a token from the cache. */
+  synchronized void remove(Token<BlockTokenIdentifier> token) {
+    tokens.remove(new TokenKey(token.getIdentifier(), token.getPassword()));
+  }
+
+  void hit() {
+    hits.incrementAndGet();
+  }
+
+  void miss() {
+    misses.incrementAndGet();
+  }
+
+  /** @return the number of tokens in the cache */
+  public synchronized int size() {
+    return tokens.size();
+  }
+
+  /** @return the number of token checks which found the token cached */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /** @return the number of token checks which had to verify the password */
+  public long getMisses() {
+    return misses.get();
+  }
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.balancer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Limits the number of concurrent block moves involving each datanode,
+ * across all the namespaces being balanced, since a datanode accepts a
+ * bounded number of balancing moves whatever their block pool.
+ * <p>
+ * The limit of a datanode adapts to its measured throughput. It starts at
+ * the maximum, is halved when a move fails, is decremented when a move is
+ * much slower than the recent fastest moves of the datanode, meaning the
+ * datanode is saturated and more concurrent moves only make each of them
+ * slower, and is incremented otherwise.
+ */
+@InterfaceAudience.Private
+class AdaptiveMoveLimiter {
+  /** How much the peak rate decays with each move. */
+  private static final double PEAK_RATE_DECAY = 0.95;
+
+  /** The concurrent moves of one datanode. */
+  static class Limit {
+    private final int maxMoves;
+    private int limit;
+    private int pending = 0;
+    /** The decaying peak rate of a single move, in bytes per millisecond. */
+    private double peakRate = 0;
+
+    private Limit(int maxMoves) {
+      this.maxMoves = maxMoves;
+      this.limit = maxMoves;
+    }
+
+    /** @return true if one more move may start. */
+    synchronized boolean tryAcquire() {
+      if (pending < limit) {
+        pending++;
+        return true;
+      }
+      return false;
+    }
+
+    /** A move acquired with {@link #tryAcquire()} ended or was cancelled. */
+    synchronized void release() {
+      Preconditions.checkState(pending > 0, "No pending move");
+      pending--;
+    }
+
+    /** Adapt the limit to a move which succeeded. */
+    synchronized void moveSucceeded(long bytes, long elapsedMillis) {
+      final double rate = (double)bytes / Math.max(1L, elapsedMillis);
+      peakRate = Math.max(rate, peakRate * PEAK_RATE_DECAY);
+      if (rate >= peakRate / 2) {
+        limit = Math.min(maxMoves, limit + 1);
+      } else {
+        limit = Math.max(1, limit - 1);
+      }
+    }
+
+    /** Adapt the limit to a move which failed. */
+    synchronized void moveFailed() {
+      limit = Math.max(1, limit / 2);
+    }
+
+    synchronized int getLimit() {
+      return limit;
+    }
+  }
+
+  private final int maxMoves;
+  /** Map storage IDs to the limits of the datanodes. */
+  private final Map<String, Limit> limits = new HashMap<String, Limit>();
+
+  AdaptiveMoveLimiter(int maxMoves) {
+    Preconditions.checkArgument(maxMoves > 0, "maxMoves = %s", maxMoves);
+    this.maxMoves = maxMoves;
+  }
+
+  /** @return the limit of the datanode with the given storage ID. */
+  synchronized Limit get(String storageID) {
+    Limit l = limits.get(storageID);
+    if (l == null) {
+      l = new Limit(maxMoves);
+      limits.put(storageID, l);
+    }
+    return l;
+  }
+}
@@ -36,6 +36,7 @@
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.Formatter;
 import java.util.HashMap;
@@ -44,6 +45,7 @@
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -120,6 +122,14 @@
  * At the end of each iteration, the balancer obtains updated datanodes
  * information from the namenode.
  * 
+ * <p>In a federated cluster, the namespaces are balanced concurrently, and
+ * an iteration ends when all of them are done. The number of concurrent
+ * moves of each datanode is shared by the namespaces, and adapts to the
+ * measured throughput of the datanode; see {@link AdaptiveMoveLimiter}.
+ * Within a namespace, the largest blocks are moved first, to the targets
+ * on the least utilized racks first, and the blocks of a source are fetched
+ * from the namenode while its already fetched blocks are being moved.
+ * 
  * <p>A system property that limits the balancer's use of bandwidth is 
  * defined in the default configuration file:
  * <pre>
@@ -208,9 +218,9 @@ public class Balancer {
                                = new LinkedList<Source>();
   private Collection<Source> aboveAvgUtilizedDatanodes
                                = new LinkedList<Source>();
-  private Collection<BalancerDatanode> belowAvgUtilizedDatanodes
+  private List<BalancerDatanode> belowAvgUtilizedDatanodes
                                = new LinkedList<BalancerDatanode>();
-  private Collection<BalancerDatanode> underUtilizedDatanodes
+  private List<BalancerDatanode> underUtilizedDatanodes
                                = new LinkedList<BalancerDatanode>();
   
   private Collection<Source> sources
@@ -226,12 +236,16 @@ public class Balancer {
                  = new HashMap<String, BalancerDatanode>();
   
   private NetworkTopology cluster;
+  private final AdaptiveMoveLimiter moveLimiter;
   final static private int MOVER_THREAD_POOL_SIZE = 1000;
   final private ExecutorService moverExecutor = 
     Executors.newFixedThreadPool(MOVER_THREAD_POOL_SIZE);
   final static private int DISPATCHER_THREAD_POOL_SIZE = 200;
   final private ExecutorService dispatcherExecutor =
     Executors.newFixedThreadPool(DISPATCHER_THREAD_POOL_SIZE);
+  // fetches the blocks of the sources while their dispatchers move blocks
+  final private ExecutorService blockFetcherExecutor =
+    Executors.newFixedThreadPool(DISPATCHER_THREAD_POOL_SIZE);
   
 
   /* This class keeps track of a scheduled block move */
@@ -330,6 +344,7 @@ private boolean addTo(BalancerDatanode bdn) {
     /* Dispatch the block move task to the proxy source & wait for the response
      */
     private void dispatch() {
+      final long startTime = Time.monotonicNow();
       Socket sock = new Socket();
       DataOutputStream out = null;
       DataInputStream in = null;
@@ -356,6 +371,9 @@ private void dispatch() {
         sendRequest(out);
         receiveResponse(in);
         bytesMoved.inc(block.getNumBytes());
+        final long elapsed = Time.monotonicNow() - startTime;
+        proxySource.moveLimit.moveSucceeded(block.getNumBytes(), elapsed);
+        target.moveLimit.moveSucceeded(block.getNumBytes(), elapsed);
         LOG.info( "Moving block " + block.getBlock().getBlockId() +
               " from "+ source.getDisplayName() + " to " +
               target.getDisplayName() + " through " +
@@ -367,6 +385,8 @@ private void dispatch() {
             target.getDisplayName() + " through " +
             proxySource.getDisplayName() +
             ": "+e.getMessage());
+        proxySource.moveLimit.moveFailed();
+        target.moveLimit.moveFailed();
       } finally {
         IOUtils.closeStream(out);
         IOUtils.closeStream(in);
@@ -478,6 +498,16 @@ private long getNumBytes() {
     }
   }
   
+  /* Order blocks from the largest to the smallest */
+  private static final Comparator<BalancerBlock> LARGEST_BLOCK_FIRST =
+      new Comparator<BalancerBlock>() {
+    @Override
+    public int compare(BalancerBlock a, BalancerBlock b) {
+      final long x = a.getNumBytes(), y = b.getNumBytes();
+      return x > y ? -1 : x < y ? 1 : 0;
+    }
+  };
+
   /* The class represents a desired move of bytes between two nodes 
    * and the target.
    * An object of this class is stored in a source node. 
@@ -510,6 +540,8 @@ private static class BalancerDatanode {
     final DatanodeInfo datanode;
     final double utilization;
     final long maxSize2Move;
+    // the concurrent moves of the datanode, shared by all the namespaces
+    final AdaptiveMoveLimiter.Limit moveLimit;
     protected long scheduledSize = 0L;
     //  blocks being moved but not confirmed yet
     private List<PendingBlockMove> pendingBlocks = 
@@ -524,8 +556,10 @@ public String toString() {
     /* Constructor 
      * Depending on avgutil & threshold, calculate maximum bytes to move 
      */
-    private BalancerDatanode(DatanodeInfo node, BalancingPolicy policy, double threshold) {
+    private BalancerDatanode(DatanodeInfo node, BalancingPolicy policy,
+        double threshold, AdaptiveMoveLimiter.Limit moveLimit) {
       datanode = node;
+      this.moveLimit = moveLimit;
       utilization = policy.getUtilization(node);
       final double avgUtil = policy.getAvgUtilization();
       long maxSizeToMove;
@@ -573,14 +607,6 @@ protected void incScheduledSize(long size) {
       scheduledSize += size;
     }
     
-    /* Check if the node can schedule more blocks to move */
-    synchronized private boolean isPendingQNotFull() {
-      if ( pendingBlocks.size() < MAX_NUM_CONCURRENT_MOVES ) {
-        return true;
-      }
-      return false;
-    }
-    
     /* Check if all the dispatched moves are done */
     synchronized private boolean isPendingQEmpty() {
       return pendingBlocks.isEmpty();
@@ -589,7 +615,7 @@ synchronized private boolean isPendingQEmpty() {
     /* Add a scheduled block move to the node */
     private synchronized boolean addPendingBlock(
         PendingBlockMove pendingBlock) {
-      if (isPendingQNotFull()) {
+      if (moveLimit.tryAcquire()) {
         return pendingBlocks.add(pendingBlock);
       }
       return false;
@@ -598,7 +624,11 @@ private synchronized boolean addPendingBlock(
     /* Remove a scheduled block move from the node */
     private synchronized boolean  removePendingBlock(
         PendingBlockMove pendingBlock) {
-      return pendingBlocks.remove(pendingBlock);
+      if (pendingBlocks.remove(pendingBlock)) {
+        moveLimit.release();
+        return true;
+      }
+      return false;
     }
   }
   
@@ -622,10 +652,13 @@ public void run() {
      */
     private List<BalancerBlock> srcBlockList
             = new ArrayList<BalancerBlock>();
+    // the blocks being fetched from the namenode, if any
+    private Future<BlockWithLocations[]> blockFetch = null;
     
     /* constructor */
-    private Source(DatanodeInfo node, BalancingPolicy policy, double threshold) {
-      super(node, policy, threshold);
+    private Source(DatanodeInfo node, BalancingPolicy policy,
+        double threshold, AdaptiveMoveLimiter.Limit moveLimit) {
+      super(node, policy, threshold, moveLimit);
     }
     
     /** Add a node task */
@@ -641,13 +674,44 @@ private Iterator<BalancerBlock> getBlockIterator() {
       return srcBlockList.iterator();
     }
     
-    /* fetch new blocks of this source from namenode and
-     * update this source's block list & the global block list
+    /* start fetching new blocks of this source from namenode,
+     * while the blocks already fetched are being moved
+     */
+    private void fetchBlocks() {
+      final long size = Math.min(MAX_BLOCKS_SIZE_TO_FETCH, blocksToReceive);
+      blockFetch = blockFetcherExecutor.submit(
+          new Callable<BlockWithLocations[]>() {
+        @Override
+        public BlockWithLocations[] call() throws IOException {
+          return nnc.namenode.getBlocks(datanode, size).getBlocks();
+        }
+      });
+    }
+
+    /* wait for the blocks being fetched and add them to the block lists
+     * Return false if the blocks could not be fetched.
+     */
+    private boolean receiveBlocks() {
+      try {
+        blocksToReceive -= addBlocks(blockFetch.get());
+        return true;
+      } catch (ExecutionException e) {
+        LOG.warn("Exception while getting block list", e.getCause());
+      } catch (InterruptedException e) {
+        LOG.warn("Interrupted while getting block list");
+        Thread.currentThread().interrupt();
+      } finally {
+        blockFetch = null;
+      }
+      return false;
+    }
+
+    /* update this source's block list & the global block list
+     * with the given blocks, the largest blocks first so that
+     * fewer moves are needed for the same number of bytes.
      * Return the total size of the received blocks in the number of bytes.
      */
-    private long getBlockList() throws IOException {
-      BlockWithLocations[] newBlocks = nnc.namenode.getBlocks(datanode, 
-        Math.min(MAX_BLOCKS_SIZE_TO_FETCH, blocksToReceive)).getBlocks();
+    private long addBlocks(BlockWithLocations[] newBlocks) {
       long bytesReceived = 0;
       for (BlockWithLocations blk : newBlocks) {
         bytesReceived += blk.getBlock().getNumBytes();
@@ -676,6 +740,7 @@ private long getBlockList() throws IOException {
           }
         }
       }
+      Collections.sort(srcBlockList, LARGEST_BLOCK_FIRST);
       return bytesReceived;
     }
 
@@ -744,18 +809,42 @@ private boolean shouldFetchMoreBlocks() {
      * then sends a request to the proxy source to start the block move
      * when the source's block list falls below a threshold, it asks
      * the namenode for more blocks.
+     * The blocks are fetched in the background, so that the blocks already
+     * fetched keep being moved meanwhile.
      * It terminates when it has dispatch enough block move tasks or
      * it has received enough blocks from the namenode, or 
      * the elapsed time of the iteration has exceeded the max time limit.
      */ 
     private static final long MAX_ITERATION_TIME = 20*60*1000L; //20 mins
     private void dispatchBlocks() {
+      try {
+        dispatchBlocksAndFetch();
+      } finally {
+        if (blockFetch != null) {
+          blockFetch.cancel(true);
+          blockFetch = null;
+        }
+      }
+    }
+
+    private void dispatchBlocksAndFetch() {
       long startTime = Time.now();
       this.blocksToReceive = 2*scheduledSize;
       boolean isTimeUp = false;
       int noPendingBlockIteration = 0;
       while(!isTimeUp && scheduledSize>0 &&
-          (!srcBlockList.isEmpty() || blocksToReceive>0)) {
+          (!srcBlockList.isEmpty() || blocksToReceive>0
+              || blockFetch != null)) {
+        if (blockFetch == null && shouldFetchMoreBlocks()) {
+          fetchBlocks();
+        }
+        if (blockFetch != null && blockFetch.isDone()) {
+          if (!receiveBlocks()) {
+            return;
+          }
+          continue;
+        }
+
         PendingBlockMove pendingBlock = chooseNextBlockToMove();
         if (pendingBlock != null) {
           // move the block
@@ -765,18 +854,17 @@ private void dispatchBlocks() {
         
         /* Since we can not schedule any block to move,
          * filter any moved blocks from the source block list and
-         * check if we should fetch more blocks from the namenode
+         * check if we should wait for or fetch more blocks from the namenode
          */
         filterMovedBlocks(); // filter already moved blocks
-        if (shouldFetchMoreBlocks()) {
-          // fetch new blocks
-          try {
-            blocksToReceive -= getBlockList();
-            continue;
-          } catch (IOException e) {
-            LOG.warn("Exception while getting block list", e);
+        if (blockFetch != null) {
+          // wait for the new blocks
+          if (!receiveBlocks()) {
             return;
           }
+          continue;
+        } else if (shouldFetchMoreBlocks()) {
+          continue;
         } else {
           // source node cannot find a pendingBlockToMove, iteration +1
           noPendingBlockIteration++;
@@ -824,11 +912,16 @@ private static void checkReplicationPolicyCompatibility(Configuration conf
    * builds the communication proxies to
    * namenode as a client and a secondary namenode and retry proxies
    * when connection fails.
+   * The move limiter is shared by the balancers of all the namespaces.
    */
-  Balancer(NameNodeConnector theblockpool, Parameters p, Configuration conf) {
+  Balancer(NameNodeConnector theblockpool, Parameters p,
+      AdaptiveMoveLimiter moveLimiter, Configuration conf) {
     this.threshold = p.threshold;
-    this.policy = p.policy;
+    // the balancers of the namespaces run concurrently, each with its own
+    // utilizations
+    this.policy = p.policy.newInstance();
     this.nnc = theblockpool;
+    this.moveLimiter = moveLimiter;
     cluster = NetworkTopology.getInstance(conf);
   }
   
@@ -849,7 +942,8 @@ static private void shuffleArray(DatanodeInfo[] datanodes) {
    * are put into the over-utilized datanodes, above average utilized
    * datanodes, below average utilized datanodes, and
    * underutilized datanodes lists. This will add some randomness
-   * to the node matching later on.
+   * to the node matching later on. The targets on the least utilized racks
+   * are then matched first.
    * 
    * @return the total number of bytes that are 
    *                needed to move to make the cluster balanced.
@@ -880,7 +974,8 @@ private long initNodes(DatanodeInfo[] datanodes) {
       BalancerDatanode datanodeS;
       final double avg = policy.getAvgUtilization();
       if (policy.getUtilization(datanode) >= avg) {
-        datanodeS = new Source(datanode, policy, threshold);
+        datanodeS = new Source(datanode, policy, threshold,
+            moveLimiter.get(datanode.getStorageID()));
         if (isAboveAvgUtilized(datanodeS)) {
           this.aboveAvgUtilizedDatanodes.add((Source)datanodeS);
         } else {
@@ -891,7 +986,8 @@ private long initNodes(DatanodeInfo[] datanodes) {
               -threshold)*datanodeS.datanode.getCapacity()/100.0);
         }
       } else {
-        datanodeS = new BalancerDatanode(datanode, policy, threshold);
+        datanodeS = new BalancerDatanode(datanode, policy, threshold,
+            moveLimiter.get(datanode.getStorageID()));
         if ( isBelowOrEqualAvgUtilized(datanodeS)) {
           this.belowAvgUtilizedDatanodes.add(datanodeS);
         } else {
@@ -905,6 +1001,7 @@ assert isUnderUtilized(datanodeS) : "isUnderUtilized("
       }
       this.datanodes.put(datanode.getStorageID(), datanodeS);
     }
+    sortByRackUtilization();
 
     //logging
     logNodes();
@@ -918,6 +1015,42 @@ assert isUnderUtilized(datanodeS) : "isUnderUtilized("
     return Math.max(overLoadedBytes, underLoadedBytes);
   }
 
+  /* Order the targets from the least utilized rack to the most utilized one,
+   * so that the emptiest racks receive blocks first.
+   */
+  private void sortByRackUtilization() {
+    // the used space and the capacity of each rack
+    final Map<String, double[]> racks = new HashMap<String, double[]>();
+    for (BalancerDatanode d : datanodes.values()) {
+      final String rack = d.getDatanode().getNetworkLocation();
+      double[] r = racks.get(rack);
+      if (r == null) {
+        r = new double[2];
+        racks.put(rack, r);
+      }
+      r[0] += d.utilization * d.getDatanode().getCapacity();
+      r[1] += d.getDatanode().getCapacity();
+    }
+    final Map<String, Double> rackUtilization = new HashMap<String, Double>();
+    for (Map.Entry<String, double[]> e : racks.entrySet()) {
+      final double[] r = e.getValue();
+      rackUtilization.put(e.getKey(), r[1] > 0 ? r[0] / r[1] : 0.0);
+    }
+
+    final Comparator<BalancerDatanode> leastUtilizedRackFirst
+        = new Comparator<BalancerDatanode>() {
+      @Override
+      public int compare(BalancerDatanode a, BalancerDatanode b) {
+        return Double.compare(
+            rackUtilization.get(a.getDatanode().getNetworkLocation()),
+            rackUtilization.get(b.getDatanode().getNetworkLocation()));
+      }
+    };
+    // stable sorts: the nodes of a rack stay shuffled
+    Collections.sort(underUtilizedDatanodes, leastUtilizedRackFirst);
+    Collections.sort(belowAvgUtilizedDatanodes, leastUtilizedRackFirst);
+  }
+
   /* log the over utilized & under utilized nodes */
   private void logNodes() {
     logNodes("over-utilized", overUtilizedDatanodes);
@@ -1380,13 +1513,15 @@ private ReturnStatus run(int iteration, Formatter formatter,
             " in this iteration");
       }
 
-      formatter.format("%-24s %10d  %19s  %18s  %17s%n",
-          DateFormat.getDateTimeInstance().format(new Date()),
-          iteration,
-          StringUtils.byteDesc(bytesMoved.get()),
-          StringUtils.byteDesc(bytesLeftToMove),
-          StringUtils.byteDesc(bytesToMove)
-          );
+      synchronized (formatter) {
+        formatter.format("%-24s %10d  %19s  %18s  %17s%n",
+            DateFormat.getDateTimeInstance().format(new Date()),
+            iteration,
+            StringUtils.byteDesc(nnc.getBytesMoved()),
+            StringUtils.byteDesc(bytesLeftToMove),
+            StringUtils.byteDesc(bytesToMove)
+            );
+      }
       
       /* For each pair of <source, target>, start a thread that repeatedly 
        * decide a block to be moved and its proxy source, 
@@ -1394,7 +1529,17 @@ private ReturnStatus run(int iteration, Formatter formatter,
        * available to move.
        * Exit no byte has been moved for 5 consecutive iterations.
        */
-      if (!this.nnc.shouldContinue(dispatchBlockMoves())) {
+      final long startTime = Time.monotonicNow();
+      final long bytesMovedInIteration = dispatchBlockMoves();
+      final long elapsed = Math.max(1L, Time.monotonicNow() - startTime);
+      LOG.info("Iteration " + iteration + " of " + nnc.nameNodeUri
+          + ": moved " + StringUtils.byteDesc(bytesMovedInIteration)
+          + " in " + time2Str(elapsed) + " ("
+          + StringUtils.byteDesc(bytesMovedInIteration * 1000 / elapsed)
+          + "/s), " + StringUtils.byteDesc(
+              Math.max(0L, bytesLeftToMove - bytesMovedInIteration))
+          + " left to move");
+      if (!this.nnc.shouldContinue(bytesMovedInIteration)) {
         return ReturnStatus.NO_MOVE_PROGRESS;
       }
 
@@ -1411,6 +1556,7 @@ private ReturnStatus run(int iteration, Formatter formatter,
     } finally {
       // shutdown thread pools
       dispatcherExecutor.shutdownNow();
+      blockFetcherExecutor.shutdownNow();
       moverExecutor.shutdownNow();
     }
   }
@@ -1418,11 +1564,12 @@ private ReturnStatus run(int iteration, Formatter formatter,
   /**
    * Balance all namenodes.
    * For each iteration,
-   * for each namenode,
+   * for each namenode concurrently,
    * execute a {@link Balancer} to work through all datanodes once.  
+   * The iteration ends when the balancers of all the namenodes are done.
    */
   static int run(Collection<URI> namenodes, final Parameters p,
-      Configuration conf) throws IOException, InterruptedException {
+      final Configuration conf) throws IOException, InterruptedException {
     final long sleeptime = 2000*conf.getLong(
         DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY,
         DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_DEFAULT);
@@ -1434,6 +1581,10 @@ static int run(Collection<URI> namenodes, final Parameters p,
     
     final List<NameNodeConnector> connectors
         = new ArrayList<NameNodeConnector>(namenodes.size());
+    final AdaptiveMoveLimiter moveLimiter
+        = new AdaptiveMoveLimiter(MAX_NUM_CONCURRENT_MOVES);
+    final ExecutorService namespaceExecutor
+        = Executors.newFixedThreadPool(Math.max(1, namenodes.size()));
     try {
       for (URI uri : namenodes) {
         connectors.add(new NameNodeConnector(uri, conf));
@@ -1442,25 +1593,48 @@ static int run(Collection<URI> namenodes, final Parameters p,
       boolean done = false;
       for(int iteration = 0; !done; iteration++) {
         done = true;
-        Collections.shuffle(connectors);
-        for(NameNodeConnector nnc : connectors) {
-          final Balancer b = new Balancer(nnc, p, conf);
-          final ReturnStatus r = b.run(iteration, formatter, conf);
-          // clean all lists
-          b.resetData(conf);
+        final List<Future<ReturnStatus>> results
+            = new ArrayList<Future<ReturnStatus>>(connectors.size());
+        for(final NameNodeConnector nnc : connectors) {
+          final int i = iteration;
+          results.add(namespaceExecutor.submit(new Callable<ReturnStatus>() {
+            @Override
+            public ReturnStatus call() {
+              final Balancer b = new Balancer(nnc, p, moveLimiter, conf);
+              final ReturnStatus r = b.run(i, formatter, conf);
+              // clean all lists
+              b.resetData(conf);
+              return r;
+            }
+          }));
+        }
+
+        ReturnStatus error = null;
+        for(Future<ReturnStatus> result : results) {
+          final ReturnStatus r;
+          try {
+            r = result.get();
+          } catch (ExecutionException e) {
+            throw new IOException("Failed to balance a namespace",
+                e.getCause());
+          }
           if (r == ReturnStatus.IN_PROGRESS) {
             done = false;
-          } else if (r != ReturnStatus.SUCCESS) {
-            //must be an error statue, return.
-            return r.code;
+          } else if (r != ReturnStatus.SUCCESS && error == null) {
+            //must be an error statue
+            error = r;
           }
         }
+        if (error != null) {
+          return error.code;
+        }
 
         if (!done) {
           Thread.sleep(sleeptime);
         }
       }
     } finally {
+      namespaceExecutor.shutdownNow();
       for(NameNodeConnector nnc : connectors) {
         nnc.close();
       }
@@ -41,6 +41,9 @@ void reset() {
   /** Get the policy name. */
   abstract String getName();
 
+  /** Create a policy of the same kind, with its own spaces. */
+  abstract BalancingPolicy newInstance();
+
   /** Accumulate used space and capacity. */
   abstract void accumulateSpaces(DatanodeInfo d);
 
@@ -83,6 +86,11 @@ String getName() {
       return "datanode";
     }
 
+    @Override
+    Node newInstance() {
+      return new Node();
+    }
+
     @Override
     void accumulateSpaces(DatanodeInfo d) {
       totalCapacity += d.getCapacity();
@@ -107,6 +115,11 @@ String getName() {
       return "blockpool";
     }
 
+    @Override
+    Pool newInstance() {
+      return new Pool();
+    }
+
     @Override
     void accumulateSpaces(DatanodeInfo d) {
       totalCapacity += d.getCapacity();
@@ -68,6 +68,7 @@ class NameNodeConnector {
   private long keyUpdaterInterval;
   // used for balancer
   private int notChangedIterations = 0;
+  private long bytesMoved = 0L;
   private BlockTokenSecretManager blockTokenSecretManager;
   private Daemon keyupdaterthread; // AccessKeyUpdater thread
   private DataEncryptionKey encryptionKey;
@@ -122,7 +123,12 @@ class NameNodeConnector {
     }
   }
 
+  /**
+   * Account for the bytes moved in an iteration, and decide whether to
+   * continue balancing the namespace.
+   */
   boolean shouldContinue(long dispatchBlockMoveBytes) {
+    bytesMoved += dispatchBlockMoveBytes;
     if (dispatchBlockMoveBytes > 0) {
       notChangedIterations = 0;
     } else {
@@ -136,6 +142,11 @@ boolean shouldContinue(long dispatchBlockMoveBytes) {
     return true;
   }
   
+  /** @return the bytes moved in the namespace in all the iterations. */
+  long getBytesMoved() {
+    return bytesMoved;
+  }
+
   /** Get an access token for a block. */
   Token<BlockTokenIdentifier> getAccessToken(ExtendedBlock eb
       ) throws IOException {
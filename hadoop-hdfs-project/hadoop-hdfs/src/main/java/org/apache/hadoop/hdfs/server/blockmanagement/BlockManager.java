@@ -130,6 +130,37 @@ public long getScheduledReplicationBlocksCount() {
     return scheduledReplicationBlocksCount;
   }
   /** Used by metrics */
+  public double getHighestPriorityReplicationRate() {
+    return replicationScheduler.getScheduledRate(
+        UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY);
+  }
+  /** Used by metrics */
+  public double getVeryUnderReplicatedReplicationRate() {
+    return replicationScheduler.getScheduledRate(
+        UnderReplicatedBlocks.QUEUE_VERY_UNDER_REPLICATED);
+  }
+  /** Used by metrics */
+  public double getUnderReplicatedReplicationRate() {
+    return replicationScheduler.getScheduledRate(
+        UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED);
+  }
+  /** Used by metrics */
+  public double getBadlyDistributedReplicationRate() {
+    return replicationScheduler.getScheduledRate(
+        UnderReplicatedBlocks.QUEUE_REPLICAS_BADLY_DISTRIBUTED);
+  }
+  /** Used by metrics */
+  public double getCompletedReplicationRate() {
+    return replicationScheduler.getCompletedRate();
+  }
+  /** Used by metrics */
+  public long getReplicationRecoveryEta() {
+    // missing blocks cannot be replicated
+    return replicationScheduler.getRecoveryEta(
+        neededReplications.getUnderReplicatedBlockCount()
+        + pendingReplicationBlocksCount);
+  }
+  /** Used by metrics */
   public long getPendingDeletionBlocksCount() {
     return invalidateBlocks.numBlocks();
   }
@@ -211,6 +242,9 @@ public int getPendingDataNodeMessageCount() {
   final float blocksInvalidateWorkPct;
   final int blocksReplWorkMultiplier;
 
+  /** sizes the replication work of datanodes */
+  private final ReplicationScheduler replicationScheduler;
+
   /** variable to enable check for enough racks */
   final boolean shouldCheckForEnoughRacks;
   
@@ -285,6 +319,8 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
 
     this.blocksInvalidateWorkPct = DFSUtil.getInvalidateWorkPctPerIteration(conf);
     this.blocksReplWorkMultiplier = DFSUtil.getReplWorkMultiplier(conf);
+    this.replicationScheduler = new ReplicationScheduler(conf,
+        maxReplicationStreams, replicationStreamsHardLimit);
 
     this.replicationRecheckInterval = 
       conf.getInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 
@@ -298,6 +334,8 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
     LOG.info("maxReplication             = " + maxReplication);
     LOG.info("minReplication             = " + minReplication);
     LOG.info("maxReplicationStreams      = " + maxReplicationStreams);
+    LOG.info("adaptiveReplication        = "
+        + replicationScheduler.isAdaptive());
     LOG.info("shouldCheckForEnoughRacks  = " + shouldCheckForEnoughRacks);
     LOG.info("replicationRecheckInterval = " + replicationRecheckInterval);
     LOG.info("encryptDataTransfer        = " + encryptDataTransfer);
@@ -491,6 +529,16 @@ private void dumpBlockMeta(Block block, PrintWriter out) {
     out.println("");
   }
 
+  /**
+   * Record the replication transfers a datanode reported at a heartbeat.
+   * @return the number of replication transfers to send to the datanode
+   */
+  int getMaxReplicationTransfers(DatanodeDescriptor node,
+      int xmitsInProgress) {
+    return replicationScheduler.updateNode(node, xmitsInProgress,
+        maxReplicationStreams);
+  }
+
   /** @return maxReplicationStreams */
   public int getMaxReplicationStreams() {
     return maxReplicationStreams;
@@ -1272,6 +1320,7 @@ int computeReplicationWorkForBlocks(List<List<Block>> blocksToReplicate) {
           // Add block to the to be replicated list
           rw.srcNode.addBlockToBeReplicated(block, targets);
           scheduledWork++;
+          replicationScheduler.scheduled(priority);
 
           for (DatanodeDescriptor dn : targets) {
             dn.incBlocksScheduled();
@@ -1358,9 +1407,10 @@ public DatanodeDescriptor[] chooseTarget(final String src,
    * since the former do not have write traffic and hence are less busy.
    * We do not use already decommissioned nodes as a source.
    * Otherwise we choose a random node among those that did not reach their
-   * replication limits.  However, if the replication is of the highest priority
+   * replication limits, or the least loaded one if replication scheduling is
+   * adaptive.  However, if the replication is of the highest priority
    * and all nodes have reached their replication limits, we will choose a
-   * random node despite the replication limit.
+   * node despite the replication limit.
    *
    * In addition form a list of all nodes containing the block
    * and calculate its replication numbers.
@@ -1414,12 +1464,15 @@ else if (excessBlocks != null && excessBlocks.contains(block)) {
       // If so, do not select the node as src node
       if ((nodesCorrupt != null) && nodesCorrupt.contains(node))
         continue;
+      final int load = replicationScheduler.getLoad(node);
+      final int limit = replicationScheduler.isAdaptive() ?
+          replicationScheduler.getStreamsLimit(node) : maxReplicationStreams;
       if(priority != UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY
-          && node.getNumberOfBlocksToBeReplicated() >= maxReplicationStreams)
+          && load >= limit)
       {
         continue; // already reached replication limit
       }
-      if (node.getNumberOfBlocksToBeReplicated() >= replicationStreamsHardLimit)
+      if (load >= replicationStreamsHardLimit)
       {
         continue;
       }
@@ -1436,6 +1489,14 @@ else if (excessBlocks != null && excessBlocks.contains(block)) {
       }
       if(srcNode.isDecommissionInProgress())
         continue;
+      if (replicationScheduler.isAdaptive()) {
+        // prefer the less loaded node, and pick randomly among equals
+        final int diff = load - replicationScheduler.getLoad(srcNode);
+        if (diff < 0 || (diff == 0 && DFSUtil.getRandom().nextBoolean())) {
+          srcNode = node;
+        }
+        continue;
+      }
       // switch to a different node randomly
       // this to prevent from deterministically selecting the same node even
       // if the node failed to replicate the block on previous iterations
@@ -1530,12 +1591,32 @@ public String toString() {
     }
   }
 
+  /**
+   * The blocks of an initial block report, looked up under the read lock.
+   */
+  private static class FirstBlockReportLookup {
+    /** The stored blocks, in the order of the report, null if not stored. */
+    final BlockInfo[] storedBlocks;
+    /** The modification of the blocks map when the blocks were looked up. */
+    final long modification;
+
+    FirstBlockReportLookup(BlockInfo[] storedBlocks, long modification) {
+      this.storedBlocks = storedBlocks;
+      this.modification = modification;
+    }
+  }
+
   /**
    * The given datanode is reporting all its blocks.
    * Update the (machine-->blocklist) and (block-->machinelist) maps.
    */
   public void processReport(final DatanodeID nodeID, final String poolId,
       final BlockListAsLongs newReport) throws IOException {
+    // The initial reports received in the startup safe mode are looked up
+    // under the read lock, concurrently with the reports of the other
+    // datanodes, so that only their application holds the write lock.
+    final FirstBlockReportLookup lookup =
+        lookupFirstBlockReport(nodeID, newReport);
     namesystem.writeLock();
     final long startTime = Time.now(); //after acquiring write lock
     final long endTime;
@@ -1558,7 +1639,7 @@ public void processReport(final DatanodeID nodeID, final String poolId,
       if (node.numBlocks() == 0) {
         // The first block report can be processed a lot more efficiently than
         // ordinary block reports.  This shortens restart times.
-        processFirstBlockReport(node, newReport);
+        processFirstBlockReport(node, newReport, lookup);
       } else {
         processReport(node, newReport);
       }
@@ -1589,6 +1670,48 @@ public void processReport(final DatanodeID nodeID, final String poolId,
         + ", processing time: " + (endTime - startTime) + " msecs");
   }
 
+  /**
+   * Look up the stored blocks of an initial block report under the read lock.
+   * @return the stored blocks of the report, or null if the report is not
+   *         the initial report of the node in the startup safe mode
+   */
+  private FirstBlockReportLookup lookupFirstBlockReport(
+      final DatanodeID nodeID, final BlockListAsLongs report)
+      throws IOException {
+    if (report == null || !namesystem.isInStartupSafeMode()) {
+      return null;
+    }
+    namesystem.readLock();
+    final long startTime = Time.now(); //after acquiring read lock
+    final long endTime;
+    final FirstBlockReportLookup lookup;
+    try {
+      final DatanodeDescriptor node = datanodeManager.getDatanode(nodeID);
+      if (node == null || !node.isAlive || !node.isFirstBlockReport()
+          || node.numBlocks() != 0 || !namesystem.isInStartupSafeMode()) {
+        return null;
+      }
+      final BlockInfo[] storedBlocks =
+          new BlockInfo[report.getNumberOfBlocks()];
+      int i = 0;
+      for (BlockReportIterator it = report.getBlockReportIterator();
+           it.hasNext();) {
+        storedBlocks[i++] = blocksMap.getStoredBlock(it.next());
+      }
+      lookup = new FirstBlockReportLookup(storedBlocks,
+          blocksMap.getModification());
+    } finally {
+      endTime = Time.now();
+      namesystem.readUnlock();
+    }
+
+    final NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addFirstBlockReportLookup((int) (endTime - startTime));
+    }
+    return lookup;
+  }
+
   /**
    * Rescan the list of blocks which were previously postponed.
    */
@@ -1661,20 +1784,29 @@ private void processReport(final DatanodeDescriptor node,
    * a toRemove list (since there won't be any).  It also silently discards 
    * any invalid blocks, thereby deferring their processing until 
    * the next block report.
+   * The stored blocks looked up under the read lock are used if the blocks
+   * map has not changed since.
    * @param node - DatanodeDescriptor of the node that sent the report
    * @param report - the initial block report, to be processed
+   * @param lookup - the stored blocks of the report, or null
    * @throws IOException 
    */
   private void processFirstBlockReport(final DatanodeDescriptor node,
-      final BlockListAsLongs report) throws IOException {
+      final BlockListAsLongs report, final FirstBlockReportLookup lookup)
+      throws IOException {
     if (report == null) return;
     assert (namesystem.hasWriteLock());
     assert (node.numBlocks() == 0);
+    final BlockInfo[] storedBlocks = lookup != null
+        && lookup.modification == blocksMap.getModification()
+        ? lookup.storedBlocks : null;
     BlockReportIterator itBR = report.getBlockReportIterator();
 
+    int i = 0;
     while(itBR.hasNext()) {
       Block iblk = itBR.next();
       ReplicaState reportedState = itBR.getCurrentReplicaState();
+      final int index = i++;
       
       if (shouldPostponeBlocksFromFuture &&
           namesystem.isGenStampInFuture(iblk.getGenerationStamp())) {
@@ -1683,7 +1815,8 @@ private void processFirstBlockReport(final DatanodeDescriptor node,
         continue;
       }
       
-      BlockInfo storedBlock = blocksMap.getStoredBlock(iblk);
+      BlockInfo storedBlock = storedBlocks != null ? storedBlocks[index]
+          : blocksMap.getStoredBlock(iblk);
       // If block does not belong to any file, we are done.
       if (storedBlock == null) continue;
       
@@ -2553,6 +2686,9 @@ void addBlock(DatanodeDescriptor node, Block block, String delHint)
     //
     // Modify the blocks->datanode map and node's map.
     //
+    if (pendingReplications.getNumReplicas(block) > 0) {
+      replicationScheduler.completed();
+    }
     pendingReplications.decrement(block);
     processAndHandleReportedBlock(node, block, ReplicaState.FINALIZED,
         delHintNode);
@@ -2714,7 +2850,7 @@ int countLiveNodes(BlockInfo b) {
     return live;
   }
 
-  private void logBlockReplicationInfo(Block block, DatanodeDescriptor srcNode,
+  void logBlockReplicationInfo(Block block, DatanodeDescriptor srcNode,
       NumberReplicas num) {
     int curReplicas = num.liveReplicas();
     int curExpectedReplicas = getReplication(block);
@@ -2762,57 +2898,40 @@ void processOverReplicatedBlocksOnReCommission(
   }
 
   /**
-   * Return true if there are any blocks on this node that have not
-   * yet reached their replication factor. Otherwise returns false.
-   */
-  boolean isReplicationInProgress(DatanodeDescriptor srcNode) {
-    boolean status = false;
-    int underReplicatedBlocks = 0;
-    int decommissionOnlyReplicas = 0;
-    int underReplicatedInOpenFiles = 0;
-    final Iterator<? extends Block> it = srcNode.getBlockIterator();
-    while(it.hasNext()) {
-      final Block block = it.next();
-      BlockCollection bc = blocksMap.getBlockCollection(block);
-
-      if (bc != null) {
-        NumberReplicas num = countNodes(block);
-        int curReplicas = num.liveReplicas();
-        int curExpectedReplicas = getReplication(block);
-        if (isNeededReplication(block, curExpectedReplicas, curReplicas)) {
-          if (curExpectedReplicas > curReplicas) {
-            //Log info about one block for this node which needs replication
-            if (!status) {
-              status = true;
-              logBlockReplicationInfo(block, srcNode, num);
-            }
-            underReplicatedBlocks++;
-            if ((curReplicas == 0) && (num.decommissionedReplicas() > 0)) {
-              decommissionOnlyReplicas++;
-            }
-            if (bc instanceof MutableBlockCollection) {
-              underReplicatedInOpenFiles++;
-            }
-          }
-          if (!neededReplications.contains(block) &&
-            pendingReplications.getNumReplicas(block) == 0) {
-            //
-            // These blocks have been reported from the datanode
-            // after the startDecommission method has been executed. These
-            // blocks were in flight when the decommissioning was started.
-            //
-            neededReplications.add(block,
-                                   curReplicas,
-                                   num.decommissionedReplicas(),
-                                   curExpectedReplicas);
-          }
-        }
-      }
+   * Check whether a block of a decommissioning node has yet to reach its
+   * replication factor on other nodes. The block is queued for replication
+   * if it needs it and is not queued already.
+   *
+   * @return the replica counts of the block if it is under-replicated, or
+   *         null if it was deleted, has no replica left on the node, or is
+   *         sufficiently replicated
+   */
+  NumberReplicas checkDecommissioningBlock(Block block,
+      DatanodeDescriptor srcNode) {
+    final BlockInfo storedBlock = blocksMap.getStoredBlock(block);
+    if (storedBlock == null || storedBlock.getBlockCollection() == null
+        || storedBlock.findDatanode(srcNode) < 0) {
+      return null;
+    }
+    NumberReplicas num = countNodes(storedBlock);
+    int curReplicas = num.liveReplicas();
+    int curExpectedReplicas = getReplication(storedBlock);
+    if (!isNeededReplication(storedBlock, curExpectedReplicas, curReplicas)) {
+      return null;
     }
-    srcNode.decommissioningStatus.set(underReplicatedBlocks,
-        decommissionOnlyReplicas, 
-        underReplicatedInOpenFiles);
-    return status;
+    if (!neededReplications.contains(storedBlock) &&
+        pendingReplications.getNumReplicas(storedBlock) == 0) {
+      //
+      // These blocks have been reported from the datanode
+      // after the startDecommission method has been executed. These
+      // blocks were in flight when the decommissioning was started.
+      //
+      neededReplications.add(storedBlock,
+                             curReplicas,
+                             num.decommissionedReplicas(),
+                             curExpectedReplicas);
+    }
+    return curExpectedReplicas > curReplicas ? num : null;
   }
 
   public int getActiveBlockCount() {
@@ -3067,6 +3186,7 @@ public void run() {
         try {
           computeDatanodeWork();
           processPendingReplications();
+          replicationScheduler.roll();
           Thread.sleep(replicationRecheckInterval);
         } catch (InterruptedException ie) {
           LOG.warn("ReplicationMonitor thread received InterruptedException.", ie);
@@ -3098,8 +3218,13 @@ int computeDatanodeWork() {
     }
 
     final int numlive = heartbeatManager.getLiveDatanodeCount();
-    final int blocksToProcess = numlive
+    int blocksToProcess = numlive
         * this.blocksReplWorkMultiplier;
+    if (replicationScheduler.isAdaptive()) {
+      // schedule at least as many blocks as the datanodes can take on
+      blocksToProcess = Math.max(blocksToProcess,
+          replicationScheduler.getFreeSlots(heartbeatManager.getDatanodes()));
+    }
     final int nodesToProcess = (int) Math.ceil(numlive
         * this.blocksInvalidateWorkPct);
 
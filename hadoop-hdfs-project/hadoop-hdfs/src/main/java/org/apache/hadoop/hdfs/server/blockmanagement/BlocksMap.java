@@ -59,6 +59,12 @@ public void remove()  {
   
   private GSet<Block, BlockInfo> blocks;
 
+  /**
+   * The number of changes of the blocks in the map. The blocks looked up
+   * under the read lock remain valid under the write lock if it is unchanged.
+   */
+  private long modification = 0;
+
   BlocksMap(final float loadFactor) {
     // Use 2% of total memory to size the GSet capacity
     this.capacity = LightWeightGSet.computeCapacity(2.0, "BlocksMap");
@@ -85,6 +91,7 @@ BlockInfo addBlockCollection(BlockInfo b, BlockCollection bc) {
       blocks.put(info);
     }
     info.setBlockCollection(bc);
+    modification++;
     return info;
   }
 
@@ -97,6 +104,7 @@ void removeBlock(Block block) {
     BlockInfo blockInfo = blocks.remove(block);
     if (blockInfo == null)
       return;
+    modification++;
 
     blockInfo.setBlockCollection(null);
     for(int idx = blockInfo.numNodes()-1; idx >= 0; idx--) {
@@ -148,6 +156,7 @@ boolean removeNode(Block b, DatanodeDescriptor node) {
     if (info.getDatanode(0) == null     // no datanodes left
               && info.getBlockCollection() == null) {  // does not belong to a file
       blocks.remove(b);  // remove block from the map
+      modification++;
     }
     return removed;
   }
@@ -156,6 +165,11 @@ int size() {
     return blocks.size();
   }
 
+  /** @return the number of changes of the blocks in the map */
+  long getModification() {
+    return modification;
+  }
+
   Iterable<BlockInfo> getBlocks() {
     return blocks;
   }
@@ -181,6 +195,7 @@ BlockInfo replaceBlock(BlockInfo newBlock) {
     }
     // replace block in the map itself
     blocks.put(newBlock);
+    modification++;
     return newBlock;
   }
 }
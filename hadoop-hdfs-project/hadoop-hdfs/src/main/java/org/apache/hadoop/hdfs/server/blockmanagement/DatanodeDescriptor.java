@@ -144,6 +144,11 @@ synchronized void clear() {
   private long lastBlocksScheduledRollTime = 0;
   private static final int BLOCKS_SCHEDULED_ROLL_INTERVAL = 600*1000; //10min
   private int volumeFailures = 0;
+
+  /** The replication transfers in progress, as of the last heartbeat */
+  private volatile int xmitsInProgress = 0;
+  /** The adaptive limit on outgoing replication streams, 0 if not set */
+  private volatile int replicationStreamsLimit = 0;
   
   /** Set to false after processing first block report */
   private boolean firstBlockReport = true;
@@ -397,6 +402,22 @@ int getNumberOfBlocksToBeInvalidated() {
     }
   }
   
+  int getXmitsInProgress() {
+    return xmitsInProgress;
+  }
+
+  void setXmitsInProgress(int xmitsInProgress) {
+    this.xmitsInProgress = xmitsInProgress;
+  }
+
+  int getReplicationStreamsLimit() {
+    return replicationStreamsLimit;
+  }
+
+  void setReplicationStreamsLimit(int limit) {
+    this.replicationStreamsLimit = limit;
+  }
+
   public List<BlockTargetPair> getReplicationCommand(int maxTransfers) {
     return replicateBlocks.poll(maxTransfers);
   }
@@ -477,6 +498,7 @@ public class DecommissioningStatus {
     private int decommissionOnlyReplicas;
     private int underReplicatedInOpenFiles;
     private long startTime;
+    private long pendingBlocks;
     
     synchronized void set(int underRep,
         int onlyRep, int underConstruction) {
@@ -509,6 +531,19 @@ public synchronized int getUnderReplicatedInOpenFiles() {
       }
       return underReplicatedInOpenFiles;
     }
+    synchronized void setPendingBlocks(long pending) {
+      pendingBlocks = pending;
+    }
+    /**
+     * @return the number of blocks which were not sufficiently replicated
+     *         when last checked, or have not been checked yet
+     */
+    public synchronized long getPendingBlocks() {
+      if (isDecommissionInProgress() == false) {
+        return 0;
+      }
+      return pendingBlocks;
+    }
     /** Set start time */
     public synchronized void setStartTime(long time) {
       startTime = time;
@@ -90,6 +90,7 @@ public class DatanodeManager {
   private final Namesystem namesystem;
   private final BlockManager blockManager;
   private final HeartbeatManager heartbeatManager;
+  private final DecommissionManager decomManager;
   private Daemon decommissionthread = null;
 
   /**
@@ -134,6 +135,11 @@ public class DatanodeManager {
   /** Whether or not to avoid using stale DataNodes for reading */
   private final boolean avoidStaleDataNodesForRead;
 
+  /** Whether to order DataNodes for reading by their load too */
+  private final boolean readConsiderLoad;
+  /** The load weighing as much as a level of distance for reading */
+  private final int readLoadPerLevel;
+
   /**
    * Whether or not to avoid using stale DataNodes for writing.
    * Note that, even if this is configured, the policy may be
@@ -165,6 +171,9 @@ public class DatanodeManager {
     networktopology = NetworkTopology.getInstance(conf);
 
     this.heartbeatManager = new HeartbeatManager(namesystem, blockManager, conf);
+    this.decomManager = new DecommissionManager(namesystem, blockManager,
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_KEY,
+            DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_DEFAULT));
 
     this.hostsReader = new HostsFileReader(
         conf.get(DFSConfigKeys.DFS_HOSTS, ""),
@@ -199,6 +208,12 @@ public class DatanodeManager {
     this.avoidStaleDataNodesForRead = conf.getBoolean(
         DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_READ_KEY,
         DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_READ_DEFAULT);
+    this.readConsiderLoad = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_READ_CONSIDERLOAD_KEY,
+        DFSConfigKeys.DFS_NAMENODE_READ_CONSIDERLOAD_DEFAULT);
+    this.readLoadPerLevel = conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_READ_LOAD_PER_LEVEL_KEY,
+        DFSConfigKeys.DFS_NAMENODE_READ_LOAD_PER_LEVEL_DEFAULT);
     this.avoidStaleDataNodesForWrite = conf.getBoolean(
         DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_KEY,
         DFSConfigKeys.DFS_NAMENODE_AVOID_STALE_DATANODE_FOR_WRITE_DEFAULT);
@@ -252,8 +267,7 @@ private static long getStaleIntervalFromConf(Configuration conf,
   }
   
   void activate(final Configuration conf) {
-    final DecommissionManager dm = new DecommissionManager(namesystem, blockManager);
-    this.decommissionthread = new Daemon(dm.new Monitor(
+    this.decommissionthread = new Daemon(decomManager.new Monitor(
         conf.getInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_KEY, 
                     DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_DEFAULT),
         conf.getInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_NODES_PER_INTERVAL_KEY, 
@@ -309,7 +323,16 @@ public void sortLocatedBlocks(final String targethost,
         DFSUtil.DECOM_COMPARATOR;
         
     for (LocatedBlock b : locatedblocks) {
-      networktopology.pseudoSortByDistance(client, b.getLocations());
+      DatanodeInfo[] locations = b.getLocations();
+      int[] loads = null;
+      if (readConsiderLoad) {
+        loads = new int[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+          loads[i] = locations[i].getXceiverCount();
+        }
+      }
+      networktopology.sortByDistance(client, locations, loads,
+          readLoadPerLevel);
       // Move decommissioned/stale datanodes to the bottom
       Arrays.sort(b.getLocations(), comparator);
     }
@@ -563,22 +586,6 @@ private void checkDecommissioning(DatanodeDescriptor nodeReg) {
     }
   }
 
-  /**
-   * Change, if appropriate, the admin state of a datanode to 
-   * decommission completed. Return true if decommission is complete.
-   */
-  boolean checkDecommissionState(DatanodeDescriptor node) {
-    // Check to see if all blocks in this decommissioned
-    // node has reached their target replication factor.
-    if (node.isDecommissionInProgress()) {
-      if (!blockManager.isReplicationInProgress(node)) {
-        node.setDecommissioned();
-        LOG.info("Decommission complete for " + node);
-      }
-    }
-    return node.isDecommissioned();
-  }
-
   /** Start decommissioning the specified datanode. */
   private void startDecommission(DatanodeDescriptor node) {
     if (!node.isDecommissionInProgress() && !node.isDecommissioned()) {
@@ -588,7 +595,7 @@ private void startDecommission(DatanodeDescriptor node) {
       node.decommissioningStatus.setStartTime(now());
       
       // all the blocks that reside on this node have to be replicated.
-      checkDecommissionState(node);
+      decomManager.startTrackingNode(node);
     }
   }
 
@@ -597,6 +604,7 @@ void stopDecommission(DatanodeDescriptor node) {
     if (node.isDecommissionInProgress() || node.isDecommissioned()) {
       LOG.info("Stop Decommissioning " + node);
       heartbeatManager.stopDecommission(node);
+      decomManager.stopTrackingNode(node);
       // Over-replicated blocks will be detected and processed when 
       // the dead node comes back and send in its full block report.
       if (node.isAlive) {
@@ -840,6 +848,14 @@ public int getNumDeadDataNodes() {
     return numDead;
   }
 
+  /**
+   * @return the number of blocks of decommissioning datanodes which are not
+   *         known to be sufficiently replicated yet
+   */
+  public long getNumPendingDecommissionBlocks() {
+    return decomManager.getNumPendingBlocks();
+  }
+
   /** @return list of datanodes where decommissioning is in progress. */
   public List<DatanodeDescriptor> getDecommissioningNodes() {
     namesystem.readLock();
@@ -1111,7 +1127,7 @@ private void setDatanodeDead(DatanodeDescriptor node) {
   public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
       final String blockPoolId,
       long capacity, long dfsUsed, long remaining, long blockPoolUsed,
-      int xceiverCount, int maxTransfers, int failedVolumes
+      int xceiverCount, int xmitsInProgress, int failedVolumes
       ) throws IOException {
     synchronized (heartbeatManager) {
       synchronized (datanodeMap) {
@@ -1151,6 +1167,8 @@ public DatanodeCommand[] handleHeartbeat(DatanodeRegistration nodeReg,
 
         final List<DatanodeCommand> cmds = new ArrayList<DatanodeCommand>();
         //check pending replication
+        final int maxTransfers = blockManager.getMaxReplicationTransfers(
+            nodeinfo, xmitsInProgress);
         List<BlockTargetPair> pendingList = nodeinfo.getReplicationCommand(
               maxTransfers);
         if (pendingList != null) {
@@ -17,16 +17,35 @@
  */
 package org.apache.hadoop.hdfs.server.blockmanagement;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
+import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.namenode.Namesystem;
 
+import com.google.common.annotations.VisibleForTesting;
+
 /**
  * Manage node decommissioning.
+ * <p>
+ * The blocks of a decommissioning node are first all checked once; only
+ * those which are not yet sufficiently replicated on other nodes are kept,
+ * and later checks only look at those. When none are left, the node's
+ * blocks are all checked once more, to catch blocks it received while it
+ * was being decommissioned, before the node is marked decommissioned.
+ * <p>
+ * The namesystem write lock is released after every
+ * <code>blocksPerLock</code> blocks checked, so that checking dense nodes
+ * does not stall the NameNode. The list of all the blocks of a node, for
+ * the first and the last check, is copied under the read lock: it cannot
+ * be copied in chunks since block reports reorder it.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Evolving
@@ -35,11 +54,62 @@ class DecommissionManager {
 
   private final Namesystem namesystem;
   private final BlockManager blockmanager;
+  /** The number of blocks to check per write lock hold */
+  private final int blocksPerLock;
+
+  /**
+   * The decommissioning nodes, in the order they are checked, with the
+   * blocks which were insufficiently replicated when last checked, or null
+   * if all the blocks of the node need checking. Guarded by the namesystem
+   * write lock.
+   */
+  private final Map<DatanodeDescriptor, List<Block>> decomNodeBlocks =
+      new LinkedHashMap<DatanodeDescriptor, List<Block>>();
+
+  /** Total number of blocks of decommissioning nodes left to replicate. */
+  private volatile long numPendingBlocks = 0;
 
   DecommissionManager(final Namesystem namesystem,
-      final BlockManager blockmanager) {
+      final BlockManager blockmanager, final int blocksPerLock) {
     this.namesystem = namesystem;
     this.blockmanager = blockmanager;
+    this.blocksPerLock = Math.max(1, blocksPerLock);
+  }
+
+  /**
+   * Start tracking a node which started decommissioning. Must be called
+   * with the namesystem write lock held.
+   */
+  void startTrackingNode(DatanodeDescriptor node) {
+    if (node.numBlocks() == 0) {
+      // nothing to replicate
+      node.setDecommissioned();
+      LOG.info("Decommission complete for " + node);
+      return;
+    }
+    node.decommissioningStatus.setPendingBlocks(node.numBlocks());
+    decomNodeBlocks.put(node, null);
+  }
+
+  /**
+   * Stop tracking a node which stopped decommissioning. Must be called
+   * with the namesystem write lock held.
+   */
+  void stopTrackingNode(DatanodeDescriptor node) {
+    decomNodeBlocks.remove(node);
+  }
+
+  /** @return the number of nodes being decommissioned */
+  int getNumTrackedNodes() {
+    return decomNodeBlocks.size();
+  }
+
+  /**
+   * @return the number of blocks of decommissioning nodes which were not
+   *         sufficiently replicated when last checked, or not checked yet
+   */
+  long getNumPendingBlocks() {
+    return numPendingBlocks;
   }
 
   /** Periodically check decommission status. */
@@ -50,8 +120,6 @@ class Monitor implements Runnable {
     private final long recheckInterval;
     /** The number of decommission nodes to check for each interval */
     private final int numNodesPerCheck;
-    /** firstkey can be initialized to anything. */
-    private String firstkey = "";
 
     Monitor(int recheckIntervalInSecond, int numNodesPerCheck) {
       this.recheckInterval = recheckIntervalInSecond * 1000L;
@@ -65,13 +133,12 @@ class Monitor implements Runnable {
     @Override
     public void run() {
       for(; namesystem.isRunning(); ) {
-        namesystem.writeLock();
         try {
           check();
-        } finally {
-          namesystem.writeUnlock();
+        } catch (Exception e) {
+          LOG.warn("Failed to check decommissioning nodes", e);
         }
-  
+
         try {
           Thread.sleep(recheckInterval);
         } catch (InterruptedException ie) {
@@ -79,25 +146,199 @@ public void run() {
         }
       }
     }
-    
-    private void check() {
-      final DatanodeManager dm = blockmanager.getDatanodeManager();
-      int count = 0;
-      for(Map.Entry<String, DatanodeDescriptor> entry
-          : dm.getDatanodeCyclicIteration(firstkey)) {
-        final DatanodeDescriptor d = entry.getValue();
-        firstkey = entry.getKey();
-
-        if (d.isDecommissionInProgress()) {
-          try {
-            dm.checkDecommissionState(d);
-          } catch(Exception e) {
-            LOG.warn("entry=" + entry, e);
+
+    @VisibleForTesting
+    void check() {
+      final List<DatanodeDescriptor> nodes;
+      namesystem.writeLock();
+      try {
+        nodes = new ArrayList<DatanodeDescriptor>(Math.min(numNodesPerCheck,
+            decomNodeBlocks.size()));
+        Iterator<DatanodeDescriptor> it = decomNodeBlocks.keySet().iterator();
+        while (it.hasNext() && nodes.size() < numNodesPerCheck) {
+          nodes.add(it.next());
+        }
+      } finally {
+        namesystem.writeUnlock();
+      }
+
+      for (DatanodeDescriptor node : nodes) {
+        if (!namesystem.isRunning()) {
+          return;
+        }
+        checkNode(node);
+      }
+      updatePendingBlocks();
+    }
+
+    /**
+     * Check the blocks of a node still to be replicated, and mark the node
+     * decommissioned if there are none.
+     */
+    private void checkNode(DatanodeDescriptor node) {
+      List<Block> blocks;
+      namesystem.writeLock();
+      try {
+        if (!isTracked(node)) {
+          return;
+        }
+        blocks = decomNodeBlocks.get(node);
+      } finally {
+        namesystem.writeUnlock();
+      }
+
+      boolean fullScan = blocks == null;
+      while (true) {
+        if (fullScan) {
+          blocks = getBlocks(node);
+          if (blocks == null) {
+            return;
           }
-          if (++count == numNodesPerCheck) {
+        }
+        List<Block> insufficient = checkBlocks(node, blocks);
+        if (insufficient == null) {
+          return;
+        }
+        if (insufficient.isEmpty() && !fullScan) {
+          // check the blocks received since the last full scan
+          fullScan = true;
+          continue;
+        }
+
+        namesystem.writeLock();
+        try {
+          if (!isTracked(node)) {
             return;
           }
+          if (insufficient.isEmpty()) {
+            decomNodeBlocks.remove(node);
+            node.setDecommissioned();
+            LOG.info("Decommission complete for " + node);
+          } else {
+            // move the node to the back of the line
+            decomNodeBlocks.remove(node);
+            decomNodeBlocks.put(node, insufficient);
+            node.decommissioningStatus.setPendingBlocks(insufficient.size());
+          }
+        } finally {
+          namesystem.writeUnlock();
+        }
+        return;
+      }
+    }
+
+    /**
+     * @return all the blocks of the node, copied under the read lock, or
+     *         null if it is not tracked
+     */
+    private List<Block> getBlocks(DatanodeDescriptor node) {
+      namesystem.readLock();
+      try {
+        if (!isDecommissioning(node)) {
+          return null;
+        }
+        List<Block> blocks = new ArrayList<Block>(node.numBlocks());
+        Iterator<BlockInfo> it = node.getBlockIterator();
+        while (it.hasNext()) {
+          blocks.add(it.next());
+        }
+        return blocks;
+      } finally {
+        namesystem.readUnlock();
+      }
+    }
+
+    /**
+     * Check the given blocks of a node, releasing the write lock after
+     * every {@link #blocksPerLock} blocks.
+     *
+     * @return the blocks which are insufficiently replicated, or null if
+     *         the node stopped being tracked meanwhile
+     */
+    private List<Block> checkBlocks(DatanodeDescriptor node,
+        List<Block> blocks) {
+      List<Block> insufficient = new ArrayList<Block>();
+      int underReplicatedBlocks = 0;
+      int decommissionOnlyReplicas = 0;
+      int underReplicatedInOpenFiles = 0;
+
+      Iterator<Block> it = blocks.iterator();
+      while (it.hasNext()) {
+        namesystem.writeLock();
+        try {
+          if (!isTracked(node)) {
+            return null;
+          }
+          for (int i = 0; i < blocksPerLock && it.hasNext(); i++) {
+            Block block = it.next();
+            NumberReplicas num =
+                blockmanager.checkDecommissioningBlock(block, node);
+            if (num == null) {
+              continue;
+            }
+            if (insufficient.isEmpty()) {
+              // Log info about one block for this node which needs replication
+              blockmanager.logBlockReplicationInfo(block, node, num);
+            }
+            insufficient.add(block);
+            underReplicatedBlocks++;
+            if (num.liveReplicas() == 0 && num.decommissionedReplicas() > 0) {
+              decommissionOnlyReplicas++;
+            }
+            if (blockmanager.getBlockCollection(block)
+                instanceof MutableBlockCollection) {
+              underReplicatedInOpenFiles++;
+            }
+          }
+        } finally {
+          namesystem.writeUnlock();
+        }
+      }
+
+      node.decommissioningStatus.set(underReplicatedBlocks,
+          decommissionOnlyReplicas, underReplicatedInOpenFiles);
+      return insufficient;
+    }
+
+    /**
+     * @return whether the node is still decommissioning and tracked. Must
+     *         be called with the namesystem write lock held.
+     */
+    private boolean isTracked(DatanodeDescriptor node) {
+      if (!decomNodeBlocks.containsKey(node)) {
+        return false;
+      }
+      if (!isDecommissioning(node)) {
+        // recommissioned or replaced by a re-registration
+        decomNodeBlocks.remove(node);
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * @return whether the node is tracked, still decommissioning and still
+     *         registered. Must be called with the namesystem lock held.
+     */
+    private boolean isDecommissioning(DatanodeDescriptor node) {
+      return decomNodeBlocks.containsKey(node)
+          && node.isDecommissionInProgress()
+          && blockmanager.getDatanodeManager().getDatanode(
+              node.getStorageID()) == node;
+    }
+
+    private void updatePendingBlocks() {
+      namesystem.writeLock();
+      try {
+        long pending = 0;
+        for (Map.Entry<DatanodeDescriptor, List<Block>> e
+            : decomNodeBlocks.entrySet()) {
+          pending += e.getValue() == null ?
+              e.getKey().numBlocks() : e.getValue().size();
         }
+        numPendingBlocks = pending;
+      } finally {
+        namesystem.writeUnlock();
       }
     }
   }
@@ -0,0 +1,185 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.util.Time;
+
+/**
+ * Sizes the replication work given to each datanode, and keeps track of
+ * the replication throughput.
+ * <p>
+ * When adaptive scheduling is enabled, each datanode has its own limit on
+ * outgoing replication streams, between
+ * <code>dfs.namenode.replication.max-streams</code> and
+ * <code>dfs.namenode.replication.max-streams-hard-limit</code>. The limit
+ * is raised by one at a heartbeat when the node has replication work
+ * waiting and has finished at least half of the transfers it was given,
+ * and lowered by one when it is still busy with as many transfers as its
+ * limit. Nodes which copy blocks quickly thus get more work, and the
+ * number of blocks scheduled per iteration follows the free transfer slots
+ * of the cluster. Replication sources are chosen by their load.
+ * <p>
+ * Otherwise every node has the fixed limit
+ * <code>dfs.namenode.replication.max-streams</code>.
+ */
+@InterfaceAudience.Private
+class ReplicationScheduler {
+  /** Weight of the last interval in the smoothed rates */
+  private static final double RATE_WEIGHT = 0.3;
+
+  private final boolean adaptive;
+  private final int minLimit;
+  private final int maxLimit;
+
+  private final long[] scheduled =
+      new long[UnderReplicatedBlocks.LEVEL];
+  private final long[] lastScheduled =
+      new long[UnderReplicatedBlocks.LEVEL];
+  private final double[] scheduledRates =
+      new double[UnderReplicatedBlocks.LEVEL];
+  private long completed = 0;
+  private long lastCompleted = 0;
+  private double completedRate = 0;
+  private long lastRollTime = Time.monotonicNow();
+
+  ReplicationScheduler(Configuration conf, int maxReplicationStreams,
+      int replicationStreamsHardLimit) {
+    this.adaptive = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_ADAPTIVE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_ADAPTIVE_DEFAULT);
+    this.minLimit = maxReplicationStreams;
+    this.maxLimit = Math.max(maxReplicationStreams,
+        replicationStreamsHardLimit);
+  }
+
+  boolean isAdaptive() {
+    return adaptive;
+  }
+
+  /**
+   * Update the state of a node at a heartbeat.
+   *
+   * @param node the node
+   * @param xmitsInProgress the number of transfers the node reported
+   * @param maxReplicationStreams the configured max-streams
+   * @return the number of replication transfers to send to the node
+   */
+  int updateNode(DatanodeDescriptor node, int xmitsInProgress,
+      int maxReplicationStreams) {
+    node.setXmitsInProgress(xmitsInProgress);
+    if (!adaptive) {
+      return maxReplicationStreams - xmitsInProgress;
+    }
+    int limit = getStreamsLimit(node);
+    if (xmitsInProgress >= limit) {
+      limit = Math.max(minLimit, limit - 1);
+    } else if (node.getNumberOfBlocksToBeReplicated() > 0
+        && xmitsInProgress * 2 <= limit) {
+      limit = Math.min(maxLimit, limit + 1);
+    }
+    node.setReplicationStreamsLimit(limit);
+    return Math.max(0, limit - xmitsInProgress);
+  }
+
+  /**
+   * @return the limit on the replication streams of the node, for all but
+   *         the highest priority replications
+   */
+  int getStreamsLimit(DatanodeDescriptor node) {
+    int limit = node.getReplicationStreamsLimit();
+    return adaptive && limit > 0 ? limit : minLimit;
+  }
+
+  /**
+   * @return the replication load of the node: the blocks waiting to be sent
+   *         to it, plus the transfers it is doing if scheduling is adaptive
+   */
+  int getLoad(DatanodeDescriptor node) {
+    int load = node.getNumberOfBlocksToBeReplicated();
+    return adaptive ? load + node.getXmitsInProgress() : load;
+  }
+
+  /** @return the number of replications the given nodes can take on */
+  int getFreeSlots(DatanodeDescriptor[] nodes) {
+    int free = 0;
+    for (DatanodeDescriptor node : nodes) {
+      free += Math.max(0, getStreamsLimit(node) - getLoad(node));
+    }
+    return free;
+  }
+
+  /** Count a block scheduled for replication. */
+  synchronized void scheduled(int priority) {
+    scheduled[priority]++;
+  }
+
+  /** Count a replica created by a replication. */
+  synchronized void completed() {
+    completed++;
+  }
+
+  /** Update the rates with the counts since the last call. */
+  synchronized void roll() {
+    long now = Time.monotonicNow();
+    double seconds = (now - lastRollTime) / 1000.0;
+    if (seconds <= 0) {
+      return;
+    }
+    for (int i = 0; i < scheduled.length; i++) {
+      scheduledRates[i] = smooth(scheduledRates[i],
+          (scheduled[i] - lastScheduled[i]) / seconds);
+      lastScheduled[i] = scheduled[i];
+    }
+    completedRate = smooth(completedRate,
+        (completed - lastCompleted) / seconds);
+    lastCompleted = completed;
+    lastRollTime = now;
+  }
+
+  private static double smooth(double rate, double lastRate) {
+    return rate * (1 - RATE_WEIGHT) + lastRate * RATE_WEIGHT;
+  }
+
+  /** @return blocks scheduled for replication per second from a queue */
+  synchronized double getScheduledRate(int priority) {
+    return scheduledRates[priority];
+  }
+
+  /** @return replicas created by replications per second */
+  synchronized double getCompletedRate() {
+    return completedRate;
+  }
+
+  /**
+   * @param remaining the number of replicas left to create
+   * @return the estimated number of seconds until they are created, or -1
+   *         if no progress is being made
+   */
+  synchronized long getRecoveryEta(long remaining) {
+    if (remaining <= 0) {
+      return 0;
+    }
+    if (completedRate < 1e-6) {
+      return -1;
+    }
+    return (long) Math.ceil(remaining / completedRate);
+  }
+}
@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpBlockChecksumResponseProto;
+
+/**
+ * A bounded cache of the checksums computed for
+ * {@link DataXceiver#blockChecksum}, so that verifying the checksum of a
+ * file again, as done by distcp after a copy, does not read the meta files
+ * of its blocks again.
+ * <p>
+ * Only the checksums of finalized replicas are cached. A cached checksum is
+ * only used for a replica with the same generation stamp and meta file
+ * length: appending to a finalized replica or recovering it bumps its
+ * generation stamp. The least recently used checksums are evicted once the
+ * cache is full.
+ */
+@InterfaceAudience.Private
+public class BlockChecksumCache {
+
+  /** A computed checksum and the replica it was computed for. */
+  private static class CachedChecksum {
+    final long genStamp;
+    final long metaLength;
+    final OpBlockChecksumResponseProto checksum;
+
+    CachedChecksum(long genStamp, long metaLength,
+        OpBlockChecksumResponseProto checksum) {
+      this.genStamp = genStamp;
+      this.metaLength = metaLength;
+      this.checksum = checksum;
+    }
+  }
+
+  private final int capacity;
+  /** Map blocks, by block pool and block ID, to their checksums. */
+  private final Map<ExtendedBlock, CachedChecksum> checksums;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  /**
+   * @param capacity the maximum number of checksums to keep
+   */
+  BlockChecksumCache(final int capacity) {
+    this.capacity = capacity;
+    this.checksums =
+        new LinkedHashMap<ExtendedBlock, CachedChecksum>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          Map.Entry<ExtendedBlock, CachedChecksum> eldest) {
+        return size() > BlockChecksumCache.this.capacity;
+      }
+    };
+  }
+
+  /**
+   * @return the checksum cached for the given replica, or null if it is
+   *         not cached or was computed for another generation stamp or
+   *         meta file length
+   */
+  OpBlockChecksumResponseProto get(ExtendedBlock block, long metaLength) {
+    final CachedChecksum c;
+    synchronized (this) {
+      c = checksums.get(block);
+    }
+    if (c != null && c.genStamp == block.getGenerationStamp()
+        && c.metaLength == metaLength) {
+      hits.incrementAndGet();
+      return c.checksum;
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /** Cache the checksum computed for a finalized replica. */
+  synchronized void put(ExtendedBlock block, long metaLength,
+      OpBlockChecksumResponseProto checksum) {
+    // copy the block, whose generation stamp may be changed by the caller
+    checksums.put(new ExtendedBlock(block), new CachedChecksum(
+        block.getGenerationStamp(), metaLength, checksum));
+  }
+
+  /** @return the number of checksums in the cache */
+  public synchronized int size() {
+    return checksums.size();
+  }
+
+  /** @return the number of checksum requests answered from the cache */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /** @return the number of checksum requests which read the meta file */
+  public long getMisses() {
+    return misses.get();
+  }
+}
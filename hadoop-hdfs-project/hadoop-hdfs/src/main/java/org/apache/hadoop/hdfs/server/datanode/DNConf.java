@@ -36,6 +36,11 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_ENCRYPT_DATA_TRANSFER_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_ENCRYPT_DATA_TRANSFER_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATA_ENCRYPTION_ALGORITHM_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_ENCRYPT_DATA_TRANSFER_CIPHER_SUITES_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_ACCESS_TOKEN_CACHE_SIZE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_ACCESS_TOKEN_CACHE_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_BLOCK_CHECKSUM_CACHE_SIZE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_BLOCK_CHECKSUM_CACHE_SIZE_DEFAULT;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
@@ -66,6 +71,9 @@ class DNConf {
   
   final String minimumNameNodeVersion;
   final String encryptionAlgorithm;
+  final String encryptionCipherSuites;
+  final int blockTokenCacheSize;
+  final int blockChecksumCacheSize;
 
   public DNConf(Configuration conf) {
     socketTimeout = conf.getInt(DFS_CLIENT_SOCKET_TIMEOUT_KEY,
@@ -127,6 +135,14 @@ public DNConf(Configuration conf) {
     this.encryptDataTransfer = conf.getBoolean(DFS_ENCRYPT_DATA_TRANSFER_KEY,
         DFS_ENCRYPT_DATA_TRANSFER_DEFAULT);
     this.encryptionAlgorithm = conf.get(DFS_DATA_ENCRYPTION_ALGORITHM_KEY);
+    this.encryptionCipherSuites = conf.get(
+        DFS_ENCRYPT_DATA_TRANSFER_CIPHER_SUITES_KEY);
+    this.blockTokenCacheSize = conf.getInt(
+        DFS_BLOCK_ACCESS_TOKEN_CACHE_SIZE_KEY,
+        DFS_BLOCK_ACCESS_TOKEN_CACHE_SIZE_DEFAULT);
+    this.blockChecksumCacheSize = conf.getInt(
+        DFS_DATANODE_BLOCK_CHECKSUM_CACHE_SIZE_KEY,
+        DFS_DATANODE_BLOCK_CHECKSUM_CACHE_SIZE_DEFAULT);
   }
   
   // We get minimumNameNodeVersion via a method so it can be mocked out in tests.
@@ -45,6 +45,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_SCAN_PERIOD_HOURS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_STARTUP_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_USER_NAME_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_ENABLED_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_ENABLED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HTTPS_ENABLE_KEY;
 import static org.apache.hadoop.util.ExitUtil.terminate;
 
@@ -98,6 +100,7 @@
 import org.apache.hadoop.hdfs.protocol.ClientDatanodeProtocol;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
+import org.apache.hadoop.hdfs.protocol.DiskBalancerStatus;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsBlocksMetadata;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -122,6 +125,7 @@
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenIdentifier;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenSecretManager;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenSecretManager.AccessMode;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenVerificationCache;
 import org.apache.hadoop.hdfs.security.token.block.ExportedBlockKeys;
 import org.apache.hadoop.hdfs.security.token.block.InvalidBlockTokenException;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
@@ -134,6 +138,8 @@
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.hdfs.server.datanode.metrics.DataNodeMetrics;
+import org.apache.hadoop.hdfs.server.datanode.web.DatanodeHttpServer;
+import org.apache.hadoop.hdfs.server.datanode.web.ForwardedRequestFilter;
 import org.apache.hadoop.hdfs.server.datanode.web.resources.DatanodeWebHdfsMethods;
 import org.apache.hadoop.hdfs.server.namenode.FileChecksumServlets;
 import org.apache.hadoop.hdfs.server.namenode.StreamFile;
@@ -257,6 +263,7 @@ public static InetSocketAddress createSocketAddr(String target) {
   private volatile boolean heartbeatsDisabledForTests = false;
   private DataStorage storage = null;
   private HttpServer infoServer = null;
+  private DatanodeHttpServer httpServer = null;
   DataNodeMetrics metrics;
   private InetSocketAddress streamingAddr;
   
@@ -265,10 +272,15 @@ public static InetSocketAddress createSocketAddr(String target) {
   
   boolean isBlockTokenEnabled;
   BlockPoolTokenSecretManager blockPoolTokenSecretManager;
+  /** The verified block tokens, shared by the block pools, or null */
+  private BlockTokenVerificationCache blockTokenCache;
+  /** The checksums of finalized blocks, or null */
+  BlockChecksumCache blockChecksumCache;
   private boolean hasAnyBlockPoolRegistered = false;
   
   volatile DataBlockScanner blockScanner = null;
   private DirectoryScanner directoryScanner = null;
+  private DiskBalancer diskBalancer = null;
   
   /** Activated plug-ins. */
   private List<ServicePlugin> plugins;
@@ -359,6 +371,15 @@ private void startInfoServer(Configuration conf) throws IOException {
     InetSocketAddress infoSocAddr = DataNode.getInfoAddr(conf);
     String infoHost = infoSocAddr.getHostName();
     int tmpInfoPort = infoSocAddr.getPort();
+    final boolean useNetty = secureResources == null
+        && conf.getBoolean(DFS_DATANODE_WEBHDFS_NETTY_ENABLED_KEY,
+            DFS_DATANODE_WEBHDFS_NETTY_ENABLED_DEFAULT)
+        && WebHdfsFileSystem.isEnabled(conf, LOG);
+    if (useNetty) {
+      // the Netty server listens on the http address and forwards to Jetty
+      infoHost = "localhost";
+      tmpInfoPort = 0;
+    }
     this.infoServer = (secureResources == null) 
        ? new HttpServer("datanode", infoHost, tmpInfoPort, tmpInfoPort == 0, 
            conf, new AccessControlList(conf.get(DFS_ADMIN, " ")))
@@ -387,6 +408,11 @@ conf, new AccessControlList(conf.get(DFS_ADMIN, " ")),
     this.infoServer.setAttribute(JspHelper.CURRENT_CONF, conf);
     this.infoServer.addServlet(null, "/blockScannerReport", 
                                DataBlockScanner.Servlet.class);
+    if (useNetty) {
+      // the requests forwarded by the Netty server come from localhost
+      this.infoServer.addGlobalFilter("forwarded",
+          ForwardedRequestFilter.class.getName(), null);
+    }
 
     if (WebHdfsFileSystem.isEnabled(conf, LOG)) {
       infoServer.addJerseyResourcePackage(DatanodeWebHdfsMethods.class
@@ -394,6 +420,12 @@ conf, new AccessControlList(conf.get(DFS_ADMIN, " ")),
           WebHdfsFileSystem.PATH_PREFIX + "/*");
     }
     this.infoServer.start();
+
+    if (useNetty) {
+      this.httpServer = new DatanodeHttpServer(conf, this,
+          new InetSocketAddress(infoHost, infoServer.getPort()));
+      this.httpServer.start(infoSocAddr);
+    }
   }
   
   private void startPlugins(Configuration conf) {
@@ -522,6 +554,25 @@ private synchronized void shutdownDirectoryScanner() {
       directoryScanner.shutdown();
     }
   }
+
+  /**
+   * See {@link DiskBalancer}
+   */
+  private synchronized DiskBalancer getDiskBalancer() throws IOException {
+    if (diskBalancer == null) {
+      if (data == null) {
+        throw new IOException("The datanode storage is not initialized yet");
+      }
+      diskBalancer = new DiskBalancer(data, conf);
+    }
+    return diskBalancer;
+  }
+
+  private synchronized void shutdownDiskBalancer() {
+    if (diskBalancer != null) {
+      diskBalancer.shutdown();
+    }
+  }
   
   private void initDataXceiver(Configuration conf) throws IOException {
     // find free port or use privileged port provided
@@ -685,6 +736,15 @@ void startDataNode(Configuration conf,
     initIpcServer(conf);
 
     metrics = DataNodeMetrics.create(conf, getDisplayName());
+    if (dnConf.blockTokenCacheSize > 0) {
+      blockTokenCache =
+          new BlockTokenVerificationCache(dnConf.blockTokenCacheSize);
+      metrics.setBlockTokenCache(blockTokenCache);
+    }
+    if (dnConf.blockChecksumCacheSize > 0) {
+      blockChecksumCache = new BlockChecksumCache(dnConf.blockChecksumCacheSize);
+      metrics.setBlockChecksumCache(blockChecksumCache);
+    }
 
     blockPoolManager = new BlockPoolManager(this);
     blockPoolManager.refreshNamenodes(conf);
@@ -772,6 +832,7 @@ private synchronized void registerBlockPoolWithSecretManager(
       final BlockTokenSecretManager secretMgr = 
           new BlockTokenSecretManager(0, blockTokenLifetime, blockPoolId,
               dnConf.encryptionAlgorithm);
+      secretMgr.setTokenCache(blockTokenCache);
       blockPoolTokenSecretManager.addBlockPool(blockPoolId, secretMgr);
     }
   }
@@ -1103,7 +1164,11 @@ public void shutdown() {
         : this.blockPoolManager.getAllNamenodeThreads();
     this.shouldRun = false;
     shutdownPeriodicScanners();
+    shutdownDiskBalancer();
     
+    if (httpServer != null) {
+      httpServer.close();
+    }
     if (infoServer != null) {
       try {
         infoServer.stop();
@@ -1764,10 +1829,11 @@ public void scheduleAllBlockReport(long delay) {
    * This method is used for testing. 
    * Examples are adding and deleting blocks directly.
    * The most common usage will be when the data node's storage is simulated.
+   * It is also used by the {@link DatanodeHttpServer} to find local replicas.
    * 
    * @return the fsdataset that stores the blocks
    */
-  FsDatasetSpi<?> getFSDataset() {
+  public FsDatasetSpi<?> getFSDataset() {
     return data;
   }
 
@@ -2185,7 +2251,8 @@ public String getHttpPort(){
    * @return the datanode's http port
    */
   public int getInfoPort() {
-    return infoServer.getPort();
+    return httpServer != null ? httpServer.getAddress().getPort()
+        : infoServer.getPort();
   }
 
   /**
@@ -2249,6 +2316,23 @@ public void deleteBlockPool(String blockPoolId, boolean force)
     data.deleteBlockPool(blockPoolId, force);
   }
 
+  @Override // ClientDatanodeProtocol
+  public void startDiskBalancer(double threshold) throws IOException {
+    LOG.info("startDiskBalancer command received, threshold=" + threshold);
+    getDiskBalancer().start(threshold);
+  }
+
+  @Override // ClientDatanodeProtocol
+  public void cancelDiskBalancer() throws IOException {
+    LOG.info("cancelDiskBalancer command received");
+    getDiskBalancer().cancel();
+  }
+
+  @Override // ClientDatanodeProtocol
+  public DiskBalancerStatus getDiskBalancerStatus() throws IOException {
+    return getDiskBalancer().getStatus();
+  }
+
   /**
    * @param addr rpc address of the namenode
    * @return true if the datanode is connected to a NameNode at the
@@ -39,6 +39,7 @@
 import java.util.Arrays;
 
 import org.apache.commons.logging.Log;
+import org.apache.hadoop.fs.Options.ChecksumCombineMode;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -67,6 +68,7 @@
 import org.apache.hadoop.net.SocketInputWrapper;
 import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
+import org.apache.hadoop.util.CrcUtil;
 import org.apache.hadoop.util.DataChecksum;
 
 import com.google.protobuf.ByteString;
@@ -166,7 +168,7 @@ public void run() {
         try {
           encryptedStreams = DataTransferEncryptor.getEncryptedStreams(socketOut,
               socketIn, datanode.blockPoolTokenSecretManager,
-              dnConf.encryptionAlgorithm);
+              dnConf.encryptionAlgorithm, dnConf.encryptionCipherSuites);
         } catch (InvalidMagicNumberException imne) {
           LOG.info("Failed to read expected encryption handshake from client " +
               "at " + s.getInetAddress() + ". Perhaps the client is running an " +
@@ -572,7 +574,8 @@ public void transferBlock(final ExtendedBlock blk,
   
   @Override
   public void blockChecksum(final ExtendedBlock block,
-      final Token<BlockTokenIdentifier> blockToken) throws IOException {
+      final Token<BlockTokenIdentifier> blockToken,
+      final ChecksumCombineMode combineMode) throws IOException {
     final DataOutputStream out = new DataOutputStream(
         getOutputStream());
     checkAccess(out, true, block, blockToken,
@@ -585,30 +588,52 @@ public void blockChecksum(final ExtendedBlock block,
 
     updateCurrentThreadName("Getting checksum for block " + block);
     try {
-      //read metadata file
-      final BlockMetadataHeader header = BlockMetadataHeader.readHeader(checksumIn);
-      final DataChecksum checksum = header.getChecksum(); 
-      final int bytesPerCRC = checksum.getBytesPerChecksum();
-      final long crcPerBlock = (metadataIn.getLength()
-          - BlockMetadataHeader.getHeaderSize())/checksum.getChecksumSize();
+      // the checksum of a finalized replica does not change until its
+      // generation stamp does
+      final BlockChecksumCache cache = datanode.blockChecksumCache;
+      final boolean cacheable = cache != null
+          && combineMode == ChecksumCombineMode.MD5MD5CRC
+          && datanode.data.isValidBlock(block);
+      OpBlockChecksumResponseProto checksumResponse = cacheable ?
+          cache.get(block, metadataIn.getLength()) : null;
+
+      if (combineMode == ChecksumCombineMode.COMPOSITE_CRC) {
+        checksumResponse = getCompositeCrc(block, checksumIn);
+      } else if (checksumResponse == null) {
+        //read metadata file
+        final BlockMetadataHeader header =
+            BlockMetadataHeader.readHeader(checksumIn);
+        final DataChecksum checksum = header.getChecksum(); 
+        final int bytesPerCRC = checksum.getBytesPerChecksum();
+        final long crcPerBlock = (metadataIn.getLength()
+            - BlockMetadataHeader.getHeaderSize())/checksum.getChecksumSize();
       
-      //compute block checksum
-      final MD5Hash md5 = MD5Hash.digest(checksumIn);
+        //compute block checksum
+        final MD5Hash md5 = MD5Hash.digest(checksumIn);
 
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("block=" + block + ", bytesPerCRC=" + bytesPerCRC
-            + ", crcPerBlock=" + crcPerBlock + ", md5=" + md5);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug("block=" + block + ", bytesPerCRC=" + bytesPerCRC
+              + ", crcPerBlock=" + crcPerBlock + ", md5=" + md5);
+        }
+
+        checksumResponse = OpBlockChecksumResponseProto.newBuilder()
+            .setBytesPerCrc(bytesPerCRC)
+            .setCrcPerBlock(crcPerBlock)
+            .setMd5(ByteString.copyFrom(md5.getDigest()))
+            .setCrcType(PBHelper.convert(checksum.getChecksumType()))
+            .build();
+        if (cacheable) {
+          cache.put(block, metadataIn.getLength(), checksumResponse);
+        }
+      } else if (LOG.isDebugEnabled()) {
+        LOG.debug("block=" + block + ", cached checksum "
+            + checksumResponse);
       }
 
       //write reply
       BlockOpResponseProto.newBuilder()
         .setStatus(SUCCESS)
-        .setChecksumResponse(OpBlockChecksumResponseProto.newBuilder()             
-          .setBytesPerCrc(bytesPerCRC)
-          .setCrcPerBlock(crcPerBlock)
-          .setMd5(ByteString.copyFrom(md5.getDigest()))
-          .setCrcType(PBHelper.convert(checksum.getChecksumType()))
-          )
+        .setChecksumResponse(checksumResponse)
         .build()
         .writeDelimitedTo(out);
       out.flush();
@@ -622,6 +647,44 @@ public void blockChecksum(final ExtendedBlock block,
     datanode.metrics.addBlockChecksumOp(elapsed());
   }
 
+  /**
+   * Compose the CRCs of the chunks of the first block.getNumBytes() bytes
+   * of a replica, read from its meta file, into the CRC of these bytes.
+   */
+  private static OpBlockChecksumResponseProto getCompositeCrc(
+      ExtendedBlock block, DataInputStream checksumIn) throws IOException {
+    final BlockMetadataHeader header =
+        BlockMetadataHeader.readHeader(checksumIn);
+    final DataChecksum checksum = header.getChecksum();
+    final int bytesPerCRC = checksum.getBytesPerChecksum();
+    final int mod = CrcUtil.getCrcPolynomialForType(
+        checksum.getChecksumType());
+    final long numBytes = block.getNumBytes();
+    final long crcPerBlock = (numBytes + bytesPerCRC - 1) / bytesPerCRC;
+
+    final int fullChunkMonomial = CrcUtil.getMonomial(bytesPerCRC, mod);
+    int crc = 0;
+    for (long i = 0; i < crcPerBlock; i++) {
+      final long chunkLength = Math.min(bytesPerCRC, numBytes - i * bytesPerCRC);
+      crc = CrcUtil.composeWithMonomial(crc, checksumIn.readInt(),
+          chunkLength == bytesPerCRC ? fullChunkMonomial
+              : CrcUtil.getMonomial(chunkLength, mod), mod);
+    }
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("block=" + block + ", bytesPerCRC=" + bytesPerCRC
+          + ", crcPerBlock=" + crcPerBlock + ", compositeCrc="
+          + Integer.toHexString(crc));
+    }
+    return OpBlockChecksumResponseProto.newBuilder()
+        .setBytesPerCrc(bytesPerCRC)
+        .setCrcPerBlock(crcPerBlock)
+        .setMd5(ByteString.EMPTY)
+        .setCrcType(PBHelper.convert(checksum.getChecksumType()))
+        .setCompositeCrc(crc)
+        .build();
+  }
+
   @Override
   public void copyBlock(final ExtendedBlock block,
       final Token<BlockTokenIdentifier> blockToken) throws IOException {
@@ -0,0 +1,299 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.DiskBalancerStatus;
+import org.apache.hadoop.hdfs.protocol.DiskBalancerStatus.State;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.util.DataTransferThrottler;
+import org.apache.hadoop.util.Daemon;
+import org.apache.hadoop.util.StringUtils;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+/**
+ * Moves finalized replicas between the volumes of a datanode, so that the
+ * volumes are evenly used, for instance after some disks were replaced or
+ * added. The namenode is not involved: the replicas stay on the datanode,
+ * and only their volume changes.
+ * <p>
+ * A plan is made of steps, each moving some bytes from a volume used more
+ * than the datanode as a whole to one used less. The steps are carried out
+ * one after the other by a background thread, at the rate set by
+ * <code>dfs.datanode.disk.balancer.bandwidthPerSec</code>. A step is given
+ * up after <code>dfs.datanode.disk.balancer.max.errors</code> replicas have
+ * failed to be moved.
+ */
+@InterfaceAudience.Private
+class DiskBalancer {
+  static final Log LOG = LogFactory.getLog(DiskBalancer.class);
+
+  /** A planned move of bytes from one volume to another. */
+  static class Step {
+    final FsVolumeSpi source;
+    final FsVolumeSpi destination;
+    final long bytesToMove;
+    volatile long bytesMoved = 0;
+    volatile long blocksMoved = 0;
+    volatile long errors = 0;
+
+    Step(FsVolumeSpi source, FsVolumeSpi destination, long bytesToMove) {
+      this.source = source;
+      this.destination = destination;
+      this.bytesToMove = bytesToMove;
+    }
+
+    DiskBalancerStatus.Step getStatus() {
+      return new DiskBalancerStatus.Step(source.toString(),
+          destination.toString(), bytesToMove, bytesMoved, blocksMoved,
+          errors);
+    }
+
+    @Override
+    public String toString() {
+      return "move " + StringUtils.byteDesc(bytesToMove) + " from " + source
+          + " to " + destination;
+    }
+  }
+
+  /** The bytes a volume has to give or take to be as used as the others. */
+  private static class VolumeImbalance {
+    final FsVolumeSpi volume;
+    long bytes;
+
+    VolumeImbalance(FsVolumeSpi volume, long bytes) {
+      this.volume = volume;
+      this.bytes = bytes;
+    }
+  }
+
+  private static final Comparator<VolumeImbalance> MOST_BYTES_FIRST =
+      new Comparator<VolumeImbalance>() {
+    @Override
+    public int compare(VolumeImbalance a, VolumeImbalance b) {
+      return a.bytes > b.bytes ? -1 : a.bytes < b.bytes ? 1 : 0;
+    }
+  };
+
+  private final FsDatasetSpi<?> dataset;
+  private final DataTransferThrottler throttler;
+  private final int maxErrors;
+
+  private State state = State.NO_PLAN;
+  private List<Step> plan = Collections.emptyList();
+  private Daemon worker = null;
+  private volatile boolean cancelled = false;
+
+  DiskBalancer(FsDatasetSpi<?> dataset, Configuration conf) {
+    this.dataset = dataset;
+    this.throttler = new DataTransferThrottler(conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_DISK_BALANCER_BANDWIDTHPERSEC_KEY,
+        DFSConfigKeys.DFS_DATANODE_DISK_BALANCER_BANDWIDTHPERSEC_DEFAULT));
+    this.maxErrors = conf.getInt(
+        DFSConfigKeys.DFS_DATANODE_DISK_BALANCER_MAX_ERRORS_KEY,
+        DFSConfigKeys.DFS_DATANODE_DISK_BALANCER_MAX_ERRORS_DEFAULT);
+  }
+
+  /**
+   * Plan the moves which bring the usage of each volume close to the usage
+   * of all the volumes together.
+   *
+   * @param volumes the volumes of the datanode
+   * @param threshold percentage of the capacity of a volume by which its
+   *          usage may exceed the usage of all the volumes
+   * @return the moves to make, the largest first
+   */
+  @VisibleForTesting
+  static List<Step> plan(List<? extends FsVolumeSpi> volumes,
+      double threshold) throws IOException {
+    long totalCapacity = 0;
+    long totalUsed = 0;
+    final long[] capacity = new long[volumes.size()];
+    final long[] used = new long[volumes.size()];
+    for (int i = 0; i < capacity.length; i++) {
+      capacity[i] = volumes.get(i).getCapacity();
+      used[i] = volumes.get(i).getDfsUsed();
+      totalCapacity += capacity[i];
+      totalUsed += used[i];
+    }
+    final List<Step> steps = new ArrayList<Step>();
+    if (totalCapacity <= 0) {
+      return steps;
+    }
+
+    final double idealUsage = (double)totalUsed / totalCapacity;
+    final List<VolumeImbalance> overUsed = new ArrayList<VolumeImbalance>();
+    final List<VolumeImbalance> underUsed = new ArrayList<VolumeImbalance>();
+    for (int i = 0; i < capacity.length; i++) {
+      final long excess = used[i] - (long)(idealUsage * capacity[i]);
+      if (excess > threshold * capacity[i] / 100) {
+        overUsed.add(new VolumeImbalance(volumes.get(i), excess));
+      } else if (excess < 0) {
+        underUsed.add(new VolumeImbalance(volumes.get(i), -excess));
+      }
+    }
+    Collections.sort(overUsed, MOST_BYTES_FIRST);
+    Collections.sort(underUsed, MOST_BYTES_FIRST);
+
+    // fill the emptiest volumes from the fullest ones first
+    int i = 0, j = 0;
+    while (i < overUsed.size() && j < underUsed.size()) {
+      final VolumeImbalance source = overUsed.get(i);
+      final VolumeImbalance destination = underUsed.get(j);
+      final long bytes = Math.min(source.bytes, destination.bytes);
+      steps.add(new Step(source.volume, destination.volume, bytes));
+      source.bytes -= bytes;
+      destination.bytes -= bytes;
+      if (source.bytes == 0) {
+        i++;
+      }
+      if (destination.bytes == 0) {
+        j++;
+      }
+    }
+    return steps;
+  }
+
+  /**
+   * Plan the moves, and start making them in the background.
+   *
+   * @param threshold see {@link #plan(List, double)}
+   * @throws IOException if a plan is already being carried out
+   */
+  synchronized void start(double threshold) throws IOException {
+    Preconditions.checkArgument(threshold >= 0 && threshold < 100,
+        "The threshold must be in [0, 100): %s", threshold);
+    if (state == State.PLAN_UNDER_PROGRESS) {
+      throw new IOException("The disk balancer is already running");
+    }
+    final List<Step> steps = plan(dataset.getVolumes(), threshold);
+    LOG.info("Disk balancer plan with a threshold of " + threshold + "%: "
+        + (steps.isEmpty() ? "the volumes are balanced" : steps));
+    plan = steps;
+    cancelled = false;
+    state = State.PLAN_UNDER_PROGRESS;
+    worker = new Daemon(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (Step step : steps) {
+            if (cancelled) {
+              break;
+            }
+            execute(step);
+          }
+        } catch (Throwable t) {
+          LOG.error("Disk balancer failed", t);
+        } finally {
+          synchronized (DiskBalancer.this) {
+            state = cancelled ? State.PLAN_CANCELLED : State.PLAN_DONE;
+          }
+          LOG.info("Disk balancer " + (cancelled ? "cancelled" : "done")
+              + ": " + getStatus());
+        }
+      }
+    });
+    worker.setName("DiskBalancer");
+    worker.start();
+  }
+
+  /** Move the finalized replicas of the source volume of a step. */
+  private void execute(Step step) throws IOException {
+    for (String bpid : step.source.getBlockPoolList()) {
+      for (Block b : dataset.getFinalizedBlocks(bpid)) {
+        if (cancelled) {
+          return;
+        }
+        if (step.errors >= maxErrors) {
+          LOG.warn("Giving up on the step to " + step + " after "
+              + step.errors + " errors");
+          return;
+        }
+        final long remaining = step.bytesToMove - step.bytesMoved;
+        if (remaining <= 0) {
+          return;
+        }
+        final ExtendedBlock block = new ExtendedBlock(bpid, b);
+        if (b.getNumBytes() > remaining
+            || dataset.getVolume(block) != step.source) {
+          continue;
+        }
+        try {
+          if (dataset.moveBlockAcrossVolumes(block, step.destination,
+              throttler)) {
+            step.bytesMoved += b.getNumBytes();
+            step.blocksMoved++;
+          }
+        } catch (IOException e) {
+          LOG.warn("Failed to move " + block + " from " + step.source
+              + " to " + step.destination, e);
+          step.errors++;
+        }
+      }
+    }
+  }
+
+  /** Stop the moves after the replica being moved. */
+  synchronized void cancel() {
+    if (state == State.PLAN_UNDER_PROGRESS) {
+      LOG.info("Cancelling the disk balancer");
+      cancelled = true;
+    }
+  }
+
+  synchronized DiskBalancerStatus getStatus() {
+    final List<DiskBalancerStatus.Step> steps =
+        new ArrayList<DiskBalancerStatus.Step>(plan.size());
+    for (Step step : plan) {
+      steps.add(step.getStatus());
+    }
+    return new DiskBalancerStatus(state, steps);
+  }
+
+  /** Cancel the plan, and wait for the moves to stop. */
+  void shutdown() {
+    final Daemon w;
+    synchronized (this) {
+      cancel();
+      w = worker;
+    }
+    if (w != null) {
+      w.interrupt();
+      try {
+        w.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_KEY;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.DiskChecker.DiskOutOfSpaceException;
+
+/**
+ * A DN volume choosing policy which takes into account the amount of free
+ * space on each of the available volumes when considering where to assign a
+ * new replica allocation. By default this policy prefers assigning replicas to
+ * those volumes with more available free space, so as to over time balance the
+ * available space of all the volumes within a DN.
+ * <p>
+ * When all the volumes have an available space within
+ * <code>dfs.datanode.available-space-volume-choosing-policy.balanced-space-threshold</code>
+ * of each other, they are chosen in round-robin order. Otherwise the volumes
+ * with more available space are chosen with the probability given by
+ * <code>dfs.datanode.available-space-volume-choosing-policy.balanced-space-preference-fraction</code>,
+ * weighted by the number of volumes in each set.
+ */
+public class AvailableSpaceVolumeChoosingPolicy<V extends FsVolumeSpi>
+    implements VolumeChoosingPolicy<V>, Configurable {
+
+  private static final Log LOG =
+      LogFactory.getLog(AvailableSpaceVolumeChoosingPolicy.class);
+
+  private static final Random RAND = new Random();
+
+  private long balancedSpaceThreshold =
+      DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_DEFAULT;
+  private float balancedPreferencePercent =
+      DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_DEFAULT;
+  private Configuration conf;
+
+  private final VolumeChoosingPolicy<V> roundRobinPolicyBalanced =
+      new RoundRobinVolumeChoosingPolicy<V>();
+  private final VolumeChoosingPolicy<V> roundRobinPolicyHighAvailable =
+      new RoundRobinVolumeChoosingPolicy<V>();
+  private final VolumeChoosingPolicy<V> roundRobinPolicyLowAvailable =
+      new RoundRobinVolumeChoosingPolicy<V>();
+
+  @Override
+  public synchronized void setConf(Configuration conf) {
+    this.conf = conf;
+    balancedSpaceThreshold = conf.getLong(
+        DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_KEY,
+        DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_DEFAULT);
+    balancedPreferencePercent = conf.getFloat(
+        DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY,
+        DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_DEFAULT);
+
+    LOG.info("Available space volume choosing policy initialized: " +
+        DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_KEY +
+        " = " + balancedSpaceThreshold + ", " +
+        DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY +
+        " = " + balancedPreferencePercent);
+
+    if (balancedPreferencePercent > 1.0 || balancedPreferencePercent < 0.0) {
+      LOG.warn("The value of " +
+          DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY +
+          " is outside of [0.0, 1.0]; it will be clamped to that range.");
+      balancedPreferencePercent =
+          Math.min(1.0f, Math.max(0.0f, balancedPreferencePercent));
+    } else if (balancedPreferencePercent < 0.5) {
+      LOG.warn("The value of " +
+          DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY +
+          " is less than 0.5 so volumes with less available disk space will" +
+          " receive more block allocations.");
+    }
+  }
+
+  @Override
+  public synchronized Configuration getConf() {
+    return conf;
+  }
+
+  @Override
+  public synchronized V chooseVolume(List<V> volumes, final long replicaSize)
+      throws IOException {
+    if (volumes.size() < 1) {
+      throw new DiskOutOfSpaceException("No more available volumes");
+    }
+
+    // read the available space of each volume only once, since it may
+    // change while the volumes are being compared
+    final long[] available = new long[volumes.size()];
+    long leastAvailable = Long.MAX_VALUE;
+    long mostAvailable = 0;
+    for (int i = 0; i < available.length; i++) {
+      available[i] = volumes.get(i).getAvailable();
+      leastAvailable = Math.min(leastAvailable, available[i]);
+      mostAvailable = Math.max(mostAvailable, available[i]);
+    }
+
+    if (mostAvailable - leastAvailable <= balancedSpaceThreshold) {
+      // If they're actually not too far out of whack, fall back on pure round
+      // robin.
+      return roundRobinPolicyBalanced.chooseVolume(volumes, replicaSize);
+    }
+
+    final List<V> highAvailableVolumes = new ArrayList<V>();
+    final List<V> lowAvailableVolumes = new ArrayList<V>();
+    long mostAvailableAmongLowVolumes = 0;
+    for (int i = 0; i < available.length; i++) {
+      if (available[i] - leastAvailable > balancedSpaceThreshold) {
+        highAvailableVolumes.add(volumes.get(i));
+      } else {
+        lowAvailableVolumes.add(volumes.get(i));
+        mostAvailableAmongLowVolumes =
+            Math.max(mostAvailableAmongLowVolumes, available[i]);
+      }
+    }
+
+    if (mostAvailableAmongLowVolumes < replicaSize) {
+      // If none of the volumes with low free space have enough space for the
+      // replica, always try to choose a volume with a lot of free space.
+      return roundRobinPolicyHighAvailable.chooseVolume(
+          highAvailableVolumes, replicaSize);
+    }
+
+    // Weight each volume with a lot of free space by the preference, and
+    // each of the others by its complement, so that the share of each set
+    // also depends on how many volumes it has.
+    float preferencePercentScaler =
+        (highAvailableVolumes.size() * balancedPreferencePercent) /
+        (highAvailableVolumes.size() * balancedPreferencePercent +
+         lowAvailableVolumes.size() * (1 - balancedPreferencePercent));
+    if (RAND.nextFloat() < preferencePercentScaler) {
+      return roundRobinPolicyHighAvailable.chooseVolume(
+          highAvailableVolumes, replicaSize);
+    } else {
+      return roundRobinPolicyLowAvailable.chooseVolume(
+          lowAvailableVolumes, replicaSize);
+    }
+  }
+}
@@ -40,6 +40,7 @@
 import org.apache.hadoop.hdfs.server.datanode.metrics.FSDatasetMBean;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.ReplicaRecoveryInfo;
+import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
 import org.apache.hadoop.util.ReflectionUtils;
 
@@ -386,4 +387,20 @@ public BlockLocalPathInfo getBlockLocalPathInfo(ExtendedBlock b
   public HdfsBlocksMetadata getHdfsBlocksMetadata(List<ExtendedBlock> blocks)
       throws IOException;
 
+  /**
+   * Move a finalized replica to another volume. The replica is copied to
+   * the destination volume, and replaces the original only if the original
+   * was neither changed nor removed during the copy.
+   *
+   * @param block the replica to move
+   * @param destination the volume to move the replica to
+   * @param throttler limits the rate of the copy, or null for no limit
+   * @return true if the replica was moved; false if it is not finalized,
+   *         is already on the destination volume or changed during the copy
+   * @throws IOException if the replica cannot be copied
+   */
+  public boolean moveBlockAcrossVolumes(ExtendedBlock block,
+      FsVolumeSpi destination, DataTransferThrottler throttler)
+      throws IOException;
+
 }
@@ -30,6 +30,12 @@ public interface FsVolumeSpi {
   /** @return the available storage space in bytes. */
   public long getAvailable() throws IOException;
 
+  /** @return the storage capacity in bytes, less the reserved space. */
+  public long getCapacity();
+
+  /** @return the space used by the replicas of all block pools, in bytes. */
+  public long getDfsUsed() throws IOException;
+
   /** @return the path to the volume */
   public String getPath(String bpid) throws IOException;
 
@@ -21,12 +21,17 @@
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Scanner;
 
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.DU;
 import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.GetSpaceUsed;
+import org.apache.hadoop.fs.IncrementalSpaceUsed;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -40,6 +45,9 @@
 import org.apache.hadoop.util.DataChecksum;
 import org.apache.hadoop.util.DiskChecker;
 import org.apache.hadoop.util.DiskChecker.DiskErrorException;
+import org.apache.hadoop.util.Time;
+
+import com.google.common.base.Charsets;
 
 /**
  * A block pool slice represents a portion of a block pool stored on a volume.  
@@ -56,8 +64,15 @@ class BlockPoolSlice {
   private final File rbwDir; // directory store RBW replica
   private final File tmpDir; // directory store Temporary replica
   
+  /** The file in which the space used is saved at shutdown */
+  private static final String DFS_USED_FILE = "dfsUsed";
+
   // TODO:FEDERATION scalability issue - a thread per DU is needed
-  private final DU dfsUsage;
+  /** The space used by the finalized replicas */
+  private final GetSpaceUsed dfsUsage;
+  private final long cachedDfsUsedCheckInterval;
+  /** Whether the finalized replicas are counted as they are loaded */
+  private boolean countLoadedReplicas;
 
   /**
    * Create a blook pool slice 
@@ -105,10 +120,84 @@ class BlockPoolSlice {
         throw new IOException("Mkdirs failed to create " + tmpDir.toString());
       }
     }
-    this.dfsUsage = new DU(bpDir, conf);
+    // The finalized replicas are counted as they are finalized and
+    // deleted. The count saved at shutdown is used if it is recent enough;
+    // otherwise the replicas are counted as they are loaded.
+    this.cachedDfsUsedCheckInterval = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_CACHED_DFSUSED_CHECK_INTERVAL_KEY,
+        DFSConfigKeys.DFS_DATANODE_CACHED_DFSUSED_CHECK_INTERVAL_DEFAULT);
+    long cachedDfsUsed = loadDfsUsed();
+    this.countLoadedReplicas = cachedDfsUsed < 0;
+    this.dfsUsage = new GetSpaceUsed.Builder()
+        .setConf(conf)
+        .setKlass(conf.getClass(
+            DFSConfigKeys.DFS_DATANODE_SPACE_USED_CLASS_KEY,
+            IncrementalSpaceUsed.class, GetSpaceUsed.class))
+        .setPath(finalizedDir)
+        .setInterval(conf.getLong(
+            DFSConfigKeys.DFS_DATANODE_SPACE_USED_REFRESH_INTERVAL_KEY,
+            DFSConfigKeys.DFS_DATANODE_SPACE_USED_REFRESH_INTERVAL_DEFAULT))
+        .setInitialUsed(Math.max(cachedDfsUsed, 0))
+        .build();
     this.dfsUsage.start();
   }
 
+  /**
+   * Read the space used saved at the last shutdown, and delete it so that
+   * it is not used again after a crash.
+   *
+   * @return the saved space used, or -1 if there is none or it is too old
+   */
+  long loadDfsUsed() {
+    File file = new File(currentDir, DFS_USED_FILE);
+    if (!file.exists()) {
+      return -1;
+    }
+    long used = -1;
+    Scanner sc = null;
+    try {
+      sc = new Scanner(file, "UTF-8");
+      long savedUsed = sc.nextLong();
+      long savedTime = sc.nextLong();
+      if (Time.now() - savedTime <= cachedDfsUsedCheckInterval) {
+        used = savedUsed;
+        FsDatasetImpl.LOG.info("Using the saved space used of " + used
+            + " bytes for " + currentDir);
+      }
+    } catch (Exception e) {
+      FsDatasetImpl.LOG.warn("Failed to read " + file, e);
+    } finally {
+      if (sc != null) {
+        sc.close();
+      }
+    }
+    if (!file.delete()) {
+      FsDatasetImpl.LOG.warn("Failed to delete " + file);
+    }
+    return used;
+  }
+
+  /** Save the space used, to be read back at the next start. */
+  void saveDfsUsed() {
+    File file = new File(currentDir, DFS_USED_FILE);
+    Writer out = null;
+    try {
+      long used = getDfsUsed();
+      out = new OutputStreamWriter(new FileOutputStream(file),
+          Charsets.UTF_8);
+      out.write(used + " " + Time.now());
+      out.close();
+      out = null;
+    } catch (IOException e) {
+      FsDatasetImpl.LOG.warn("Failed to save the space used to " + file, e);
+      if (!file.delete() && file.exists()) {
+        FsDatasetImpl.LOG.warn("Failed to delete " + file);
+      }
+    } finally {
+      IOUtils.cleanup(null, out);
+    }
+  }
+
   File getDirectory() {
     return currentDir.getParentFile();
   }
@@ -121,7 +210,12 @@ File getRbwDir() {
     return rbwDir;
   }
 
-  /** Run DU on local drives.  It must be synchronized from caller. */
+  /** Add the space of a finalized replica.  Synchronized by the caller. */
+  void incDfsUsed(long value) {
+    dfsUsage.incDfsUsed(value);
+  }
+
+  /** Remove the space of a finalized replica.  Synchronized by the caller. */
   void decDfsUsed(long value) {
     dfsUsage.decDfsUsed(value);
   }
@@ -166,6 +260,7 @@ void getVolumeMap(ReplicaMap volumeMap) throws IOException {
     finalizedDir.getVolumeMap(bpid, volumeMap, volume);
     // add rbw replicas
     addToReplicasMap(volumeMap, rbwDir, false);
+    countLoadedReplicas = false;
   }
 
   /**
@@ -189,6 +284,10 @@ void addToReplicasMap(ReplicaMap volumeMap, File dir, boolean isFinalized
       if (isFinalized) {
         newReplica = new FinalizedReplica(blockId, 
             blockFile.length(), genStamp, volume, blockFile.getParentFile());
+        if (countLoadedReplicas) {
+          dfsUsage.incDfsUsed(newReplica.getNumBytes()
+              + FsDatasetUtil.getMetaFile(blockFile, genStamp).length());
+        }
       } else {
         newReplica = new ReplicaWaitingToBeRecovered(blockId,
             validateIntegrity(blockFile, genStamp), 
@@ -281,6 +380,7 @@ public String toString() {
   }
   
   void shutdown() {
+    saveDfsUsed();
     dfsUsage.shutdown();
   }
 }
\ No newline at end of file
@@ -151,13 +151,15 @@ synchronized void shutdown() {
   /**
    * Delete the block file and meta file from the disk asynchronously, adjust
    * dfsUsed statistics accordingly.
+   * @param finalized whether the replica is finalized, and thus counted in
+   *        the dfsUsed statistics
    */
   void deleteAsync(FsVolumeImpl volume, File blockFile, File metaFile,
-      ExtendedBlock block) {
+      ExtendedBlock block, boolean finalized) {
     LOG.info("Scheduling " + block.getLocalBlock()
         + " file " + blockFile + " for deletion");
     ReplicaFileDeleteTask deletionTask = new ReplicaFileDeleteTask(
-        volume, blockFile, metaFile, block);
+        volume, blockFile, metaFile, block, finalized);
     execute(volume.getCurrentDir(), deletionTask);
   }
   
@@ -169,13 +171,15 @@ class ReplicaFileDeleteTask implements Runnable {
     final File blockFile;
     final File metaFile;
     final ExtendedBlock block;
+    final boolean finalized;
     
     ReplicaFileDeleteTask(FsVolumeImpl volume, File blockFile,
-        File metaFile, ExtendedBlock block) {
+        File metaFile, ExtendedBlock block, boolean finalized) {
       this.volume = volume;
       this.blockFile = blockFile;
       this.metaFile = metaFile;
       this.block = block;
+      this.finalized = finalized;
     }
 
     @Override
@@ -197,7 +201,9 @@ public void run() {
         if(block.getLocalBlock().getNumBytes() != BlockCommand.NO_ACK){
           datanode.notifyNamenodeDeletedBlock(block);
         }
-        volume.decDfsUsed(block.getBlockPoolId(), dfsBytes);
+        if (finalized) {
+          volume.decDfsUsed(block.getBlockPoolId(), dfsBytes);
+        }
         LOG.info("Deleted " + block.getBlockPoolId() + " "
             + block.getLocalBlock() + " file " + blockFile);
       }
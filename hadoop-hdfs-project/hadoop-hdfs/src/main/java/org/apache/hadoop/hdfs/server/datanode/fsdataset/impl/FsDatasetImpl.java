@@ -23,6 +23,7 @@
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
@@ -76,6 +77,8 @@
 import org.apache.hadoop.hdfs.server.datanode.metrics.FSDatasetMBean;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.ReplicaRecoveryInfo;
+import org.apache.hadoop.hdfs.util.DataTransferThrottler;
+import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.io.nativeio.NativeIO;
 import org.apache.hadoop.metrics2.util.MBeans;
 import org.apache.hadoop.util.DataChecksum;
@@ -546,6 +549,7 @@ private synchronized ReplicaBeingWritten append(String bpid,
     }
     File newBlkFile = new File(v.getRbwDir(bpid), replicaInfo.getBlockName());
     File oldmeta = replicaInfo.getMetaFile();
+    long dfsBytes = replicaInfo.getNumBytes() + oldmeta.length();
     ReplicaBeingWritten newReplicaInfo = new ReplicaBeingWritten(
         replicaInfo.getBlockId(), replicaInfo.getNumBytes(), newGS,
         v, newBlkFile.getParentFile(), Thread.currentThread());
@@ -584,6 +588,8 @@ private synchronized ReplicaBeingWritten append(String bpid,
     
     // Replace finalized replica by a RBW replica in replicas map
     volumeMap.add(bpid, newReplicaInfo);
+    // the replica is counted again when it is finalized
+    v.decDfsUsed(bpid, dfsBytes);
     
     return newReplicaInfo;
   }
@@ -1086,6 +1092,7 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
     for (int i = 0; i < invalidBlks.length; i++) {
       final File f;
       final FsVolumeImpl v;
+      final boolean finalized;
       synchronized (this) {
         f = getFile(bpid, invalidBlks[i].getBlockId());
         ReplicaInfo info = volumeMap.get(bpid, invalidBlks[i]);
@@ -1122,10 +1129,11 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
           continue;
         }
         ReplicaState replicaState = info.getState();
-        if (replicaState == ReplicaState.FINALIZED || 
+        finalized = replicaState == ReplicaState.FINALIZED || 
             (replicaState == ReplicaState.RUR && 
                 ((ReplicaUnderRecovery)info).getOriginalReplica().getState() == 
-                  ReplicaState.FINALIZED)) {
+                  ReplicaState.FINALIZED);
+        if (finalized) {
           v.clearPath(bpid, parent);
         }
         volumeMap.remove(bpid, invalidBlks[i]);
@@ -1134,7 +1142,7 @@ public void invalidate(String bpid, Block invalidBlks[]) throws IOException {
       // Delete the block asynchronously to make sure we can do it fast enough
       asyncDiskService.deleteAsync(v, f,
           FsDatasetUtil.getMetaFile(f, invalidBlks[i].getGenerationStamp()),
-          new ExtendedBlock(bpid, invalidBlks[i]));
+          new ExtendedBlock(bpid, invalidBlks[i]), finalized);
     }
     if (error) {
       throw new IOException("Error in deleting blocks.");
@@ -1313,6 +1321,9 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
           // Block is in memory and not on the disk
           // Remove the block from volumeMap
           volumeMap.remove(bpid, blockId);
+          ((FsVolumeImpl)memBlockInfo.getVolume()).decDfsUsed(bpid,
+              memBlockInfo.getNumBytes() + (diskMetaFile != null ?
+                  diskMetaFile.length() : 0));
           final DataBlockScanner blockScanner = datanode.getBlockScanner();
           if (blockScanner != null) {
             blockScanner.deleteBlock(bpid, new Block(blockId));
@@ -1336,6 +1347,8 @@ public void checkAndUpdate(String bpid, long blockId, File diskFile,
         ReplicaInfo diskBlockInfo = new FinalizedReplica(blockId, 
             diskFile.length(), diskGS, vol, diskFile.getParentFile());
         volumeMap.add(bpid, diskBlockInfo);
+        ((FsVolumeImpl)vol).incDfsUsed(bpid, diskBlockInfo.getNumBytes()
+            + (diskMetaFile != null ? diskMetaFile.length() : 0));
         final DataBlockScanner blockScanner = datanode.getBlockScanner();
         if (blockScanner != null) {
           blockScanner.addBlock(new ExtendedBlock(bpid, diskBlockInfo));
@@ -1580,9 +1593,16 @@ private FinalizedReplica updateReplicaUnderRecovery(
     }
     if (rur.getNumBytes() > newlength) {
       rur.unlinkBlock(1);
-      truncateBlock(replicafile, rur.getMetaFile(), rur.getNumBytes(), newlength);
+      final File metafile = rur.getMetaFile();
+      final long dfsBytes = replicafile.length() + metafile.length();
+      truncateBlock(replicafile, metafile, rur.getNumBytes(), newlength);
       // update RUR with the new length
       rur.setNumBytes(newlength);
+      if (rur.getOriginalReplica().getState() == ReplicaState.FINALIZED) {
+        // the finalized replica stays counted, with its new length
+        ((FsVolumeImpl)rur.getVolume()).decDfsUsed(bpid,
+            dfsBytes - replicafile.length() - metafile.length());
+      }
    }
 
     // finalize the block
@@ -1737,6 +1757,92 @@ public HdfsBlocksMetadata getHdfsBlocksMetadata(List<ExtendedBlock> blocks)
         blocksVolumeIds, blocksVolumeIndexes);
   }
 
+  @Override // FsDatasetSpi
+  public boolean moveBlockAcrossVolumes(ExtendedBlock block,
+      FsVolumeSpi destination, DataTransferThrottler throttler)
+      throws IOException {
+    final String bpid = block.getBlockPoolId();
+    final FinalizedReplica replica;
+    synchronized (this) {
+      if (!volumes.volumes.contains(destination)) {
+        throw new IOException("Volume " + destination
+            + " is not a volume of this dataset");
+      }
+      ReplicaInfo r = volumeMap.get(bpid, block.getBlockId());
+      if (r == null || r.getState() != ReplicaState.FINALIZED
+          || r.getVolume() == destination) {
+        return false;
+      }
+      replica = new FinalizedReplica((FinalizedReplica)r);
+    }
+
+    // copy the replica into the tmp directory of the destination without
+    // the lock, so that the replica can still be read meanwhile
+    final FsVolumeImpl source = (FsVolumeImpl)replica.getVolume();
+    final FsVolumeImpl target = (FsVolumeImpl)destination;
+    final File srcfile = replica.getBlockFile();
+    final File srcmeta = replica.getMetaFile();
+    final File tmpfile = target.createTmpFile(bpid, replica);
+    final File tmpmeta = FsDatasetUtil.getMetaFile(tmpfile,
+        replica.getGenerationStamp());
+    boolean moved = false;
+    try {
+      copyFile(srcmeta, tmpmeta, throttler);
+      copyFile(srcfile, tmpfile, throttler);
+      synchronized (this) {
+        // give up if the replica was appended to, recovered or deleted
+        ReplicaInfo r = volumeMap.get(bpid, block.getBlockId());
+        if (r == null || r.getState() != ReplicaState.FINALIZED
+            || r.getVolume() != source
+            || r.getGenerationStamp() != replica.getGenerationStamp()
+            || r.getNumBytes() != replica.getNumBytes()) {
+          return false;
+        }
+        File dest = target.addBlock(bpid, replica, tmpfile);
+        volumeMap.add(bpid,
+            new FinalizedReplica(replica, target, dest.getParentFile()));
+        source.decDfsUsed(bpid, replica.getNumBytes() + srcmeta.length());
+        moved = true;
+      }
+    } finally {
+      if (!moved) {
+        delBlockFromDisk(tmpfile, tmpmeta, replica);
+      }
+    }
+
+    // nothing refers to the original files any more
+    delBlockFromDisk(srcfile, srcmeta, replica);
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Moved " + replica + " from " + source + " to " + target);
+    }
+    return true;
+  }
+
+  /** Copy a file, and sync the copy to the disk. */
+  private static void copyFile(File src, File dst,
+      DataTransferThrottler throttler) throws IOException {
+    FileInputStream in = null;
+    FileOutputStream out = null;
+    try {
+      in = new FileInputStream(src);
+      out = new FileOutputStream(dst);
+      byte[] buf = new byte[64 * 1024];
+      for (int n; (n = in.read(buf)) > 0; ) {
+        out.write(buf, 0, n);
+        if (throttler != null) {
+          throttler.throttle(n);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException("Interrupted while copying "
+              + src + " to " + dst);
+        }
+      }
+      out.getChannel().force(true);
+    } finally {
+      IOUtils.cleanup(LOG, in, out);
+    }
+  }
+
   @Override
   public RollingLogs createRollingLogs(String bpid, String prefix
       ) throws IOException {
@@ -69,6 +69,15 @@ File getRbwDir(String bpid) throws IOException {
     return getBlockPoolSlice(bpid).getRbwDir();
   }
   
+  void incDfsUsed(String bpid, long value) {
+    synchronized(dataset) {
+      BlockPoolSlice bp = bpSlices.get(bpid);
+      if (bp != null) {
+        bp.incDfsUsed(value);
+      }
+    }
+  }
+  
   void decDfsUsed(String bpid, long value) {
     synchronized(dataset) {
       BlockPoolSlice bp = bpSlices.get(bpid);
@@ -78,7 +87,8 @@ void decDfsUsed(String bpid, long value) {
     }
   }
   
-  long getDfsUsed() throws IOException {
+  @Override
+  public long getDfsUsed() throws IOException {
     long dfsUsed = 0;
     synchronized(dataset) {
       for(BlockPoolSlice s : bpSlices.values()) {
@@ -97,7 +107,8 @@ long getBlockPoolUsed(String bpid) throws IOException {
    * reserved capacity.
    * @return the unreserved number of bytes left in this filesystem. May be zero.
    */
-  long getCapacity() {
+  @Override
+  public long getCapacity() {
     long remaining = usage.getCapacity() - reserved;
     return remaining > 0 ? remaining : 0;
   }
@@ -190,8 +201,6 @@ void getVolumeMap(String bpid, ReplicaMap volumeMap) throws IOException {
   void addToReplicasMap(String bpid, ReplicaMap volumeMap, 
       File dir, boolean isFinalized) throws IOException {
     BlockPoolSlice bp = getBlockPoolSlice(bpid);
-    // TODO move this up
-    // dfsUsage.incDfsUsed(b.getNumBytes()+metaFile.length());
     bp.addToReplicasMap(volumeMap, dir, isFinalized);
   }
   
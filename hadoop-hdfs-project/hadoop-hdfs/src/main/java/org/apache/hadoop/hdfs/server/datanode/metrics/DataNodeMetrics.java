@@ -23,6 +23,8 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenVerificationCache;
+import org.apache.hadoop.hdfs.server.datanode.BlockChecksumCache;
 import org.apache.hadoop.metrics2.MetricsSystem;
 import org.apache.hadoop.metrics2.annotation.Metric;
 import org.apache.hadoop.metrics2.annotation.Metrics;
@@ -91,6 +93,8 @@ public class DataNodeMetrics {
 
   final MetricsRegistry registry = new MetricsRegistry("datanode");
   final String name;
+  private volatile BlockTokenVerificationCache blockTokenCache;
+  private volatile BlockChecksumCache blockChecksumCache;
 
   public DataNodeMetrics(String name, String sessionId, int[] intervals) {
     this.name = name;
@@ -143,6 +147,48 @@ public static DataNodeMetrics create(Configuration conf, String dnName) {
 
   public String name() { return name; }
 
+  /** Report the hits and misses of the given cache of block tokens. */
+  public void setBlockTokenCache(BlockTokenVerificationCache cache) {
+    this.blockTokenCache = cache;
+  }
+
+  @Metric(value={"BlockTokenCacheHits",
+      "Block token checks which found the token verified in the cache"},
+      type=Metric.Type.COUNTER)
+  public long getBlockTokenCacheHits() {
+    BlockTokenVerificationCache cache = blockTokenCache;
+    return cache == null ? 0 : cache.getHits();
+  }
+
+  @Metric(value={"BlockTokenCacheMisses",
+      "Block token checks which verified the token password"},
+      type=Metric.Type.COUNTER)
+  public long getBlockTokenCacheMisses() {
+    BlockTokenVerificationCache cache = blockTokenCache;
+    return cache == null ? 0 : cache.getMisses();
+  }
+
+  /** Report the hits and misses of the given cache of block checksums. */
+  public void setBlockChecksumCache(BlockChecksumCache cache) {
+    this.blockChecksumCache = cache;
+  }
+
+  @Metric(value={"BlockChecksumCacheHits",
+      "Block checksum requests answered from the cache"},
+      type=Metric.Type.COUNTER)
+  public long getBlockChecksumCacheHits() {
+    BlockChecksumCache cache = blockChecksumCache;
+    return cache == null ? 0 : cache.getHits();
+  }
+
+  @Metric(value={"BlockChecksumCacheMisses",
+      "Block checksum requests which read the meta file of the block"},
+      type=Metric.Type.COUNTER)
+  public long getBlockChecksumCacheMisses() {
+    BlockChecksumCache cache = blockChecksumCache;
+    return cache == null ? 0 : cache.getMisses();
+  }
+
   public void addHeartbeat(long latency) {
     heartbeats.add(latency);
   }
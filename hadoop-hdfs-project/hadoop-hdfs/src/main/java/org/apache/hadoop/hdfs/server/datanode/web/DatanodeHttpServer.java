@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.web;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_MAX_CHANNEL_MEMORY_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_MAX_CHANNEL_MEMORY_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_THREADS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_THREADS_KEY;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpMessage;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.execution.ExecutionHandler;
+import org.jboss.netty.handler.execution.OrderedMemoryAwareThreadPoolExecutor;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+import org.jboss.netty.util.DefaultObjectSizeEstimator;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * The asynchronous http server of a datanode, listening on the datanode http
+ * address in place of the Jetty server of the datanode.
+ * <p>
+ * The WebHDFS OPEN, CREATE and APPEND requests are served by
+ * {@link WebHdfsHandler} on a pool of threads. The events of a connection
+ * are run in order, and the server stops reading from a connection whose
+ * received data is not yet written to HDFS, so that the writers are slowed
+ * down to the speed of the write pipeline. The content of an OPEN is read
+ * chunk by chunk by a {@link ChunkedWriteHandler} as the connection can
+ * take it, so that slow readers do not hold the threads of the pool. All
+ * the other requests are forwarded to the Jetty server, which listens on a
+ * local address.
+ */
+@InterfaceAudience.Private
+public class DatanodeHttpServer implements Closeable {
+  public static final Log LOG = LogFactory.getLog(DatanodeHttpServer.class);
+
+  private final Configuration conf;
+  private final DataNode datanode;
+  private final InetSocketAddress jettyAddr;
+  private final ChannelFactory serverFactory;
+  private final ChannelFactory clientFactory;
+  private final ExecutionHandler executionHandler;
+  private final ChannelGroup allChannels =
+      new DefaultChannelGroup("datanode-http");
+  private InetSocketAddress address;
+
+  /**
+   * @param jettyAddr the local address of the Jetty server, to which the
+   *          requests not handled by this server are forwarded
+   */
+  public DatanodeHttpServer(Configuration conf, DataNode datanode,
+      InetSocketAddress jettyAddr) {
+    this.conf = conf;
+    this.datanode = datanode;
+    this.jettyAddr = jettyAddr;
+
+    final ThreadFactory bossFactory = new ThreadFactoryBuilder()
+        .setNameFormat("DatanodeHttpServer Netty Boss #%d")
+        .setDaemon(true).build();
+    final ThreadFactory workerFactory = new ThreadFactoryBuilder()
+        .setNameFormat("DatanodeHttpServer Netty Worker #%d")
+        .setDaemon(true).build();
+    this.serverFactory = new NioServerSocketChannelFactory(
+        Executors.newCachedThreadPool(bossFactory),
+        Executors.newCachedThreadPool(workerFactory));
+    final ThreadFactory clientThreadFactory = new ThreadFactoryBuilder()
+        .setNameFormat("DatanodeHttpServer Netty Client #%d")
+        .setDaemon(true).build();
+    this.clientFactory = new NioClientSocketChannelFactory(
+        Executors.newCachedThreadPool(clientThreadFactory),
+        Executors.newCachedThreadPool(clientThreadFactory));
+
+    final int threads = conf.getInt(DFS_DATANODE_WEBHDFS_NETTY_THREADS_KEY,
+        DFS_DATANODE_WEBHDFS_NETTY_THREADS_DEFAULT);
+    final long maxChannelMemory = conf.getLong(
+        DFS_DATANODE_WEBHDFS_NETTY_MAX_CHANNEL_MEMORY_KEY,
+        DFS_DATANODE_WEBHDFS_NETTY_MAX_CHANNEL_MEMORY_DEFAULT);
+    final ThreadFactory handlerFactory = new ThreadFactoryBuilder()
+        .setNameFormat("DatanodeHttpServer Handler #%d")
+        .setDaemon(true).build();
+    this.executionHandler = new ExecutionHandler(
+        new OrderedMemoryAwareThreadPoolExecutor(threads, maxChannelMemory,
+            maxChannelMemory * threads, 60, TimeUnit.SECONDS,
+            new HttpContentSizeEstimator(), handlerFactory));
+  }
+
+  /** Start listening on the given address. */
+  public void start(InetSocketAddress addr) {
+    final ServerBootstrap bootstrap = new ServerBootstrap(serverFactory);
+    bootstrap.setOption("child.tcpNoDelay", true);
+    bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+      @Override
+      public ChannelPipeline getPipeline() throws Exception {
+        final ChannelPipeline pipeline = Channels.pipeline();
+        pipeline.addLast("accepted", new SimpleChannelUpstreamHandler() {
+          @Override
+          public void channelOpen(ChannelHandlerContext ctx,
+              ChannelStateEvent e) throws Exception {
+            allChannels.add(e.getChannel());
+            super.channelOpen(ctx, e);
+          }
+        });
+        pipeline.addLast("decoder", new HttpRequestDecoder());
+        pipeline.addLast("encoder", new HttpResponseEncoder());
+        pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
+        pipeline.addLast("execution", executionHandler);
+        pipeline.addLast("handler", new WebHdfsHandler(conf, datanode,
+            new SimpleHttpProxyHandler(clientFactory, jettyAddr)));
+        return pipeline;
+      }
+    });
+    final Channel ch = bootstrap.bind(addr);
+    allChannels.add(ch);
+    address = (InetSocketAddress)ch.getLocalAddress();
+    LOG.info("Listening HTTP traffic on " + address
+        + ", forwarding to Jetty at " + jettyAddr);
+  }
+
+  /** @return the address the server is listening on */
+  public InetSocketAddress getAddress() {
+    return address;
+  }
+
+  @Override
+  public void close() {
+    allChannels.close().awaitUninterruptibly(10, TimeUnit.SECONDS);
+    serverFactory.releaseExternalResources();
+    clientFactory.releaseExternalResources();
+    executionHandler.releaseExternalResources();
+  }
+
+  /**
+   * Count the content of the http messages, which the default estimator
+   * does not see, in the memory of the connections waiting for the threads.
+   */
+  private static class HttpContentSizeEstimator
+      extends DefaultObjectSizeEstimator {
+    @Override
+    public int estimateSize(Object o) {
+      int size = super.estimateSize(o);
+      if (o instanceof HttpChunk) {
+        size += ((HttpChunk)o).getContent().readableBytes();
+      } else if (o instanceof HttpMessage) {
+        size += ((HttpMessage)o).getContent().readableBytes();
+      }
+      return size;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.web;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import com.google.common.net.InetAddresses;
+
+/**
+ * Give the servlets of the Jetty server behind {@link DatanodeHttpServer}
+ * the address of the client of a forwarded request, instead of the local
+ * address of the proxy, so that the proxy users are authorized against the
+ * address of the client.
+ * <p>
+ * The Jetty server listens on a local address only, and the proxy replaces
+ * the {@link #FORWARDED_FOR} header sent by the client, so the header is
+ * only trusted on requests coming from a loopback address.
+ */
+@InterfaceAudience.Private
+public class ForwardedRequestFilter implements Filter {
+  /** The header holding the address of the client of the proxy. */
+  public static final String FORWARDED_FOR = "X-Forwarded-For";
+
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+  }
+
+  @Override
+  public void doFilter(ServletRequest req, ServletResponse res,
+      FilterChain chain) throws IOException, ServletException {
+    final HttpServletRequest request = (HttpServletRequest)req;
+    final String client = getClientAddress(request);
+    if (client == null) {
+      chain.doFilter(req, res);
+      return;
+    }
+    chain.doFilter(new HttpServletRequestWrapper(request) {
+      @Override
+      public String getRemoteAddr() {
+        return client;
+      }
+
+      @Override
+      public String getRemoteHost() {
+        return client;
+      }
+    }, res);
+  }
+
+  /**
+   * @return the address of the client of a request forwarded by the proxy,
+   *         or null if the request was not forwarded
+   */
+  static String getClientAddress(HttpServletRequest request) {
+    final String forwardedFor = request.getHeader(FORWARDED_FOR);
+    if (forwardedFor == null
+        || !InetAddresses.isInetAddress(forwardedFor)) {
+      return null;
+    }
+    final String remote = request.getRemoteAddr();
+    if (remote == null || !InetAddresses.isInetAddress(remote)) {
+      return null;
+    }
+    final InetAddress proxy = InetAddresses.forString(remote);
+    return proxy.isLoopbackAddress() ? forwardedFor : null;
+  }
+
+  @Override
+  public void destroy() {
+  }
+}
@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.web;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.http.HttpClientCodec;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+
+/**
+ * Forward the http requests of a client connection to a local server, over
+ * a connection opened with the first forwarded request, and the responses
+ * of the server back to the client. The server is not read while the client
+ * connection is not writable. Either connection is closed with the other.
+ * The address of the client is sent to the server in the
+ * {@link ForwardedRequestFilter#FORWARDED_FOR} header of each request.
+ */
+class SimpleHttpProxyHandler extends SimpleChannelUpstreamHandler {
+  public static final Log LOG = LogFactory.getLog(SimpleHttpProxyHandler.class);
+
+  private final ChannelFactory factory;
+  private final InetSocketAddress host;
+  /** The client connection. */
+  private volatile Channel client;
+  /** The connection to the server, opened by the first request. */
+  private volatile ChannelFuture connected;
+
+  SimpleHttpProxyHandler(ChannelFactory factory, InetSocketAddress host) {
+    this.factory = factory;
+    this.host = host;
+  }
+
+  /**
+   * Forward a request or a chunk of a request of the given client
+   * connection. It blocks until the connection to the server is open.
+   */
+  void forward(Channel client, Object msg) throws IOException {
+    if (connected == null) {
+      this.client = client;
+      final ClientBootstrap bootstrap = new ClientBootstrap(factory);
+      bootstrap.setOption("tcpNoDelay", true);
+      bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+        @Override
+        public ChannelPipeline getPipeline() throws Exception {
+          return Channels.pipeline(new HttpClientCodec(),
+              SimpleHttpProxyHandler.this);
+        }
+      });
+      connected = bootstrap.connect(host);
+    }
+    if (!connected.awaitUninterruptibly().isSuccess()) {
+      throw new IOException("Failed to connect to " + host,
+          connected.getCause());
+    }
+    if (msg instanceof HttpRequest) {
+      // replace any address sent by the client
+      ((HttpRequest)msg).setHeader(ForwardedRequestFilter.FORWARDED_FOR,
+          ((InetSocketAddress)client.getRemoteAddress()).getAddress()
+              .getHostAddress());
+    }
+    connected.getChannel().write(msg);
+  }
+
+  /** Read the server again if the client connection is writable. */
+  void resume() {
+    final ChannelFuture f = connected;
+    if (f != null && f.isSuccess() && client.isWritable()) {
+      f.getChannel().setReadable(true);
+    }
+  }
+
+  /** Close the connection to the server. */
+  void close() {
+    final ChannelFuture f = connected;
+    if (f != null) {
+      f.getChannel().close();
+    }
+  }
+
+  @Override
+  public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+    client.write(e.getMessage());
+    if (!client.isWritable()) {
+      e.getChannel().setReadable(false);
+      // the client may have become writable in between
+      resume();
+    }
+  }
+
+  @Override
+  public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) {
+    if (client.isConnected()) {
+      client.write(ChannelBuffers.EMPTY_BUFFER).addListener(
+          ChannelFutureListener.CLOSE);
+    }
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+    if (e.getCause() instanceof ClosedChannelException) {
+      LOG.debug("Ignoring closed channel error", e.getCause());
+    } else {
+      LOG.warn("Proxy error on " + e.getChannel(), e.getCause());
+    }
+    e.getChannel().close();
+  }
+}
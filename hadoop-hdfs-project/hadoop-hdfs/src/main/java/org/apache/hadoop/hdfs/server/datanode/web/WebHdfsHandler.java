@@ -0,0 +1,667 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.web;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_TRANSFERTO_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_TRANSFERTO_KEY;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.LOCATION;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.CREATED;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.FORBIDDEN;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.UNAUTHORIZED;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.ClosedChannelException;
+import java.security.PrivilegedExceptionAction;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CreateFlag;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSClient;
+import org.apache.hadoop.hdfs.client.HdfsDataInputStream;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
+import org.apache.hadoop.hdfs.server.common.JspHelper;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.hdfs.web.JsonUtil;
+import org.apache.hadoop.hdfs.web.WebHdfsFileSystem;
+import org.apache.hadoop.hdfs.web.resources.BlockSizeParam;
+import org.apache.hadoop.hdfs.web.resources.BufferSizeParam;
+import org.apache.hadoop.hdfs.web.resources.DelegationParam;
+import org.apache.hadoop.hdfs.web.resources.DoAsParam;
+import org.apache.hadoop.hdfs.web.resources.GetOpParam;
+import org.apache.hadoop.hdfs.web.resources.HttpOpParam;
+import org.apache.hadoop.hdfs.web.resources.LengthParam;
+import org.apache.hadoop.hdfs.web.resources.NamenodeRpcAddressParam;
+import org.apache.hadoop.hdfs.web.resources.OffsetParam;
+import org.apache.hadoop.hdfs.web.resources.OverwriteParam;
+import org.apache.hadoop.hdfs.web.resources.PermissionParam;
+import org.apache.hadoop.hdfs.web.resources.PostOpParam;
+import org.apache.hadoop.hdfs.web.resources.PutOpParam;
+import org.apache.hadoop.hdfs.web.resources.ReplicationParam;
+import org.apache.hadoop.hdfs.web.resources.UserParam;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.security.SecurityUtil;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.authorize.AuthorizationException;
+import org.apache.hadoop.security.authorize.ProxyUsers;
+import org.apache.hadoop.security.token.Token;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.DefaultFileRegion;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunk;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.QueryStringDecoder;
+import org.jboss.netty.handler.stream.ChunkedInput;
+import org.jboss.netty.handler.stream.ChunkedWriteHandler;
+import org.jboss.netty.util.CharsetUtil;
+
+/**
+ * Serve the WebHDFS OPEN, CREATE and APPEND requests of a connection to the
+ * {@link DatanodeHttpServer}, as {@link
+ * org.apache.hadoop.hdfs.server.datanode.web.resources.DatanodeWebHdfsMethods}
+ * does, and forward all the other requests to Jetty.
+ * <p>
+ * The content of a file is read with a DFSClient, which verifies the
+ * checksums. If dfs.datanode.webhdfs.netty.transferTo.allowed is set, the
+ * parts of a file stored in finalized replicas on this datanode are rather
+ * sent from the block files with {@link DefaultFileRegion}, that is with
+ * FileChannel.transferTo, without verifying them.
+ * They are sent by the {@link ChunkedWriteHandler} of the pipeline as the
+ * connection becomes writable, without holding a thread of the pool.
+ * The content of CREATE and APPEND is written chunk by chunk, as it is
+ * received, to a DFSClient output stream.
+ */
+class WebHdfsHandler extends SimpleChannelUpstreamHandler {
+  public static final Log LOG = LogFactory.getLog(WebHdfsHandler.class);
+
+  private static final String APPLICATION_OCTET_STREAM =
+      "application/octet-stream";
+  private static final String APPLICATION_JSON = "application/json";
+
+  private final Configuration conf;
+  private final DataNode datanode;
+  private final SimpleHttpProxyHandler proxy;
+  private final boolean transferToAllowed;
+
+  /** Are the chunks of the current request forwarded to Jetty? */
+  private boolean forwarding = false;
+  /** Has the response of the current request been started? */
+  private boolean responseStarted = false;
+
+  /** The request whose content is written to {@link #out}. */
+  private HttpRequest writeRequest = null;
+  /** The location of the created file, or null for an append. */
+  private URI writeLocation = null;
+  private DFSClient writeClient = null;
+  private OutputStream out = null;
+
+  WebHdfsHandler(Configuration conf, DataNode datanode,
+      SimpleHttpProxyHandler proxy) {
+    this.conf = conf;
+    this.datanode = datanode;
+    this.proxy = proxy;
+    this.transferToAllowed = conf.getBoolean(
+        DFS_DATANODE_WEBHDFS_NETTY_TRANSFERTO_KEY,
+        DFS_DATANODE_WEBHDFS_NETTY_TRANSFERTO_DEFAULT);
+  }
+
+  @Override
+  public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+      throws IOException {
+    final Channel ch = e.getChannel();
+    final Object msg = e.getMessage();
+    if (msg instanceof HttpRequest) {
+      final HttpRequest request = (HttpRequest)msg;
+      final QueryStringDecoder decoder =
+          new QueryStringDecoder(request.getUri());
+      final Map<String, String> params = getParameters(decoder);
+      final HttpOpParam.Op op = getOp(request.getMethod(), decoder.getPath(),
+          params);
+      forwarding = op == null;
+      responseStarted = false;
+      if (forwarding) {
+        proxy.forward(ch, request);
+        return;
+      }
+      try {
+        handle(ch, request, decoder.getPath(), params, op);
+      } catch (Exception ex) {
+        onError(ch, ex);
+      }
+    } else if (msg instanceof HttpChunk) {
+      final HttpChunk chunk = (HttpChunk)msg;
+      if (forwarding) {
+        proxy.forward(ch, chunk);
+      } else if (out != null) {
+        // the chunks of a failed request are dropped
+        try {
+          write(ch, chunk.getContent(), chunk.isLast());
+        } catch (Exception ex) {
+          onError(ch, ex);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void channelInterestChanged(ChannelHandlerContext ctx,
+      ChannelStateEvent e) throws Exception {
+    proxy.resume();
+    super.channelInterestChanged(ctx, e);
+  }
+
+  @Override
+  public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e)
+      throws Exception {
+    proxy.close();
+    closeOutput();
+    super.channelClosed(ctx, e);
+  }
+
+  @Override
+  public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+    if (e.getCause() instanceof ClosedChannelException) {
+      LOG.debug("Ignoring closed channel error", e.getCause());
+    } else {
+      LOG.warn("Error on " + e.getChannel(), e.getCause());
+    }
+    e.getChannel().close();
+  }
+
+  /** @return the parameters, with the names in lower case as in Jersey */
+  private static Map<String, String> getParameters(
+      QueryStringDecoder decoder) {
+    final Map<String, String> params = new HashMap<String, String>();
+    for (Map.Entry<String, List<String>> p
+        : decoder.getParameters().entrySet()) {
+      if (!p.getValue().isEmpty()) {
+        params.put(p.getKey().toLowerCase(), p.getValue().get(0));
+      }
+    }
+    return params;
+  }
+
+  private static String getParameter(Map<String, String> params, String name,
+      String defaultValue) {
+    final String value = params.get(name);
+    return value == null ? defaultValue : value;
+  }
+
+  /**
+   * @return the operation of a request served by this handler, or null if
+   *         the request is forwarded to Jetty
+   */
+  private static HttpOpParam.Op getOp(HttpMethod method, String path,
+      Map<String, String> params) {
+    if (!path.equals(WebHdfsFileSystem.PATH_PREFIX)
+        && !path.startsWith(WebHdfsFileSystem.PATH_PREFIX + "/")) {
+      return null;
+    }
+    final String op = params.get(HttpOpParam.NAME);
+    if (op == null) {
+      return null;
+    }
+    try {
+      if (method.equals(HttpMethod.GET)) {
+        final GetOpParam.Op get = new GetOpParam(op).getValue();
+        return get == GetOpParam.Op.OPEN ? get : null;
+      } else if (method.equals(HttpMethod.PUT)) {
+        final PutOpParam.Op put = new PutOpParam(op).getValue();
+        return put == PutOpParam.Op.CREATE ? put : null;
+      } else if (method.equals(HttpMethod.POST)) {
+        final PostOpParam.Op post = new PostOpParam(op).getValue();
+        return post == PostOpParam.Op.APPEND ? post : null;
+      }
+    } catch (IllegalArgumentException e) {
+      // Jetty responds with the error
+    }
+    return null;
+  }
+
+  private void handle(final Channel ch, final HttpRequest request,
+      String path, final Map<String, String> params, final HttpOpParam.Op op)
+      throws IOException, InterruptedException {
+    // the first / is stripped out, as in UriFsPathParam
+    final String fullpath = path.length() > WebHdfsFileSystem.PATH_PREFIX
+        .length() ? path.substring(WebHdfsFileSystem.PATH_PREFIX.length())
+        : "/";
+    final InetSocketAddress nnRpcAddr = new NamenodeRpcAddressParam(
+        getParameter(params, NamenodeRpcAddressParam.NAME,
+            NamenodeRpcAddressParam.DEFAULT)).getValue();
+    if (nnRpcAddr == null) {
+      throw new IllegalArgumentException(NamenodeRpcAddressParam.NAME
+          + " is not specified.");
+    }
+    final UserGroupInformation ugi = getUGI(ch, params, nnRpcAddr);
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("HTTP " + request.getMethod() + ": " + op + ", " + fullpath
+          + ", ugi=" + ugi + ", " + params);
+    }
+
+    ugi.doAs(new PrivilegedExceptionAction<Void>() {
+      @Override
+      public Void run() throws IOException {
+        if (op == GetOpParam.Op.OPEN) {
+          onOpen(ch, request, fullpath, params, nnRpcAddr);
+        } else {
+          onWrite(ch, request, fullpath, params, nnRpcAddr, op);
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Get the user of a request as {@link JspHelper#getUGI} does, from the
+   * delegation token if security is enabled.
+   */
+  private UserGroupInformation getUGI(Channel ch, Map<String, String> params,
+      InetSocketAddress nnRpcAddr) throws IOException {
+    final String user = new UserParam(getParameter(params, UserParam.NAME,
+        UserParam.DEFAULT)).getValue();
+    final String doAsUser = new DoAsParam(getParameter(params,
+        DoAsParam.NAME, DoAsParam.DEFAULT)).getValue();
+    UserGroupInformation ugi;
+    if (UserGroupInformation.isSecurityEnabled()) {
+      final String tokenString = params.get(DelegationParam.NAME);
+      if (tokenString == null) {
+        throw new IOException("Security enabled but no delegation token");
+      }
+      final Token<DelegationTokenIdentifier> token =
+          new Token<DelegationTokenIdentifier>();
+      token.decodeFromUrlString(tokenString);
+      SecurityUtil.setTokenService(token, nnRpcAddr);
+      token.setKind(DelegationTokenIdentifier.HDFS_DELEGATION_KIND);
+      final DelegationTokenIdentifier id = new DelegationTokenIdentifier();
+      id.readFields(new DataInputStream(
+          new ByteArrayInputStream(token.getIdentifier())));
+      ugi = id.getUser();
+      ugi.addToken(token);
+      checkUsername(ugi.getShortUserName(), user);
+      checkUsername(ugi.getShortUserName(), doAsUser);
+    } else {
+      ugi = user == null ? JspHelper.getDefaultWebUser(conf)
+          : UserGroupInformation.createRemoteUser(user);
+      if (doAsUser != null) {
+        ugi = UserGroupInformation.createProxyUser(doAsUser, ugi);
+        ProxyUsers.authorize(ugi, ((InetSocketAddress)ch.getRemoteAddress())
+            .getAddress().getHostAddress(), conf);
+      }
+    }
+    return ugi;
+  }
+
+  private static void checkUsername(String expected, String name)
+      throws IOException {
+    if (name != null && !name.equals(expected)) {
+      throw new IOException("Usernames not matched: name=" + name
+          + " != expected=" + expected);
+    }
+  }
+
+  /**
+   * Start sending the requested part of a file. The writes are queued in
+   * the {@link ChunkedWriteHandler} of the pipeline, which sends them as the
+   * connection becomes writable, so that this thread is not held by a slow
+   * reader. The DFSClient is closed once the last write is done.
+   */
+  private void onOpen(Channel ch, HttpRequest request, String fullpath,
+      Map<String, String> params, InetSocketAddress nnRpcAddr)
+      throws IOException {
+    final Configuration conf = new Configuration(this.conf);
+    final long offset = new OffsetParam(getParameter(params, OffsetParam.NAME,
+        OffsetParam.DEFAULT)).getValue();
+    final Long length = new LengthParam(getParameter(params, LengthParam.NAME,
+        LengthParam.DEFAULT)).getValue();
+    final int b = new BufferSizeParam(getParameter(params,
+        BufferSizeParam.NAME, BufferSizeParam.DEFAULT)).getValue(conf);
+
+    final DFSClient dfsclient = new DFSClient(nnRpcAddr, conf);
+    HdfsDataInputStream in = null;
+    boolean sending = false;
+    try {
+      in = new HdfsDataInputStream(dfsclient.open(fullpath, b, true));
+      final long remaining = in.getVisibleLength() - offset;
+      if (remaining < 0) {
+        throw new IOException("Offset=" + offset
+            + " out of the range [0, " + in.getVisibleLength() + ")");
+      }
+      final long n = length != null ? Math.min(length, remaining) : remaining;
+
+      final HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
+      response.setHeader(CONTENT_TYPE, APPLICATION_OCTET_STREAM);
+      HttpHeaders.setContentLength(response, n);
+      ChannelFuture last = ch.write(response);
+      responseStarted = true;
+      sending = true;
+
+      long pos = offset;
+      final long end = offset + n;
+      if (transferToAllowed && n > 0) {
+        for (LocatedBlock lb : dfsclient.getLocatedBlocks(
+            fullpath, offset, n).getLocatedBlocks()) {
+          final long blockEnd = lb.getStartOffset() + lb.getBlockSize();
+          if (blockEnd <= pos) {
+            continue;
+          } else if (lb.getStartOffset() > pos || pos >= end) {
+            break;
+          }
+          final long count = Math.min(blockEnd, end) - pos;
+          final File blockFile = getLocalBlockFile(lb);
+          if (blockFile != null) {
+            last = sendFile(ch, blockFile, pos - lb.getStartOffset(), count);
+          } else {
+            last = ch.write(new ChunkedPread(in, pos, count, b));
+          }
+          pos += count;
+        }
+      }
+      if (pos < end) {
+        last = ch.write(new ChunkedPread(in, pos, end - pos, b));
+      }
+      final HdfsDataInputStream opened = in;
+      last.addListener(new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture f) {
+          IOUtils.cleanup(LOG, opened);
+          IOUtils.cleanup(LOG, dfsclient);
+        }
+      });
+      closeIfNotKeepAlive(request, last);
+    } finally {
+      if (!sending) {
+        IOUtils.cleanup(LOG, in);
+        IOUtils.cleanup(LOG, dfsclient);
+      }
+    }
+  }
+
+  /**
+   * @return the block file of a finalized replica of the block on this
+   *         datanode, or null if there is none
+   */
+  private File getLocalBlockFile(LocatedBlock lb) {
+    final FsDatasetSpi<?> data = datanode.getFSDataset();
+    final ExtendedBlock b = lb.getBlock();
+    if (data == null || lb.isCorrupt()) {
+      return null;
+    }
+    try {
+      final Block stored = data.getStoredBlock(b.getBlockPoolId(),
+          b.getBlockId());
+      if (stored == null
+          || stored.getGenerationStamp() != b.getGenerationStamp()
+          || stored.getNumBytes() != lb.getBlockSize()
+          || !data.isValidBlock(b)) {
+        return null;
+      }
+      return new File(data.getBlockLocalPathInfo(b).getBlockPath());
+    } catch (IOException e) {
+      LOG.debug("Failed to get the local replica of " + b, e);
+      return null;
+    }
+  }
+
+  /**
+   * Queue a part of a file to be sent with transferTo. The file is closed
+   * once the part is sent or the connection is closed.
+   */
+  private static ChannelFuture sendFile(Channel ch, File file, long position,
+      long count) throws IOException {
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    final DefaultFileRegion region;
+    try {
+      region = new DefaultFileRegion(raf.getChannel(), position, count);
+    } catch (RuntimeException e) {
+      raf.close();
+      throw e;
+    }
+    final ChannelFuture f = ch.write(region);
+    f.addListener(new ChannelFutureListener() {
+      @Override
+      public void operationComplete(ChannelFuture future) {
+        region.releaseExternalResources();
+      }
+    });
+    return f;
+  }
+
+  /**
+   * A part of a file read chunk by chunk, when the {@link
+   * ChunkedWriteHandler} can send it, with positional reads which verify
+   * the checksums. The parts of a file share its input stream, which is
+   * closed by {@link #onOpen}.
+   */
+  private static class ChunkedPread implements ChunkedInput {
+    private final HdfsDataInputStream in;
+    private final long end;
+    private final int chunkSize;
+    private long pos;
+
+    ChunkedPread(HdfsDataInputStream in, long pos, long count,
+        int chunkSize) {
+      this.in = in;
+      this.pos = pos;
+      this.end = pos + count;
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public boolean hasNextChunk() {
+      return pos < end;
+    }
+
+    @Override
+    public Object nextChunk() throws IOException {
+      if (pos >= end) {
+        return null;
+      }
+      final byte[] buf = new byte[(int)Math.min(chunkSize, end - pos)];
+      in.readFully(pos, buf);
+      pos += buf.length;
+      return ChannelBuffers.wrappedBuffer(buf);
+    }
+
+    @Override
+    public boolean isEndOfInput() {
+      return pos >= end;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /** Open the output stream of a CREATE or an APPEND. */
+  private void onWrite(Channel ch, HttpRequest request, String fullpath,
+      Map<String, String> params, InetSocketAddress nnRpcAddr,
+      HttpOpParam.Op op) throws IOException {
+    final Configuration conf = new Configuration(this.conf);
+    final int b = new BufferSizeParam(getParameter(params,
+        BufferSizeParam.NAME, BufferSizeParam.DEFAULT)).getValue(conf);
+    URI location = null;
+    if (op == PutOpParam.Op.CREATE) {
+      conf.set(FsPermission.UMASK_LABEL, "000");
+      writeClient = new DFSClient(nnRpcAddr, conf);
+      final PermissionParam permission = new PermissionParam(getParameter(
+          params, PermissionParam.NAME, PermissionParam.DEFAULT));
+      final boolean overwrite = new OverwriteParam(getParameter(params,
+          OverwriteParam.NAME, OverwriteParam.DEFAULT)).getValue();
+      final short replication = new ReplicationParam(getParameter(params,
+          ReplicationParam.NAME, ReplicationParam.DEFAULT)).getValue(conf);
+      final long blockSize = new BlockSizeParam(getParameter(params,
+          BlockSizeParam.NAME, BlockSizeParam.DEFAULT)).getValue(conf);
+      out = new FSDataOutputStream(writeClient.create(fullpath,
+          permission.getFsPermission(), overwrite
+              ? EnumSet.of(CreateFlag.CREATE, CreateFlag.OVERWRITE)
+              : EnumSet.of(CreateFlag.CREATE),
+          replication, blockSize, null, b, null), null);
+
+      final InetSocketAddress nnHttpAddr = NameNode.getHttpAddress(conf);
+      try {
+        location = new URI(WebHdfsFileSystem.SCHEME, null,
+            nnHttpAddr.getHostName(), nnHttpAddr.getPort(), fullpath,
+            null, null);
+      } catch (URISyntaxException e) {
+        throw new IllegalArgumentException(e);
+      }
+    } else {
+      writeClient = new DFSClient(nnRpcAddr, conf);
+      out = writeClient.append(fullpath, b, null, null);
+    }
+    writeRequest = request;
+    writeLocation = location;
+
+    if (HttpHeaders.is100ContinueExpected(request)) {
+      ch.write(new DefaultHttpResponse(HTTP_1_1, CONTINUE));
+    }
+    if (!request.isChunked()) {
+      write(ch, request.getContent(), true);
+    }
+  }
+
+  /**
+   * Write the content of a CREATE or an APPEND, and respond after the last
+   * part of the content.
+   */
+  private void write(Channel ch, ChannelBuffer content, boolean last)
+      throws IOException {
+    content.readBytes(out, content.readableBytes());
+    if (!last) {
+      return;
+    }
+    out.close();
+    out = null;
+    writeClient.close();
+    writeClient = null;
+
+    final HttpResponse response;
+    if (writeLocation != null) {
+      response = new DefaultHttpResponse(HTTP_1_1, CREATED);
+      response.setHeader(LOCATION, writeLocation.toString());
+    } else {
+      response = new DefaultHttpResponse(HTTP_1_1, OK);
+    }
+    response.setHeader(CONTENT_TYPE, APPLICATION_OCTET_STREAM);
+    HttpHeaders.setContentLength(response, 0);
+    responseStarted = true;
+    closeIfNotKeepAlive(writeRequest, ch.write(response));
+    writeRequest = null;
+    writeLocation = null;
+  }
+
+  private void closeOutput() {
+    IOUtils.cleanup(LOG, out);
+    IOUtils.cleanup(LOG, writeClient);
+    out = null;
+    writeClient = null;
+    writeRequest = null;
+    writeLocation = null;
+  }
+
+  private static void closeIfNotKeepAlive(HttpRequest request,
+      ChannelFuture last) {
+    if (!HttpHeaders.isKeepAlive(request)) {
+      last.addListener(ChannelFutureListener.CLOSE);
+    }
+  }
+
+  /**
+   * Respond with the error, as the ExceptionHandler of Jersey does, unless
+   * the response has been started, and close the connection.
+   */
+  private void onError(Channel ch, Exception e) {
+    closeOutput();
+    if (e instanceof RemoteException) {
+      e = ((RemoteException)e).unwrapRemoteException();
+    }
+    final HttpResponseStatus s;
+    if (e instanceof SecurityException) {
+      s = UNAUTHORIZED;
+    } else if (e instanceof AuthorizationException) {
+      s = UNAUTHORIZED;
+    } else if (e instanceof FileNotFoundException) {
+      s = NOT_FOUND;
+    } else if (e instanceof IOException) {
+      s = FORBIDDEN;
+    } else if (e instanceof UnsupportedOperationException) {
+      s = BAD_REQUEST;
+    } else if (e instanceof IllegalArgumentException) {
+      s = BAD_REQUEST;
+    } else {
+      LOG.warn("INTERNAL_SERVER_ERROR", e);
+      s = INTERNAL_SERVER_ERROR;
+    }
+    if (responseStarted) {
+      LOG.warn("Failed to respond on " + ch, e);
+      ch.close();
+      return;
+    }
+
+    final HttpResponse response = new DefaultHttpResponse(HTTP_1_1, s);
+    response.setHeader(CONTENT_TYPE, APPLICATION_JSON);
+    response.setContent(ChannelBuffers.copiedBuffer(
+        JsonUtil.toJsonString(e), CharsetUtil.UTF_8));
+    HttpHeaders.setContentLength(response,
+        response.getContent().readableBytes());
+    responseStarted = true;
+    // the rest of the request, if any, is not read
+    ch.write(response).addListener(ChannelFutureListener.CLOSE);
+  }
+}
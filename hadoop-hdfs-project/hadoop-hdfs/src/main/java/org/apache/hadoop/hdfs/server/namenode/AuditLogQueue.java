@@ -0,0 +1,273 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.apache.hadoop.util.Time.now;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.util.Daemon;
+
+/**
+ * Passes audit events to the {@link AuditLogger}s from a dedicated thread.
+ * <p>
+ * RPC handlers only put a compact record of each event in a bounded queue;
+ * converting it into the arguments of
+ * {@link AuditLogger#logAuditEvent(boolean, String, InetAddress, String,
+ * String, String, FileStatus)}, formatting and writing it is left to the
+ * writer thread, which takes the queued events off in batches. When the
+ * queue is full, the {@link OverflowPolicy} decides whether the handler
+ * waits or the event is dropped. A handler which waits longer than the
+ * configured timeout, or which adds an event after the writer has been
+ * stopped, logs the event itself.
+ */
+@InterfaceAudience.Private
+class AuditLogQueue implements Runnable {
+  static final Log LOG = LogFactory.getLog(AuditLogQueue.class);
+
+  /** What to do with an event when the queue is full. */
+  static enum OverflowPolicy {
+    /** Wait for space in the queue, or log the event after a timeout. */
+    BLOCK,
+    /** Discard the event. */
+    DROP
+  }
+
+  /** Minimum interval between two warnings about dropped events. */
+  private static final long DROP_WARN_INTERVAL_MS = 60 * 1000;
+
+  private final List<AuditLogger> auditLoggers;
+  private final BlockingQueue<AuditEvent> queue;
+  private final int batchSize;
+  private final OverflowPolicy overflowPolicy;
+  private final long blockTimeoutMs;
+
+  private final AtomicLong numLogged = new AtomicLong();
+  private final AtomicLong numDropped = new AtomicLong();
+  private final AtomicLong numFailed = new AtomicLong();
+  private volatile long lastDropWarning = 0;
+
+  private final Daemon writer;
+  private volatile boolean running = true;
+  /**
+   * Held for reading while an event is queued, and for writing while the
+   * writer is being stopped, so that no event is queued after the writer
+   * has taken the last events off the queue.
+   */
+  private final ReadWriteLock stopLock = new ReentrantReadWriteLock();
+
+  AuditLogQueue(Configuration conf, List<AuditLogger> auditLoggers) {
+    this.auditLoggers = auditLoggers;
+    this.queue = new ArrayBlockingQueue<AuditEvent>(Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_DEFAULT)));
+    this.batchSize = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BATCH_SIZE_DEFAULT));
+    this.overflowPolicy = OverflowPolicy.valueOf(conf.get(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_DEFAULT)
+        .trim().toUpperCase());
+    this.blockTimeoutMs = conf.getLong(
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCK_TIMEOUT_MS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCK_TIMEOUT_MS_DEFAULT);
+    this.writer = new Daemon(this);
+    writer.setName("AuditLogQueue writer");
+  }
+
+  void start() {
+    writer.start();
+  }
+
+  /**
+   * Stop the writer thread, after it has logged the events already queued.
+   * Events added afterwards are logged by the calling thread.
+   */
+  void stop() {
+    stopLock.writeLock().lock();
+    try {
+      running = false;
+    } finally {
+      stopLock.writeLock().unlock();
+    }
+    writer.interrupt();
+    try {
+      writer.join();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Queue an event, or apply the overflow policy if the queue is full. */
+  void add(AuditEvent event) {
+    stopLock.readLock().lock();
+    try {
+      if (running && enqueue(event)) {
+        return;
+      }
+    } finally {
+      stopLock.readLock().unlock();
+    }
+    if (!running || overflowPolicy == OverflowPolicy.BLOCK) {
+      log(event);
+      return;
+    }
+    long dropped = numDropped.incrementAndGet();
+    long now = now();
+    if (now - lastDropWarning > DROP_WARN_INTERVAL_MS) {
+      lastDropWarning = now;
+      LOG.warn("Audit event queue is full; " + dropped
+          + " audit events dropped so far");
+    }
+  }
+
+  /**
+   * Put an event in the queue, waiting for space up to the timeout if the
+   * overflow policy is BLOCK.
+   * @return true if the event was queued
+   */
+  private boolean enqueue(AuditEvent event) {
+    if (queue.offer(event)) {
+      return true;
+    }
+    if (overflowPolicy == OverflowPolicy.BLOCK) {
+      try {
+        return queue.offer(event, blockTimeoutMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void run() {
+    List<AuditEvent> batch = new ArrayList<AuditEvent>(batchSize);
+    while (running) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException ie) {
+        continue;
+      }
+      queue.drainTo(batch, batchSize - 1);
+      logAll(batch);
+    }
+    // log whatever was queued before stopping
+    queue.drainTo(batch);
+    logAll(batch);
+  }
+
+  private void logAll(List<AuditEvent> batch) {
+    for (AuditEvent event : batch) {
+      log(event);
+    }
+    batch.clear();
+  }
+
+  private void log(AuditEvent event) {
+    try {
+      event.logTo(auditLoggers);
+      numLogged.incrementAndGet();
+    } catch (RuntimeException e) {
+      numFailed.incrementAndGet();
+      LOG.warn("Failed to log audit event " + event.cmd + " " + event.src, e);
+    }
+  }
+
+  /** @return the number of events waiting to be logged */
+  int getQueueSize() {
+    return queue.size();
+  }
+
+  /** @return the number of events passed to the audit loggers */
+  long getNumLogged() {
+    return numLogged.get();
+  }
+
+  /** @return the number of events dropped because the queue was full */
+  long getNumDropped() {
+    return numDropped.get();
+  }
+
+  /** @return the number of events which an audit logger failed to log */
+  long getNumFailed() {
+    return numFailed.get();
+  }
+
+  /**
+   * An audit event, as known to the RPC handler. The arguments of the
+   * audit loggers are only derived from it when it is logged.
+   */
+  static class AuditEvent {
+    final boolean succeeded;
+    final UserGroupInformation ugi;
+    final InetAddress addr;
+    final String cmd;
+    final String src;
+    final String dst;
+    final HdfsFileStatus stat;
+
+    AuditEvent(boolean succeeded, UserGroupInformation ugi,
+        InetAddress addr, String cmd, String src, String dst,
+        HdfsFileStatus stat) {
+      this.succeeded = succeeded;
+      this.ugi = ugi;
+      this.addr = addr;
+      this.cmd = cmd;
+      this.src = src;
+      this.dst = dst;
+      this.stat = stat;
+    }
+
+    /** Pass this event to each of the given audit loggers. */
+    void logTo(List<AuditLogger> auditLoggers) {
+      FileStatus status = null;
+      if (stat != null) {
+        Path symlink = stat.isSymlink() ? new Path(stat.getSymlink()) : null;
+        Path path = dst != null ? new Path(dst) : new Path(src);
+        status = new FileStatus(stat.getLen(), stat.isDir(),
+            stat.getReplication(), stat.getBlockSize(),
+            stat.getModificationTime(), stat.getAccessTime(),
+            stat.getPermission(), stat.getOwner(), stat.getGroup(),
+            symlink, path);
+      }
+      final String userName = ugi.toString();
+      for (AuditLogger logger : auditLoggers) {
+        logger.logAuditEvent(succeeded, userName, addr,
+            cmd, src, dst, status);
+      }
+    }
+  }
+}
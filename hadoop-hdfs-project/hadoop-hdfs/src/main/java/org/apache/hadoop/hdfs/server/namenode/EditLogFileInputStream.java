@@ -19,6 +19,7 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.File;
@@ -112,6 +113,22 @@ public static EditLogInputStream fromUrl(URL url, long startTxId,
         startTxId, endTxId, inProgress);
   }
   
+  /**
+   * Open an EditLogInputStream over edits held in memory.
+   *
+   * @param name a name for the edits, for logging
+   * @param data the edits, preceded by an edit log header
+   * @param startTxId the expected starting txid
+   * @param endTxId the expected ending txid
+   * @param inProgress whether the edits belong to an in-progress log
+   * @return a stream from which edits may be read
+   */
+  public static EditLogInputStream fromByteArray(String name, byte[] data,
+      long startTxId, long endTxId, boolean inProgress) {
+    return new EditLogFileInputStream(new ByteArrayLog(name, data),
+        startTxId, endTxId, inProgress);
+  }
+
   private EditLogFileInputStream(LogSource log,
       long firstTxId, long lastTxId,
       boolean isInProgress) {
@@ -360,6 +377,31 @@ public String getName() {
     }
   }
 
+  private static class ByteArrayLog implements LogSource {
+    private final String name;
+    private final byte[] data;
+
+    public ByteArrayLog(String name, byte[] data) {
+      this.name = name;
+      this.data = data;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return new ByteArrayInputStream(data);
+    }
+
+    @Override
+    public long length() {
+      return data.length;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+  }
+
   private static class URLLog implements LogSource {
     private final URL url;
     private long advertisedSize = -1;
@@ -22,7 +22,10 @@
 import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
@@ -88,6 +91,7 @@ private static INodeDirectoryWithQuota createRoot(FSNamesystem namesystem) {
   private final int maxComponentLength;
   private final int maxDirItems;
   private final int lsLimit;  // max list limit
+  private final boolean cacheContentCounts;
 
   // lock to protect the directory and BlockMap
   private ReentrantReadWriteLock dirLock;
@@ -149,6 +153,10 @@ boolean hasReadLock() {
         + " times");
     nameCache = new NameCache<ByteArray>(threshold);
     namesystem = ns;
+
+    this.cacheContentCounts = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_CACHE_ENABLED_DEFAULT);
   }
     
   private FSNamesystem getFSNamesystem() {
@@ -328,6 +336,7 @@ BlockInfo addBlock(String path, INodesInPath inodesInPath, Block block,
       // check quota limits and updated space consumed
       updateCount(inodesInPath, inodes.length-1, 0,
           fileINode.getPreferredBlockSize()*fileINode.getBlockReplication(), true);
+      final long[] oldCounts = getContentCounts(fileINode);
 
       // associate new last block for the file
       BlockInfoUnderConstruction blockInfo =
@@ -338,6 +347,7 @@ BlockInfo addBlock(String path, INodesInPath inodesInPath, Block block,
             targets);
       getBlockManager().addBlockCollection(blockInfo, fileINode);
       fileINode.addBlock(blockInfo);
+      updateContentCounts(fileINode, oldCounts);
 
       if(NameNode.stateChangeLog.isDebugEnabled()) {
         NameNode.stateChangeLog.debug("DIR* FSDirectory.addBlock: "
@@ -409,8 +419,10 @@ void removeBlock(String path, INodeFileUnderConstruction fileNode,
   void unprotectedRemoveBlock(String path, INodeFileUnderConstruction fileNode, 
       Block block) throws IOException {
     // modify file-> block and blocksMap
+    final long[] oldCounts = getContentCounts(fileNode);
     fileNode.removeLastBlock(block);
     getBlockManager().removeBlockFromMap(block);
+    updateContentCounts(fileNode, oldCounts);
 
     if(NameNode.stateChangeLog.isDebugEnabled()) {
       NameNode.stateChangeLog.debug("DIR* FSDirectory.removeBlock: "
@@ -805,7 +817,9 @@ Block[] unprotectedSetReplication(String src,
     long dsDelta = (replication - oldRepl) * (fileNode.diskspaceConsumed()/oldRepl);
     updateCount(inodesInPath, inodes.length-1, 0, dsDelta, true);
 
+    final long[] oldCounts = getContentCounts(fileNode);
     fileNode.setReplication(replication);
+    updateContentCounts(fileNode, oldCounts);
 
     if (oldReplication != null) {
       oldReplication[0] = oldRepl;
@@ -932,10 +946,14 @@ public void unprotectedConcat(String target, String [] srcs, long timestamp)
     INodeFile [] allSrcInodes = new INodeFile[srcs.length];
     int i = 0;
     int totalBlocks = 0;
+    final long[] oldCounts = getContentCounts(trgInode);
     for(String src : srcs) {
       INodeFile srcInode = (INodeFile)getINode(src);
       allSrcInodes[i++] = srcInode;
       totalBlocks += srcInode.numBlocks();  
+      if (oldCounts != null) {
+        srcInode.computeContentSummary(oldCounts);
+      }
     }
     trgInode.appendBlocks(allSrcInodes, totalBlocks); // copy the blocks
     
@@ -949,6 +967,7 @@ public void unprotectedConcat(String target, String [] srcs, long timestamp)
       count++;
     }
     
+    updateContentCounts(trgInode, oldCounts);
     trgInode.setModificationTimeForce(timestamp);
     trgParent.setModificationTime(timestamp);
     // update quota on the parent directory ('count' files removed, 0 space)
@@ -1084,6 +1103,7 @@ void unprotectedReplaceNode(String path, INodeFile oldnode, INodeFile newnode)
       throws IOException, UnresolvedLinkException {
     assert hasWriteLock();
     INodeDirectory parent = oldnode.parent;
+    final long[] oldCounts = getContentCounts(oldnode);
     // Remove the node from the namespace 
     if (!oldnode.removeNode()) {
       NameNode.stateChangeLog.warn("DIR* FSDirectory.replaceNode: " +
@@ -1096,6 +1116,7 @@ void unprotectedReplaceNode(String path, INodeFile oldnode, INodeFile newnode)
     // false
     newnode.setLocalName(oldnode.getLocalNameBytes());
     parent.addChild(newnode, true);
+    updateContentCounts(newnode, oldCounts);
     
     /* Currently oldnode and newnode are assumed to contain the same
      * blocks. Otherwise, blocks need to be removed from the blocksMap.
@@ -1148,6 +1169,11 @@ DirectoryListing getListing(String src, byte[] startAfter,
     }
   }
 
+  /** @return the maximum number of entries returned in a partial listing */
+  int getLsLimit() {
+    return lsLimit;
+  }
+
   /** Get the file info for a specific file.
    * @param src The string representation of the path to the file
    * @param resolveLink whether to throw UnresolvedLinkException 
@@ -1662,6 +1688,11 @@ private boolean addChild(INodesInPath inodesInPath, int pos,
     final boolean added = ((INodeDirectory)inodes[pos-1]).addChild(child, true);
     if (!added) {
       updateCount(inodesInPath, pos, -counts.getNsCount(), -counts.getDsCount(), true);
+    } else if (isCachingContentCounts()) {
+      if (child.isDirectory()) {
+        ((INodeDirectory)child).initContentCounts();
+      }
+      updateContentCounts(child, new long[]{0, 0, 0, 0});
     }
     return added;
   }
@@ -1683,12 +1714,20 @@ private boolean addLastINodeNoQuotaCheck(INodesInPath inodesInPath, INode i) {
   private INode removeLastINode(final INodesInPath inodesInPath) {
     final INode[] inodes = inodesInPath.getINodes();
     final int pos = inodes.length - 1;
-    INode removedNode = ((INodeDirectory)inodes[pos-1]).removeChild(inodes[pos]);
+    final INodeDirectory parent = (INodeDirectory)inodes[pos-1];
+    INode removedNode = parent.removeChild(inodes[pos]);
     if (removedNode != null) {
       INode.DirCounts counts = new INode.DirCounts();
       removedNode.spaceConsumedInTree(counts);
       updateCountNoQuotaCheck(inodesInPath, pos,
                   -counts.getNsCount(), -counts.getDsCount());
+      if (isCachingContentCounts()) {
+        long[] deltas = removedNode.computeContentSummary(new long[]{0,0,0,0});
+        for (int i = 0; i < deltas.length; i++) {
+          deltas[i] = -deltas[i];
+        }
+        parent.addContentCounts(deltas);
+      }
     }
     return removedNode;
   }
@@ -1719,16 +1758,211 @@ ContentSummary getContentSummary(String src)
     }
   }
 
+  /**
+   * @return true if directories cache the content counts of their subtrees,
+   *         which are then kept up to date as the namespace changes.
+   */
+  boolean isCachingContentCounts() {
+    return cacheContentCounts && ready;
+  }
+
+  /**
+   * Get the content counts of an inode before it is modified, to be passed
+   * to {@link #updateContentCounts(INode, long[])} afterwards.
+   * @return the content counts of the inode, as computed by
+   *         {@link INode#computeContentSummary(long[])}; or null if
+   *         content counts are not being cached.
+   */
+  long[] getContentCounts(INode inode) {
+    return isCachingContentCounts() ?
+        inode.computeContentSummary(new long[]{0,0,0,0}) : null;
+  }
+
+  /**
+   * Add the change in the content counts of a modified inode to the cached
+   * content counts of its ancestors.
+   * @param inode the modified inode
+   * @param oldCounts the counts returned by {@link #getContentCounts(INode)}
+   *                  before the inode was modified
+   */
+  void updateContentCounts(INode inode, long[] oldCounts) {
+    final INodeDirectory parent = inode.getParent();
+    if (oldCounts == null || parent == null) {
+      return;
+    }
+    long[] deltas = inode.computeContentSummary(new long[]{0,0,0,0});
+    for (int i = 0; i < deltas.length; i++) {
+      deltas[i] -= oldCounts[i];
+    }
+    parent.addContentCounts(deltas);
+  }
+
+  /**
+   * A walk over the namespace verifying the content counts cached in each
+   * directory against the counts of its children. The walk is carried out
+   * over several calls to {@link #visit(int)}, each bounded by a number of
+   * inodes, so that the lock can be released between them even within a
+   * directory with many children. The counts of a directory which the walk
+   * finds inconsistent are then corrected by {@link #correct()}.
+   */
+  class ContentCountsWalk {
+    /** The paths of the directories still to be visited */
+    private final Deque<String> paths = new ArrayDeque<String>();
+    /** The directory being visited, or null */
+    private INodeDirectory current = null;
+    private String currentPath = null;
+    /** The name of the last child of the current directory visited */
+    private byte[] lastChild = null;
+    /**
+     * The counts summed over the children visited so far, or null if the
+     * counts of the current directory are not cached or have changed
+     * during the visit.
+     */
+    private long[] sums = null;
+    /** The version of the counts when the visit of the directory started */
+    private int version = 0;
+
+    ContentCountsWalk() {
+      paths.push(Path.SEPARATOR);
+    }
+
+    /** @return true if all the directories have been visited */
+    boolean isDone() {
+      return current == null && paths.isEmpty();
+    }
+
+    /**
+     * Continue the walk for up to the given number of inodes, under the
+     * read lock.
+     * 
+     * @return true if the visit of a directory has completed and found its
+     *         cached counts inconsistent with those of its children, in
+     *         which case {@link #correct()} should be called next.
+     */
+    boolean visit(int maxINodes) {
+      readLock();
+      try {
+        if (current != null && getDirectory(currentPath) != current) {
+          // replaced or moved since the last call: visit it again
+          paths.push(currentPath);
+          current = null;
+        }
+        int visited = 0;
+        while (visited < maxINodes) {
+          if (current == null) {
+            if (!startNextDirectory()) {
+              return false;
+            }
+            visited++;
+          }
+          if (sums != null && current.getContentCountsVersion() != version) {
+            sums = null; // the counts are no longer comparable
+          }
+          final List<INode> children = current.getChildrenList();
+          final String prefix = current.isRoot() ?
+              currentPath : currentPath + Path.SEPARATOR;
+          int i = current.nextChildIndex(lastChild);
+          for (; i < children.size() && visited < maxINodes; i++, visited++) {
+            final INode child = children.get(i);
+            if (sums != null) {
+              child.computeContentSummary(sums);
+            }
+            if (child.isDirectory()) {
+              paths.push(prefix + child.getLocalName());
+            }
+            lastChild = child.getLocalNameBytes();
+          }
+          if (i < children.size()) {
+            return false;
+          }
+          if (sums != null
+              && !Arrays.equals(sums, current.getCachedContentCounts())) {
+            return true;
+          }
+          current = null;
+        }
+        return false;
+      } finally {
+        readUnlock();
+      }
+    }
+
+    /**
+     * Correct the cached counts of the directory whose visit found them
+     * inconsistent, under the write lock, unless they have changed since.
+     * 
+     * @return true if the counts were corrected
+     */
+    boolean correct() {
+      writeLock();
+      try {
+        final INodeDirectory dir = current;
+        current = null;
+        if (dir == null || sums == null
+            || dir.getContentCountsVersion() != version
+            || getDirectory(currentPath) != dir) {
+          return false;
+        }
+        final long[] counts = dir.getCachedContentCounts();
+        final long[] deltas = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+          deltas[i] = sums[i] - counts[i];
+        }
+        dir.addContentCounts(deltas);
+        NameNode.LOG.warn("Corrected the cached content counts of "
+            + currentPath);
+        return true;
+      } finally {
+        writeUnlock();
+      }
+    }
+
+    /**
+     * Start visiting the next directory on the stack.
+     * @return false if there are no more directories to visit
+     */
+    private boolean startNextDirectory() {
+      while (!paths.isEmpty()) {
+        final String path = paths.pop();
+        final INodeDirectory dir = getDirectory(path);
+        if (dir != null) {
+          current = dir;
+          currentPath = path;
+          lastChild = null;
+          version = dir.getContentCountsVersion();
+          sums = dir.getCachedContentCounts() == null ?
+              null : new long[]{0, 0, 1, 0};
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** @return the directory at the given path, or null if there is none. */
+    private INodeDirectory getDirectory(String path) {
+      final INode inode;
+      try {
+        inode = rootDir.getNode(path, false);
+      } catch (UnresolvedLinkException e) {
+        return null; // not reached since links are not resolved
+      }
+      return inode != null && inode.isDirectory() ?
+          (INodeDirectory)inode : null;
+    }
+  }
+
   /** Update the count of each directory with quota in the namespace
    * A directory's count is defined as the total number inodes in the tree
    * rooted at the directory.
+   * If content counts are cached, they are recomputed for every directory.
    * 
    * This is an update of existing state of the filesystem and does not
    * throw QuotaExceededException.
    */
   void updateCountForINodeWithQuota() {
-    updateCountForINodeWithQuota(rootDir, new INode.DirCounts(), 
-                                 new ArrayList<INode>(50));
+    updateCountForINodeWithQuota(rootDir, new INode.DirCounts(),
+        cacheContentCounts ? new long[]{0,0,0,0} : null,
+        new ArrayList<INode>(50));
   }
   
   /** 
@@ -1740,16 +1974,20 @@ void updateCountForINodeWithQuota() {
    * 
    * @param dir the root of the tree that represents the directory
    * @param counters counters for name space and disk space
+   * @param summary content counts of the parent directory, to which those
+   *                of this directory are added; null if not cached.
    * @param nodesInPath INodes for the each of components in the path.
    */
   private static void updateCountForINodeWithQuota(INodeDirectory dir, 
                                                INode.DirCounts counts,
+                                               long[] summary,
                                                ArrayList<INode> nodesInPath) {
     long parentNamespace = counts.nsCount;
     long parentDiskspace = counts.dsCount;
     
     counts.nsCount = 1L;//for self. should not call node.spaceConsumedInTree()
     counts.dsCount = 0L;
+    final long[] subtreeSummary = summary == null ? null : new long[]{0,0,1,0};
     
     /* We don't need nodesInPath if we could use 'parent' field in 
      * INode. using 'parent' is not currently recommended. */
@@ -1758,12 +1996,25 @@ private static void updateCountForINodeWithQuota(INodeDirectory dir,
     for (INode child : dir.getChildrenList()) {
       if (child.isDirectory()) {
         updateCountForINodeWithQuota((INodeDirectory)child, 
-                                     counts, nodesInPath);
+                                     counts, subtreeSummary, nodesInPath);
       } else if (child.isSymlink()) {
         counts.nsCount += 1;
+        if (subtreeSummary != null) {
+          subtreeSummary[1]++;
+        }
       } else { // reduce recursive calls
         counts.nsCount += 1;
         counts.dsCount += ((INodeFile)child).diskspaceConsumed();
+        if (subtreeSummary != null) {
+          child.computeContentSummary(subtreeSummary);
+        }
+      }
+    }
+
+    if (subtreeSummary != null) {
+      dir.setContentCounts(subtreeSummary);
+      for (int i = 0; i < summary.length; i++) {
+        summary[i] += subtreeSummary[i];
       }
     }
       
@@ -532,6 +532,7 @@ private void updateBlocks(FSDirectory fsDir, BlockListUpdatingOp op,
     
     // Are we only updating the last block's gen stamp.
     boolean isGenStampUpdate = oldBlocks.length == newBlocks.length;
+    long[] oldCounts = fsDir.getContentCounts(file);
     
     // First, update blocks in common
     for (int i = 0; i < oldBlocks.length && i < newBlocks.length; i++) {
@@ -567,6 +568,7 @@ private void updateBlocks(FSDirectory fsDir, BlockListUpdatingOp op,
         fsNamesys.getBlockManager().processQueuedMessagesForBlock(newBlock);
       }
     }
+    fsDir.updateContentCounts(file, oldCounts);
     
     if (newBlocks.length < oldBlocks.length) {
       // We're removing a block from the file, e.g. abandonBlock(...)
@@ -582,6 +584,7 @@ private void updateBlocks(FSDirectory fsDir, BlockListUpdatingOp op,
           (INodeFileUnderConstruction)file, oldBlocks[oldBlocks.length - 1]);
     } else if (newBlocks.length > oldBlocks.length) {
       // We're adding blocks
+      oldCounts = fsDir.getContentCounts(file);
       for (int i = oldBlocks.length; i < newBlocks.length; i++) {
         Block newBlock = newBlocks[i];
         BlockInfo newBI;
@@ -602,6 +605,7 @@ private void updateBlocks(FSDirectory fsDir, BlockListUpdatingOp op,
         file.addBlock(newBI);
         fsNamesys.getBlockManager().processQueuedMessagesForBlock(newBlock);
       }
+      fsDir.updateContentCounts(file, oldCounts);
     }
   }
 
@@ -33,9 +33,17 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_ENCRYPT_DATA_TRANSFER_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HA_STANDBY_CHECKPOINTS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HA_STANDBY_CHECKPOINTS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HA_STANDBY_READS_MAX_WAIT_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_HA_STANDBY_READS_MAX_WAIT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_ACCESSTIME_PRECISION_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_BATCH_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_BATCH_SIZE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_INTERVAL_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_INTERVAL_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DEFAULT_AUDIT_LOGGER_NAME;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DELEGATION_KEY_UPDATE_INTERVAL_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_DELEGATION_KEY_UPDATE_INTERVAL_KEY;
@@ -49,6 +57,8 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_EDITS_DIR_REQUIRED_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_OBJECTS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_NAME_DIR_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_REPLICATION_MIN_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_REPLICATION_MIN_KEY;
@@ -71,6 +81,7 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_REPLICATION_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUPPORT_APPEND_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUPPORT_APPEND_KEY;
+import static org.apache.hadoop.util.Time.monotonicNow;
 import static org.apache.hadoop.util.Time.now;
 
 import java.io.BufferedWriter;
@@ -166,6 +177,7 @@
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirType;
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
 import org.apache.hadoop.hdfs.server.common.Util;
+import org.apache.hadoop.hdfs.server.namenode.AuditLogQueue.AuditEvent;
 import org.apache.hadoop.hdfs.server.namenode.INode.BlocksMapUpdateInfo;
 import org.apache.hadoop.hdfs.server.namenode.INodeDirectory.INodesInPath;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
@@ -278,18 +290,12 @@ private void logAuditEvent(boolean succeeded, String cmd, String src,
   private void logAuditEvent(boolean succeeded,
       UserGroupInformation ugi, InetAddress addr, String cmd, String src,
       String dst, HdfsFileStatus stat) {
-    FileStatus status = null;
-    if (stat != null) {
-      Path symlink = stat.isSymlink() ? new Path(stat.getSymlink()) : null;
-      Path path = dst != null ? new Path(dst) : new Path(src);
-      status = new FileStatus(stat.getLen(), stat.isDir(),
-          stat.getReplication(), stat.getBlockSize(), stat.getModificationTime(),
-          stat.getAccessTime(), stat.getPermission(), stat.getOwner(),
-          stat.getGroup(), symlink, path);
-    }
-    for (AuditLogger logger : auditLoggers) {
-      logger.logAuditEvent(succeeded, ugi.toString(), addr,
-          cmd, src, dst, status);
+    AuditEvent event = new AuditEvent(succeeded, ugi, addr, cmd, src, dst,
+        stat);
+    if (auditLogQueue != null) {
+      auditLogQueue.add(event);
+    } else {
+      event.logTo(auditLoggers);
     }
   }
 
@@ -317,6 +323,12 @@ private void logAuditEvent(boolean succeeded,
   private final String fsOwnerShortUserName;
   private final String supergroup;
   private final boolean standbyShouldCheckpoint;
+
+  /**
+   * How long a standby waits for its applied txid to catch up with the
+   * one requested through {@link #getAppliedTxId(long)}.
+   */
+  private final long standbyReadsMaxWait;
   
   // Scan interval is not configurable.
   private static final long DELEGATION_TOKEN_REMOVER_SCAN_INTERVAL =
@@ -329,6 +341,9 @@ private void logAuditEvent(boolean succeeded,
   // underlying logger is disabled, and avoid some unnecessary work.
   private final boolean isDefaultAuditLogger;
   private final List<AuditLogger> auditLoggers;
+  // Passes audit events to the audit loggers from a separate thread;
+  // null if the audit loggers are called by the RPC handlers.
+  private final AuditLogQueue auditLogQueue;
 
   /** The namespace tree. */
   FSDirectory dir;
@@ -344,6 +359,8 @@ private void logAuditEvent(boolean succeeded,
   
   Daemon nnrmthread = null; // NamenodeResourceMonitor thread
 
+  Daemon ccvthread = null; // ContentCountsVerifier thread
+
   private volatile boolean hasResourcesAvailable = false;
   private volatile boolean fsRunning = true;
   
@@ -353,6 +370,11 @@ private void logAuditEvent(boolean succeeded,
   /** The interval of namenode checking for the disk space availability */
   private final long resourceRecheckInterval;
 
+  /** The interval of verifying the content counts cached in directories */
+  private final long contentCountsVerifyInterval;
+  /** The number of directories verified per lock acquisition */
+  private final int contentCountsVerifyBatchSize;
+
   // The actual resource checker instance.
   NameNodeResourceChecker nnResourceChecker;
 
@@ -539,6 +561,12 @@ public static FSNamesystem loadFromDisk(Configuration conf)
       resourceRecheckInterval = conf.getLong(
           DFS_NAMENODE_RESOURCE_CHECK_INTERVAL_KEY,
           DFS_NAMENODE_RESOURCE_CHECK_INTERVAL_DEFAULT);
+      contentCountsVerifyInterval = conf.getLong(
+          DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_INTERVAL_KEY,
+          DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_INTERVAL_DEFAULT);
+      contentCountsVerifyBatchSize = Math.max(1, conf.getInt(
+          DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_BATCH_SIZE_KEY,
+          DFS_NAMENODE_CONTENT_SUMMARY_VERIFY_BATCH_SIZE_DEFAULT));
 
       this.blockManager = new BlockManager(this, this, conf);
       this.datanodeStatistics = blockManager.getDatanodeManager().getDatanodeStatistics();
@@ -594,6 +622,9 @@ public static FSNamesystem loadFromDisk(Configuration conf)
       
       this.maxFsObjects = conf.getLong(DFS_NAMENODE_MAX_OBJECTS_KEY, 
                                        DFS_NAMENODE_MAX_OBJECTS_DEFAULT);
+      this.leaseManager.setMaxLockHoldToReleaseLease(conf.getLong(
+          DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_KEY,
+          DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_DEFAULT));
 
       this.accessTimePrecision = conf.getLong(DFS_NAMENODE_ACCESSTIME_PRECISION_KEY,
           DFS_NAMENODE_ACCESSTIME_PRECISION_DEFAULT);
@@ -604,6 +635,9 @@ public static FSNamesystem loadFromDisk(Configuration conf)
       
       this.standbyShouldCheckpoint = conf.getBoolean(
           DFS_HA_STANDBY_CHECKPOINTS_KEY, DFS_HA_STANDBY_CHECKPOINTS_DEFAULT);
+      this.standbyReadsMaxWait = conf.getLong(
+          DFS_HA_STANDBY_READS_MAX_WAIT_KEY,
+          DFS_HA_STANDBY_READS_MAX_WAIT_DEFAULT);
       
       this.inodeId = new INodeId();
       
@@ -619,6 +653,13 @@ public static FSNamesystem loadFromDisk(Configuration conf)
       this.auditLoggers = initAuditLoggers(conf);
       this.isDefaultAuditLogger = auditLoggers.size() == 1 &&
         auditLoggers.get(0) instanceof DefaultAuditLogger;
+      if (conf.getBoolean(DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY,
+          DFS_NAMENODE_AUDIT_LOG_ASYNC_DEFAULT)) {
+        this.auditLogQueue = new AuditLogQueue(conf, auditLoggers);
+        auditLogQueue.start();
+      } else {
+        this.auditLogQueue = null;
+      }
     } catch(IOException e) {
       LOG.error(getClass().getSimpleName() + " initialization failed.", e);
       close();
@@ -814,6 +855,11 @@ void startActiveServices() throws IOException {
       //ResourceMonitor required only at ActiveNN. See HDFS-2914
       this.nnrmthread = new Daemon(new NameNodeResourceMonitor());
       nnrmthread.start();
+
+      if (contentCountsVerifyInterval > 0 && dir.isCachingContentCounts()) {
+        this.ccvthread = new Daemon(new ContentCountsVerifier());
+        ccvthread.start();
+      }
     } finally {
       writeUnlock();
     }
@@ -840,6 +886,10 @@ void stopActiveServices() {
         ((NameNodeResourceMonitor) nnrmthread.getRunnable()).stopMonitor();
         nnrmthread.interrupt();
       }
+      if (ccvthread != null) {
+        ((ContentCountsVerifier) ccvthread.getRunnable()).stopVerifier();
+        ccvthread.interrupt();
+      }
       if (dir != null && dir.fsImage != null) {
         if (dir.fsImage.editLog != null) {
           dir.fsImage.editLog.close();
@@ -1103,6 +1153,10 @@ void close() {
       } catch (IOException ie) {
         LOG.error("Error closing FSDirectory", ie);
         IOUtils.cleanup(LOG, dir);
+      } finally {
+        if (auditLogQueue != null) {
+          auditLogQueue.stop();
+        }
       }
     }
   }
@@ -1370,8 +1424,9 @@ private LocatedBlocks getBlockLocationsUpdateTimes(String src,
           checkOperation(OperationCategory.WRITE);
         }
 
-        // if the namenode is in safemode, then do not update access time
-        if (isInSafeMode()) {
+        // if the namenode is in safemode, then do not update access time;
+        // neither may a standby serving stale reads, as it cannot log edits
+        if (isInSafeMode() || isInStandbyState()) {
           doAccessTime = false;
         }
 
@@ -3109,7 +3164,9 @@ void fsync(String src, String clientName, long lastBlockLength)
       }
       INodeFileUnderConstruction pendingFile  = checkLease(src, clientName);
       if (lastBlockLength > 0) {
+        final long[] oldCounts = dir.getContentCounts(pendingFile);
         pendingFile.updateLengthOfLastBlock(lastBlockLength);
+        dir.updateContentCounts(pendingFile, oldCounts);
       }
       dir.persistBlocks(src, pendingFile);
     } finally {
@@ -3266,9 +3323,11 @@ Lease reassignLeaseInternal(Lease lease, String src, String newHolder,
   private void commitOrCompleteLastBlock(final INodeFileUnderConstruction fileINode,
       final Block commitBlock) throws IOException {
     assert hasWriteLock();
+    final long[] oldCounts = dir.getContentCounts(fileINode);
     if (!blockManager.commitOrCompleteLastBlock(fileINode, commitBlock)) {
       return;
     }
+    dir.updateContentCounts(fileINode, oldCounts);
 
     // Adjust disk space consumption if required
     final long diff = fileINode.getPreferredBlockSize() - commitBlock.getNumBytes();    
@@ -3345,6 +3404,7 @@ void commitBlockSynchronization(ExtendedBlock lastblock,
       }
 
       INodeFileUnderConstruction pendingFile = (INodeFileUnderConstruction)iFile;
+      final long[] oldCounts = dir.getContentCounts(pendingFile);
 
       if (deleteblock) {
         pendingFile.removeLastBlock(ExtendedBlock.getLocalBlock(lastblock));
@@ -3377,6 +3437,7 @@ void commitBlockSynchronization(ExtendedBlock lastblock,
         // add pipeline locations into the INodeUnderConstruction
         pendingFile.setLastBlock(storedBlock, descriptors);
       }
+      dir.updateContentCounts(pendingFile, oldCounts);
 
       src = leaseManager.findPath(pendingFile);
       if (closeFile) {
@@ -3409,18 +3470,15 @@ void commitBlockSynchronization(ExtendedBlock lastblock,
    * Renew the lease(s) held by the given client
    */
   void renewLease(String holder) throws IOException {
+    // The renewal only updates the time of the lease and does not take the
+    // namesystem lock. A renewal racing with the transition to standby is
+    // harmless, for the leases are all renewed when the namenode becomes
+    // active.
     checkOperation(OperationCategory.WRITE);
-    writeLock();
-    try {
-      checkOperation(OperationCategory.WRITE);
-
-      if (isInSafeMode()) {
-        throw new SafeModeException("Cannot renew lease for " + holder, safeMode);
-      }
-      leaseManager.renewLease(holder);
-    } finally {
-      writeUnlock();
+    if (isInSafeMode()) {
+      throw new SafeModeException("Cannot renew lease for " + holder, safeMode);
     }
+    leaseManager.renewLease(holder);
   }
 
   /**
@@ -3471,6 +3529,40 @@ private DirectoryListing getListingInt(String src, byte[] startAfter,
     return dl;
   }
 
+  /**
+   * Get the first partial listing of each of the indicated directories.
+   * Paths are listed in order until the number of returned paths and
+   * entries reaches the listing limit, so the result may cover only a
+   * prefix of <code>srcs</code>.
+   *
+   * @param srcs the directory names
+   * @param needLocation if blockLocations need to be returned
+   * @return the partial listings, null for paths that do not exist
+   *
+   * @throws AccessControlException if access is denied on any path
+   * @throws UnresolvedLinkException if symbolic link is encountered
+   * @throws IOException if other I/O error occurred
+   */
+  DirectoryListing[] getBatchedListing(String[] srcs, boolean needLocation)
+      throws AccessControlException, UnresolvedLinkException, IOException {
+    final int lsLimit = dir.getLsLimit();
+    List<DirectoryListing> listings = new ArrayList<DirectoryListing>();
+    int numEntries = 0;
+    for (String src : srcs) {
+      if (numEntries >= lsLimit) {
+        break;
+      }
+      // each path is taken under its own read lock so that a large batch
+      // does not hold off writers for longer than a single listing does
+      DirectoryListing dl = getListing(src, HdfsFileStatus.EMPTY_NAME,
+          needLocation);
+      listings.add(dl);
+      // count the path itself so that many empty directories are bounded too
+      numEntries += 1 + (dl == null ? 0 : dl.getPartialListing().length);
+    }
+    return listings.toArray(new DirectoryListing[listings.size()]);
+  }
+
   /////////////////////////////////////////////////////////
   //
   // These methods are called by datanodes
@@ -3536,11 +3628,9 @@ HeartbeatResponse handleHeartbeat(DatanodeRegistration nodeReg,
         throws IOException {
     readLock();
     try {
-      final int maxTransfer = blockManager.getMaxReplicationStreams()
-          - xmitsInProgress;
       DatanodeCommand[] cmds = blockManager.getDatanodeManager().handleHeartbeat(
           nodeReg, blockPoolId, capacity, dfsUsed, remaining, blockPoolUsed,
-          xceiverCount, maxTransfer, failedVolumes);
+          xceiverCount, xmitsInProgress, failedVolumes);
       return new HeartbeatResponse(cmds, createHaStatusHeartbeat());
     } finally {
       readUnlock();
@@ -3610,6 +3700,68 @@ public void stopMonitor() {
       shouldNNRmRun = false;
     }
  }
+
+  /**
+   * Periodically verifies the content counts cached in directories, which
+   * are maintained incrementally, to correct any drift from the actual
+   * counts. The namespace is walked under the read lock in batches of
+   * inodes, releasing the lock between batches, and only the corrections
+   * take the write lock.
+   */
+  class ContentCountsVerifier implements Runnable {
+    boolean shouldRun = true;
+    @Override
+    public void run() {
+      try {
+        while (fsRunning && shouldRun) {
+          try {
+            Thread.sleep(contentCountsVerifyInterval);
+          } catch (InterruptedException ie) {
+            // Deliberately ignore
+          }
+          if (fsRunning && shouldRun) {
+            verifyContentCounts();
+          }
+        }
+      } catch (Exception e) {
+        FSNamesystem.LOG.error("Exception in ContentCountsVerifier: ", e);
+      }
+    }
+
+    public void stopVerifier() {
+      shouldRun = false;
+    }
+  }
+
+  /**
+   * Verify the content counts cached in all directories of the namespace.
+   * @return the number of directories whose counts were corrected
+   */
+  @VisibleForTesting
+  int verifyContentCounts() {
+    final FSDirectory.ContentCountsWalk walk = dir.new ContentCountsWalk();
+    int corrected = 0;
+    while (!walk.isDone() && fsRunning) {
+      final boolean inconsistent;
+      readLock();
+      try {
+        inconsistent = walk.visit(contentCountsVerifyBatchSize);
+      } finally {
+        readUnlock();
+      }
+      if (inconsistent) {
+        writeLock();
+        try {
+          if (walk.correct()) {
+            corrected++;
+          }
+        } finally {
+          writeUnlock();
+        }
+      }
+    }
+    return corrected;
+  }
   
   public FSImage getFSImage() {
     return dir.fsImage;
@@ -3632,6 +3784,40 @@ public long getMissingBlocksCount() {
     return blockManager.getMissingBlocksCount();
   }
   
+  @Metric({"AuditLogQueueSize",
+      "Number of audit events waiting to be logged"})
+  public int getAuditLogQueueSize() {
+    return auditLogQueue == null ? 0 : auditLogQueue.getQueueSize();
+  }
+
+  @Metric(value={"AuditEventsLogged",
+      "Number of audit events logged from the audit event queue"},
+      type=Metric.Type.COUNTER)
+  public long getAuditEventsLogged() {
+    return auditLogQueue == null ? 0 : auditLogQueue.getNumLogged();
+  }
+
+  @Metric(value={"AuditEventsDropped",
+      "Number of audit events dropped because the audit event queue was full"},
+      type=Metric.Type.COUNTER)
+  public long getAuditEventsDropped() {
+    return auditLogQueue == null ? 0 : auditLogQueue.getNumDropped();
+  }
+
+  @Metric(value={"AuditEventsFailed",
+      "Number of audit events from the audit event queue which an audit "
+      + "logger failed to log"},
+      type=Metric.Type.COUNTER)
+  public long getAuditEventsFailed() {
+    return auditLogQueue == null ? 0 : auditLogQueue.getNumFailed();
+  }
+
+  @Metric({"PendingDecommissionBlocks",
+      "Number of blocks on decommissioning nodes not yet replicated enough"})
+  public long getPendingDecommissionBlocks() {
+    return blockManager.getDatanodeManager().getNumPendingDecommissionBlocks();
+  }
+
   @Metric({"ExpiredHeartbeats", "Number of expired heartbeats"})
   public int getExpiredHeartbeats() {
     return datanodeStatistics.getExpiredHeartbeats();
@@ -4083,6 +4269,10 @@ private void checkMode() {
         return;
       }
       // the threshold is reached
+      if (reached == 0 && !isManual()) {
+        NameNode.getNameNodeMetrics().setSafeModeThresholdTime(
+            now() - startTime);
+      }
       if (!isOn() ||                           // safe mode is off
           extension <= 0 || threshold <= 0) {  // don't need to wait
         this.leave(); // leave safe mode
@@ -4553,6 +4743,36 @@ String getSafeModeTip() {
     }
   }
 
+  /** Interval at which a standby re-reads its applied txid when waiting */
+  private static final long APPLIED_TXID_POLL_INTERVAL = 10;
+
+  /** @see ClientProtocol#getAppliedTxId(long) */
+  long getAppliedTxId(long minTxId) throws IOException {
+    checkOperation(OperationCategory.UNCHECKED);
+    if (!isInStandbyState()) {
+      return getEditLog().getLastWrittenTxId();
+    }
+    long deadline = monotonicNow() + standbyReadsMaxWait;
+    while (true) {
+      long txId;
+      readLock();
+      try {
+        txId = getFSImage().getLastAppliedTxId();
+      } finally {
+        readUnlock();
+      }
+      if (txId >= minTxId || monotonicNow() >= deadline) {
+        return txId;
+      }
+      try {
+        Thread.sleep(APPLIED_TXID_POLL_INTERVAL);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        return txId;
+      }
+    }
+  }
+
   CheckpointSignature rollEditLog() throws IOException {
     checkSuperuserPrivilege();
     checkOperation(OperationCategory.JOURNAL);
@@ -4723,6 +4943,42 @@ public long getScheduledReplicationBlocks() {
     return blockManager.getScheduledReplicationBlocksCount();
   }
 
+  @Metric({"ReplicationRecoveryEta", "Estimated seconds until the"
+      + " under-replicated blocks are replicated, -1 if not progressing"})
+  public long getReplicationRecoveryEta() {
+    return blockManager.getReplicationRecoveryEta();
+  }
+
+  @Metric({"CompletedReplicationsPerSec",
+      "Replicas created by replication per second"})
+  public double getCompletedReplicationRate() {
+    return blockManager.getCompletedReplicationRate();
+  }
+
+  @Metric({"HighestPriorityReplicationsPerSec",
+      "Blocks scheduled per second from the highest priority queue"})
+  public double getHighestPriorityReplicationRate() {
+    return blockManager.getHighestPriorityReplicationRate();
+  }
+
+  @Metric({"VeryUnderReplicatedReplicationsPerSec",
+      "Blocks scheduled per second from the very under-replicated queue"})
+  public double getVeryUnderReplicatedReplicationRate() {
+    return blockManager.getVeryUnderReplicatedReplicationRate();
+  }
+
+  @Metric({"UnderReplicatedReplicationsPerSec",
+      "Blocks scheduled per second from the under-replicated queue"})
+  public double getUnderReplicatedReplicationRate() {
+    return blockManager.getUnderReplicatedReplicationRate();
+  }
+
+  @Metric({"BadlyDistributedReplicationsPerSec",
+      "Blocks scheduled per second from the badly distributed queue"})
+  public double getBadlyDistributedReplicationRate() {
+    return blockManager.getBadlyDistributedReplicationRate();
+  }
+
   @Metric
   public long getPendingDeletionBlocks() {
     return blockManager.getPendingDeletionBlocksCount();
@@ -4994,8 +5250,10 @@ private void updatePipelineInternal(String clientName, ExtendedBlock oldBlock,
     }
 
     // Update old block with the new generation stamp and new length
+    final long[] oldCounts = dir.getContentCounts(pendingFile);
     blockinfo.setGenerationStamp(newBlock.getGenerationStamp());
     blockinfo.setNumBytes(newBlock.getNumBytes());
+    dir.updateContentCounts(pendingFile, oldCounts);
 
     // find the DatanodeDescriptor objects
     final DatanodeManager dm = getBlockManager().getDatanodeManager();
@@ -5560,6 +5818,8 @@ public String getDecomNodes() {
           .getDecommissionOnlyReplicas());
       innerinfo.put("underReplicateInOpenFiles", node.decommissioningStatus
           .getUnderReplicatedInOpenFiles());
+      innerinfo.put("pendingBlocks", node.decommissioningStatus
+          .getPendingBlocks());
       info.put(node.getHostName(), innerinfo);
     }
     return JSON.toString(info);
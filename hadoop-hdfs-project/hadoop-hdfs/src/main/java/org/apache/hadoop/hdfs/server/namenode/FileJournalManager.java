@@ -168,6 +168,20 @@ public void purgeLogsOlderThan(long minTxIdToKeep)
    * @throws IOException if edit logs cannot be listed.
    */
   public List<RemoteEditLog> getRemoteEditLogs(long firstTxId) throws IOException {
+    return getRemoteEditLogs(firstTxId, false);
+  }
+
+  /**
+   * Find all finalized edit logs containing transactions from the given
+   * transaction onwards.
+   *
+   * @param firstTxId the first transaction wanted
+   * @param allowMidSegment whether to include a log which starts before
+   *        <code>firstTxId</code> but contains it; if false, such a log
+   *        is an error
+   */
+  public List<RemoteEditLog> getRemoteEditLogs(long firstTxId,
+      boolean allowMidSegment) throws IOException {
     File currentDir = sd.getCurrentDir();
     List<EditLogFile> allLogFiles = matchEditLogs(currentDir);
     List<RemoteEditLog> ret = Lists.newArrayListWithCapacity(
@@ -179,6 +193,10 @@ public List<RemoteEditLog> getRemoteEditLogs(long firstTxId) throws IOException
         ret.add(new RemoteEditLog(elf.firstTxId, elf.lastTxId));
       } else if ((firstTxId > elf.getFirstTxId()) &&
                  (firstTxId <= elf.getLastTxId())) {
+        if (allowMidSegment) {
+          ret.add(new RemoteEditLog(elf.firstTxId, elf.lastTxId));
+          continue;
+        }
         // Note that this behavior is different from getLogFiles below.
         throw new IllegalStateException("Asked for firstTxId " + firstTxId
             + " which is in the middle of file " + elf.file);
@@ -52,6 +52,17 @@ public static INodeDirectory valueOf(INode inode, Object path
   final static String ROOT_NAME = "";
 
   private List<INode> children = null;
+  /**
+   * The content counts of the subtree rooted at this directory, laid out as
+   * in {@link #computeContentSummary(long[])}; null if they are not cached.
+   */
+  private long[] contentCounts = null;
+  /**
+   * Incremented whenever the cached content counts change, so that a
+   * verification of the counts carried out over several lock holds can
+   * tell whether they changed in between.
+   */
+  private int contentCountsVersion = 0;
 
   INodeDirectory(long id, String name, PermissionStatus permissions) {
     super(id, name, permissions);
@@ -73,6 +84,8 @@ public INodeDirectory(long id, PermissionStatus permissions, long mTime) {
   INodeDirectory(INodeDirectory other) {
     super(other);
     this.children = other.children;
+    this.contentCounts = other.contentCounts;
+    this.contentCountsVersion = other.contentCountsVersion;
     if (this.children != null) {
       for (INode child : children) {
         child.parent = this;
@@ -96,6 +109,18 @@ private int searchChildren(INode inode) {
     return Collections.binarySearch(children, inode.getLocalNameBytes());
   }
 
+  /**
+   * @return the index of the first child whose name comes after the given
+   *         name in {@link #getChildrenList()}; 0 if the name is null.
+   */
+  int nextChildIndex(byte[] name) {
+    if (children == null || name == null) {
+      return 0;
+    }
+    final int i = Collections.binarySearch(children, name);
+    return i >= 0 ? i + 1 : -i - 1;
+  }
+
   INode removeChild(INode node) {
     assertChildrenNonNull();
     final int i = searchChildren(node);
@@ -353,9 +378,16 @@ DirCounts spaceConsumedInTree(DirCounts counts) {
 
   @Override
   long[] computeContentSummary(long[] summary) {
+    assert 4 == summary.length;
+    if (contentCounts != null) {
+      for (int i = 0; i < summary.length; i++) {
+        summary[i] += contentCounts[i];
+      }
+      return summary;
+    }
+
     // Walk through the children of this node, using a new summary array
     // for the (sub)tree rooted at this node
-    assert 4 == summary.length;
     long[] subtreeSummary = new long[]{0,0,0,0};
     if (children != null) {
       for (INode child : children) {
@@ -382,6 +414,57 @@ long[] computeContentSummary(long[] summary) {
     return summary;
   }
 
+  /**
+   * @return the cached content counts of the subtree rooted at this
+   *         directory, or null if they are not cached.
+   */
+  long[] getCachedContentCounts() {
+    return contentCounts;
+  }
+
+  /** @return the version of the cached content counts. */
+  int getContentCountsVersion() {
+    return contentCountsVersion;
+  }
+
+  /** Set the cached content counts of the subtree rooted at this directory. */
+  void setContentCounts(long[] counts) {
+    this.contentCounts = counts;
+  }
+
+  /**
+   * Start caching the content counts of this directory, and of every
+   * directory below it which does not cache them yet.
+   */
+  void initContentCounts() {
+    if (contentCounts != null) {
+      return;
+    }
+    long[] counts = new long[]{0, 0, 1, 0};
+    for (INode child : getChildrenList()) {
+      if (child.isDirectory()) {
+        ((INodeDirectory)child).initContentCounts();
+      }
+      child.computeContentSummary(counts);
+    }
+    contentCounts = counts;
+  }
+
+  /**
+   * Add the given deltas to the cached content counts of this directory
+   * and of each of its ancestors.
+   */
+  void addContentCounts(long[] deltas) {
+    for (INodeDirectory dir = this; dir != null; dir = dir.parent) {
+      if (dir.contentCounts != null) {
+        for (int i = 0; i < deltas.length; i++) {
+          dir.contentCounts[i] += deltas[i];
+        }
+        dir.contentCountsVersion++;
+      }
+    }
+  }
+
   /**
    * @return an empty list if the children list is null;
    *         otherwise, return the children list.
@@ -29,12 +29,14 @@
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.UnresolvedLinkException;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
 import org.apache.hadoop.util.Daemon;
@@ -63,6 +65,12 @@
  * 2.9) Namenode removes f from the lease
  *      and removes the lease once all files have been removed
  * 2.10) Namenode commit changes to edit log
+ *
+ * The leases are renewed without any lock: a renewal only updates the
+ * time of the lease. The leases are kept sorted by the time of their last
+ * renewal known to the monitor, which moves the renewed leases to their
+ * place when it finds them at the head of the sorted leases, before taking
+ * the namesystem lock.
  */
 @InterfaceAudience.Private
 public class LeaseManager {
@@ -72,14 +80,18 @@ public class LeaseManager {
 
   private long softLimit = HdfsConstants.LEASE_SOFTLIMIT_PERIOD;
   private long hardLimit = HdfsConstants.LEASE_HARDLIMIT_PERIOD;
+  private long maxLockHoldToReleaseLease =
+      DFSConfigKeys.DFS_NAMENODE_MAX_LOCK_HOLD_TO_RELEASE_LEASE_MS_DEFAULT;
 
   //
   // Used for handling lock-leases
   // Mapping: leaseHolder -> Lease
+  // It is read without lock by the renewals.
   //
-  private SortedMap<String, Lease> leases = new TreeMap<String, Lease>();
-  // Set of: Lease
-  private SortedSet<Lease> sortedLeases = new TreeSet<Lease>();
+  private final Map<String, Lease> leases =
+      new ConcurrentHashMap<String, Lease>();
+  // Set of: Lease, sorted by the last renewal known to the monitor
+  private final SortedSet<Lease> sortedLeases = new TreeSet<Lease>();
 
   // 
   // Map path names to leases. It is protected by the sortedLeases lock.
@@ -102,7 +114,7 @@ Lease getLease(String holder) {
   public Lease getLeaseByPath(String src) {return sortedLeasesByPath.get(src);}
 
   /** @return the number of leases currently in the system */
-  public synchronized int countLease() {return sortedLeases.size();}
+  public int countLease() {return leases.size();}
 
   /** @return the number of paths contained in all leases */
   synchronized int countPath() {
@@ -186,7 +198,13 @@ public synchronized String findPath(INodeFileUnderConstruction pendingFile)
       throws IOException {
     Lease lease = getLease(pendingFile.getClientName());
     if (lease != null) {
-      String src = lease.findPath(pendingFile);
+      // the path of the file, from its parents, is usually in the lease
+      String src = pendingFile.getFullPathName();
+      if (src != null && lease.paths.contains(src)
+          && fsnamesystem.dir.getINode(src) == pendingFile) {
+        return src;
+      }
+      src = lease.findPath(pendingFile);
       if (src != null) {
         return src;
       }
@@ -198,21 +216,19 @@ public synchronized String findPath(INodeFileUnderConstruction pendingFile)
   /**
    * Renew the lease(s) held by the given client
    */
-  synchronized void renewLease(String holder) {
+  void renewLease(String holder) {
     renewLease(getLease(holder));
   }
-  synchronized void renewLease(Lease lease) {
+  void renewLease(Lease lease) {
     if (lease != null) {
-      sortedLeases.remove(lease);
       lease.renew();
-      sortedLeases.add(lease);
     }
   }
 
   /**
    * Renew all of the currently open leases.
    */
-  synchronized void renewAllLeases() {
+  void renewAllLeases() {
     for (Lease l : leases.values()) {
       renewLease(l);
     }
@@ -227,13 +243,16 @@ synchronized void renewAllLeases() {
    *************************************************************/
   class Lease implements Comparable<Lease> {
     private final String holder;
-    private long lastUpdate;
+    private volatile long lastUpdate;
+    /** The last renewal known to the monitor, which sorts the leases. */
+    private long sortedUpdate;
     private final Collection<String> paths = new TreeSet<String>();
   
     /** Only LeaseManager object can create a lease */
     private Lease(String holder) {
       this.holder = holder;
       renew();
+      this.sortedUpdate = lastUpdate;
     }
     /** Only LeaseManager object can renew a lease */
     private void renew() {
@@ -283,8 +302,8 @@ public String toString() {
     public int compareTo(Lease o) {
       Lease l1 = this;
       Lease l2 = o;
-      long lu1 = l1.lastUpdate;
-      long lu2 = l2.lastUpdate;
+      long lu1 = l1.sortedUpdate;
+      long lu2 = l2.sortedUpdate;
       if (lu1 < lu2) {
         return -1;
       } else if (lu1 > lu2) {
@@ -300,7 +319,7 @@ public boolean equals(Object o) {
         return false;
       }
       Lease obj = (Lease) o;
-      if (lastUpdate == obj.lastUpdate &&
+      if (sortedUpdate == obj.sortedUpdate &&
           holder.equals(obj.holder)) {
         return true;
       }
@@ -329,6 +348,18 @@ void replacePath(String oldpath, String newpath) {
     long getLastUpdate() {
       return lastUpdate;
     }
+
+    /** Has the lease been renewed since it was sorted? */
+    boolean isRenewedSinceSorted() {
+      return sortedUpdate != lastUpdate;
+    }
+
+    /** Move the lease to its place in the sorted leases. */
+    private void resort() {
+      sortedLeases.remove(this);
+      sortedUpdate = lastUpdate;
+      sortedLeases.add(this);
+    }
   }
 
   synchronized void changeLease(String src, String dst) {
@@ -389,6 +420,14 @@ public void setLeasePeriod(long softLimit, long hardLimit) {
     this.softLimit = softLimit;
     this.hardLimit = hardLimit; 
   }
+
+  /**
+   * Set the time after which the monitor stops releasing the expired
+   * leases and releases the namesystem lock, until its next check.
+   */
+  void setMaxLockHoldToReleaseLease(long maxLockHoldToReleaseLease) {
+    this.maxLockHoldToReleaseLease = maxLockHoldToReleaseLease;
+  }
   
   /******************************************************
    * Monitor checks for leases that have expired,
@@ -403,6 +442,7 @@ public void run() {
       for(; shouldRunMonitor && fsnamesystem.isRunning(); ) {
         boolean needSync = false;
         try {
+          sortRenewedLeases();
           fsnamesystem.writeLockInterruptibly();
           try {
             if (!fsnamesystem.isInSafeMode()) {
@@ -446,14 +486,64 @@ Map<String, INodeFileUnderConstruction> getINodesUnderConstruction() {
     return inodes;
   }
   
+  /**
+   * Move the renewed leases found at the head of the sorted leases to their
+   * place, without the namesystem lock, so that {@link #checkLeases()}
+   * seldom has any lease to move. The lease manager lock, which the
+   * namesystem writers may wait for, is not held longer than the maximum
+   * lock hold time to release leases.
+   */
+  void sortRenewedLeases() {
+    while (!sortRenewedLeases(maxLockHoldToReleaseLease)) {
+      // let the waiting writers in
+    }
+  }
+
+  /**
+   * Move the renewed leases found at the head of the sorted leases to their
+   * place, for at most the given time.
+   * @return true if the oldest lease has not been renewed since it was
+   *         sorted.
+   */
+  @VisibleForTesting
+  synchronized boolean sortRenewedLeases(long maxTime) {
+    final long start = now();
+    while (!sortedLeases.isEmpty()) {
+      final Lease oldest = sortedLeases.first();
+      if (!oldest.isRenewedSinceSorted()) {
+        return true;
+      }
+      oldest.resort();
+      if (now() - start > maxTime) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /** Check the leases beginning from the oldest.
    *  @return true is sync is needed.
    */
-  private synchronized boolean checkLeases() {
+  @VisibleForTesting
+  synchronized boolean checkLeases() {
     boolean needSync = false;
     assert fsnamesystem.hasWriteLock();
+    final long start = now();
     for(; sortedLeases.size() > 0; ) {
       final Lease oldest = sortedLeases.first();
+      if (oldest.isRenewedSinceSorted()) {
+        // renewed since it was sorted, move it to its place
+        oldest.resort();
+        if (now() - start > maxLockHoldToReleaseLease) {
+          if (LOG.isDebugEnabled()) {
+            LOG.debug("Breaking out of checkLeases after " + (now() - start)
+                + " ms, the other renewed leases are sorted in the next"
+                + " check");
+          }
+          return needSync;
+        }
+        continue;
+      }
       if (!oldest.expiredHardLimit()) {
         return needSync;
       }
@@ -467,7 +557,12 @@ private synchronized boolean checkLeases() {
       // causing ConcurrentModificationException
       String[] leasePaths = new String[oldest.getPaths().size()];
       oldest.getPaths().toArray(leasePaths);
+      // do not hold the namesystem lock for too long
+      boolean timedOut = false;
       for(String p : leasePaths) {
+        if (timedOut) {
+          break;
+        }
         try {
           boolean completed = fsnamesystem.internalReleaseLease(oldest, p,
               HdfsServerConstants.NAMENODE_LEASE_HOLDER);
@@ -487,11 +582,17 @@ private synchronized boolean checkLeases() {
               + oldest, e);
           removing.add(p);
         }
+        timedOut = now() - start > maxLockHoldToReleaseLease;
       }
 
       for(String p : removing) {
         removeLease(oldest, p);
       }
+      if (timedOut) {
+        LOG.info("Breaking out of checkLeases after " + (now() - start)
+            + " ms, the other expired leases are released in the next check");
+        return needSync;
+      }
     }
     return needSync;
   }
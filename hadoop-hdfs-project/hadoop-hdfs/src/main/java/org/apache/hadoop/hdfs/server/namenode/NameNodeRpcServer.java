@@ -685,6 +685,20 @@ public DirectoryListing getListing(String src, byte[] startAfter,
     return files;
   }
 
+  @Override // ClientProtocol
+  public DirectoryListing[] getBatchedListing(String[] srcs,
+      boolean needLocation) throws IOException {
+    DirectoryListing[] listings = namesystem.getBatchedListing(
+        srcs, needLocation);
+    for (DirectoryListing files : listings) {
+      if (files != null) {
+        metrics.incrGetListingOps();
+        metrics.incrFilesInGetListingOps(files.getPartialListing().length);
+      }
+    }
+    return listings;
+  }
+
   @Override // ClientProtocol
   public HdfsFileStatus getFileInfo(String src)  throws IOException {
     metrics.incrFileInfoOps();
@@ -1084,4 +1098,9 @@ private static String getClientMachine() {
   public DataEncryptionKey getDataEncryptionKey() throws IOException {
     return namesystem.getBlockManager().generateDataEncryptionKey();
   }
+
+  @Override // ClientProtocol
+  public long getAppliedTxId(long minTxId) throws IOException {
+    return namesystem.getAppliedTxId(minTxId);
+  }
 }
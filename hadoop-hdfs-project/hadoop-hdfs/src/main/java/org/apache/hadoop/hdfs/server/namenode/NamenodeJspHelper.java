@@ -550,6 +550,8 @@ void generateDecommissioningNodeData(JspWriter out, DatanodeDescriptor d,
           + d.decommissioningStatus.getDecommissionOnlyReplicas() 
           + "<td class=\"underrepblocksinfilesunderconstruction\">"
           + d.decommissioningStatus.getUnderReplicatedInOpenFiles()
+          + "<td class=\"pendingblocks\">"
+          + d.decommissioningStatus.getPendingBlocks()
           + "<td class=\"timesincedecommissionrequest\">"
           + hoursSinceDecommStarted + " hrs " + remainderMinutes + " mins"
           + "\n");
@@ -757,6 +759,8 @@ void generateNodesList(ServletContext context, JspWriter out,
                 + "> Blocks With No <br> Live Replicas <th "
                 + nodeHeaderStr("underrepblocksinfilesunderconstruction")
                 + "> Under Replicated Blocks <br> In Files Under Construction" 
+                + " <th " + nodeHeaderStr("pendingblocks")
+                + "> Blocks Left <br> To Check"
                 + " <th " + nodeHeaderStr("timesincedecommissionrequest")
                 + "> Time Since Decommissioning Started"
                 );
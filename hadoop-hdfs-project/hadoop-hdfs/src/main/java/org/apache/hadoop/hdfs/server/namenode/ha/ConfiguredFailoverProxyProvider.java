@@ -116,20 +116,38 @@ public Class<T> getInterface() {
   /**
    * Lazily initialize the RPC proxy object.
    */
-  @SuppressWarnings("unchecked")
   @Override
   public synchronized T getProxy() {
-    AddressRpcProxyPair current = proxies.get(currentProxyIndex);
-    if (current.namenode == null) {
+    return getProxy(currentProxyIndex);
+  }
+
+  /**
+   * Get proxies to the NameNodes other than the one {@link #getProxy()}
+   * connects to, which are presumed to be standbys. Reads may be sent to
+   * them when the standbys allow stale reads.
+   */
+  public synchronized List<T> getStandbyProxies() {
+    List<T> standbys = new ArrayList<T>(proxies.size() - 1);
+    for (int i = 0; i < proxies.size(); i++) {
+      if (i != currentProxyIndex) {
+        standbys.add(getProxy(i));
+      }
+    }
+    return standbys;
+  }
+
+  private T getProxy(int index) {
+    AddressRpcProxyPair<T> pair = proxies.get(index);
+    if (pair.namenode == null) {
       try {
-        current.namenode = NameNodeProxies.createNonHAProxy(conf,
-            current.address, xface, ugi, false).getProxy();
+        pair.namenode = NameNodeProxies.createNonHAProxy(conf,
+            pair.address, xface, ugi, false).getProxy();
       } catch (IOException e) {
         LOG.error("Failed to create RPC proxy to NameNode", e);
         throw new RuntimeException(e);
       }
     }
-    return (T)current.namenode;
+    return pair.namenode;
   }
 
   @Override
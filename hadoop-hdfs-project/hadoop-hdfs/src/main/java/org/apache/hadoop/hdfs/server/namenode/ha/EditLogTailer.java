@@ -98,6 +98,12 @@ public class EditLogTailer {
    * available to be read from.
    */
   private long sleepTimeMs;
+
+  /**
+   * Whether the Standby also reads the edits of in-progress segments, in
+   * which case it checks for new edits much more often.
+   */
+  private final boolean inProgressOk;
   
   public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
     this.tailerThread = new EditLogTailerThread();
@@ -121,11 +127,20 @@ public EditLogTailer(FSNamesystem namesystem, Configuration conf) {
           DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY + " is negative.");
     }
     
-    sleepTimeMs = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
-        DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT) * 1000;
+    inProgressOk = conf.getBoolean(
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY,
+        DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_DEFAULT);
+    if (inProgressOk) {
+      sleepTimeMs = conf.getLong(
+          DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_PERIOD_KEY,
+          DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_PERIOD_DEFAULT);
+    } else {
+      sleepTimeMs = conf.getInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY,
+          DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_DEFAULT) * 1000;
+    }
     
     LOG.debug("logRollPeriodMs=" + logRollPeriodMs +
-        " sleepTime=" + sleepTimeMs);
+        " sleepTime=" + sleepTimeMs + " inProgressOk=" + inProgressOk);
   }
   
   private InetSocketAddress getActiveNodeAddress() {
@@ -180,7 +195,9 @@ public void catchupDuringFailover() throws IOException {
       @Override
       public Void run() throws Exception {
         try {
-          doTailEdits();
+          // the segments were finalized when the shared edits were recovered,
+          // so this reads up to the last transaction of the old active
+          doTailEdits(false);
         } catch (InterruptedException e) {
           throw new IOException(e);
         }
@@ -191,6 +208,11 @@ public Void run() throws Exception {
   
   @VisibleForTesting
   void doTailEdits() throws IOException, InterruptedException {
+    doTailEdits(inProgressOk);
+  }
+
+  private void doTailEdits(boolean inProgressOk)
+      throws IOException, InterruptedException {
     // Write lock needs to be interruptible here because the 
     // transitionToActive RPC takes the write lock before calling
     // tailer.stop() -- so if we're not interruptible, it will
@@ -206,7 +228,8 @@ void doTailEdits() throws IOException, InterruptedException {
       }
       Collection<EditLogInputStream> streams;
       try {
-        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null, false);
+        streams = editLog.selectInputStreams(lastTxnId + 1, 0, null,
+            inProgressOk);
       } catch (IOException ioe) {
         // This is acceptable. If we try to tail edits in the middle of an edits
         // log roll, i.e. the last one has been finalized but the new inprogress
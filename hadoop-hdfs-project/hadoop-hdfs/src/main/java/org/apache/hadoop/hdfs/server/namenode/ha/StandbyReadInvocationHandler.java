@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.apache.hadoop.util.Time.monotonicNow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.namenode.SafeModeException;
+import org.apache.hadoop.ipc.RPC;
+import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.ipc.StandbyException;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Serves read-only {@link ClientProtocol} calls from the standby NameNodes
+ * of a nameservice, and sends all other calls to the active NameNode
+ * through the usual failover proxy.
+ * <p>
+ * Reads keep seeing the client's own changes: once the client has called
+ * the active NameNode, the next read first asks it for its last written
+ * transaction, and a standby is only read from after
+ * {@link ClientProtocol#getAppliedTxId(long)} shows it has applied that
+ * transaction. A standby which lags behind, or fails a read (for instance
+ * with a {@link StandbyException} because it does not allow stale reads),
+ * is left alone for the recheck interval, during which reads go to the
+ * active NameNode. Any other error from a standby, such as a
+ * {@link java.io.FileNotFoundException}, is not passed to the caller
+ * either: the read is retried on the active NameNode, which has the
+ * authoritative answer.
+ */
+@InterfaceAudience.Private
+public class StandbyReadInvocationHandler implements InvocationHandler,
+    Closeable {
+  private static final Log LOG =
+      LogFactory.getLog(StandbyReadInvocationHandler.class);
+
+  /** The calls which may be served by a standby. */
+  private static final Set<String> READ_METHODS = ImmutableSet.of(
+      "getBlockLocations", "getFileInfo", "getFileLinkInfo", "getListing",
+      "getBatchedListing");
+
+  /** The calls to the active NameNode which never write edits. */
+  private static final Set<String> NO_EDIT_METHODS = ImmutableSet.of(
+      "getServerDefaults", "renewLease", "getStats", "getDatanodeReport",
+      "getPreferredBlockSize", "listCorruptFileBlocks", "getContentSummary",
+      "getLinkTarget", "getDataEncryptionKey", "getAppliedTxId");
+
+  private final ClientProtocol active;
+  private final ConfiguredFailoverProxyProvider<ClientProtocol> provider;
+  private final long recheckInterval;
+  private final Map<ClientProtocol, StandbyInfo> standbys =
+      new IdentityHashMap<ClientProtocol, StandbyInfo>();
+
+  /**
+   * Whether the active NameNode may have changed the namespace since
+   * {@link #lastSeenTxId} was fetched. Initially set, so that the client
+   * sees at least the namespace as of its first read. It is only cleared,
+   * and {@link #lastSeenTxId} only accessed, under {@link #syncLock}.
+   */
+  private volatile boolean needSync = true;
+  private long lastSeenTxId = 0;
+  private final Object syncLock = new Object();
+
+  /**
+   * @param active the failover proxy to the active NameNode
+   * @param provider the provider the failover proxy was created with
+   * @param conf the client configuration
+   */
+  public StandbyReadInvocationHandler(ClientProtocol active,
+      ConfiguredFailoverProxyProvider<ClientProtocol> provider,
+      Configuration conf) {
+    this.active = active;
+    this.provider = provider;
+    this.recheckInterval = conf.getLong(
+        DFSConfigKeys.DFS_CLIENT_STANDBY_READS_RECHECK_INTERVAL_KEY,
+        DFSConfigKeys.DFS_CLIENT_STANDBY_READS_RECHECK_INTERVAL_DEFAULT);
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args)
+      throws Throwable {
+    String name = method.getName();
+    if (!READ_METHODS.contains(name)) {
+      try {
+        return invoke(active, method, args);
+      } finally {
+        if (!NO_EDIT_METHODS.contains(name)) {
+          needSync = true;
+        }
+      }
+    }
+
+    long minTxId = getLastSeenTxId();
+    for (ClientProtocol standby : provider.getStandbyProxies()) {
+      StandbyInfo info = getStandbyInfo(standby);
+      if (!info.hasApplied(minTxId)) {
+        continue;
+      }
+      try {
+        Object result = invoke(standby, method, args);
+        if (hasAllLocations(result)) {
+          return result;
+        }
+        // the datanodes have not reported some blocks to the standby yet
+      } catch (RemoteException re) {
+        IOException ioe = re.unwrapRemoteException(StandbyException.class,
+            SafeModeException.class);
+        LOG.debug("Standby NameNode could not serve " + name, ioe);
+        if (ioe == re) {
+          // the standby is up, but may not know the answer yet
+          break;
+        }
+        info.failed();
+      } catch (IOException ioe) {
+        LOG.debug("Standby NameNode could not serve " + name, ioe);
+        info.failed();
+      }
+    }
+    return invoke(active, method, args);
+  }
+
+  private static Object invoke(ClientProtocol target, Method method,
+      Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static boolean hasAllLocations(Object result) {
+    if (result instanceof LocatedBlocks) {
+      for (LocatedBlock b : ((LocatedBlocks) result).getLocatedBlocks()) {
+        if (b.getLocations().length == 0) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the last transaction written by the active NameNode as far as
+   *         this client knows, fetching it if the client called the active
+   *         NameNode since it was last fetched. A read concurrent with the
+   *         fetch waits for it, since the fetch may be the one covering a
+   *         call this thread made.
+   */
+  private long getLastSeenTxId() throws IOException {
+    synchronized (syncLock) {
+      if (needSync) {
+        // cleared before the fetch, so that a call completing during the
+        // fetch sets it again
+        needSync = false;
+        try {
+          lastSeenTxId = Math.max(lastSeenTxId, active.getAppliedTxId(0));
+        } catch (IOException e) {
+          needSync = true;
+          throw e;
+        }
+      }
+      return lastSeenTxId;
+    }
+  }
+
+  private synchronized StandbyInfo getStandbyInfo(ClientProtocol standby) {
+    StandbyInfo info = standbys.get(standby);
+    if (info == null) {
+      info = new StandbyInfo(standby);
+      standbys.put(standby, info);
+    }
+    return info;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // also closes the proxies to the standbys, which the provider owns
+    RPC.stopProxy(active);
+  }
+
+  /** What the client knows of a standby NameNode. */
+  private class StandbyInfo {
+    private final ClientProtocol namenode;
+    /** The last transaction the standby is known to have applied. */
+    private volatile long appliedTxId = 0;
+    /** Until when reads should not be sent to the standby. */
+    private volatile long retryAfter = 0;
+
+    StandbyInfo(ClientProtocol namenode) {
+      this.namenode = namenode;
+    }
+
+    /**
+     * @return whether the standby can be read from and has applied the
+     *         given transaction, asking it if that is not known yet
+     */
+    boolean hasApplied(long txId) {
+      if (monotonicNow() < retryAfter) {
+        return false;
+      }
+      if (appliedTxId >= txId) {
+        return true;
+      }
+      try {
+        appliedTxId = Math.max(appliedTxId, namenode.getAppliedTxId(txId));
+      } catch (IOException e) {
+        LOG.debug("Could not get the applied txid of a standby NameNode", e);
+      }
+      if (appliedTxId >= txId) {
+        return true;
+      }
+      failed();
+      return false;
+    }
+
+    void failed() {
+      retryAfter = monotonicNow() + recheckInterval;
+    }
+  }
+}
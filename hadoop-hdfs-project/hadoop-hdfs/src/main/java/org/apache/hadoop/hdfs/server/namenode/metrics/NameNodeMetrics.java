@@ -65,9 +65,13 @@ public class NameNodeMetrics {
   MutableCounterLong transactionsBatchedInSync;
   @Metric("Block report") MutableRate blockReport;
   MutableQuantiles[] blockReportQuantiles;
+  @Metric("Initial block report lookup under the read lock")
+  MutableRate firstBlockReportLookup;
 
   @Metric("Duration in SafeMode at startup") MutableGaugeInt safeModeTime;
   @Metric("Time loading FS Image at startup") MutableGaugeInt fsImageLoadTime;
+  @Metric("Time until the SafeMode threshold is reached at startup")
+  MutableGaugeInt safeModeThresholdTime;
 
   NameNodeMetrics(String processName, String sessionId, int[] intervals) {
     registry.tag(ProcessName, processName).tag(SessionId, sessionId);
@@ -185,7 +189,15 @@ public void addBlockReport(long latency) {
     }
   }
 
+  public void addFirstBlockReportLookup(long latency) {
+    firstBlockReportLookup.add(latency);
+  }
+
   public void setSafeModeTime(long elapsed) {
     safeModeTime.set((int) elapsed);
   }
+
+  public void setSafeModeThresholdTime(long elapsed) {
+    safeModeThresholdTime.set((int) elapsed);
+  }
 }
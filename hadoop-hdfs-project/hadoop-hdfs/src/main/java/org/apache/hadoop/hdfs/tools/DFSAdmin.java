@@ -545,6 +545,7 @@ private void printHelp(String cmd) {
       "\t[-printTopology]\n" +
       "\t[-refreshNamenodes datanodehost:port]\n"+
       "\t[-deleteBlockPool datanodehost:port blockpoolId [force]]\n"+
+      "\t[-diskBalancer datanodehost:port -start [threshold] | -cancel | -status]\n"+
       "\t[-setBalancerBandwidth <bandwidth>]\n" +
       "\t[-fetchImage <local directory>]\n" +
       "\t[-help [cmd]]\n";
@@ -625,6 +626,14 @@ private void printHelp(String cmd) {
                              "\t\t   Refer to refreshNamenodes to shutdown a block pool\n" +
                              "\t\t service on a datanode.\n";
 
+    String diskBalancer = "-diskBalancer: Arguments are datanodehost:port and one of\n"+
+                          "\t\t-start [threshold]: moves replicas from the volumes of\n"+
+                          "\t\t the datanode which are used more than the datanode as a\n"+
+                          "\t\t whole, by more than threshold percent of their capacity\n"+
+                          "\t\t (10 by default), to the volumes which are used less.\n"+
+                          "\t\t-cancel: stops moving replicas.\n"+
+                          "\t\t-status: prints the planned moves and their progress.\n";
+
     String setBalancerBandwidth = "-setBalancerBandwidth <bandwidth>:\n" +
       "\tChanges the network bandwidth used by each datanode during\n" +
       "\tHDFS block balancing.\n\n" +
@@ -676,6 +685,8 @@ private void printHelp(String cmd) {
       System.out.println(refreshNamenodes);
     } else if ("deleteBlockPool".equals(cmd)) {
       System.out.println(deleteBlockPool);
+    } else if ("diskBalancer".equals(cmd)) {
+      System.out.println(diskBalancer);
     } else if ("setBalancerBandwidth".equals(cmd)) {
       System.out.println(setBalancerBandwidth);
     } else if ("fetchImage".equals(cmd)) {
@@ -702,6 +713,7 @@ private void printHelp(String cmd) {
       System.out.println(printTopology);
       System.out.println(refreshNamenodes);
       System.out.println(deleteBlockPool);
+      System.out.println(diskBalancer);
       System.out.println(setBalancerBandwidth);
       System.out.println(fetchImage);
       System.out.println(help);
@@ -928,6 +940,9 @@ private static void printUsage(String cmd) {
     } else if ("-deleteBlockPool".equals(cmd)) {
       System.err.println("Usage: java DFSAdmin"
           + " [-deleteBlockPool datanode-host:port blockpoolId [force]]");
+    } else if ("-diskBalancer".equals(cmd)) {
+      System.err.println("Usage: java DFSAdmin"
+          + " [-diskBalancer datanode-host:port -start [threshold] | -cancel | -status]");
     } else if ("-setBalancerBandwidth".equals(cmd)) {
       System.err.println("Usage: java DFSAdmin"
                   + " [-setBalancerBandwidth <bandwidth in bytes per second>]");
@@ -951,6 +966,7 @@ private static void printUsage(String cmd) {
       System.err.println("           [-printTopology]");
       System.err.println("           [-refreshNamenodes datanodehost:port]");
       System.err.println("           [-deleteBlockPool datanode-host:port blockpoolId [force]]");
+      System.err.println("           [-diskBalancer datanode-host:port -start [threshold] | -cancel | -status]");
       System.err.println("           ["+SetQuotaCommand.USAGE+"]");
       System.err.println("           ["+ClearQuotaCommand.USAGE+"]");
       System.err.println("           ["+SetSpaceQuotaCommand.USAGE+"]");
@@ -1048,6 +1064,11 @@ public int run(String[] argv) throws Exception {
         printUsage(cmd);
         return exitCode;
       }
+    } else if ("-diskBalancer".equals(cmd)) {
+      if ((argv.length != 3) && (argv.length != 4)) {
+        printUsage(cmd);
+        return exitCode;
+      }
     } else if ("-setBalancerBandwidth".equals(cmd)) {
       if (argv.length != 2) {
         printUsage(cmd);
@@ -1111,6 +1132,8 @@ public int run(String[] argv) throws Exception {
         exitCode = refreshNamenodes(argv, i);
       } else if ("-deleteBlockPool".equals(cmd)) {
         exitCode = deleteBlockPool(argv, i);
+      } else if ("-diskBalancer".equals(cmd)) {
+        exitCode = diskBalancer(argv, i);
       } else if ("-setBalancerBandwidth".equals(cmd)) {
         exitCode = setBalancerBandwidth(argv, i);
       } else if ("-fetchImage".equals(cmd)) {
@@ -1191,6 +1214,32 @@ private int deleteBlockPool(String[] argv, int i) throws IOException {
     return 0;
   }
   
+  private int diskBalancer(String[] argv, int i) throws IOException {
+    ClientDatanodeProtocol dnProxy = getDataNodeProxy(argv[i]);
+    String op = argv[i+1];
+    if ("-start".equals(op)) {
+      double threshold = 10;
+      if (argv.length-1 == i+2) {
+        threshold = Double.parseDouble(argv[i+2]);
+        if (threshold < 0 || threshold >= 100) {
+          throw new IllegalArgumentException(
+              "The threshold must be in [0, 100): " + argv[i+2]);
+        }
+      }
+      dnProxy.startDiskBalancer(threshold);
+      System.out.println("Disk balancer started on " + argv[i]);
+    } else if ("-cancel".equals(op) && argv.length-1 == i+1) {
+      dnProxy.cancelDiskBalancer();
+      System.out.println("Disk balancer cancelled on " + argv[i]);
+    } else if ("-status".equals(op) && argv.length-1 == i+1) {
+      System.out.println(dnProxy.getDiskBalancerStatus());
+    } else {
+      printUsage("-diskBalancer");
+      return -1;
+    }
+    return 0;
+  }
+
   private int refreshNamenodes(String[] argv, int i) throws IOException {
     String datanode = argv[i];
     ClientDatanodeProtocol refreshProtocol = getDataNodeProxy(datanode);
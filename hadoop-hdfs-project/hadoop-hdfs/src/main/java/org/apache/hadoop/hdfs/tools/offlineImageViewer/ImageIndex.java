@@ -0,0 +1,656 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.tools.offlineImageViewer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.namenode.INodeId;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A columnar index of the inodes of an fsimage, written by
+ * {@link ImageIndexVisitor} in a directory.
+ * <p>
+ * Each inode is a row, numbered in the order of the image, the root being
+ * the first one. Each {@link Column} is a file of fixed width values, one
+ * per row, so that a query only reads the columns it needs and the rows
+ * can be split between threads. The names of the inodes are in the
+ * {@value #NAMES_FILE} file, at the offsets of the {@link Column#NAME}
+ * column. The owners and groups are stored as ids in their dictionaries.
+ * <p>
+ * The column files are memory mapped. The index of the children of the
+ * directories is built in memory when a path is first looked up.
+ */
+class ImageIndex {
+  /** The columns of the index, with the width of their values. */
+  enum Column {
+    TYPE(1),
+    PARENT(4),
+    DEPTH(2),
+    LENGTH(8),
+    NUM_BLOCKS(4),
+    REPLICATION(2),
+    BLOCK_SIZE(8),
+    MODIFICATION_TIME(8),
+    ACCESS_TIME(8),
+    OWNER(4),
+    GROUP(4),
+    PERMISSION(2),
+    NS_QUOTA(8),
+    DS_QUOTA(8),
+    /** Offset of the name in the names file. */
+    NAME(8);
+
+    final int width;
+
+    Column(int width) {
+      this.width = width;
+    }
+
+    String getFileName() {
+      return name().toLowerCase();
+    }
+  }
+
+  /** How the files are grouped by {@link ImageIndex#aggregate}. */
+  enum GroupBy {
+    OWNER, GROUP, DEPTH,
+    /** Powers of two of the file sizes. */
+    SIZE,
+    /** Parent directories. */
+    PARENT
+  }
+
+  /** Aggregate of the files of a group. */
+  static class Stats {
+    long files;
+    long bytes;
+    /** Bytes times replication. */
+    long space;
+    long blocks;
+
+    void add(Stats that) {
+      files += that.files;
+      bytes += that.bytes;
+      space += that.space;
+      blocks += that.blocks;
+    }
+
+    @Override
+    public String toString() {
+      return files + "\t" + bytes + "\t" + space + "\t" + blocks;
+    }
+  }
+
+  static final byte FILE = 0;
+  static final byte DIRECTORY = 1;
+  static final byte SYMLINK = 2;
+
+  static final String NAMES_FILE = "names";
+  static final String OWNERS_FILE = "owners";
+  static final String GROUPS_FILE = "groups";
+  static final String SYMLINKS_FILE = "symlinks";
+
+  private final int numRows;
+  private final MappedFile[] columns =
+      new MappedFile[Column.values().length];
+  private final MappedFile names;
+  private final String[] owners;
+  private final String[] groups;
+  private final Map<Integer, String> symlinks;
+
+  /** The children of row r are children[childOffsets[r] ... ]. */
+  private int[] childOffsets;
+  private int[] children;
+
+  ImageIndex(File dir) throws IOException {
+    final File typeFile = new File(dir, Column.TYPE.getFileName());
+    if (!typeFile.exists()) {
+      throw new FileNotFoundException("No image index in " + dir);
+    }
+    numRows = (int)typeFile.length();
+    for (Column c : Column.values()) {
+      final MappedFile f = new MappedFile(new File(dir, c.getFileName()));
+      if (f.length != (long)numRows * c.width) {
+        throw new IOException("Corrupt image index: the length of column "
+            + c + " is " + f.length + " for " + numRows + " rows");
+      }
+      columns[c.ordinal()] = f;
+    }
+    names = new MappedFile(new File(dir, NAMES_FILE));
+    owners = readDictionary(new File(dir, OWNERS_FILE));
+    groups = readDictionary(new File(dir, GROUPS_FILE));
+    symlinks = readSymlinks(new File(dir, SYMLINKS_FILE));
+  }
+
+  private static String[] readDictionary(File f) throws IOException {
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(f)));
+    try {
+      final String[] values = new String[in.readInt()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = Text.readString(in);
+      }
+      return values;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static Map<Integer, String> readSymlinks(File f)
+      throws IOException {
+    final Map<Integer, String> targets = new HashMap<Integer, String>();
+    final DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(f)));
+    try {
+      while (true) {
+        final int row;
+        try {
+          row = in.readInt();
+        } catch (EOFException e) {
+          return targets;
+        }
+        targets.put(row, Text.readString(in));
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  int getNumRows() {
+    return numRows;
+  }
+
+  private MappedFile get(Column c) {
+    return columns[c.ordinal()];
+  }
+
+  byte getType(int row) {
+    return get(Column.TYPE).getByte(row);
+  }
+
+  /** @return the row of the parent directory, -1 for the root */
+  int getParent(int row) {
+    return get(Column.PARENT).getInt((long)row * 4);
+  }
+
+  /** @return the number of directories above the row */
+  int getDepth(int row) {
+    return get(Column.DEPTH).getShort((long)row * 2);
+  }
+
+  long getLength(int row) {
+    return get(Column.LENGTH).getLong((long)row * 8);
+  }
+
+  int getNumBlocks(int row) {
+    return get(Column.NUM_BLOCKS).getInt((long)row * 4);
+  }
+
+  short getReplication(int row) {
+    return get(Column.REPLICATION).getShort((long)row * 2);
+  }
+
+  long getBlockSize(int row) {
+    return get(Column.BLOCK_SIZE).getLong((long)row * 8);
+  }
+
+  long getModificationTime(int row) {
+    return get(Column.MODIFICATION_TIME).getLong((long)row * 8);
+  }
+
+  long getAccessTime(int row) {
+    return get(Column.ACCESS_TIME).getLong((long)row * 8);
+  }
+
+  String getOwner(int row) {
+    return owners[get(Column.OWNER).getInt((long)row * 4)];
+  }
+
+  String getGroup(int row) {
+    return groups[get(Column.GROUP).getInt((long)row * 4)];
+  }
+
+  short getPermission(int row) {
+    return get(Column.PERMISSION).getShort((long)row * 2);
+  }
+
+  long getNsQuota(int row) {
+    return get(Column.NS_QUOTA).getLong((long)row * 8);
+  }
+
+  long getDsQuota(int row) {
+    return get(Column.DS_QUOTA).getLong((long)row * 8);
+  }
+
+  byte[] getNameBytes(int row) {
+    final MappedFile offsets = get(Column.NAME);
+    final long start = offsets.getLong((long)row * 8);
+    final long end = row + 1 < numRows ? offsets.getLong((long)(row + 1) * 8)
+        : names.length;
+    final byte[] name = new byte[(int)(end - start)];
+    names.get(start, name);
+    return name;
+  }
+
+  String getName(int row) {
+    return DFSUtil.bytes2String(getNameBytes(row));
+  }
+
+  /** @return the full path of the row */
+  String getPath(int row) {
+    if (getParent(row) < 0) {
+      return Path.SEPARATOR;
+    }
+    final List<String> components = new ArrayList<String>();
+    for (int r = row; getParent(r) >= 0; r = getParent(r)) {
+      components.add(getName(r));
+    }
+    final StringBuilder b = new StringBuilder();
+    for (int i = components.size() - 1; i >= 0; i--) {
+      b.append(Path.SEPARATOR).append(components.get(i));
+    }
+    return b.toString();
+  }
+
+  /** @return the row of an absolute path, or -1 if it does not exist */
+  int lookup(String path) {
+    buildChildren();
+    int row = 0;
+    for (String component : path.split(Path.SEPARATOR)) {
+      if (component.isEmpty()) {
+        continue;
+      }
+      if (getType(row) != DIRECTORY) {
+        return -1;
+      }
+      row = findChild(row, DFSUtil.string2Bytes(component));
+      if (row < 0) {
+        return -1;
+      }
+    }
+    return row;
+  }
+
+  int getNumChildren(int row) {
+    buildChildren();
+    return childOffsets[row + 1] - childOffsets[row];
+  }
+
+  /** @return the row of the i-th child, in the order of the names */
+  int getChild(int row, int i) {
+    buildChildren();
+    return children[childOffsets[row] + i];
+  }
+
+  private int findChild(int row, byte[] name) {
+    int low = childOffsets[row];
+    int high = childOffsets[row + 1] - 1;
+    while (low <= high) {
+      final int mid = (low + high) >>> 1;
+      final int cmp = compareBytes(getNameBytes(children[mid]), name);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return children[mid];
+      }
+    }
+    return -1;
+  }
+
+  private static int compareBytes(byte[] a, byte[] b) {
+    final int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      if (a[i] != b[i]) {
+        return (a[i] & 0xff) - (b[i] & 0xff);
+      }
+    }
+    return a.length - b.length;
+  }
+
+  /**
+   * Sort the rows by parent. The children of a directory are already
+   * sorted by name in the images saved with local names, they are only
+   * sorted here for the older images.
+   */
+  private synchronized void buildChildren() {
+    if (children != null) {
+      return;
+    }
+    final int[] offsets = new int[numRows + 1];
+    for (int r = 0; r < numRows; r++) {
+      final int p = getParent(r);
+      if (p >= 0) {
+        offsets[p + 1]++;
+      }
+    }
+    for (int r = 0; r < numRows; r++) {
+      offsets[r + 1] += offsets[r];
+    }
+    final int[] c = new int[offsets[numRows]];
+    for (int r = 0; r < numRows; r++) {
+      final int p = getParent(r);
+      if (p >= 0) {
+        c[offsets[p]++] = r;
+      }
+    }
+    // offsets[p] is now the end of the children of p
+    for (int r = numRows; r > 0; r--) {
+      offsets[r] = offsets[r - 1];
+    }
+    offsets[0] = 0;
+
+    final Comparator<Integer> byName = new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return compareBytes(getNameBytes(a), getNameBytes(b));
+      }
+    };
+    for (int p = 0; p < numRows; p++) {
+      final int start = offsets[p];
+      final int end = offsets[p + 1];
+      for (int i = start + 1; i < end; i++) {
+        if (byName.compare(c[i - 1], c[i]) > 0) {
+          final Integer[] sorted = new Integer[end - start];
+          for (int j = 0; j < sorted.length; j++) {
+            sorted[j] = c[start + j];
+          }
+          Arrays.sort(sorted, byName);
+          for (int j = 0; j < sorted.length; j++) {
+            c[start + j] = sorted[j];
+          }
+          break;
+        }
+      }
+    }
+    childOffsets = offsets;
+    children = c;
+  }
+
+  /**
+   * @param includeName whether the status has the local name of the row,
+   *          as in a listing, or an empty name
+   */
+  HdfsFileStatus getFileStatus(int row, boolean includeName) {
+    final byte type = getType(row);
+    final String target = symlinks.get(row);
+    return new HdfsFileStatus(getLength(row), type == DIRECTORY,
+        getReplication(row), getBlockSize(row), getModificationTime(row),
+        getAccessTime(row), new FsPermission(getPermission(row)),
+        getOwner(row), getGroup(row),
+        type == SYMLINK && target != null ? DFSUtil.string2Bytes(target) : null,
+        includeName ? getNameBytes(row) : HdfsFileStatus.EMPTY_NAME,
+        INodeId.GRANDFATHER_INODE_ID);
+  }
+
+  /** @return the summary of the subtree of the row, as the namenode does */
+  ContentSummary getContentSummary(int row) {
+    buildChildren();
+    long length = 0;
+    long files = 0;
+    long directories = 0;
+    long space = 0;
+    int[] stack = new int[64];
+    int size = 0;
+    stack[size++] = row;
+    while (size > 0) {
+      final int r = stack[--size];
+      if (getType(r) == DIRECTORY) {
+        directories++;
+        final int start = childOffsets[r];
+        final int end = childOffsets[r + 1];
+        if (size + end - start > stack.length) {
+          stack = Arrays.copyOf(stack,
+              Math.max(stack.length * 2, size + end - start));
+        }
+        System.arraycopy(children, start, stack, size, end - start);
+        size += end - start;
+      } else {
+        final long len = getLength(r);
+        files++;
+        length += len;
+        space += len * getReplication(r);
+      }
+    }
+    final boolean isDir = getType(row) == DIRECTORY;
+    return new ContentSummary(length, files, directories,
+        isDir ? getNsQuota(row) : -1, space, isDir ? getDsQuota(row) : -1);
+  }
+
+  /**
+   * Aggregate the files of the index by group, in parallel.
+   *
+   * @param minSize the smallest files aggregated
+   * @param maxSize the largest files aggregated
+   * @param threads the number of threads scanning the index
+   * @return the aggregates, by group name, in the order of the groups
+   */
+  Map<String, Stats> aggregate(final GroupBy groupBy, final long minSize,
+      final long maxSize, int threads) throws IOException {
+    final ExecutorService pool = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("ImageIndex aggregator #%d").build());
+    final Map<Long, Stats> merged = new TreeMap<Long, Stats>();
+    try {
+      // more ranges than threads, for the rows are not equally expensive
+      final int numRanges = threads * 4;
+      final int rangeSize = Math.max(1, (numRows + numRanges - 1) / numRanges);
+      final List<Future<Map<Long, Stats>>> futures =
+          new ArrayList<Future<Map<Long, Stats>>>();
+      for (int start = 0; start < numRows; start += rangeSize) {
+        final int from = start;
+        final int to = (int)Math.min((long)start + rangeSize, numRows);
+        futures.add(pool.submit(new Callable<Map<Long, Stats>>() {
+          @Override
+          public Map<Long, Stats> call() {
+            return aggregate(groupBy, minSize, maxSize, from, to);
+          }
+        }));
+      }
+      for (Future<Map<Long, Stats>> f : futures) {
+        for (Map.Entry<Long, Stats> e : f.get().entrySet()) {
+          final Stats s = merged.get(e.getKey());
+          if (s == null) {
+            merged.put(e.getKey(), e.getValue());
+          } else {
+            s.add(e.getValue());
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      throw (IOException)new InterruptedIOException(
+          "Interrupted while aggregating").initCause(e);
+    } catch (ExecutionException e) {
+      throw new IOException("Failed to aggregate the image index",
+          e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+
+    // name the groups
+    final Map<String, Stats> named;
+    if (groupBy == GroupBy.DEPTH || groupBy == GroupBy.SIZE) {
+      named = new LinkedHashMap<String, Stats>();
+    } else {
+      named = new TreeMap<String, Stats>();
+    }
+    for (Map.Entry<Long, Stats> e : merged.entrySet()) {
+      final long key = e.getKey();
+      final String name;
+      switch (groupBy) {
+      case OWNER:
+        name = owners[(int)key];
+        break;
+      case GROUP:
+        name = groups[(int)key];
+        break;
+      case SIZE:
+        name = Long.toString(key == 0 ? 0 : 1L << (key - 1));
+        break;
+      case PARENT:
+        name = getPath((int)key);
+        break;
+      default:
+        name = Long.toString(key);
+        break;
+      }
+      named.put(name, e.getValue());
+    }
+    return named;
+  }
+
+  /** Aggregate the files of the rows [from, to). */
+  private Map<Long, Stats> aggregate(GroupBy groupBy, long minSize,
+      long maxSize, int from, int to) {
+    final Map<Long, Stats> stats = new HashMap<Long, Stats>();
+    // consecutive rows often fall in the same group
+    long lastKey = -1;
+    Stats last = null;
+    for (int r = from; r < to; r++) {
+      if (getType(r) != FILE) {
+        continue;
+      }
+      final long length = getLength(r);
+      if (length < minSize || length > maxSize) {
+        continue;
+      }
+      final long key;
+      switch (groupBy) {
+      case OWNER:
+        key = get(Column.OWNER).getInt((long)r * 4);
+        break;
+      case GROUP:
+        key = get(Column.GROUP).getInt((long)r * 4);
+        break;
+      case DEPTH:
+        key = getDepth(r);
+        break;
+      case SIZE:
+        // files of [2^(key-1), 2^key) bytes
+        key = 64 - Long.numberOfLeadingZeros(length);
+        break;
+      case PARENT:
+        key = getParent(r);
+        break;
+      default:
+        throw new IllegalArgumentException("Unexpected " + groupBy);
+      }
+      if (last == null || key != lastKey) {
+        last = stats.get(key);
+        if (last == null) {
+          last = new Stats();
+          stats.put(key, last);
+        }
+        lastKey = key;
+      }
+      last.files++;
+      last.bytes += length;
+      last.space += length * getReplication(r);
+      last.blocks += getNumBlocks(r);
+    }
+    return stats;
+  }
+
+  /** A read only file mapped in segments of at most 1GB. */
+  private static class MappedFile {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+    private final long length;
+    private final ByteBuffer[] segments;
+
+    MappedFile(File f) throws IOException {
+      final RandomAccessFile raf = new RandomAccessFile(f, "r");
+      try {
+        final FileChannel ch = raf.getChannel();
+        length = ch.size();
+        segments = new ByteBuffer[
+            (int)((length + SEGMENT_MASK) >>> SEGMENT_BITS)];
+        for (int i = 0; i < segments.length; i++) {
+          final long position = (long)i << SEGMENT_BITS;
+          segments[i] = ch.map(FileChannel.MapMode.READ_ONLY, position,
+              Math.min(SEGMENT_MASK + 1, length - position));
+        }
+      } finally {
+        // the mappings stay valid
+        IOUtils.closeStream(raf);
+      }
+    }
+
+    // the values of a column never cross the segments
+
+    byte getByte(long pos) {
+      return segments[(int)(pos >>> SEGMENT_BITS)].get(
+          (int)(pos & SEGMENT_MASK));
+    }
+
+    short getShort(long pos) {
+      return segments[(int)(pos >>> SEGMENT_BITS)].getShort(
+          (int)(pos & SEGMENT_MASK));
+    }
+
+    int getInt(long pos) {
+      return segments[(int)(pos >>> SEGMENT_BITS)].getInt(
+          (int)(pos & SEGMENT_MASK));
+    }
+
+    long getLong(long pos) {
+      return segments[(int)(pos >>> SEGMENT_BITS)].getLong(
+          (int)(pos & SEGMENT_MASK));
+    }
+
+    void get(long pos, byte[] dst) {
+      for (int i = 0; i < dst.length; i++) {
+        dst[i] = getByte(pos + i);
+      }
+    }
+  }
+}
@@ -0,0 +1,258 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.tools.offlineImageViewer;
+
+import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.FORBIDDEN;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.NOT_FOUND;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
+import static org.jboss.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.hdfs.web.JsonUtil;
+import org.apache.hadoop.hdfs.web.WebHdfsFileSystem;
+import org.apache.hadoop.hdfs.web.resources.GetOpParam;
+import org.apache.hadoop.hdfs.web.resources.HttpOpParam;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFactory;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.http.DefaultHttpResponse;
+import org.jboss.netty.handler.codec.http.HttpChunkAggregator;
+import org.jboss.netty.handler.codec.http.HttpHeaders;
+import org.jboss.netty.handler.codec.http.HttpMethod;
+import org.jboss.netty.handler.codec.http.HttpRequest;
+import org.jboss.netty.handler.codec.http.HttpRequestDecoder;
+import org.jboss.netty.handler.codec.http.HttpResponse;
+import org.jboss.netty.handler.codec.http.HttpResponseEncoder;
+import org.jboss.netty.handler.codec.http.HttpResponseStatus;
+import org.jboss.netty.handler.codec.http.QueryStringDecoder;
+import org.jboss.netty.util.CharsetUtil;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A read only WebHDFS server of the namespace of an {@link ImageIndex}, so
+ * that the namespace of an image can be browsed with the WebHDFS clients.
+ * Only the GETFILESTATUS, LISTSTATUS and GETCONTENTSUMMARY operations are
+ * supported.
+ */
+class ImageIndexServer implements Closeable {
+  public static final Log LOG = LogFactory.getLog(ImageIndexServer.class);
+
+  private static final String APPLICATION_JSON = "application/json";
+
+  private final ImageIndex index;
+  private final ChannelFactory factory;
+  private final ChannelGroup allChannels =
+      new DefaultChannelGroup("image-index-server");
+  private InetSocketAddress address;
+
+  ImageIndexServer(ImageIndex index) {
+    this.index = index;
+    this.factory = new NioServerSocketChannelFactory(
+        Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("ImageIndexServer Boss #%d").build()),
+        Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("ImageIndexServer Worker #%d").build()));
+  }
+
+  /** Start listening on the given address. */
+  void start(InetSocketAddress addr) {
+    final ServerBootstrap bootstrap = new ServerBootstrap(factory);
+    bootstrap.setOption("child.tcpNoDelay", true);
+    bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+      @Override
+      public ChannelPipeline getPipeline() throws Exception {
+        final ChannelPipeline pipeline = Channels.pipeline();
+        pipeline.addLast("decoder", new HttpRequestDecoder());
+        pipeline.addLast("aggregator", new HttpChunkAggregator(64 * 1024));
+        pipeline.addLast("encoder", new HttpResponseEncoder());
+        pipeline.addLast("handler", new Handler());
+        return pipeline;
+      }
+    });
+    final Channel ch = bootstrap.bind(addr);
+    allChannels.add(ch);
+    address = (InetSocketAddress)ch.getLocalAddress();
+    LOG.info("Listening HTTP traffic on " + address);
+  }
+
+  /** @return the address the server is listening on */
+  InetSocketAddress getAddress() {
+    return address;
+  }
+
+  @Override
+  public void close() {
+    allChannels.close().awaitUninterruptibly(10, TimeUnit.SECONDS);
+    factory.releaseExternalResources();
+  }
+
+  private class Handler extends SimpleChannelUpstreamHandler {
+    @Override
+    public void channelOpen(ChannelHandlerContext ctx, ChannelStateEvent e)
+        throws Exception {
+      allChannels.add(e.getChannel());
+      super.channelOpen(ctx, e);
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
+      final HttpRequest request = (HttpRequest)e.getMessage();
+      HttpResponse response;
+      try {
+        response = new DefaultHttpResponse(HTTP_1_1, OK);
+        response.setContent(ChannelBuffers.copiedBuffer(handle(request),
+            CharsetUtil.UTF_8));
+      } catch (Exception ex) {
+        response = new DefaultHttpResponse(HTTP_1_1, getStatus(ex));
+        response.setContent(ChannelBuffers.copiedBuffer(
+            JsonUtil.toJsonString(ex), CharsetUtil.UTF_8));
+      }
+      response.setHeader(CONTENT_TYPE, APPLICATION_JSON);
+      HttpHeaders.setContentLength(response,
+          response.getContent().readableBytes());
+      final boolean keepAlive = HttpHeaders.isKeepAlive(request);
+      if (keepAlive) {
+        HttpHeaders.setKeepAlive(response, true);
+      }
+      final ChannelFuture f = e.getChannel().write(response);
+      if (!keepAlive) {
+        f.addListener(ChannelFutureListener.CLOSE);
+      }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) {
+      if (e.getCause() instanceof ClosedChannelException) {
+        LOG.debug("Ignoring closed channel error", e.getCause());
+      } else {
+        LOG.warn("Error on " + e.getChannel(), e.getCause());
+      }
+      e.getChannel().close();
+    }
+  }
+
+  /** @return the JSON response to a request */
+  private String handle(HttpRequest request) throws IOException {
+    if (!request.getMethod().equals(HttpMethod.GET)) {
+      throw new UnsupportedOperationException("The image is read only");
+    }
+    final QueryStringDecoder decoder = new QueryStringDecoder(
+        request.getUri());
+    final String path = decoder.getPath();
+    if (!path.equals(WebHdfsFileSystem.PATH_PREFIX)
+        && !path.startsWith(WebHdfsFileSystem.PATH_PREFIX + "/")) {
+      throw new FileNotFoundException("Not a WebHDFS path: " + path);
+    }
+    final String fullpath = path.length() > WebHdfsFileSystem.PATH_PREFIX
+        .length() ? path.substring(WebHdfsFileSystem.PATH_PREFIX.length())
+        : "/";
+    String op = null;
+    for (String name : decoder.getParameters().keySet()) {
+      if (name.equalsIgnoreCase(HttpOpParam.NAME)) {
+        final List<String> values = decoder.getParameters().get(name);
+        op = values.isEmpty() ? null : values.get(0);
+      }
+    }
+    if (op == null) {
+      throw new IllegalArgumentException(HttpOpParam.NAME
+          + " is not specified.");
+    }
+
+    final int row = index.lookup(fullpath);
+    if (row < 0) {
+      throw new FileNotFoundException("File does not exist: " + fullpath);
+    }
+    switch (new GetOpParam(op).getValue()) {
+    case GETFILESTATUS:
+      return JsonUtil.toJsonString(index.getFileStatus(row, false), true);
+    case LISTSTATUS:
+      return getListing(row, fullpath);
+    case GETCONTENTSUMMARY:
+      return JsonUtil.toJsonString(index.getContentSummary(row));
+    default:
+      throw new UnsupportedOperationException(op + " is not supported");
+    }
+  }
+
+  /** @return the listing of a row, in the format of the namenode */
+  private String getListing(int row, String fullpath)
+      throws FileNotFoundException {
+    final StringBuilder b = new StringBuilder();
+    b.append("{\"").append(FileStatus.class.getSimpleName()).append("es\":{\"")
+        .append(FileStatus.class.getSimpleName()).append("\":[\n");
+    if (index.getType(row) == ImageIndex.DIRECTORY) {
+      final int n = index.getNumChildren(row);
+      for (int i = 0; i < n; i++) {
+        if (i > 0) {
+          b.append(",\n");
+        }
+        b.append(JsonUtil.toJsonString(
+            index.getFileStatus(index.getChild(row, i), true), false));
+      }
+    } else {
+      b.append(JsonUtil.toJsonString(index.getFileStatus(row, false), false));
+    }
+    b.append("\n]}}\n");
+    return b.toString();
+  }
+
+  /** @return the status of an error, as in the WebHDFS ExceptionHandler */
+  private static HttpResponseStatus getStatus(Exception e) {
+    if (e instanceof FileNotFoundException) {
+      return NOT_FOUND;
+    } else if (e instanceof IOException) {
+      return FORBIDDEN;
+    } else if (e instanceof UnsupportedOperationException) {
+      return BAD_REQUEST;
+    } else if (e instanceof IllegalArgumentException) {
+      return BAD_REQUEST;
+    } else {
+      LOG.warn("INTERNAL_SERVER_ERROR", e);
+      return INTERNAL_SERVER_ERROR;
+    }
+  }
+}
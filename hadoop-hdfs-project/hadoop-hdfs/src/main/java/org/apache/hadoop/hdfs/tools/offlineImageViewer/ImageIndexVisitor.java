@@ -0,0 +1,308 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.tools.offlineImageViewer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.tools.offlineImageViewer.ImageIndex.Column;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+
+/**
+ * ImageIndexVisitor writes the inodes of the image in the columnar
+ * {@link ImageIndex} in a directory, in a single pass over the image.
+ * The queries are then run on the index, in parallel and without parsing
+ * the image again.
+ * <p>
+ * The dates are indexed with the precision of the minute, which is the
+ * precision of the dates passed to the visitors. The blocks of the inodes
+ * must not be skipped, for the files lengths are the sums of the blocks.
+ */
+class ImageIndexVisitor extends ImageVisitor {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final File dir;
+  private final LinkedList<ImageElement> elemS =
+      new LinkedList<ImageElement>();
+  private final DataOutputStream[] columns =
+      new DataOutputStream[Column.values().length];
+  private final DataOutputStream names;
+  private final DataOutputStream symlinks;
+  private long namesLength = 0;
+  private int numRows = 0;
+
+  private final Map<String, Integer> owners =
+      new LinkedHashMap<String, Integer>();
+  private final Map<String, Integer> groups =
+      new LinkedHashMap<String, Integer>();
+  /** Row and depth of the directories, by path. */
+  private final Map<String, int[]> directories = new HashMap<String, int[]>();
+  // the children of a directory are together in the recent images
+  private String lastParentPath = null;
+  private int[] lastParent = null;
+
+  private final DateFormat dateFormat =
+      new SimpleDateFormat(ImageLoaderCurrent.DATE_FORMAT);
+  private final Map<String, Long> dates = new HashMap<String, Long>();
+
+  // the inode being visited
+  private boolean inInode = false;
+  private String path;
+  private int numBlocks;
+  private long length;
+  private short replication;
+  private long blockSize;
+  private long modificationTime;
+  private long accessTime;
+  private String owner;
+  private String group;
+  private short permission;
+  private long nsQuota;
+  private long dsQuota;
+  private String symlink;
+
+  public ImageIndexVisitor(String dirName) throws IOException {
+    dir = new File(dirName);
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create the directory " + dir);
+    }
+    for (Column c : Column.values()) {
+      columns[c.ordinal()] = open(c.getFileName());
+    }
+    names = open(ImageIndex.NAMES_FILE);
+    symlinks = open(ImageIndex.SYMLINKS_FILE);
+  }
+
+  private DataOutputStream open(String name) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(new File(dir, name)), BUFFER_SIZE));
+  }
+
+  private DataOutputStream get(Column c) {
+    return columns[c.ordinal()];
+  }
+
+  @Override
+  void start() throws IOException {}
+
+  @Override
+  void finish() throws IOException {
+    writeDictionary(ImageIndex.OWNERS_FILE, owners);
+    writeDictionary(ImageIndex.GROUPS_FILE, groups);
+    for (DataOutputStream out : columns) {
+      out.close();
+    }
+    names.close();
+    symlinks.close();
+    System.out.println("Indexed " + numRows + " inodes in " + dir);
+  }
+
+  @Override
+  void finishAbnormally() throws IOException {
+    IOUtils.cleanup(null, columns);
+    IOUtils.cleanup(null, names, symlinks);
+  }
+
+  private void writeDictionary(String name, Map<String, Integer> ids)
+      throws IOException {
+    final DataOutputStream out = open(name);
+    try {
+      out.writeInt(ids.size());
+      // in the order of the ids
+      for (String value : ids.keySet()) {
+        Text.writeString(out, value);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static int getId(Map<String, Integer> ids, String value) {
+    Integer id = ids.get(value);
+    if (id == null) {
+      id = ids.size();
+      ids.put(value, id);
+    }
+    return id;
+  }
+
+  private long parseDate(String value) throws IOException {
+    Long date = dates.get(value);
+    if (date == null) {
+      try {
+        date = dateFormat.parse(value).getTime();
+      } catch (ParseException e) {
+        throw new IOException("Invalid date " + value, e);
+      }
+      if (dates.size() > 100000) {
+        dates.clear();
+      }
+      dates.put(value, date);
+    }
+    return date;
+  }
+
+  @Override
+  void visit(ImageElement element, String value) throws IOException {
+    if (!inInode) {
+      return;
+    }
+    switch (element) {
+    case INODE_PATH:
+      path = value;
+      break;
+    case REPLICATION:
+      replication = Short.parseShort(value);
+      break;
+    case MODIFICATION_TIME:
+      modificationTime = parseDate(value);
+      break;
+    case ACCESS_TIME:
+      accessTime = parseDate(value);
+      break;
+    case BLOCK_SIZE:
+      blockSize = Long.parseLong(value);
+      break;
+    case NUM_BYTES:
+      length += Long.parseLong(value);
+      break;
+    case NS_QUOTA:
+      nsQuota = Long.parseLong(value);
+      break;
+    case DS_QUOTA:
+      dsQuota = Long.parseLong(value);
+      break;
+    case SYMLINK:
+      symlink = value;
+      break;
+    case USER_NAME:
+      owner = value;
+      break;
+    case GROUP_NAME:
+      group = value;
+      break;
+    case PERMISSION_STRING:
+      permission = FsPermission.valueOf("-" + value).toShort();
+      break;
+    default:
+      break;
+    }
+  }
+
+  @Override
+  void visitEnclosingElement(ImageElement element) throws IOException {
+    elemS.push(element);
+    // the inodes under construction are also in the inodes
+    if (element == ImageElement.INODE) {
+      inInode = true;
+      path = owner = group = symlink = null;
+      numBlocks = 0;
+      length = blockSize = modificationTime = accessTime = 0;
+      replication = permission = 0;
+      nsQuota = dsQuota = -1;
+    }
+  }
+
+  @Override
+  void visitEnclosingElement(ImageElement element, ImageElement key,
+      String value) throws IOException {
+    elemS.push(element);
+    if (inInode && element == ImageElement.BLOCKS) {
+      numBlocks = Integer.parseInt(value);
+    }
+  }
+
+  @Override
+  void leaveEnclosingElement() throws IOException {
+    if (elemS.pop() == ImageElement.INODE) {
+      writeInode();
+      inInode = false;
+    }
+  }
+
+  private int[] getDirectory(String dirPath) throws IOException {
+    if (!dirPath.equals(lastParentPath)) {
+      lastParent = directories.get(dirPath);
+      if (lastParent == null) {
+        throw new IOException("The parent directory " + dirPath
+            + " is not before its children in the image");
+      }
+      lastParentPath = dirPath;
+    }
+    return lastParent;
+  }
+
+  private void writeInode() throws IOException {
+    final byte type = numBlocks == -1 ? ImageIndex.DIRECTORY
+        : numBlocks == -2 ? ImageIndex.SYMLINK : ImageIndex.FILE;
+    final int parent;
+    final int depth;
+    final String name;
+    if (path.isEmpty() || path.equals("/")) {
+      path = "/";
+      parent = -1;
+      depth = 0;
+      name = "";
+    } else {
+      final int i = path.lastIndexOf('/');
+      final int[] p = getDirectory(i == 0 ? "/" : path.substring(0, i));
+      parent = p[0];
+      depth = p[1] + 1;
+      name = path.substring(i + 1);
+    }
+    if (type == ImageIndex.DIRECTORY) {
+      directories.put(path, new int[] {numRows, depth});
+    } else if (type == ImageIndex.SYMLINK && symlink != null) {
+      symlinks.writeInt(numRows);
+      Text.writeString(symlinks, symlink);
+    }
+
+    get(Column.TYPE).writeByte(type);
+    get(Column.PARENT).writeInt(parent);
+    get(Column.DEPTH).writeShort(depth);
+    get(Column.LENGTH).writeLong(length);
+    get(Column.NUM_BLOCKS).writeInt(Math.max(numBlocks, 0));
+    get(Column.REPLICATION).writeShort(replication);
+    get(Column.BLOCK_SIZE).writeLong(blockSize);
+    get(Column.MODIFICATION_TIME).writeLong(modificationTime);
+    get(Column.ACCESS_TIME).writeLong(accessTime);
+    get(Column.OWNER).writeInt(getId(owners, owner));
+    get(Column.GROUP).writeInt(getId(groups, group));
+    get(Column.PERMISSION).writeShort(permission);
+    get(Column.NS_QUOTA).writeLong(nsQuota);
+    get(Column.DS_QUOTA).writeLong(dsQuota);
+    get(Column.NAME).writeLong(namesLength);
+    final byte[] bytes = DFSUtil.string2Bytes(name);
+    names.write(bytes);
+    namesLength += bytes.length;
+    numRows++;
+  }
+}
@@ -119,8 +119,10 @@
  *
  */
 class ImageLoaderCurrent implements ImageLoader {
-  protected final DateFormat dateFormat = 
-                                      new SimpleDateFormat("yyyy-MM-dd HH:mm");
+  /** Format of the dates passed to the visitors. */
+  static final String DATE_FORMAT = "yyyy-MM-dd HH:mm";
+
+  protected final DateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT);
   private static int[] versions = { -16, -17, -18, -19, -20, -21, -22, -23,
       -24, -25, -26, -27, -28, -30, -31, -32, -33, -34, -35, -36, -37, -38, -39,
       -40};
@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.tools.offlineImageViewer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.hdfs.tools.offlineImageViewer.ImageIndex.GroupBy;
+import org.apache.hadoop.hdfs.tools.offlineImageViewer.ImageIndex.Stats;
+import org.apache.hadoop.net.NetUtils;
+
+import com.google.common.base.Charsets;
+
+/**
+ * OfflineImageIndex queries the index of an image written by the Index
+ * processor of the {@link OfflineImageViewer}, or serves its namespace
+ * over WebHDFS.
+ */
+@InterfaceAudience.Private
+public class OfflineImageIndex {
+  private final static String usage =
+    "Usage: bin/hdfs oiv_index [query|serve] -i INDEXDIR [OPTIONS]\n" +
+    "Query or serve the index of an fsimage written by the Index processor\n" +
+    "of the offline image viewer (bin/hdfs oiv -p Index -o INDEXDIR).\n" +
+    "\n" +
+    "  query: aggregate the files of the image by group, in parallel.\n" +
+    "    The output is a tab separated table of the groups, with their\n" +
+    "    number of files, bytes, bytes times replication and blocks.\n" +
+    "    -groupBy <arg>   owner, group, depth, size (powers of two) or\n" +
+    "                     parent (directory). (owner by default)\n" +
+    "    -minSize <arg>   Only aggregate the files of at least minSize bytes.\n" +
+    "    -maxSize <arg>   Only aggregate the files of at most maxSize bytes.\n" +
+    "    -top <arg>       Only output the top groups by number of files,\n" +
+    "                     e.g. -groupBy parent -maxSize 1048576 -top 100\n" +
+    "                     for the directories with the most small files.\n" +
+    "    -threads <arg>   Number of threads. (number of processors by default)\n" +
+    "    -o <arg>         Output file. (standard output by default)\n" +
+    "\n" +
+    "  serve: serve the namespace of the image, read only, over WebHDFS.\n" +
+    "    -addr <arg>      Address to listen on. (localhost:5978 by default)\n" +
+    "\n" +
+    "-h,--help            Display usage information and exit\n";
+
+  /**
+   * Build command-line options and descriptions
+   */
+  public static Options buildOptions() {
+    Options options = new Options();
+    options.addOption("i", "inputFile", true, "");
+    options.addOption("o", "outputFile", true, "");
+    options.addOption("h", "help", false, "");
+    options.addOption("groupBy", true, "");
+    options.addOption("minSize", true, "");
+    options.addOption("maxSize", true, "");
+    options.addOption("top", true, "");
+    options.addOption("threads", true, "");
+    options.addOption("addr", true, "");
+    return options;
+  }
+
+  /**
+   * Entry point to command-line-driven operation.
+   *
+   * @param args Command line options
+   * @throws Exception
+   */
+  public static void main(String[] args) throws Exception {
+    CommandLine cmd;
+    try {
+      CommandLineParser parser = new PosixParser();
+      cmd = parser.parse(buildOptions(), args);
+    } catch (ParseException e) {
+      System.out.println("Error parsing command-line options: ");
+      printUsage();
+      return;
+    }
+    if (cmd.hasOption("h") || cmd.getArgs().length != 1
+        || !cmd.hasOption("i")) {
+      printUsage();
+      return;
+    }
+
+    ImageIndex index = new ImageIndex(new File(cmd.getOptionValue("i")));
+    String command = cmd.getArgs()[0];
+    if (command.equals("query")) {
+      query(index, cmd);
+    } else if (command.equals("serve")) {
+      ImageIndexServer server = new ImageIndexServer(index);
+      server.start(NetUtils.createSocketAddr(
+          cmd.getOptionValue("addr", "localhost:5978")));
+      // the server threads are not daemons
+    } else {
+      printUsage();
+    }
+  }
+
+  private static void query(ImageIndex index, CommandLine cmd)
+      throws IOException {
+    GroupBy groupBy = GroupBy.valueOf(
+        cmd.getOptionValue("groupBy", "owner").toUpperCase());
+    long minSize = Long.parseLong(cmd.getOptionValue("minSize", "0"));
+    long maxSize = Long.parseLong(cmd.getOptionValue("maxSize",
+        Long.toString(Long.MAX_VALUE)));
+    int threads = Integer.parseInt(cmd.getOptionValue("threads",
+        Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+    long start = System.currentTimeMillis();
+    Map<String, Stats> stats = index.aggregate(groupBy, minSize, maxSize,
+        threads);
+    List<Map.Entry<String, Stats>> entries =
+        new ArrayList<Map.Entry<String, Stats>>(stats.entrySet());
+    if (cmd.hasOption("top")) {
+      Collections.sort(entries, new Comparator<Map.Entry<String, Stats>>() {
+        @Override
+        public int compare(Map.Entry<String, Stats> a,
+            Map.Entry<String, Stats> b) {
+          long x = a.getValue().files;
+          long y = b.getValue().files;
+          return x > y ? -1 : x < y ? 1 : 0;
+        }
+      });
+      int top = Integer.parseInt(cmd.getOptionValue("top"));
+      if (entries.size() > top) {
+        entries = entries.subList(0, top);
+      }
+    }
+
+    String outputFile = cmd.getOptionValue("o");
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(
+        outputFile == null ? System.out : new FileOutputStream(outputFile),
+        Charsets.UTF_8));
+    try {
+      out.println(groupBy + "\tFiles\tBytes\tSpace\tBlocks");
+      for (Map.Entry<String, Stats> e : entries) {
+        out.println(e.getKey() + "\t" + e.getValue());
+      }
+    } finally {
+      out.flush();
+      if (outputFile != null) {
+        out.close();
+      }
+    }
+    System.err.println("Aggregated " + index.getNumRows() + " inodes in "
+        + (System.currentTimeMillis() - start) + " ms with " + threads
+        + " threads");
+  }
+
+  /**
+   * Print application usage instructions.
+   */
+  private static void printUsage() {
+    System.out.println(usage);
+  }
+}
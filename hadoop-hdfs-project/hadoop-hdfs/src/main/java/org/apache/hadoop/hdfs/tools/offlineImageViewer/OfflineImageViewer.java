@@ -83,6 +83,11 @@ public class OfflineImageViewer {
     "  * NameDistribution: This processor analyzes the file names\n" +
     "    in the image and prints total number of file names and how frequently" +
     "    file names are reused.\n" +
+    "  * Index: This processor writes a columnar index of the inodes of\n" +
+    "    the image in the OUTPUTFILE directory, to be queried in parallel\n" +
+    "    or served over WebHDFS with bin/hdfs oiv_index, without parsing\n" +
+    "    the image again. This processor also overrides the -skipBlocks\n" +
+    "    option.\n" +
     "\n" + 
     "Required command line arguments:\n" +
     "-i,--inputFile <arg>   FSImage file to process.\n" +
@@ -92,7 +97,8 @@ public class OfflineImageViewer {
     "Optional command line arguments:\n" +
     "-p,--processor <arg>   Select which type of processor to apply\n" +
     "                       against image file." +
-    " (Ls|XML|Delimited|Indented|FileDistribution).\n" +
+    " (Ls|XML|Delimited|Indented|FileDistribution|\n" +
+    "                       NameDistribution|Index).\n" +
     "-h,--help              Display usage information and exit\n" +
     "-printToScreen         For processors that write to a file, also\n" +
     "                       output to screen. On large image files this\n" +
@@ -250,6 +256,9 @@ public static void main(String[] args) throws IOException {
       v = new FileDistributionVisitor(outputFile, maxSize, step);
     } else if (processor.equals("NameDistribution")) {
       v = new NameDistributionVisitor(outputFile, printToScreen);
+    } else if (processor.equals("Index")) {
+      v = new ImageIndexVisitor(outputFile);
+      skipBlocks = false;
     } else {
       v = new LsImageVisitor(outputFile, printToScreen);
       skipBlocks = false;
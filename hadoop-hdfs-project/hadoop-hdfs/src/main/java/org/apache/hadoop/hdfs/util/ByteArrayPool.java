@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+/**
+ * A bounded pool of byte arrays, for buffers which are allocated often at
+ * the same few lengths and are short-lived, such as the packets written by
+ * a client. Reusing them keeps them out of the young generation.
+ * <p>
+ * Unlike {@link DirectBufferPool}, the pooled arrays are strongly referred
+ * to, up to the capacity of the pool in bytes. An array returned to a full
+ * pool is left to the garbage collector.
+ * <p>
+ * The content of an array got from the pool is undefined.
+ */
+@InterfaceAudience.Private
+public class ByteArrayPool {
+  private final long capacity;
+  private final Map<Integer, ArrayDeque<byte[]>> arraysByLength =
+      new HashMap<Integer, ArrayDeque<byte[]>>();
+  private long pooledBytes = 0;
+
+  private final AtomicLong numAllocations = new AtomicLong();
+  private final AtomicLong bytesAllocated = new AtomicLong();
+  private final AtomicLong numReuses = new AtomicLong();
+
+  /**
+   * @param capacity the maximum number of bytes of the pooled arrays;
+   *          0 disables the pooling
+   */
+  public ByteArrayPool(long capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Get an array of the given length, from the pool if one is available.
+   */
+  public byte[] getArray(int length) {
+    synchronized (this) {
+      final ArrayDeque<byte[]> arrays = arraysByLength.get(length);
+      if (arrays != null && !arrays.isEmpty()) {
+        pooledBytes -= length;
+        numReuses.incrementAndGet();
+        return arrays.pop();
+      }
+    }
+    numAllocations.incrementAndGet();
+    bytesAllocated.addAndGet(length);
+    return new byte[length];
+  }
+
+  /**
+   * Return an array to the pool. The caller must not use it anymore.
+   */
+  public synchronized void returnArray(byte[] array) {
+    if (pooledBytes + array.length > capacity) {
+      return;
+    }
+    ArrayDeque<byte[]> arrays = arraysByLength.get(array.length);
+    if (arrays == null) {
+      arrays = new ArrayDeque<byte[]>();
+      arraysByLength.put(array.length, arrays);
+    }
+    arrays.push(array);
+    pooledBytes += array.length;
+  }
+
+  /** @return the number of arrays allocated because none was pooled. */
+  public long getNumAllocations() {
+    return numAllocations.get();
+  }
+
+  /** @return the number of bytes allocated because no array was pooled. */
+  public long getBytesAllocated() {
+    return bytesAllocated.get();
+  }
+
+  /** @return the number of arrays got from the pool. */
+  public long getNumReuses() {
+    return numReuses.get();
+  }
+
+  /** @return the number of bytes of the arrays in the pool. */
+  public synchronized long getPooledBytes() {
+    return pooledBytes;
+  }
+}
@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hdfs.web;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -31,6 +32,7 @@
 import java.net.URL;
 import java.security.PrivilegedExceptionAction;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
@@ -159,6 +161,10 @@ public static boolean isEnabled(final Configuration conf, final Log log) {
   private final AuthenticatedURL.Token authToken = new AuthenticatedURL.Token();
   private RetryPolicy retryPolicy = null;
   private Path workingDir;
+  /** The datanode URLs that the namenode redirected reads to, by path. */
+  @VisibleForTesting
+  Map<String, URL> redirectCache = null;
+  private int readAhead;
 
   /**
    * Return the protocol scheme for the FileSystem.
@@ -193,6 +199,22 @@ public synchronized void initialize(URI uri, Configuration conf
             SafeModeException.class);
     this.workingDir = getHomeDirectory();
 
+    final int redirectCacheSize = conf.getInt(
+        DFSConfigKeys.DFS_WEBHDFS_CLIENT_REDIRECT_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_WEBHDFS_CLIENT_REDIRECT_CACHE_SIZE_DEFAULT);
+    if (redirectCacheSize > 0) {
+      this.redirectCache = new LinkedHashMap<String, URL>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, URL> eldest) {
+          return size() > redirectCacheSize;
+        }
+      };
+    }
+    this.readAhead = conf.getInt(DFSConfigKeys.DFS_WEBHDFS_CLIENT_READ_AHEAD_KEY,
+        DFSConfigKeys.DFS_WEBHDFS_CLIENT_READ_AHEAD_DEFAULT);
+
     if (UserGroupInformation.isSecurityEnabled()) {
       initDelegationToken();
     }
@@ -289,6 +311,33 @@ private Path makeAbsolute(Path f) {
     return (Map<?, ?>)JSON.parse(new InputStreamReader(in, Charsets.UTF_8));
   }
 
+  /**
+   * Read the rest of the response and close its stream, so that the JDK
+   * keeps the connection alive and reuses it for the next request to the
+   * same server. The connection is closed if the response cannot be read.
+   */
+  static void releaseConnection(final HttpURLConnection conn) {
+    try {
+      final InputStream in =
+          conn.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST?
+          conn.getErrorStream(): conn.getInputStream();
+      if (in != null) {
+        try {
+          final byte[] buf = new byte[4096];
+          while (in.read(buf) != -1) {
+            // discard the rest of the response
+          }
+        } finally {
+          in.close();
+        }
+      }
+    } catch(IOException ioe) {
+      LOG.debug("Failed to read the rest of the response, closing " + conn,
+          ioe);
+      conn.disconnect();
+    }
+  }
+
   private static Map<?, ?> validateResponse(final HttpOpParam.Op op,
       final HttpURLConnection conn, boolean unwrapException) throws IOException {
     final int code = conn.getResponseCode();
@@ -515,6 +564,13 @@ private void disconnect() {
       }
     }
 
+    private void releaseConnection() {
+      if (conn != null) {
+        WebHdfsFileSystem.releaseConnection(conn);
+        conn = null;
+      }
+    }
+
     Runner run() throws IOException {
       for(int retry = 0; ; retry++) {
         try {
@@ -570,7 +626,7 @@ HttpURLConnection twoStepWrite() throws IOException {
       connect(false);
       validateResponse(HttpOpParam.TemporaryRedirectOp.valueOf(op), conn, false);
       final String redirect = conn.getHeaderField("Location");
-      disconnect();
+      releaseConnection();
       checkRetry = false;
       
       //Step 2) Submit another Http request with the URL from the Location header with data.
@@ -585,7 +641,8 @@ FSDataOutputStream write(final int bufferSize) throws IOException {
       return WebHdfsFileSystem.this.write(op, conn, bufferSize);
     }
 
-    void getResponse(boolean getJsonAndDisconnect) throws IOException {
+    void getResponse(boolean getJsonAndRelease) throws IOException {
+      boolean succeeded = false;
       try {
         connect();
         final int code = conn.getResponseCode();
@@ -594,7 +651,7 @@ void getResponse(boolean getJsonAndDisconnect) throws IOException {
           final String redirect = conn.getHeaderField("Location");
           json = validateResponse(HttpOpParam.TemporaryRedirectOp.valueOf(op),
               conn, false);
-          disconnect();
+          releaseConnection();
   
           checkRetry = false;
           conn = (HttpURLConnection)new URL(redirect).openConnection();
@@ -602,12 +659,16 @@ void getResponse(boolean getJsonAndDisconnect) throws IOException {
         }
 
         json = validateResponse(op, conn, false);
-        if (json == null && getJsonAndDisconnect) {
+        if (json == null && getJsonAndRelease) {
           json = jsonParse(conn, false);
         }
+        succeeded = true;
       } finally {
-        if (getJsonAndDisconnect) {
+        if (!succeeded) {
           disconnect();
+        } else if (getJsonAndRelease) {
+          // keep the connection alive for the next operation
+          releaseConnection();
         }
       }
     }
@@ -742,10 +803,16 @@ public void close() throws IOException {
         try {
           super.close();
         } finally {
+          boolean succeeded = false;
           try {
             validateResponse(op, conn, true);
+            succeeded = true;
           } finally {
-            conn.disconnect();
+            if (succeeded) {
+              releaseConnection(conn);
+            } else {
+              conn.disconnect();
+            }
           }
         }
       }
@@ -809,7 +876,8 @@ public FSDataInputStream open(final Path f, final int buffersize
     final HttpOpParam.Op op = GetOpParam.Op.OPEN;
     final URL url = toUrl(op, f, new BufferSizeParam(buffersize));
     return new FSDataInputStream(new OffsetUrlInputStream(
-        new OffsetUrlOpener(url), new OffsetUrlOpener(null)));
+        new OffsetUrlOpener(url), new OffsetUrlOpener(null), redirectCache,
+        makeQualified(f).toUri().getPath(), readAhead));
   }
 
   @Override
@@ -868,9 +936,66 @@ static URL removeOffsetParam(final URL url) throws MalformedURLException {
     return new URL(urlStr.substring(0, urlStr.indexOf('?')) + query);
   }
 
+  /**
+   * The stream of a file read from a datanode. It starts at the datanode
+   * the file was last read from, if that is cached, and is redirected by
+   * the namenode otherwise or if the cached datanode fails. It reads
+   * ahead, so that a sequential scan does not read the socket for every
+   * small read and a short forward seek does not open a new connection.
+   */
   static class OffsetUrlInputStream extends ByteRangeInputStream {
+    private final Map<String, URL> redirectCache;
+    private final String path;
+    private final int readAhead;
+
     OffsetUrlInputStream(OffsetUrlOpener o, OffsetUrlOpener r) {
+      this(o, r, null, null, 0);
+    }
+
+    OffsetUrlInputStream(OffsetUrlOpener o, OffsetUrlOpener r,
+        Map<String, URL> redirectCache, String path, int readAhead) {
       super(o, r);
+      this.redirectCache = redirectCache;
+      this.path = path;
+      this.readAhead = readAhead;
+      if (redirectCache != null) {
+        synchronized (redirectCache) {
+          r.setURL(redirectCache.get(path));
+        }
+      }
+    }
+
+    @Override
+    protected InputStream openInputStream() throws IOException {
+      InputStream in;
+      try {
+        in = super.openInputStream();
+      } catch(IOException ioe) {
+        if (resolvedURL.getURL() == null) {
+          throw ioe;
+        }
+        // the datanode may be gone: let the namenode choose another one
+        LOG.debug("Failed to read " + path + " from " + resolvedURL.getURL()
+            + ", retrying through the namenode", ioe);
+        resolvedURL.setURL(null);
+        if (redirectCache != null) {
+          synchronized (redirectCache) {
+            redirectCache.remove(path);
+          }
+        }
+        in = super.openInputStream();
+      }
+      if (redirectCache != null) {
+        synchronized (redirectCache) {
+          redirectCache.put(path, resolvedURL.getURL());
+        }
+      }
+      return readAhead > 0? new BufferedInputStream(in, readAhead): in;
+    }
+
+    @Override
+    protected long getMaxForwardSeekSkip() {
+      return readAhead;
     }
 
     /** Remove offset parameter before returning the resolved url. */
@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferEncryptor;
+import org.apache.hadoop.hdfs.protocol.datatransfer.IOStreamPair;
+import org.apache.hadoop.hdfs.security.token.block.BlockPoolTokenSecretManager;
+import org.apache.hadoop.hdfs.security.token.block.BlockTokenSecretManager;
+import org.apache.hadoop.hdfs.security.token.block.DataEncryptionKey;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+
+/**
+ * This class benchmarks the throughput of encrypted data transfer streams,
+ * as set up by {@link DataTransferEncryptor} between a client and a
+ * datanode, over a loopback socket. It compares unencrypted streams, the
+ * 3des and rc4 ciphers of the SASL security layer, and AES in counter mode.
+ * The user should invoke the main of this class and optionally include the
+ * number of megabytes to transfer per cipher.
+ */
+public class BenchmarkEncryptedTransfer extends Configured implements Tool {
+  private static final String BLOCK_POOL_ID = "benchmark-pool";
+  private static final String[] CIPHERS = { "none", "3des", "rc4",
+    DataTransferEncryptor.AES_CTR_NOPADDING };
+
+  private int bufferSize;
+
+  private static void printUsage() {
+    System.err.println("BenchmarkEncryptedTransfer [megabytes]");
+    System.err.println("Set encryptedtransfer.buffer.size for the size of " +
+        "the writes.");
+  }
+
+  /**
+   * Transfer the given amount of data over a loopback socket, encrypted
+   * with the given cipher.
+   * @return the throughput in MB/s
+   */
+  private double transfer(final String cipher, final long size)
+      throws Exception {
+    final boolean encrypt = !"none".equals(cipher);
+    final boolean aes = DataTransferEncryptor.AES_CTR_NOPADDING.equals(cipher);
+    final String algorithm = encrypt && !aes ? cipher : null;
+    BlockTokenSecretManager secretManager = new BlockTokenSecretManager(
+        24 * 60 * 60 * 1000L, 24 * 60 * 60 * 1000L, 0, BLOCK_POOL_ID,
+        algorithm);
+    final BlockPoolTokenSecretManager blockPoolSecretManager =
+        new BlockPoolTokenSecretManager();
+    blockPoolSecretManager.addBlockPool(BLOCK_POOL_ID, secretManager);
+    DataEncryptionKey key = secretManager.generateDataEncryptionKey();
+
+    final ServerSocket serverSocket = new ServerSocket(0, 1,
+        InetAddress.getByName("localhost"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // the datanode side reads everything
+      Future<Long> received = executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() throws IOException {
+          Socket s = serverSocket.accept();
+          try {
+            InputStream in = s.getInputStream();
+            if (encrypt) {
+              in = DataTransferEncryptor.getEncryptedStreams(
+                  s.getOutputStream(), in, blockPoolSecretManager, algorithm,
+                  aes ? cipher : null).in;
+            }
+            byte[] buf = new byte[bufferSize];
+            long total = 0;
+            for (int n; (n = in.read(buf)) >= 0; ) {
+              total += n;
+            }
+            return total;
+          } finally {
+            s.close();
+          }
+        }
+      });
+
+      Socket s = new Socket(serverSocket.getInetAddress(),
+          serverSocket.getLocalPort());
+      long start = Time.monotonicNow();
+      try {
+        OutputStream out = s.getOutputStream();
+        if (encrypt) {
+          IOStreamPair streams = DataTransferEncryptor.getEncryptedStreams(
+              out, s.getInputStream(), key);
+          out = streams.out;
+        }
+        byte[] buf = new byte[bufferSize];
+        for (long written = 0; written < size; written += buf.length) {
+          out.write(buf);
+        }
+        out.flush();
+        s.shutdownOutput();
+        if (received.get() < size) {
+          throw new IOException("Received " + received.get() + " of " + size +
+              " bytes");
+        }
+      } finally {
+        s.close();
+      }
+      long elapsed = Math.max(1, Time.monotonicNow() - start);
+      return (size / (1024.0 * 1024.0)) / (elapsed / 1000.0);
+    } finally {
+      executor.shutdownNow();
+      serverSocket.close();
+    }
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    long megabytes = 256;
+    if (args.length == 1) {
+      try {
+        megabytes = Long.parseLong(args[0]);
+      } catch (NumberFormatException e) {
+        printUsage();
+        return -1;
+      }
+    } else if (args.length > 1) {
+      printUsage();
+      return -1;
+    }
+    Configuration conf = getConf();
+    bufferSize = conf.getInt("encryptedtransfer.buffer.size", 64 * 1024);
+    long size = megabytes * 1024 * 1024;
+
+    for (String cipher : CIPHERS) {
+      // warm up the JIT before measuring
+      transfer(cipher, Math.min(size, 16L * 1024 * 1024));
+      System.out.println(String.format("%-20s %10.1f MB/s", cipher,
+          transfer(cipher, size)));
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int res = ToolRunner.run(new HdfsConfiguration(),
+        new BenchmarkEncryptedTransfer(), args);
+    System.exit(res);
+  }
+}
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.logging.impl.Log4JLogger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.util.ByteArrayPool;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Level;
+
+/**
+ * This class benchmarks many concurrent writers on a MiniDFSCluster,
+ * without and then with the reuse of the packet buffers of the client,
+ * and prints the packet buffers allocated and the garbage collections
+ * of each run.
+ */
+public class BenchmarkPacketBufferPool extends Configured implements Tool {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static void printUsage() {
+    System.err.println("Usage: BenchmarkPacketBufferPool [#writers]");
+    System.err.println("Config properties:\n" +
+      "  packetpool.file.size:\tsize of the file of each writer (64MB)\n");
+  }
+
+  private static long[] getGcCountAndTime() {
+    long count = 0, time = 0;
+    for (GarbageCollectorMXBean gc :
+        ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += gc.getCollectionCount();
+      time += gc.getCollectionTime();
+    }
+    return new long[] {count, time};
+  }
+
+  private void runWriters(MiniDFSCluster cluster, String name,
+      long poolSize, int writers, final long fileSize) throws Exception {
+    final Configuration conf = new Configuration(cluster.getConfiguration(0));
+    conf.setLong(DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_KEY,
+        poolSize);
+    final DistributedFileSystem fs =
+        (DistributedFileSystem)FileSystem.newInstance(cluster.getURI(), conf);
+    final ExecutorService executor = Executors.newFixedThreadPool(writers);
+    try {
+      System.gc();
+      final long[] gcBefore = getGcCountAndTime();
+      final long start = Time.now();
+      final List<Future<Void>> results = new ArrayList<Future<Void>>();
+      for (int i = 0; i < writers; i++) {
+        final Path file = new Path("/" + name + "/" + i);
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws IOException {
+            final byte[] data = new byte[BUFFER_SIZE];
+            final FSDataOutputStream out = fs.create(file, (short)1);
+            try {
+              for (long n = 0; n < fileSize; n += data.length) {
+                out.write(data);
+              }
+            } finally {
+              out.close();
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> r : results) {
+        r.get();
+      }
+      final long elapsed = Time.now() - start;
+      final long[] gcAfter = getGcCountAndTime();
+
+      final ByteArrayPool pool = fs.dfs.packetBufferPool;
+      System.out.println(name + ": " + writers + " writers of "
+          + StringUtils.byteDesc(fileSize) + " in " + elapsed + " ms");
+      System.out.println("  packet buffers allocated: "
+          + pool.getNumAllocations() + " ("
+          + StringUtils.byteDesc(pool.getBytesAllocated()) + "), reused: "
+          + pool.getNumReuses());
+      System.out.println("  garbage collections: " + (gcAfter[0] - gcBefore[0])
+          + " in " + (gcAfter[1] - gcBefore[1]) + " ms");
+    } finally {
+      executor.shutdownNow();
+      fs.close();
+    }
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    // silence the minidfs cluster
+    Log hadoopLog = LogFactory.getLog("org");
+    if (hadoopLog instanceof Log4JLogger) {
+      ((Log4JLogger) hadoopLog).getLogger().setLevel(Level.WARN);
+    }
+    int writers = 100;
+    if (args.length == 1) {
+      try {
+        writers = Integer.parseInt(args[0]);
+      } catch (NumberFormatException e) {
+        printUsage();
+        return -1;
+      }
+    } else if (args.length > 1) {
+      printUsage();
+      return -1;
+    }
+    final Configuration conf = getConf();
+    final long fileSize = conf.getLong("packetpool.file.size",
+        64L * 1024 * 1024);
+
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      runWriters(cluster, "unpooled", 0, writers, fileSize);
+      runWriters(cluster, "pooled",
+          DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_POOL_SIZE_DEFAULT,
+          writers, fileSize);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+    return 0;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int res = ToolRunner.run(new HdfsConfiguration(),
+        new BenchmarkPacketBufferPool(), args);
+    System.exit(res);
+  }
+}
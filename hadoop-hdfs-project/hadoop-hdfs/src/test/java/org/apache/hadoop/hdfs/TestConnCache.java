@@ -17,7 +17,9 @@
  */
 package org.apache.hadoop.hdfs;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.spy;
@@ -32,6 +34,7 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
@@ -280,6 +283,94 @@ public void testReadFromOneDN() throws IOException {
     in.close();
   }
 
+  /**
+   * Test the stats of the datanodes kept by the SocketCache.
+   */
+  @Test
+  public void testPeerStats() throws Exception {
+    DFSClient client = new DFSClient(
+        new InetSocketAddress("localhost", cluster.getNameNodePort()), conf);
+    DatanodeInfo dn = client.getNamenode().getBlockLocations(
+        testFile.toString(), 0, FILE_SIZE)
+        .getLocatedBlocks().get(0).getLocations()[0];
+    cache.clearPeerStats();
+    try {
+      DFSInputStream in = client.open(testFile.toString());
+      pread(in, 0, new byte[FILE_SIZE], 0, FILE_SIZE);
+      in.close();
+
+      SocketCache.PeerStats stats = cache.getPeerStats(dn);
+      assertEquals("One block reader", 1, stats.getOperations());
+      assertEquals(0, stats.getErrors());
+      assertTrue(stats.getAverageLatency() >= 0);
+      assertFalse(cache.isSlowOrFailingPeer(dn, 60000, 60000));
+
+      // a failed read marks the datanode as failing until it expires
+      cache.addPeerError(dn);
+      assertEquals(1, stats.getConsecutiveErrors());
+      assertTrue(cache.isSlowOrFailingPeer(dn, 60000, 60000));
+      assertFalse(cache.isSlowOrFailingPeer(dn, 60000, 0));
+
+      // ... or until a read succeeds
+      cache.addPeerLatency(dn, 0);
+      assertEquals(0, stats.getConsecutiveErrors());
+      assertEquals(1, stats.getErrors());
+      assertFalse(cache.isSlowOrFailingPeer(dn, 60000, 60000));
+
+      // slow reads mark the datanode as slow
+      for (int i = 0; i < 10; i++) {
+        cache.addPeerLatency(dn, 1000);
+      }
+      assertTrue(cache.isSlowOrFailingPeer(dn, 500, 60000));
+      assertFalse("Latency check disabled",
+          cache.isSlowOrFailingPeer(dn, 0, 60000));
+
+      // the only datanode holding the file is still read from
+      in = client.open(testFile.toString());
+      byte[] dataBuf = new byte[FILE_SIZE];
+      pread(in, 0, dataBuf, 0, FILE_SIZE);
+      in.close();
+      assertArrayEquals(authenticData, dataBuf);
+    } finally {
+      cache.clearPeerStats();
+      client.close();
+    }
+  }
+
+  /**
+   * Test that a datanode is only found slow after several slow reads, and
+   * can be read from again once it has not been read from for the expiry
+   * period.
+   */
+  @Test
+  public void testSlowPeerExpiry() throws Exception {
+    DatanodeID dn = new DatanodeID("127.0.0.1", "localhost", "storage", 1, 2,
+        3);
+    cache.clearPeerStats();
+    try {
+      // a single slow read, e.g. a cold connection, is not enough
+      cache.addPeerLatency(dn, 2000);
+      assertFalse(cache.isSlowOrFailingPeer(dn, 500, 60000));
+      for (int i = 1; i < SocketCache.PeerStats.MIN_LATENCY_SAMPLES; i++) {
+        cache.addPeerLatency(dn, 2000);
+      }
+      assertTrue(cache.isSlowOrFailingPeer(dn, 500, 60000));
+      assertTrue(cache.isSlowOrFailingPeer(dn, 500, 200));
+
+      // not read from since it was found slow, the datanode is eligible
+      // again after the expiry period, and its average is measured again
+      Thread.sleep(300);
+      assertFalse(cache.isSlowOrFailingPeer(dn, 500, 200));
+      assertEquals(-1, cache.getPeerStats(dn).getAverageLatency(), 0);
+      assertFalse(cache.isSlowOrFailingPeer(dn, 500, 60000));
+      cache.addPeerLatency(dn, 10);
+      assertFalse(cache.isSlowOrFailingPeer(dn, 500, 60000));
+      assertEquals(10, cache.getPeerStats(dn).getAverageLatency(), 0);
+    } finally {
+      cache.clearPeerStats();
+    }
+  }
+
   @AfterClass
   public static void teardownCluster() throws Exception {
     util.shutdown();
@@ -31,13 +31,16 @@
 import java.security.PrivilegedExceptionAction;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.BlockStorageLocation;
+import org.apache.hadoop.fs.CompositeCrcFileChecksum;
 import org.apache.hadoop.fs.CommonConfigurationKeys;
 import org.apache.hadoop.fs.CreateFlag;
 import org.apache.hadoop.fs.FSDataInputStream;
@@ -45,9 +48,13 @@
 import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.MD5MD5CRC32FileChecksum;
+import org.apache.hadoop.fs.Options.ChecksumCombineMode;
 import org.apache.hadoop.fs.Options.ChecksumOpt;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.VolumeId;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.hdfs.web.WebHdfsFileSystem;
@@ -762,4 +769,141 @@ public void testCreateWithCustomChecksum() throws Exception {
       }
     }
   }
+
+  /**
+   * The composite CRC of a file does not depend on its block size nor on
+   * its bytes per checksum, unlike its MD5MD5CRC checksum.
+   */
+  @Test
+  public void testCompositeCrc() throws Exception {
+    Configuration conf = getTestConfiguration();
+    MiniDFSCluster cluster = null;
+    Path path1 = new Path("/test/compositeCrc1");
+    Path path2 = new Path("/test/compositeCrc2");
+    Path path3 = new Path("/test/compositeCrc3");
+    EnumSet<CreateFlag> flags = EnumSet.of(CreateFlag.CREATE);
+    FsPermission perm = FsPermission.getDefault();
+    byte[] data = new byte[300000];
+    new Random(0xCC).nextBytes(data);
+
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      DistributedFileSystem dfs = (DistributedFileSystem) cluster.getFileSystem();
+
+      FSDataOutputStream out = dfs.create(path1, perm, flags, 4096,
+          (short)1, 65536L, null,
+          new ChecksumOpt(DataChecksum.Type.CRC32C, 512));
+      out.write(data);
+      out.close();
+      out = dfs.create(path2, perm, flags, 4096, (short)1, 131072L, null,
+          new ChecksumOpt(DataChecksum.Type.CRC32C, 1024));
+      out.write(data);
+      out.close();
+      out = dfs.create(path3, perm, flags, 4096, (short)1, 131072L, null,
+          new ChecksumOpt(DataChecksum.Type.CRC32, 1024));
+      out.write(data);
+      out.close();
+
+      FileChecksum sum1 = dfs.getFileChecksum(path1,
+          ChecksumCombineMode.COMPOSITE_CRC);
+      FileChecksum sum2 = dfs.getFileChecksum(path2,
+          ChecksumCombineMode.COMPOSITE_CRC);
+      assertEquals(sum1, sum2);
+      assertEquals("COMPOSITE-CRC32C", sum1.getAlgorithmName());
+      DataChecksum crc = DataChecksum.newDataChecksum(
+          DataChecksum.Type.CRC32C, 512);
+      crc.update(data, 0, data.length);
+      assertEquals((int)crc.getValue(),
+          ((CompositeCrcFileChecksum)sum1).getCrc());
+
+      // CRC32 is another checksum
+      FileChecksum sum3 = dfs.getFileChecksum(path3,
+          ChecksumCombineMode.COMPOSITE_CRC);
+      assertEquals("COMPOSITE-CRC32", sum3.getAlgorithmName());
+      crc = DataChecksum.newDataChecksum(DataChecksum.Type.CRC32, 512);
+      crc.update(data, 0, data.length);
+      assertEquals((int)crc.getValue(),
+          ((CompositeCrcFileChecksum)sum3).getCrc());
+
+      // the MD5MD5CRC checksums depend on the layout, and are the default
+      MD5MD5CRC32FileChecksum md5sum1 = dfs.getFileChecksum(path1);
+      assertEquals(md5sum1, dfs.getFileChecksum(path1,
+          ChecksumCombineMode.MD5MD5CRC));
+      assertFalse(md5sum1.equals(dfs.getFileChecksum(path2)));
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Tests {@link DistributedFileSystem#listLocatedStatus(Path[], PathFilter)}
+   * with a batch size and listing limit small enough that the directories
+   * are spread over several batched calls and large directories need
+   * follow-up listings.
+   */
+  @Test
+  public void testBatchedListLocatedStatus() throws Exception {
+    Configuration conf = getTestConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_LIST_LIMIT, 3);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_BATCHED_LISTING_SIZE_KEY, 2);
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      DistributedFileSystem fs = cluster.getFileSystem();
+
+      // directories holding 0, 1, ..., 4 files
+      Path[] dirs = new Path[5];
+      Set<Path> expected = new HashSet<Path>();
+      for (int i = 0; i < dirs.length; i++) {
+        dirs[i] = new Path("/batched/dir" + i);
+        fs.mkdirs(dirs[i]);
+        for (int j = 0; j < i; j++) {
+          Path file = new Path(dirs[i], "file" + j);
+          DFSTestUtil.createFile(fs, file, 1024, (short) 1, 0xDEADDEADl);
+          expected.add(fs.makeQualified(file));
+        }
+      }
+      Path skipped = new Path(dirs[4], "skip");
+      DFSTestUtil.createFile(fs, skipped, 1024, (short) 1, 0xDEADDEADl);
+
+      RemoteIterator<LocatedFileStatus> itor = fs.listLocatedStatus(dirs,
+          new PathFilter() {
+            @Override
+            public boolean accept(Path p) {
+              return !p.getName().equals("skip");
+            }
+          });
+      while (itor.hasNext()) {
+        LocatedFileStatus stat = itor.next();
+        assertTrue("Unexpected " + stat.getPath(),
+            expected.remove(stat.getPath()));
+        assertEquals(1, stat.getBlockLocations().length);
+      }
+      assertTrue("Not listed: " + expected, expected.isEmpty());
+
+      // a missing directory fails the listing
+      itor = fs.listLocatedStatus(
+          new Path[] { dirs[1], new Path("/batched/nonexistent") },
+          new PathFilter() {
+            @Override
+            public boolean accept(Path p) {
+              return true;
+            }
+          });
+      try {
+        while (itor.hasNext()) {
+          itor.next();
+        }
+        fail("Expected FileNotFoundException");
+      } catch (FileNotFoundException fnfe) {
+        // expected
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
 }
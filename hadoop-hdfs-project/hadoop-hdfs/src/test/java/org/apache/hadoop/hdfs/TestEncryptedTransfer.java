@@ -18,6 +18,7 @@
 package org.apache.hadoop.hdfs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -27,17 +28,21 @@
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FileChecksum;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.protocol.datatransfer.DataTransferEncryptor;
 import org.apache.hadoop.hdfs.security.token.block.BlockTokenSecretManager;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.test.GenericTestUtils;
 import org.apache.hadoop.test.GenericTestUtils.LogCapturer;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
 import org.junit.Test;
 import org.mockito.Mockito;
 
@@ -349,6 +354,61 @@ public void testLongLivedClient() throws IOException, InterruptedException {
     }
   }
   
+  @Test
+  public void testEncryptedWriteAndReadWithAes() throws IOException {
+    MiniDFSCluster cluster = null;
+    LogCapturer logs = LogCapturer.captureLogs(DataTransferEncryptor.LOG);
+    Logger logger = ((Log4JLogger) DataTransferEncryptor.LOG).getLogger();
+    Level level = logger.getLevel();
+    logger.setLevel(Level.DEBUG);
+    try {
+      Configuration conf = new Configuration();
+      setEncryptionConfigKeys(conf);
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(3).build();
+      
+      // several packets, encrypted by the SASL security layer
+      FileSystem fs = getFileSystem(conf);
+      Path bigFile = new Path("/big-file");
+      DFSTestUtil.createFile(fs, bigFile, 1024 * 1024, (short) 3, 0);
+      FileChecksum checksum = fs.getFileChecksum(bigFile);
+      fs.close();
+      cluster.shutdown();
+      assertFalse(logs.getOutput().contains("using cipher suite"));
+      
+      conf.set(DFSConfigKeys.DFS_ENCRYPT_DATA_TRANSFER_CIPHER_SUITES_KEY,
+          DataTransferEncryptor.AES_CTR_NOPADDING);
+      cluster = new MiniDFSCluster.Builder(conf)
+          .numDataNodes(3)
+          .manageDataDfsDirs(false)
+          .manageNameDfsDirs(false)
+          .format(false)
+          .startupOption(StartupOption.REGULAR)
+          .build();
+      
+      fs = getFileSystem(conf);
+      assertEquals(checksum, fs.getFileChecksum(bigFile));
+      byte[] data = new byte[1024 * 1024];
+      FSDataInputStream in = fs.open(bigFile);
+      in.readFully(data);
+      assertEquals(-1, in.read());
+      in.close();
+      // in a pipeline of three datanodes
+      writeTestDataToFile(fs);
+      assertEquals(PLAIN_TEXT, DFSTestUtil.readFile(fs, TEST_PATH));
+      fs.close();
+    } finally {
+      logs.stopCapturing();
+      logger.setLevel(level);
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+    assertTrue(logs.getOutput().contains("Server using cipher suite " +
+        DataTransferEncryptor.AES_CTR_NOPADDING));
+    assertTrue(logs.getOutput().contains("Client using cipher suite " +
+        DataTransferEncryptor.AES_CTR_NOPADDING));
+  }
+  
   @Test
   public void testEncryptedWriteWithOneDn() throws IOException {
     testEncryptedWrite(1);
@@ -44,6 +44,7 @@
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
 import java.util.EnumSet;
 
 import org.apache.commons.logging.LogFactory;
@@ -74,6 +75,7 @@
 import org.apache.hadoop.hdfs.server.namenode.INodeId;
 import org.apache.hadoop.hdfs.server.namenode.LeaseManager;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.hdfs.util.ByteArrayPool;
 import org.apache.hadoop.io.EnumSetWritable;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.security.UserGroupInformation;
@@ -936,6 +938,37 @@ public void testFileCreationSyncOnClose() throws IOException {
    * Then change lease period and wait for lease recovery.
    * Finally, read the block directly from each Datanode and verify the content.
    */
+  /**
+   * Test that the buffers of the acknowledged packets are reused for the
+   * next packets, and that the data written from them is intact.
+   */
+  @Test
+  public void testPacketBufferReuse() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    try {
+      DistributedFileSystem fs = cluster.getFileSystem();
+      ByteArrayPool pool = fs.dfs.packetBufferPool;
+      Path file = new Path("/testPacketBufferReuse");
+      final int numPackets = 64;
+      byte[] data = DFSTestUtil.generateSequentialBytes(0,
+          numPackets * DFS_CLIENT_WRITE_PACKET_SIZE_DEFAULT);
+      FSDataOutputStream out = fs.create(file, (short)1);
+      out.write(data);
+      out.close();
+
+      assertTrue(pool.getNumReuses() > 0);
+      assertTrue(pool.getNumAllocations() < numPackets);
+      FSDataInputStream in = fs.open(file);
+      byte[] read = new byte[data.length];
+      in.readFully(read);
+      in.close();
+      assertTrue(Arrays.equals(data, read));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   @Test
   public void testLeaseExpireHardLimit() throws Exception {
     System.out.println("testLeaseExpireHardLimit start");
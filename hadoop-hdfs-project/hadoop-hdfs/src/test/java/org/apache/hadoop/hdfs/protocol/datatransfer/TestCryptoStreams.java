@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol.datatransfer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.hadoop.hdfs.protocol.datatransfer.CryptoStreams.CryptoInputStream;
+import org.apache.hadoop.hdfs.protocol.datatransfer.CryptoStreams.CryptoOutputStream;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+
+/**
+ * Test that the {@link CryptoStreams} pass the data through, and reject
+ * data modified on the wire.
+ */
+public class TestCryptoStreams {
+  private static final Random RANDOM = new Random();
+
+  private final byte[] key = randomBytes(16);
+  private final byte[] iv = randomBytes(16);
+  private final byte[] macKey = randomBytes(32);
+
+  private static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    RANDOM.nextBytes(bytes);
+    return bytes;
+  }
+
+  /** @return the given data, as encrypted in frames of up to 1000 bytes */
+  private byte[] encrypt(byte[] data) throws IOException {
+    ByteArrayOutputStream wire = new ByteArrayOutputStream();
+    CryptoOutputStream out = new CryptoOutputStream(wire, key, iv, macKey);
+    for (int off = 0; off < data.length; off += 1000) {
+      out.write(data, off, Math.min(1000, data.length - off));
+      out.flush();
+    }
+    out.close();
+    return wire.toByteArray();
+  }
+
+  private byte[] decrypt(byte[] wire, int length, byte[] iv)
+      throws IOException {
+    CryptoInputStream in = new CryptoInputStream(
+        new ByteArrayInputStream(wire), key, iv, macKey);
+    byte[] data = new byte[length];
+    IOUtils.readFully(in, data, 0, length);
+    assertEquals(-1, in.read());
+    return data;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    // more than a full buffer, written at once
+    byte[] data = randomBytes(200 * 1024);
+    ByteArrayOutputStream wire = new ByteArrayOutputStream();
+    CryptoOutputStream out = new CryptoOutputStream(wire, key, iv, macKey);
+    out.write(data);
+    out.close();
+    assertArrayEquals(data, decrypt(wire.toByteArray(), data.length, iv));
+
+    // several flushed frames
+    data = randomBytes(5500);
+    assertArrayEquals(data, decrypt(encrypt(data), data.length, iv));
+  }
+
+  @Test
+  public void testModifiedData() throws IOException {
+    byte[] data = randomBytes(5500);
+    byte[] wire = encrypt(data);
+    // a bit flipped in the encrypted data of the third frame
+    wire[2 * (4 + 1000 + 32) + 4 + 10] ^= 1;
+    assertRejected(wire, data.length, iv);
+  }
+
+  @Test
+  public void testReplayedFrame() throws IOException {
+    byte[] data = randomBytes(2000);
+    byte[] wire = encrypt(data);
+    // the first frame sent again in place of the second
+    System.arraycopy(wire, 0, wire, 4 + 1000 + 32, 4 + 1000 + 32);
+    assertRejected(wire, data.length, iv);
+  }
+
+  @Test
+  public void testModifiedIv() throws IOException {
+    byte[] data = randomBytes(100);
+    byte[] otherIv = iv.clone();
+    otherIv[0] ^= 1;
+    assertRejected(encrypt(data), data.length, otherIv);
+  }
+
+  private void assertRejected(byte[] wire, int length, byte[] iv) {
+    try {
+      decrypt(wire, length, iv);
+      fail("Modified data was not rejected");
+    } catch (IOException e) {
+      GenericTestUtils.assertExceptionContains("Integrity check failed", e);
+    }
+  }
+}
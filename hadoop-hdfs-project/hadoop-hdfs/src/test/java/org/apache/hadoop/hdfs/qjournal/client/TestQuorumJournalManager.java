@@ -39,6 +39,7 @@
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.CommonConfigurationKeysPublic;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.SegmentStateProto;
@@ -184,6 +185,53 @@ public void testReaderWhileAnotherWrites() throws Exception {
     }
   }
   
+  @Test
+  public void testReaderOfInProgressSegment() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    QuorumJournalManager readerQjm = createSpyingQJM();
+    List<EditLogInputStream> streams = Lists.newArrayList();
+
+    EditLogOutputStream stm = writeSegment(cluster, qjm, 1, 3, false);
+    try {
+      readerQjm.selectInputStreams(streams, 1, true);
+      verifyEdits(streams, 1, 3);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      streams.clear();
+    }
+    readerQjm.selectInputStreams(streams, 4, true);
+    assertTrue(streams.isEmpty());
+
+    // Edits written to only one of the JNs are not durable yet
+    for (int i = 1; i < 3; i++) {
+      futureThrows(new IOException("mock failure"))
+        .when(spies.get(i)).sendEdits(Mockito.anyLong(),
+          Mockito.eq(4L), Mockito.eq(3), Mockito.<byte[]>any());
+    }
+    try {
+      writeTxns(stm, 4, 3);
+      fail("Wrote without a quorum");
+    } catch (QuorumException qe) {
+      // expected
+    }
+    readerQjm.selectInputStreams(streams, 4, true);
+    assertTrue(streams.isEmpty());
+
+    // A new writer clears the caches; the reader falls back to the
+    // finalized segment, from the middle of which it continues.
+    stm.close();
+    qjm.close();
+    qjm = createSpyingQJM();
+    assertEquals(6, QJMTestUtil.recoverAndReturnLastTxn(qjm));
+    try {
+      readerQjm.selectInputStreams(streams, 2, true);
+      verifyEdits(streams, 2, 6);
+    } finally {
+      IOUtils.cleanup(LOG, streams.toArray(new Closeable[0]));
+      readerQjm.close();
+    }
+  }
+
   /**
    * Regression test for HDFS-3725. One of the journal nodes is down
    * during the writing of one segment, then comes back up later to
@@ -22,6 +22,7 @@
 import java.io.File;
 import java.io.IOException;
 
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileUtil;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.qjournal.QJMTestUtil;
@@ -30,6 +31,8 @@
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProto;
 import org.apache.hadoop.hdfs.qjournal.protocol.QJournalProtocolProtos.NewEpochResponseProtoOrBuilder;
 import org.apache.hadoop.hdfs.qjournal.server.Journal;
+import org.apache.hadoop.hdfs.qjournal.server.JournaledEditsCache.CacheMissException;
+import org.apache.hadoop.hdfs.qjournal.server.JournaledEditsCache.CachedEdits;
 import org.apache.hadoop.hdfs.server.common.Storage.StorageDirectory;
 import org.apache.hadoop.hdfs.server.common.Storage;
 import org.apache.hadoop.hdfs.server.common.StorageErrorReporter;
@@ -50,6 +53,7 @@ public class TestJournal {
   private static final File TEST_LOG_DIR = new File(
       new File(MiniDFSCluster.getBaseDirectory()), "TestJournal");
 
+  private Configuration conf = new Configuration();
   private StorageErrorReporter mockErrorReporter = Mockito.mock(
       StorageErrorReporter.class);
 
@@ -59,7 +63,7 @@ public class TestJournal {
   @Before
   public void setup() throws Exception {
     FileUtil.fullyDelete(TEST_LOG_DIR);
-    journal = new Journal(TEST_LOG_DIR, JID, mockErrorReporter);
+    journal = new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
     journal.format(FAKE_NSINFO);
   }
   
@@ -122,6 +126,36 @@ public void testMaintainCommittedTxId() throws Exception {
     assertEquals(3, journal.getCommittedTxnIdForTests());    
   }
   
+  @Test (timeout = 10000)
+  public void testGetJournaledEdits() throws Exception {
+    journal.newEpoch(FAKE_NSINFO, 1);
+    journal.startLogSegment(makeRI(1), 1);
+    journal.journal(makeRI(2), 1, 1, 3, QJMTestUtil.createTxnData(1, 3));
+    journal.journal(makeRI(3), 1, 4, 3, QJMTestUtil.createTxnData(4, 3));
+    journal.journal(makeRI(4), 1, 7, 3, QJMTestUtil.createTxnData(7, 3));
+
+    // Whole batches are returned, from the one containing sinceTxId
+    CachedEdits edits = journal.getJournaledEdits(5, 100);
+    assertEquals(4, edits.firstTxId);
+    assertEquals(6, edits.numTxns);
+    // Stops after the batch which reaches maxTxns
+    edits = journal.getJournaledEdits(1, 2);
+    assertEquals(1, edits.firstTxId);
+    assertEquals(3, edits.numTxns);
+    edits = journal.getJournaledEdits(1, 4);
+    assertEquals(6, edits.numTxns);
+    assertEquals(0, journal.getJournaledEdits(10, 100).numTxns);
+
+    // A new writer may replace the uncommitted edits
+    journal.newEpoch(FAKE_NSINFO, 2);
+    try {
+      journal.getJournaledEdits(1, 100);
+      fail("Did not clear the cache on a new epoch");
+    } catch (CacheMissException cme) {
+      // expected
+    }
+  }
+
   @Test (timeout = 10000)
   public void testRestartJournal() throws Exception {
     journal.newEpoch(FAKE_NSINFO, 1);
@@ -135,7 +169,7 @@ public void testRestartJournal() throws Exception {
     journal.close(); // close to unlock the storage dir
     
     // Now re-instantiate, make sure history is still there
-    journal = new Journal(TEST_LOG_DIR, JID, mockErrorReporter);
+    journal = new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
     
     // The storage info should be read, even if no writer has taken over.
     assertEquals(storageString,
@@ -192,7 +226,7 @@ public void testJournalLocking() throws Exception {
 
     journal.newEpoch(FAKE_NSINFO,  1);
     try {
-      new Journal(TEST_LOG_DIR, JID, mockErrorReporter);
+      new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
       fail("Did not fail to create another journal in same dir");
     } catch (IOException ioe) {
       GenericTestUtils.assertExceptionContains(
@@ -203,7 +237,7 @@ public void testJournalLocking() throws Exception {
     
     // Journal should no longer be locked after the close() call.
     // Hence, should be able to create a new Journal in the same dir.
-    Journal journal2 = new Journal(TEST_LOG_DIR, JID, mockErrorReporter);
+    Journal journal2 = new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
     journal2.newEpoch(FAKE_NSINFO, 2);
     journal2.close();
   }
@@ -231,7 +265,7 @@ public void testFinalizeWhenEditsAreMissed() throws Exception {
     // Check that, even if we re-construct the journal by scanning the
     // disk, we don't allow finalizing incorrectly.
     journal.close();
-    journal = new Journal(TEST_LOG_DIR, JID, mockErrorReporter);
+    journal = new Journal(conf, TEST_LOG_DIR, JID, mockErrorReporter);
     
     try {
       journal.finalizeLogSegment(makeRI(4), 1, 6);
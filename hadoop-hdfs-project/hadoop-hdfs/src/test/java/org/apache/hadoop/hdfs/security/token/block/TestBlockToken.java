@@ -68,6 +68,7 @@
 import org.apache.hadoop.security.SaslRpcClient;
 import org.apache.hadoop.security.SaslRpcServer;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.token.SecretManager.InvalidToken;
 import org.apache.hadoop.security.token.Token;
 import org.apache.hadoop.security.token.TokenIdentifier;
 import org.apache.hadoop.util.Time;
@@ -215,6 +216,74 @@ public void testBlockTokenSecretManager() throws Exception {
     tokenGenerationAndVerification(masterHandler, slaveHandler);
   }
 
+  /** test that cached tokens are verified as uncached ones */
+  @Test
+  public void testBlockTokenVerificationCache() throws Exception {
+    BlockTokenSecretManager masterHandler = new BlockTokenSecretManager(
+        blockKeyUpdateInterval, blockTokenLifetime, 0, "fake-pool", null);
+    BlockTokenSecretManager slaveHandler = new BlockTokenSecretManager(
+        blockKeyUpdateInterval, blockTokenLifetime, "fake-pool", null);
+    BlockTokenVerificationCache cache = new BlockTokenVerificationCache(2);
+    slaveHandler.setTokenCache(cache);
+    slaveHandler.addKeys(masterHandler.exportKeys());
+
+    Token<BlockTokenIdentifier> token = masterHandler.generateToken(block1,
+        EnumSet.of(BlockTokenSecretManager.AccessMode.READ));
+    slaveHandler.checkAccess(token, null, block1,
+        BlockTokenSecretManager.AccessMode.READ);
+    slaveHandler.checkAccess(token, null, block1,
+        BlockTokenSecretManager.AccessMode.READ);
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.size());
+
+    // the cached token is still checked against the block and mode
+    try {
+      slaveHandler.checkAccess(token, null, block2,
+          BlockTokenSecretManager.AccessMode.READ);
+      fail("Token accepted for another block");
+    } catch (InvalidToken e) {
+      // expected
+    }
+    try {
+      slaveHandler.checkAccess(token, null, block1,
+          BlockTokenSecretManager.AccessMode.WRITE);
+      fail("Token accepted for another access mode");
+    } catch (InvalidToken e) {
+      // expected
+    }
+
+    // a token with the same identifier but another password is rejected
+    Token<BlockTokenIdentifier> forged = new Token<BlockTokenIdentifier>(
+        token.getIdentifier(), new byte[token.getPassword().length],
+        token.getKind(), token.getService());
+    try {
+      slaveHandler.checkAccess(forged, null, block1,
+          BlockTokenSecretManager.AccessMode.READ);
+      fail("Token with a wrong password accepted");
+    } catch (InvalidToken e) {
+      // expected
+    }
+    assertEquals(1, cache.size());
+
+    // keys re-sent by the master keep the cached tokens valid
+    slaveHandler.addKeys(masterHandler.exportKeys());
+    slaveHandler.checkAccess(token, null, block1,
+        BlockTokenSecretManager.AccessMode.READ);
+    assertEquals(2, cache.getHits());
+
+    // once the key is gone, the cached token is not trusted anymore
+    slaveHandler.clearAllKeysForTesting();
+    try {
+      slaveHandler.checkAccess(token, null, block1,
+          BlockTokenSecretManager.AccessMode.READ);
+      fail("Token accepted after its key was removed");
+    } catch (InvalidToken e) {
+      // expected
+    }
+    assertEquals(0, cache.size());
+  }
+
   private static Server createMockDatanode(BlockTokenSecretManager sm,
       Token<BlockTokenIdentifier> token, Configuration conf)
       throws IOException, ServiceException {
@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.balancer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test the concurrent moves allowed for each datanode by the balancer.
+ */
+public class TestAdaptiveMoveLimiter {
+
+  @Test
+  public void testLimitPerDatanode() {
+    final AdaptiveMoveLimiter limiter = new AdaptiveMoveLimiter(2);
+    final AdaptiveMoveLimiter.Limit dn1 = limiter.get("DS-1");
+    // the namespaces share the limit of a datanode
+    assertSame(dn1, limiter.get("DS-1"));
+    assertNotSame(dn1, limiter.get("DS-2"));
+
+    assertEquals(2, dn1.getLimit());
+    assertTrue(dn1.tryAcquire());
+    assertTrue(dn1.tryAcquire());
+    assertFalse(dn1.tryAcquire());
+    assertTrue(limiter.get("DS-2").tryAcquire());
+    dn1.release();
+    assertTrue(dn1.tryAcquire());
+  }
+
+  @Test
+  public void testFailures() {
+    final AdaptiveMoveLimiter.Limit l = new AdaptiveMoveLimiter(5).get("DS");
+    l.moveFailed();
+    assertEquals(2, l.getLimit());
+    l.moveFailed();
+    l.moveFailed();
+    assertEquals(1, l.getLimit());
+
+    // successful moves bring the limit back up
+    for (int i = 0; i < 10; i++) {
+      l.moveSucceeded(1024, 10);
+    }
+    assertEquals(5, l.getLimit());
+  }
+
+  @Test
+  public void testSlowMoves() {
+    final AdaptiveMoveLimiter.Limit l = new AdaptiveMoveLimiter(5).get("DS");
+    l.moveSucceeded(1024, 10);
+    assertEquals(5, l.getLimit());
+    // the datanode is saturated: the moves are much slower than before
+    l.moveSucceeded(1024, 100);
+    l.moveSucceeded(1024, 100);
+    assertEquals(3, l.getLimit());
+    // a move almost as fast as the fastest ones
+    l.moveSucceeded(1024, 15);
+    assertEquals(4, l.getLimit());
+  }
+}
@@ -489,6 +489,56 @@ public void testHighestPriReplSrcChosenDespiteMaxReplLimit() throws Exception {
             UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY));
   }
 
+  /**
+   * Test that with adaptive replication scheduling the least loaded node is
+   * chosen as the source, and that the replication limit of a node follows
+   * the transfers it reports.
+   */
+  @Test
+  public void testAdaptiveReplicationScheduling() throws Exception {
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_REPLICATION_ADAPTIVE_KEY, true);
+    bm = new BlockManager(fsn, fsn, conf);
+    assertEquals(2, bm.maxReplicationStreams);
+    assertEquals(4, bm.replicationStreamsHardLimit);
+
+    List<DatanodeDescriptor> origNodes = getNodes(0, 1, 2);
+    Block aBlock = addBlockOnNodes(42, origNodes);
+    List<DatanodeDescriptor> cntNodes = new LinkedList<DatanodeDescriptor>();
+    List<DatanodeDescriptor> liveNodes = new LinkedList<DatanodeDescriptor>();
+
+    // nodes 0 and 1 are busy with transfers
+    assertEquals(1, bm.getMaxReplicationTransfers(origNodes.get(0), 1));
+    assertEquals(1, bm.getMaxReplicationTransfers(origNodes.get(1), 1));
+    assertEquals(2, bm.getMaxReplicationTransfers(origNodes.get(2), 0));
+    for (int i = 0; i < NUM_TEST_ITERS; i++) {
+      assertEquals(origNodes.get(2), bm.chooseSourceDatanode(aBlock,
+          cntNodes, liveNodes, new NumberReplicas(),
+          UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED));
+    }
+
+    // a node with waiting work which finished its transfers gets more
+    DatanodeDescriptor node = origNodes.get(2);
+    node.addBlockToBeReplicated(new Block(43), getNodes(3).toArray(
+        new DatanodeDescriptor[1]));
+    assertEquals(3, bm.getMaxReplicationTransfers(node, 0));
+    assertEquals(4, bm.getMaxReplicationTransfers(node, 0));
+    assertEquals(4, bm.getMaxReplicationTransfers(node, 0));
+    // a node which is still busy gets less, down to max-streams
+    assertEquals(0, bm.getMaxReplicationTransfers(node, 4));
+    assertEquals(3, node.getReplicationStreamsLimit());
+    bm.getMaxReplicationTransfers(node, 3);
+    bm.getMaxReplicationTransfers(node, 3);
+    assertEquals(2, node.getReplicationStreamsLimit());
+
+    // busy nodes are not chosen below the highest priority
+    bm.getMaxReplicationTransfers(origNodes.get(0), 2);
+    bm.getMaxReplicationTransfers(origNodes.get(1), 2);
+    assertNull(bm.chooseSourceDatanode(aBlock, cntNodes, liveNodes,
+        new NumberReplicas(), UnderReplicatedBlocks.QUEUE_UNDER_REPLICATED));
+    assertNotNull(bm.chooseSourceDatanode(aBlock, cntNodes, liveNodes,
+        new NumberReplicas(), UnderReplicatedBlocks.QUEUE_HIGHEST_PRIORITY));
+  }
+
   @Test
   public void testSafeModeIBR() throws Exception {
     DatanodeDescriptor node = spy(nodes.get(0));
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.server.namenode.Namesystem;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test the checks of the blocks of decommissioning nodes by the
+ * {@link DecommissionManager}.
+ */
+public class TestDecommissionManager {
+  private static final int NUM_BLOCKS = 10;
+  private static final int BLOCKS_PER_LOCK = 3;
+
+  private DatanodeDescriptor node;
+  private DecommissionManager decomManager;
+  private DecommissionManager.Monitor monitor;
+
+  /** The blocks which are not sufficiently replicated yet */
+  private final Set<Block> insufficient = new HashSet<Block>();
+  /** The blocks checked, in the order they were checked */
+  private final List<Block> checked = new ArrayList<Block>();
+  /** The number of blocks checked in each write lock hold */
+  private final List<Integer> checkedPerHold = new ArrayList<Integer>();
+  private boolean writeLocked = false;
+  private int readLocks = 0;
+
+  @Before
+  public void setUp() throws Exception {
+    node = DFSTestUtil.getLocalDatanodeDescriptor();
+    for (int i = 0; i < NUM_BLOCKS; i++) {
+      node.addBlock(new BlockInfo(new Block(i), 3));
+    }
+
+    final Namesystem namesystem = Mockito.mock(Namesystem.class);
+    Mockito.when(namesystem.isRunning()).thenReturn(true);
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        writeLocked = true;
+        checkedPerHold.add(0);
+        return null;
+      }
+    }).when(namesystem).writeLock();
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        writeLocked = false;
+        return null;
+      }
+    }).when(namesystem).writeUnlock();
+    Mockito.doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        readLocks++;
+        return null;
+      }
+    }).when(namesystem).readLock();
+
+    final DatanodeManager dm = Mockito.mock(DatanodeManager.class);
+    Mockito.when(dm.getDatanode(anyString())).thenReturn(node);
+    final BlockManager bm = Mockito.mock(BlockManager.class);
+    Mockito.when(bm.getDatanodeManager()).thenReturn(dm);
+    Mockito.doAnswer(new Answer<NumberReplicas>() {
+      @Override
+      public NumberReplicas answer(InvocationOnMock invocation) {
+        assertTrue(writeLocked);
+        final Block block = (Block)invocation.getArguments()[0];
+        checked.add(block);
+        final int last = checkedPerHold.size() - 1;
+        checkedPerHold.set(last, checkedPerHold.get(last) + 1);
+        return insufficient.contains(block) ?
+            new NumberReplicas(1, 1, 0, 0, 0) : null;
+      }
+    }).when(bm).checkDecommissioningBlock(any(Block.class),
+        any(DatanodeDescriptor.class));
+
+    decomManager = new DecommissionManager(namesystem, bm, BLOCKS_PER_LOCK);
+    monitor = decomManager.new Monitor(1, 1);
+    node.startDecommission();
+    decomManager.startTrackingNode(node);
+  }
+
+  /**
+   * Test that the write lock is released between chunks of blocks, and
+   * that only the insufficiently replicated blocks are checked again until
+   * the final scan of all the blocks.
+   */
+  @Test
+  public void testCheckInChunks() throws Exception {
+    insufficient.add(new Block(2));
+    insufficient.add(new Block(7));
+
+    // the first check copies the blocks under the read lock, and checks
+    // them in chunks
+    monitor.check();
+    assertEquals(1, readLocks);
+    assertEquals(NUM_BLOCKS, checked.size());
+    assertEquals(NUM_BLOCKS, sum(checkedPerHold));
+    for (int n : checkedPerHold) {
+      assertTrue("checkedPerHold=" + checkedPerHold, n <= BLOCKS_PER_LOCK);
+    }
+    assertTrue(checkedPerHold.size() >= NUM_BLOCKS / BLOCKS_PER_LOCK);
+    assertEquals(2, node.decommissioningStatus.getUnderReplicatedBlocks());
+    assertFalse(writeLocked);
+
+    // the second check only looks at the two insufficient blocks
+    checked.clear();
+    monitor.check();
+    assertEquals(1, readLocks);
+    assertEquals(insufficient, new HashSet<Block>(checked));
+    assertEquals(2, checked.size());
+    assertTrue(node.isDecommissionInProgress());
+
+    // once they are replicated, all the blocks are checked once more
+    insufficient.clear();
+    checked.clear();
+    monitor.check();
+    assertEquals(2, readLocks);
+    assertEquals(2 + NUM_BLOCKS, checked.size());
+    assertTrue(node.isDecommissioned());
+    assertEquals(0, decomManager.getNumTrackedNodes());
+  }
+
+  private static int sum(List<Integer> values) {
+    int sum = 0;
+    for (int v : values) {
+      sum += v;
+    }
+    return sum;
+  }
+}
@@ -48,6 +48,7 @@
 import org.apache.hadoop.hdfs.server.datanode.metrics.FSDatasetMBean;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.ReplicaRecoveryInfo;
+import org.apache.hadoop.hdfs.util.DataTransferThrottler;
 import org.apache.hadoop.io.IOUtils;
 import org.apache.hadoop.metrics2.util.MBeans;
 import org.apache.hadoop.util.DataChecksum;
@@ -969,6 +970,12 @@ public HdfsBlocksMetadata getHdfsBlocksMetadata(List<ExtendedBlock> blocks)
     throw new UnsupportedOperationException();
   }
 
+  @Override
+  public boolean moveBlockAcrossVolumes(ExtendedBlock block,
+      FsVolumeSpi destination, DataTransferThrottler throttler) {
+    throw new UnsupportedOperationException();
+  }
+
   @Override
   public String[] getBlockPoolList() {
     throw new UnsupportedOperationException();
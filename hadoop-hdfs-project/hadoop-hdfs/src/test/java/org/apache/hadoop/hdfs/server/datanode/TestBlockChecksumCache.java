@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.proto.DataTransferProtos.OpBlockChecksumResponseProto;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.junit.Test;
+
+import com.google.protobuf.ByteString;
+
+/**
+ * Test the checksums of blocks cached by the datanodes, and the checksums
+ * of files computed from them by the client.
+ */
+public class TestBlockChecksumCache {
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int NUM_BLOCKS = 10;
+
+  @Test
+  public void testGenerationStamp() {
+    final BlockChecksumCache cache = new BlockChecksumCache(2);
+    final ExtendedBlock b = new ExtendedBlock("bp", 1, 100, 1001);
+    final OpBlockChecksumResponseProto checksum =
+        OpBlockChecksumResponseProto.newBuilder()
+        .setBytesPerCrc(512).setCrcPerBlock(1)
+        .setMd5(ByteString.copyFrom(new byte[16])).build();
+    cache.put(b, 7, checksum);
+    assertEquals(checksum, cache.get(b, 7));
+
+    // the cached block is not changed with the block of the caller
+    b.setGenerationStamp(1002);
+    assertNull(cache.get(b, 7));
+    b.setGenerationStamp(1001);
+    assertNull(cache.get(b, 11));
+    assertEquals(1, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+    // the least recently used checksum is evicted
+    cache.put(new ExtendedBlock("bp", 2, 100, 1001), 7, checksum);
+    cache.get(b, 7);
+    cache.put(new ExtendedBlock("bp", 3, 100, 1001), 7, checksum);
+    assertEquals(2, cache.size());
+    assertEquals(checksum, cache.get(b, 7));
+    assertNull(cache.get(new ExtendedBlock("bp", 2, 100, 1001), 7));
+  }
+
+  @Test
+  public void testFileChecksum() throws Exception {
+    final Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final DataNode dn = cluster.getDataNodes().get(0);
+      final Path file = new Path("/testFileChecksum");
+      DFSTestUtil.createFile(cluster.getFileSystem(), file,
+          NUM_BLOCKS * BLOCK_SIZE - 100, (short)1, 0L);
+
+      // the blocks requested one by one and in parallel
+      final Configuration sequential = new Configuration(conf);
+      sequential.setInt(DFSConfigKeys.DFS_CLIENT_FILE_CHECKSUM_NUM_THREADS_KEY,
+          1);
+      final FileSystem fs1 = FileSystem.newInstance(
+          cluster.getURI(), sequential);
+      final FileChecksum checksum = fs1.getFileChecksum(file);
+      fs1.close();
+      MetricsRecordBuilder rb = getMetrics(dn.getMetrics().name());
+      assertCounter("BlockChecksumCacheHits", 0L, rb);
+      assertCounter("BlockChecksumCacheMisses", (long)NUM_BLOCKS, rb);
+
+      assertEquals(checksum, cluster.getFileSystem().getFileChecksum(file));
+      rb = getMetrics(dn.getMetrics().name());
+      assertCounter("BlockChecksumCacheHits", (long)NUM_BLOCKS, rb);
+
+      // an append bumps the generation stamp of the last block
+      final FSDataOutputStream out = cluster.getFileSystem().append(file);
+      out.write(1);
+      out.close();
+      assertFalse(checksum.equals(
+          cluster.getFileSystem().getFileChecksum(file)));
+      rb = getMetrics(dn.getMetrics().name());
+      assertCounter("BlockChecksumCacheHits", 2L * NUM_BLOCKS - 1, rb);
+      assertCounter("BlockChecksumCacheMisses", NUM_BLOCKS + 1L, rb);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
@@ -0,0 +1,229 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.DiskBalancerStatus;
+import org.apache.hadoop.hdfs.protocol.DiskBalancerStatus.State;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsDatasetSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
+import org.apache.hadoop.hdfs.server.datanode.fsdataset.VolumeChoosingPolicy;
+import org.apache.hadoop.hdfs.tools.DFSAdmin;
+import org.apache.hadoop.test.GenericTestUtils;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Tests the moves of replicas between the volumes of a datanode.
+ */
+public class TestDiskBalancer {
+  private static final int BLOCK_SIZE = 1024;
+
+  /** Puts all the replicas on the first volume. */
+  public static class FirstVolumeChoosingPolicy<V extends FsVolumeSpi>
+      implements VolumeChoosingPolicy<V> {
+    @Override
+    public V chooseVolume(List<V> volumes, long replicaSize) {
+      return volumes.get(0);
+    }
+  }
+
+  private static FsVolumeSpi mockVolume(long capacity, long used)
+      throws IOException {
+    FsVolumeSpi volume = Mockito.mock(FsVolumeSpi.class);
+    Mockito.when(volume.getCapacity()).thenReturn(capacity);
+    Mockito.when(volume.getDfsUsed()).thenReturn(used);
+    return volume;
+  }
+
+  @Test
+  public void testPlan() throws Exception {
+    List<FsVolumeSpi> volumes = Arrays.asList(
+        mockVolume(100, 90), mockVolume(100, 10), mockVolume(100, 20));
+    // 40% of the capacity is used: 50 bytes are to move off the first volume
+    List<DiskBalancer.Step> steps = DiskBalancer.plan(volumes, 10);
+    assertEquals(2, steps.size());
+    assertSame(volumes.get(0), steps.get(0).source);
+    assertSame(volumes.get(1), steps.get(0).destination);
+    assertEquals(30, steps.get(0).bytesToMove);
+    assertSame(volumes.get(0), steps.get(1).source);
+    assertSame(volumes.get(2), steps.get(1).destination);
+    assertEquals(20, steps.get(1).bytesToMove);
+
+    // within the threshold
+    assertTrue(DiskBalancer.plan(volumes, 60).isEmpty());
+
+    // a new, larger disk takes more than the others
+    volumes = Arrays.asList(
+        mockVolume(100, 80), mockVolume(100, 80), mockVolume(200, 0));
+    // 40% of the capacity is used
+    steps = DiskBalancer.plan(volumes, 10);
+    assertEquals(2, steps.size());
+    for (DiskBalancer.Step step : steps) {
+      assertSame(volumes.get(2), step.destination);
+      assertEquals(40, step.bytesToMove);
+    }
+  }
+
+  @Test(timeout=120000)
+  public void testMoveReplicas() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setClass(
+        DFSConfigKeys.DFS_DATANODE_FSDATASET_VOLUME_CHOOSING_POLICY_KEY,
+        FirstVolumeChoosingPolicy.class, VolumeChoosingPolicy.class);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      String bpid = cluster.getNamesystem().getBlockPoolId();
+      Path file = new Path("/file");
+      DFSTestUtil.createFile(fs, file, 10 * BLOCK_SIZE, (short)1, 0L);
+      String content = DFSTestUtil.readFile(fs, file);
+
+      DataNode dn = cluster.getDataNodes().get(0);
+      final FsDatasetSpi<?> dataset = DataNodeTestUtils.getFSDataset(dn);
+      List<? extends FsVolumeSpi> volumes = dataset.getVolumes();
+      assertEquals(2, volumes.size());
+      assertEquals(10, countReplicas(dataset, bpid, volumes.get(0)));
+      assertEquals(0, countReplicas(dataset, bpid, volumes.get(1)));
+      assertEquals(State.NO_PLAN, dn.getDiskBalancerStatus().getState());
+
+      // half of the used space is to move to the second volume
+      String dnAddr = "localhost:" + dn.getIpcPort();
+      DFSAdmin admin = new DFSAdmin(conf);
+      assertEquals(0, admin.run(new String[] {
+          "-diskBalancer", dnAddr, "-start", "0"}));
+      DiskBalancerStatus status = waitForPlan(dn);
+      assertEquals(State.PLAN_DONE, status.getState());
+      assertEquals(1, status.getSteps().size());
+      DiskBalancerStatus.Step step = status.getSteps().get(0);
+      assertEquals(volumes.get(0).toString(), step.getSource());
+      assertEquals(volumes.get(1).toString(), step.getDestination());
+      assertEquals(5, step.getBlocksMoved());
+      assertEquals(5 * BLOCK_SIZE, step.getBytesMoved());
+      assertEquals(0, step.getErrors());
+      assertEquals(5, countReplicas(dataset, bpid, volumes.get(0)));
+      assertEquals(5, countReplicas(dataset, bpid, volumes.get(1)));
+      assertEquals(volumes.get(0).getDfsUsed(), volumes.get(1).getDfsUsed());
+      assertEquals(content, DFSTestUtil.readFile(fs, file));
+      assertEquals(0, admin.run(new String[] {
+          "-diskBalancer", dnAddr, "-status"}));
+
+      // the balanced volumes need no move
+      dn.startDiskBalancer(0);
+      status = waitForPlan(dn);
+      assertEquals(State.PLAN_DONE, status.getState());
+      assertTrue(status.getSteps().isEmpty());
+
+      // the moved replicas are found on disk after a restart
+      cluster.restartDataNode(0, true);
+      cluster.waitActive();
+      dn = cluster.getDataNodes().get(0);
+      FsDatasetSpi<?> restarted = DataNodeTestUtils.getFSDataset(dn);
+      volumes = restarted.getVolumes();
+      assertEquals(5, countReplicas(restarted, bpid, volumes.get(0)));
+      assertEquals(5, countReplicas(restarted, bpid, volumes.get(1)));
+      assertEquals(content, DFSTestUtil.readFile(fs, file));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  @Test(timeout=120000)
+  public void testCancel() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setClass(
+        DFSConfigKeys.DFS_DATANODE_FSDATASET_VOLUME_CHOOSING_POLICY_KEY,
+        FirstVolumeChoosingPolicy.class, VolumeChoosingPolicy.class);
+    // copy about one replica per second
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_DISK_BALANCER_BANDWIDTHPERSEC_KEY,
+        BLOCK_SIZE);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      DFSTestUtil.createFile(fs, new Path("/file"), 20 * BLOCK_SIZE,
+          (short)1, 0L);
+
+      DataNode dn = cluster.getDataNodes().get(0);
+      dn.startDiskBalancer(0);
+      try {
+        dn.startDiskBalancer(0);
+        fail("Started the disk balancer twice");
+      } catch (IOException e) {
+        GenericTestUtils.assertExceptionContains("already running", e);
+      }
+      dn.cancelDiskBalancer();
+      DiskBalancerStatus status = waitForPlan(dn);
+      assertEquals(State.PLAN_CANCELLED, status.getState());
+      assertTrue(status.getSteps().get(0).getBlocksMoved() < 10);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  private static DiskBalancerStatus waitForPlan(final DataNode dn)
+      throws Exception {
+    GenericTestUtils.waitFor(new Supplier<Boolean>() {
+      @Override
+      public Boolean get() {
+        try {
+          return dn.getDiskBalancerStatus().getState()
+              != State.PLAN_UNDER_PROGRESS;
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }, 100, 60000);
+    return dn.getDiskBalancerStatus();
+  }
+
+  private static int countReplicas(FsDatasetSpi<?> dataset, String bpid,
+      FsVolumeSpi volume) {
+    int count = 0;
+    for (Block b : dataset.getFinalizedBlocks(bpid)) {
+      if (dataset.getVolume(new ExtendedBlock(bpid, b)) == volume) {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.fsdataset;
+
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_KEY;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class TestAvailableSpaceVolumeChoosingPolicy {
+
+  private static final int RANDOMIZED_ITERATIONS = 10000;
+  private static final float RANDOMIZED_ERROR_PERCENT = 0.05f;
+
+  private static void initPolicy(VolumeChoosingPolicy<FsVolumeSpi> policy,
+      float preferencePercent) {
+    Configuration conf = new Configuration();
+    // Set the threshold to consider volumes imbalanced to 1MB
+    conf.setLong(
+        DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_THRESHOLD_KEY,
+        1024 * 1024); // 1MB
+    conf.setFloat(
+        DFS_DATANODE_AVAILABLE_SPACE_VOLUME_CHOOSING_POLICY_BALANCED_SPACE_PREFERENCE_FRACTION_KEY,
+        preferencePercent);
+    ((Configurable) policy).setConf(conf);
+  }
+
+  private static FsVolumeSpi mockVolume(long available) throws IOException {
+    FsVolumeSpi volume = Mockito.mock(FsVolumeSpi.class);
+    Mockito.when(volume.getAvailable()).thenReturn(available);
+    return volume;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static VolumeChoosingPolicy<FsVolumeSpi> newPolicy(
+      float preferencePercent) {
+    VolumeChoosingPolicy<FsVolumeSpi> policy = ReflectionUtils.newInstance(
+        AvailableSpaceVolumeChoosingPolicy.class, null);
+    initPolicy(policy, preferencePercent);
+    return policy;
+  }
+
+  // Test the Round-Robin block-volume fallback path when all volumes are within
+  // the threshold.
+  @Test(timeout=60000)
+  public void testRR() throws Exception {
+    VolumeChoosingPolicy<FsVolumeSpi> policy = newPolicy(1.0f);
+    List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    // Two volumes, with 100 and 200 bytes of space.
+    volumes.add(mockVolume(100L));
+    volumes.add(mockVolume(200L));
+
+    // Test two rounds of round-robin choosing
+    Assert.assertEquals(volumes.get(0), policy.chooseVolume(volumes, 0));
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 0));
+    Assert.assertEquals(volumes.get(0), policy.chooseVolume(volumes, 0));
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 0));
+
+    // The first volume has only 100L space, so the policy should
+    // choose the second one in case we ask for more.
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 150));
+
+    // Fail if no volume can be chosen?
+    try {
+      policy.chooseVolume(volumes, Long.MAX_VALUE);
+      Assert.fail();
+    } catch (IOException e) {
+      // Passed.
+    }
+  }
+
+  // With a preference of 1, only the volumes with a lot of free space are
+  // chosen.
+  @Test(timeout=60000)
+  public void testTwoUnbalancedVolumes() throws Exception {
+    VolumeChoosingPolicy<FsVolumeSpi> policy = newPolicy(1.0f);
+    List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    // First volume with 1MB free space, second with 3MB.
+    volumes.add(mockVolume(1024L * 1024L * 1));
+    volumes.add(mockVolume(1024L * 1024L * 3));
+
+    // All writes should be assigned to the volume with the most free space.
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 100));
+    }
+  }
+
+  @Test(timeout=60000)
+  public void testThreeUnbalancedVolumes() throws Exception {
+    VolumeChoosingPolicy<FsVolumeSpi> policy = newPolicy(1.0f);
+    List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    // The first volume with 1MB free space, the two others with 3MB.
+    volumes.add(mockVolume(1024L * 1024L * 1));
+    volumes.add(mockVolume(1024L * 1024L * 3));
+    volumes.add(mockVolume(1024L * 1024L * 3));
+
+    // The writes go round-robin to the volumes with the most free space.
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 100));
+    Assert.assertEquals(volumes.get(2), policy.chooseVolume(volumes, 100));
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 100));
+    Assert.assertEquals(volumes.get(2), policy.chooseVolume(volumes, 100));
+  }
+
+  // The volumes with little free space are used when they are the only ones
+  // with room for the replica, and skipped when they have no room for it.
+  @Test(timeout=60000)
+  public void testReplicaSize() throws Exception {
+    VolumeChoosingPolicy<FsVolumeSpi> policy = newPolicy(0.0f);
+    List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    volumes.add(mockVolume(1024L * 1024L * 1));
+    volumes.add(mockVolume(1024L * 1024L * 3));
+
+    // with a preference of 0, the fuller volume is chosen if it has room
+    Assert.assertEquals(volumes.get(0), policy.chooseVolume(volumes, 100));
+    Assert.assertEquals(volumes.get(1),
+        policy.chooseVolume(volumes, 1024L * 1024L * 2));
+  }
+
+  @Test(timeout=60000)
+  public void testAvailableSpaceChanges() throws Exception {
+    VolumeChoosingPolicy<FsVolumeSpi> policy = newPolicy(1.0f);
+    List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    volumes.add(mockVolume(1024L * 1024L * 1));
+    // The second volume has 3MB available, then 1MB the next time
+    FsVolumeSpi volume = Mockito.mock(FsVolumeSpi.class);
+    Mockito.when(volume.getAvailable())
+        .thenReturn(1024L * 1024L * 3)
+        .thenReturn(1024L * 1024L * 1);
+    volumes.add(volume);
+
+    Assert.assertEquals(volumes.get(1), policy.chooseVolume(volumes, 100));
+    // now the volumes are balanced and chosen in round-robin order
+    Assert.assertEquals(volumes.get(0), policy.chooseVolume(volumes, 100));
+  }
+
+  @Test(timeout=60000)
+  public void testPreferenceFraction() throws Exception {
+    doRandomizedTest(0.75f, 1, 1);
+    doRandomizedTest(0.75f, 1, 3);
+    doRandomizedTest(0.5f, 1, 1);
+    doRandomizedTest(0.25f, 2, 1);
+  }
+
+  private static void doRandomizedTest(float preferencePercent,
+      int lowSpaceVolumes, int highSpaceVolumes) throws Exception {
+    VolumeChoosingPolicy<FsVolumeSpi> policy = newPolicy(preferencePercent);
+    List<FsVolumeSpi> volumes = new ArrayList<FsVolumeSpi>();
+    for (int i = 0; i < lowSpaceVolumes; i++) {
+      volumes.add(mockVolume(1024L * 1024L * 1));
+    }
+    for (int i = 0; i < highSpaceVolumes; i++) {
+      volumes.add(mockVolume(1024L * 1024L * 10));
+    }
+
+    int highSpaceChosen = 0;
+    for (int i = 0; i < RANDOMIZED_ITERATIONS; i++) {
+      if (volumes.indexOf(policy.chooseVolume(volumes, 100))
+          >= lowSpaceVolumes) {
+        highSpaceChosen++;
+      }
+    }
+    float expected = highSpaceVolumes * preferencePercent
+        / (highSpaceVolumes * preferencePercent
+            + lowSpaceVolumes * (1 - preferencePercent));
+    Assert.assertEquals(expected,
+        (float) highSpaceChosen / RANDOMIZED_ITERATIONS,
+        RANDOMIZED_ERROR_PERCENT);
+  }
+}
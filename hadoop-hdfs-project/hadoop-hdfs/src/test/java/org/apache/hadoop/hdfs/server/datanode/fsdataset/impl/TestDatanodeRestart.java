@@ -21,9 +21,12 @@
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Random;
 
 import org.apache.hadoop.conf.Configuration;
@@ -34,6 +37,7 @@
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSCluster.DataNodeProperties;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.ReplicaState;
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
@@ -42,9 +46,12 @@
 import org.apache.hadoop.hdfs.server.datanode.ReplicaInfo;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
 import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.test.GenericTestUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.google.common.base.Supplier;
+
 /** Test if a datanode can correctly upgrade itself */
 public class TestDatanodeRestart {
   // test finalized replicas persist across DataNode restarts
@@ -181,6 +188,112 @@ private void testRbwReplicas(MiniDFSCluster cluster, boolean isCorrupt)
     }
   }
 
+  /**
+   * Test that the space used by the finalized replicas follows the replicas
+   * as they are written, appended to and deleted, and is saved across
+   * restarts.
+   */
+  @Test(timeout=120000)
+  public void testDfsUsed() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, 1024L);
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_WRITE_PACKET_SIZE_KEY, 512);
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_CACHED_DFSUSED_CHECK_INTERVAL_KEY,
+        3600000L);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem();
+      final String bpid = cluster.getNamesystem().getBlockPoolId();
+      final Path file1 = new Path("/file1");
+      final Path file2 = new Path("/file2");
+
+      DFSTestUtil.createFile(fs, file1, 1500, (short)1, 0L);
+      FSDataOutputStream out = fs.append(file1);
+      out.write(new byte[700]);
+      out.close();
+      assertDfsUsed(cluster.getDataNodes().get(0), bpid);
+      final int numReplicas =
+          dataset(cluster.getDataNodes().get(0)).volumeMap.size(bpid);
+
+      DFSTestUtil.createFile(fs, file2, 3000, (short)1, 0L);
+      assertDfsUsed(cluster.getDataNodes().get(0), bpid);
+      fs.delete(file2, true);
+      final FsDatasetImpl dataset = dataset(cluster.getDataNodes().get(0));
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          return dataset.volumeMap.size(bpid) == numReplicas &&
+              dataset.asyncDiskService.countPendingDeletions() == 0;
+        }
+      }, 100, 30000);
+      assertDfsUsed(cluster.getDataNodes().get(0), bpid);
+
+      // the space used saved at shutdown is used at the restart
+      DataNodeProperties dnprop = cluster.stopDataNode(0);
+      List<File> saved = findFiles(new File(cluster.getDataDirectory()),
+          "dfsUsed");
+      Assert.assertFalse(saved.isEmpty());
+      for (File f : saved) {
+        writeDfsUsed(f, 12345, System.currentTimeMillis());
+      }
+      cluster.restartDataNode(dnprop, true);
+      cluster.waitActive();
+      Assert.assertEquals(12345 * saved.size(),
+          dataset(cluster.getDataNodes().get(0)).getBlockPoolUsed(bpid));
+      Assert.assertTrue(findFiles(new File(cluster.getDataDirectory()),
+          "dfsUsed").isEmpty());
+
+      // a stale saved space used is ignored and the replicas are counted
+      dnprop = cluster.stopDataNode(0);
+      for (File f : findFiles(new File(cluster.getDataDirectory()),
+          "dfsUsed")) {
+        writeDfsUsed(f, 12345, 0);
+      }
+      cluster.restartDataNode(dnprop, true);
+      cluster.waitActive();
+      assertDfsUsed(cluster.getDataNodes().get(0), bpid);
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /** Assert that the space used is that of the finalized replicas. */
+  private static void assertDfsUsed(DataNode dn, String bpid)
+      throws IOException {
+    FsDatasetImpl dataset = dataset(dn);
+    long expected = 0;
+    for (ReplicaInfo r : dataset.volumeMap.replicas(bpid)) {
+      Assert.assertEquals(ReplicaState.FINALIZED, r.getState());
+      expected += r.getBlockFile().length() + r.getMetaFile().length();
+    }
+    Assert.assertTrue(expected > 0);
+    Assert.assertEquals(expected, dataset.getBlockPoolUsed(bpid));
+  }
+
+  private static List<File> findFiles(File dir, String name) {
+    List<File> found = new ArrayList<File>();
+    for (File f : dir.listFiles()) {
+      if (f.isDirectory()) {
+        found.addAll(findFiles(f, name));
+      } else if (f.getName().equals(name)) {
+        found.add(f);
+      }
+    }
+    return found;
+  }
+
+  private static void writeDfsUsed(File f, long used, long time)
+      throws IOException {
+    PrintWriter out = new PrintWriter(f, "UTF-8");
+    try {
+      out.print(used + " " + time);
+    } finally {
+      out.close();
+    }
+  }
+
   private static FsDatasetImpl dataset(DataNode dn) {
     return (FsDatasetImpl)DataNodeTestUtils.getFSDataset(dn);
   }
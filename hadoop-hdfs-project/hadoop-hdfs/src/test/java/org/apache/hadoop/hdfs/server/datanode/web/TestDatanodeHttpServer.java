@@ -0,0 +1,314 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.datanode.web;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
+import org.apache.hadoop.hdfs.web.WebHdfsFileSystem;
+import org.apache.hadoop.hdfs.web.WebHdfsTestUtil;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.net.NetUtils;
+import org.apache.hadoop.security.authorize.ProxyUsers;
+import org.junit.Test;
+
+/**
+ * Test WebHDFS against datanodes serving their http address with
+ * {@link DatanodeHttpServer}.
+ */
+public class TestDatanodeHttpServer {
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final int FILE_LENGTH = 3 * BLOCK_SIZE + 1000;
+
+  @Test
+  public void testTransferTo() throws Exception {
+    runTest(true);
+  }
+
+  @Test
+  public void testStream() throws Exception {
+    runTest(false);
+  }
+
+  private static void runTest(boolean transferTo) throws Exception {
+    final Configuration conf = WebHdfsTestUtil.createConf();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setBoolean(DFSConfigKeys.DFS_SUPPORT_APPEND_KEY, true);
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_ENABLED_KEY, true);
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_TRANSFERTO_KEY,
+        transferTo);
+    // a small memory per connection to exercise the back-pressure
+    conf.setLong(DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_MAX_CHANNEL_MEMORY_KEY,
+        16 * 1024);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final FileSystem webhdfs = FileSystem.newInstance(
+          WebHdfsTestUtil.getWebHdfsFileSystem(conf).getUri(), conf);
+      final Random r = new Random();
+      final byte[] data = new byte[FILE_LENGTH];
+      r.nextBytes(data);
+
+      // create, with the content sent in chunks
+      final Path file = new Path("/test/file");
+      FSDataOutputStream out = webhdfs.create(file);
+      out.write(data, 0, FILE_LENGTH - 100);
+      out.close();
+      assertEquals(FILE_LENGTH - 100,
+          cluster.getFileSystem().getFileStatus(file).getLen());
+
+      // append
+      out = webhdfs.append(file);
+      out.write(data, FILE_LENGTH - 100, 100);
+      out.close();
+      assertEquals(FILE_LENGTH,
+          cluster.getFileSystem().getFileStatus(file).getLen());
+
+      // read the whole file, and across the block boundaries
+      final byte[] read = new byte[FILE_LENGTH];
+      FSDataInputStream in = webhdfs.open(file);
+      in.readFully(read);
+      in.close();
+      assertArrayEquals(data, read);
+      for (int i = 0; i < 10; i++) {
+        final int offset = r.nextInt(FILE_LENGTH);
+        final byte[] part = new byte[r.nextInt(FILE_LENGTH - offset) + 1];
+        in = webhdfs.open(file);
+        in.seek(offset);
+        in.readFully(part);
+        in.close();
+        for (int j = 0; j < part.length; j++) {
+          assertEquals(data[offset + j], part[j]);
+        }
+      }
+
+      // the errors are returned as by Jersey
+      try {
+        webhdfs.open(new Path("/test/nonexistent")).read();
+        fail();
+      } catch (FileNotFoundException e) {
+        // expected
+      }
+
+      // the other operations are forwarded to Jetty
+      assertEquals(cluster.getFileSystem().getFileChecksum(file),
+          webhdfs.getFileChecksum(file));
+      final DataNode dn = cluster.getDataNodes().get(0);
+      final HttpURLConnection conn = (HttpURLConnection)new URL(
+          "http://localhost:" + dn.getInfoPort() + "/jmx").openConnection();
+      assertEquals(HttpURLConnection.HTTP_OK, conn.getResponseCode());
+      conn.disconnect();
+
+      // the datanode responds to OPEN with the length of the content
+      final InetSocketAddress nnAddr = cluster.getNameNode()
+          .getNameNodeAddress();
+      final URL url = new URL("http://localhost:" + dn.getInfoPort()
+          + WebHdfsFileSystem.PATH_PREFIX + file + "?op=OPEN&offset=10"
+          + "&namenoderpcaddress=" + NetUtils.getHostPortString(nnAddr));
+      final HttpURLConnection open = (HttpURLConnection)url.openConnection();
+      assertEquals(HttpURLConnection.HTTP_OK, open.getResponseCode());
+      assertEquals(FILE_LENGTH - 10, open.getContentLength());
+      final byte[] content = new byte[FILE_LENGTH - 10];
+      IOUtils.readFully(open.getInputStream(), content, 0, content.length);
+      open.disconnect();
+      for (int j = 0; j < content.length; j++) {
+        assertEquals(data[10 + j], content[j]);
+      }
+      webhdfs.close();
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Test that a corrupt replica is not served by default.
+   */
+  @Test
+  public void testCorruptReplica() throws Exception {
+    final Configuration conf = WebHdfsTestUtil.createConf();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_ENABLED_KEY, true);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final Path file = new Path("/test/file");
+      DFSTestUtil.createFile(cluster.getFileSystem(), file, FILE_LENGTH,
+          (short)1, 0L);
+      assertEquals(1, cluster.corruptBlockOnDataNodes(
+          DFSTestUtil.getFirstBlock(cluster.getFileSystem(), file)));
+
+      final DataNode dn = cluster.getDataNodes().get(0);
+      final URL url = new URL("http://localhost:" + dn.getInfoPort()
+          + WebHdfsFileSystem.PATH_PREFIX + file + "?op=OPEN"
+          + "&namenoderpcaddress=" + NetUtils.getHostPortString(
+              cluster.getNameNode().getNameNodeAddress()));
+      final HttpURLConnection open = (HttpURLConnection)url.openConnection();
+      try {
+        IOUtils.readFully(open.getInputStream(), new byte[FILE_LENGTH], 0,
+            FILE_LENGTH);
+        fail("Read a corrupt replica");
+      } catch (IOException e) {
+        // expected
+      } finally {
+        open.disconnect();
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Test that a client which does not read the content of an OPEN does not
+   * hold the only handler thread.
+   */
+  @Test(timeout=120000)
+  public void testStalledReader() throws Exception {
+    final Configuration conf = WebHdfsTestUtil.createConf();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_ENABLED_KEY, true);
+    conf.setInt(DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_THREADS_KEY, 1);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      // much larger than the socket buffers
+      final Path file = new Path("/test/file");
+      DFSTestUtil.createFile(cluster.getFileSystem(), file, 32 << 20,
+          (short)1, 0L);
+      final DataNode dn = cluster.getDataNodes().get(0);
+      final String nnAddr = NetUtils.getHostPortString(
+          cluster.getNameNode().getNameNodeAddress());
+
+      final Socket stalled = new Socket("127.0.0.1", dn.getInfoPort());
+      try {
+        final Writer out = new OutputStreamWriter(stalled.getOutputStream(),
+            "US-ASCII");
+        out.write("GET " + WebHdfsFileSystem.PATH_PREFIX + file
+            + "?op=OPEN&namenoderpcaddress=" + nnAddr
+            + " HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        out.flush();
+        assertEquals("HTTP/1.1 200 OK", new BufferedReader(
+            new InputStreamReader(stalled.getInputStream(), "US-ASCII"))
+            .readLine());
+
+        // the other requests are still served
+        final URL url = new URL("http://localhost:" + dn.getInfoPort()
+            + WebHdfsFileSystem.PATH_PREFIX + file + "?op=OPEN&length=10"
+            + "&namenoderpcaddress=" + nnAddr);
+        final HttpURLConnection open = (HttpURLConnection)url.openConnection();
+        open.setReadTimeout(30000);
+        assertEquals(HttpURLConnection.HTTP_OK, open.getResponseCode());
+        assertEquals(10, open.getContentLength());
+        open.disconnect();
+        final HttpURLConnection jmx = (HttpURLConnection)new URL(
+            "http://localhost:" + dn.getInfoPort() + "/jmx").openConnection();
+        jmx.setReadTimeout(30000);
+        assertEquals(HttpURLConnection.HTTP_OK, jmx.getResponseCode());
+        jmx.disconnect();
+      } finally {
+        stalled.close();
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * Test that the proxy users of the requests forwarded to Jetty are
+   * authorized against the address of the client, not of the proxy.
+   */
+  @Test
+  public void testForwardedProxyUser() throws Exception {
+    final Configuration conf = WebHdfsTestUtil.createConf();
+    conf.setBoolean(DFSConfigKeys.DFS_DATANODE_WEBHDFS_NETTY_ENABLED_KEY, true);
+    conf.set(ProxyUsers.getProxySuperuserGroupConfKey("alice"), "*");
+    // the datanode calls the namenode as the proxy user from 127.0.0.1
+    conf.set(ProxyUsers.getProxySuperuserIpConfKey("alice"),
+        "127.0.0.1,127.0.0.2");
+    ProxyUsers.refreshSuperUserGroupsConfiguration(conf);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    try {
+      cluster.waitActive();
+      final Path file = new Path("/test/file");
+      DFSTestUtil.createFile(cluster.getFileSystem(), file, 1000, (short)1,
+          0L);
+      final DataNode dn = cluster.getDataNodes().get(0);
+      final String uri = WebHdfsFileSystem.PATH_PREFIX + file
+          + "?op=GETFILECHECKSUM&user.name=alice&doas=bob"
+          + "&namenoderpcaddress=" + NetUtils.getHostPortString(
+              cluster.getNameNode().getNameNodeAddress());
+      // the header sent by the client is replaced by the proxy
+      assertEquals(HttpURLConnection.HTTP_UNAUTHORIZED, getResponseCode(
+          "127.0.0.3", dn.getInfoPort(), uri, "127.0.0.2"));
+      assertEquals(HttpURLConnection.HTTP_OK, getResponseCode(
+          "127.0.0.2", dn.getInfoPort(), uri, null));
+    } finally {
+      cluster.shutdown();
+      ProxyUsers.refreshSuperUserGroupsConfiguration(new Configuration());
+    }
+  }
+
+  /**
+   * Send a GET request from a local address, and return the status code of
+   * the response.
+   */
+  private static int getResponseCode(String localAddr, int port, String uri,
+      String forwardedFor) throws IOException {
+    final Socket s = new Socket();
+    try {
+      s.bind(new InetSocketAddress(localAddr, 0));
+      s.connect(new InetSocketAddress("127.0.0.1", port));
+      final Writer out = new OutputStreamWriter(s.getOutputStream(),
+          "US-ASCII");
+      out.write("GET " + uri + " HTTP/1.1\r\nHost: localhost\r\n"
+          + (forwardedFor == null ? ""
+              : ForwardedRequestFilter.FORWARDED_FOR + ": " + forwardedFor
+                  + "\r\n")
+          + "Connection: close\r\n\r\n");
+      out.flush();
+      final String status = new BufferedReader(new InputStreamReader(
+          s.getInputStream(), "US-ASCII")).readLine();
+      return Integer.parseInt(status.split(" ")[1]);
+    } finally {
+      s.close();
+    }
+  }
+}
@@ -19,12 +19,18 @@
 package org.apache.hadoop.hdfs.server.namenode;
 
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOGGERS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCK_TIMEOUT_MS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
@@ -34,6 +40,7 @@
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.ipc.RemoteException;
+import org.apache.hadoop.hdfs.server.namenode.AuditLogQueue.AuditEvent;
 import org.apache.hadoop.security.UserGroupInformation;
 import org.junit.Test;
 
@@ -51,6 +58,7 @@ public void testAuditLogger() throws IOException {
     conf.set(DFS_NAMENODE_AUDIT_LOGGERS_KEY,
         DummyAuditLogger.class.getName());
     MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    DummyAuditLogger.logCount = 0;
 
     try {
       cluster.waitClusterUp();
@@ -65,6 +73,116 @@ public void testAuditLogger() throws IOException {
     }
   }
 
+  /**
+   * Tests that audit events are passed to the audit loggers when they are
+   * logged asynchronously.
+   */
+  @Test
+  public void testAsyncAuditLogger() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFS_NAMENODE_AUDIT_LOGGERS_KEY,
+        DummyAuditLogger.class.getName());
+    conf.setBoolean(DFS_NAMENODE_AUDIT_LOG_ASYNC_KEY, true);
+    MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf).build();
+    DummyAuditLogger.logCount = 0;
+
+    FSNamesystem namesystem = null;
+    try {
+      cluster.waitClusterUp();
+      namesystem = cluster.getNamesystem();
+
+      FileSystem fs = cluster.getFileSystem();
+      long time = System.currentTimeMillis();
+      fs.setTimes(new Path("/"), time, time);
+    } finally {
+      // stopping the namesystem logs the events still queued
+      cluster.shutdown();
+    }
+    assertEquals(1, DummyAuditLogger.logCount);
+    assertEquals(1, namesystem.getAuditEventsLogged());
+    assertEquals(0, namesystem.getAuditEventsDropped());
+  }
+
+  /**
+   * Tests that events are dropped when the queue is full and the overflow
+   * policy is DROP.
+   */
+  @Test
+  public void testAuditLogQueueDrop() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY, 1);
+    conf.set(DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_KEY, "drop");
+    BlockingAuditLogger logger = new BlockingAuditLogger();
+    AuditLogQueue queue = new AuditLogQueue(conf,
+        Collections.<AuditLogger>singletonList(logger));
+    queue.start();
+
+    UserGroupInformation ugi = UserGroupInformation.getCurrentUser();
+    queue.add(new AuditEvent(true, ugi, null, "open", "/f1", null, null));
+    // the writer is now blocked in the logger, so one more event fits
+    logger.entered.await();
+    queue.add(new AuditEvent(true, ugi, null, "open", "/f2", null, null));
+    queue.add(new AuditEvent(true, ugi, null, "open", "/f3", null, null));
+    assertEquals(1, queue.getQueueSize());
+    assertEquals(1, queue.getNumDropped());
+
+    logger.release.countDown();
+    queue.stop();
+    assertEquals(0, queue.getQueueSize());
+    assertEquals(2, queue.getNumLogged());
+  }
+
+  /**
+   * Tests that a handler logs the event itself when the queue stays full
+   * for longer than the timeout under the BLOCK policy.
+   */
+  @Test
+  public void testAuditLogQueueBlockTimeout() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFS_NAMENODE_AUDIT_LOG_ASYNC_QUEUE_SIZE_KEY, 1);
+    conf.set(DFS_NAMENODE_AUDIT_LOG_ASYNC_OVERFLOW_POLICY_KEY, "block");
+    conf.setLong(DFS_NAMENODE_AUDIT_LOG_ASYNC_BLOCK_TIMEOUT_MS_KEY, 10);
+    BlockingAuditLogger logger = new BlockingAuditLogger();
+    AuditLogQueue queue = new AuditLogQueue(conf,
+        Collections.<AuditLogger>singletonList(logger));
+    queue.start();
+
+    UserGroupInformation ugi = UserGroupInformation.getCurrentUser();
+    queue.add(new AuditEvent(true, ugi, null, "open", "/f1", null, null));
+    logger.entered.await();
+    queue.add(new AuditEvent(true, ugi, null, "open", "/f2", null, null));
+    // the queue is full, so this one is logged by the calling thread
+    queue.add(new AuditEvent(true, ugi, null, "open", "/f3", null, null));
+    assertEquals(1, queue.getQueueSize());
+    assertEquals(1, queue.getNumLogged());
+    assertEquals(0, queue.getNumDropped());
+
+    logger.release.countDown();
+    queue.stop();
+    assertEquals(3, queue.getNumLogged());
+
+    // the events added once the writer has stopped are logged directly
+    queue.add(new AuditEvent(true, ugi, null, "open", "/f4", null, null));
+    assertEquals(0, queue.getQueueSize());
+    assertEquals(4, queue.getNumLogged());
+  }
+
+  /**
+   * Tests that the events which an audit logger fails to log from the
+   * queue are counted.
+   */
+  @Test
+  public void testAuditLogQueueFailure() throws Exception {
+    AuditLogQueue queue = new AuditLogQueue(new HdfsConfiguration(),
+        Collections.<AuditLogger>singletonList(new BrokenAuditLogger()));
+    queue.start();
+    UserGroupInformation ugi = UserGroupInformation.getCurrentUser();
+    queue.add(new AuditEvent(true, ugi, null, "open", "/f1", null, null));
+    queue.stop();
+    assertEquals(0, queue.getNumLogged());
+    assertEquals(1, queue.getNumFailed());
+  }
+
   /**
    * Tests that a broken audit logger causes requests to fail.
    */
@@ -106,6 +224,32 @@ public void logAuditEvent(boolean succeeded, String userName,
 
   }
 
+  /** Blocks the first call until it is released. */
+  private static class BlockingAuditLogger implements AuditLogger {
+
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    public void initialize(Configuration conf) {
+      // No op.
+    }
+
+    public void logAuditEvent(boolean succeeded, String userName,
+        InetAddress addr, String cmd, String src, String dst,
+        FileStatus stat) {
+      if (entered.getCount() == 0) {
+        return;
+      }
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+  }
+
   public static class BrokenAuditLogger implements AuditLogger {
 
     public void initialize(Configuration conf) {
@@ -83,6 +83,8 @@ public static void setUp() throws Exception {
         4);
     conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1000);
     conf.setInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_INTERVAL_KEY, 1);
+    // yield the lock between every block checked
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_DECOMMISSION_BLOCKS_PER_LOCK_KEY, 1);
     writeConfigFile(localFileSys, excludeFile, null);
     writeConfigFile(localFileSys, includeFile, null);
 
@@ -166,6 +168,9 @@ private void checkDecommissionStatus(DatanodeDescriptor decommNode,
         expectedDecommissionOnly);
     assertEquals(decommNode.decommissioningStatus
         .getUnderReplicatedInOpenFiles(), expectedUnderRepInOpenFiles);
+    // only the under-replicated blocks are checked again
+    assertEquals(expectedUnderRep,
+        decommNode.decommissioningStatus.getPendingBlocks());
   }
   
   /**
@@ -205,12 +210,14 @@ public void testDecommissionStatus() throws IOException, InterruptedException {
         assertEquals(decommissioningNodes.size(), 1);
         DatanodeDescriptor decommNode = decommissioningNodes.get(0);
         checkDecommissionStatus(decommNode, 4, 0, 2);
+        assertEquals(4, fsn.getPendingDecommissionBlocks());
       } else {
         assertEquals(decommissioningNodes.size(), 2);
         DatanodeDescriptor decommNode1 = decommissioningNodes.get(0);
         DatanodeDescriptor decommNode2 = decommissioningNodes.get(1);
         checkDecommissionStatus(decommNode1, 4, 4, 2);
         checkDecommissionStatus(decommNode2, 4, 4, 2);
+        assertEquals(8, fsn.getPendingDecommissionBlocks());
       }
     }
     // Call refreshNodes on FSNamesystem with empty exclude file.
@@ -21,10 +21,14 @@
 
 import java.io.BufferedReader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.DistributedFileSystem;
@@ -139,6 +143,120 @@ public void testReset() throws Exception {
     Assert.assertTrue(fsdir.isReady());
   }
   
+  /**
+   * Make changes to the namespace, checking that the content counts cached
+   * in directories are kept consistent, and that drift is corrected.
+   */
+  @Test
+  public void testCachedContentCounts() throws Exception {
+    Assert.assertTrue(fsdir.isCachingContentCounts());
+    assertContentSummary(4 * 1024, 4, 4);
+
+    hdfs.rename(sub11, new Path(sub2, sub11.getName()));
+    hdfs.delete(file1, false);
+    hdfs.setReplication(file2, (short)1);
+    assertContentSummary(3 * 1024, 3, 4);
+
+    FSDataOutputStream out = hdfs.append(file5);
+    out.write(new byte[512]);
+    out.hflush();
+    assertContentSummary(3 * 1024, 3, 4);
+    out.close();
+    assertContentSummary(3 * 1024 + 512, 3, 4);
+
+    out = hdfs.create(file4);
+    out.write(new byte[1024]);
+    out.close();
+    assertContentSummary(4 * 1024 + 512, 4, 4);
+
+    // introduce drift, which should be corrected by the verification
+    ((INodeDirectory)fsdir.getINode(sub1.toString())).addContentCounts(
+        new long[]{100, 0, 0, 0});
+    Assert.assertEquals(4 * 1024 + 612, hdfs.getContentSummary(dir).getLength());
+    Assert.assertEquals(1, fsn.verifyContentCounts());
+    assertContentSummary(4 * 1024 + 512, 4, 4);
+
+    // the counts are recomputed on restart
+    cluster.restartNameNode();
+    fsn = cluster.getNamesystem();
+    fsdir = fsn.getFSDirectory();
+    hdfs = cluster.getFileSystem();
+    assertContentSummary(4 * 1024 + 512, 4, 4);
+  }
+
+  /**
+   * Test that the verification of the content counts visits a large
+   * directory over several lock holds, and only corrects the counts when
+   * they did not change in between.
+   */
+  @Test
+  public void testContentCountsWalkBounded() throws Exception {
+    final Path big = new Path(dir, "big");
+    for (int i = 0; i < 10; i++) {
+      hdfs.create(new Path(big, "file" + i)).close();
+    }
+    final INodeDirectory bigDir = (INodeDirectory)fsdir.getINode(
+        big.toString());
+    final long[] drift = new long[]{0, 100, 0, 0};
+
+    // the files of big are visited over several calls
+    bigDir.addContentCounts(drift);
+    FSDirectory.ContentCountsWalk walk = fsdir.new ContentCountsWalk();
+    int visits = 0;
+    int corrected = 0;
+    while (!walk.isDone()) {
+      visits++;
+      if (walk.visit(3) && walk.correct()) {
+        corrected++;
+      }
+    }
+    Assert.assertTrue("visits=" + visits, visits > 10 / 3);
+    Assert.assertEquals(1, corrected);
+    assertContentSummary(4 * 1024, 14, 5);
+
+    // the counts change between the calls, so they are not corrected; the
+    // new files sort before those already visited
+    bigDir.addContentCounts(drift);
+    walk = fsdir.new ContentCountsWalk();
+    corrected = 0;
+    for (int i = 0; !walk.isDone(); i++) {
+      if (walk.visit(1) && walk.correct()) {
+        corrected++;
+      }
+      hdfs.create(new Path(big, "a" + i)).close();
+    }
+    Assert.assertEquals(0, corrected);
+    Assert.assertEquals(1, fsn.verifyContentCounts());
+  }
+
+  private void assertContentSummary(long length, long fileCount,
+      long dirCount) throws Exception {
+    Assert.assertEquals(0, fsn.verifyContentCounts());
+    ContentSummary summary = hdfs.getContentSummary(dir);
+    Assert.assertEquals(length, summary.getLength());
+    Assert.assertEquals(fileCount, summary.getFileCount());
+    Assert.assertEquals(dirCount, summary.getDirectoryCount());
+
+    // compare with the counts computed by walking the tree
+    long spaceConsumed = 0;
+    for (INodeFile file : getFiles(fsdir.getINode(dir.toString()))) {
+      spaceConsumed += file.diskspaceConsumed();
+    }
+    Assert.assertEquals(spaceConsumed, summary.getSpaceConsumed());
+  }
+
+  private static List<INodeFile> getFiles(INode inode) {
+    List<INodeFile> files = new ArrayList<INodeFile>();
+    if (inode.isDirectory()) {
+      for (INode child : ((INodeDirectory)inode).getChildrenList()) {
+        files.addAll(getFiles(child));
+      }
+    } else if (inode.isFile()) {
+      files.add((INodeFile)inode);
+    }
+    return files;
+  }
+
   static void checkClassName(String line) {
     int i = line.lastIndexOf('(');
     int j = line.lastIndexOf('@');
@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+
+import org.apache.hadoop.hdfs.server.namenode.LeaseManager.Lease;
+import org.apache.hadoop.util.Time;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Test the renewal and the expiry of the leases by the {@link LeaseManager}.
+ */
+public class TestLeaseManager {
+  private LeaseManager lm;
+
+  @Before
+  public void setUp() throws Exception {
+    final FSNamesystem fsn = Mockito.mock(FSNamesystem.class);
+    Mockito.when(fsn.hasWriteLock()).thenReturn(true);
+    lm = new LeaseManager(fsn);
+    // releasing a path takes a few milliseconds and closes the file
+    Mockito.doAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(2);
+        final Object[] args = invocation.getArguments();
+        lm.removeLease((Lease)args[0], (String)args[1]);
+        return true;
+      }
+    }).when(fsn).internalReleaseLease(any(Lease.class), anyString(),
+        anyString());
+  }
+
+  /**
+   * Test that the renewed leases are moved to their place when the monitor
+   * checks the leases, and are not released.
+   */
+  @Test
+  public void testRenewedLeaseNotExpired() throws Exception {
+    lm.addLease("a", "/a");
+    Thread.sleep(200);
+    lm.addLease("b", "/b");
+    Thread.sleep(200);
+    lm.renewLease("a");
+    // the renewal does not reorder the leases
+    assertSame(lm.getLease("a"), lm.getSortedLeases().first());
+
+    // only b has expired
+    final long a = lm.getLease("a").getLastUpdate();
+    lm.setLeasePeriod(0, Time.now() - a + 100);
+    assertFalse(lm.checkLeases());
+    assertNotNull(lm.getLease("a"));
+    assertNull(lm.getLease("b"));
+    assertNull(lm.getLeaseByPath("/b"));
+    assertSame(lm.getLease("a"), lm.getSortedLeases().first());
+    assertEquals(1, lm.countLease());
+  }
+
+  /**
+   * Test that the expired leases are released in several checks when they
+   * take longer than the maximum lock hold time.
+   */
+  @Test
+  public void testCheckLeasesBounded() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      lm.addLease("holder", "/file" + i);
+    }
+    lm.addLease("other", "/other");
+    lm.setLeasePeriod(-1, -1);
+    lm.setMaxLockHoldToReleaseLease(0);
+
+    // one path is released per check
+    for (int i = 4; i > 0; i--) {
+      assertEquals(i, lm.countPath());
+      lm.checkLeases();
+    }
+    assertEquals(0, lm.countPath());
+    assertEquals(0, lm.countLease());
+
+    // all the paths are released in one check
+    for (int i = 0; i < 3; i++) {
+      lm.addLease("holder", "/file" + i);
+    }
+    lm.setMaxLockHoldToReleaseLease(60000);
+    lm.checkLeases();
+    assertEquals(0, lm.countLease());
+  }
+
+  /**
+   * Test that the renewed leases are moved to their place in several checks
+   * when they take longer than the maximum lock hold time, and are moved
+   * without the namesystem lock before the checks.
+   */
+  @Test
+  public void testSortRenewedLeasesBounded() throws Exception {
+    final int n = 100000;
+    for (int i = 0; i < n; i++) {
+      lm.addLease("holder" + i, "/file" + i);
+    }
+    Thread.sleep(10);
+    lm.renewAllLeases();
+    lm.setMaxLockHoldToReleaseLease(0);
+
+    // a check stops moving the leases after the maximum lock hold time
+    assertFalse(lm.checkLeases());
+    assertTrue(lm.getSortedLeases().first().isRenewedSinceSorted());
+    assertFalse(lm.getSortedLeases().last().isRenewedSinceSorted());
+    assertEquals(n, lm.countLease());
+
+    // so does each round of the monitor sorting them before the checks
+    assertFalse(lm.sortRenewedLeases(0));
+    assertTrue(lm.getSortedLeases().first().isRenewedSinceSorted());
+    lm.sortRenewedLeases();
+    for (Lease lease : lm.getSortedLeases()) {
+      assertFalse(lease.isRenewedSinceSorted());
+    }
+    assertFalse(lm.checkLeases());
+    assertEquals(n, lm.countLease());
+  }
+}
@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hdfs.server.namenode.ha;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -33,6 +34,7 @@
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.MiniDFSNNTopology;
+import org.apache.hadoop.hdfs.qjournal.MiniJournalCluster;
 import org.apache.hadoop.hdfs.server.namenode.FSImage;
 import org.apache.hadoop.hdfs.server.namenode.NNStorage;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
@@ -104,6 +106,58 @@ public void testTailer() throws IOException, InterruptedException,
     }
   }
   
+  @Test(timeout=60000)
+  public void testTailInProgressEditsFromJournalNodes() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_HA_TAILEDITS_INPROGRESS_KEY, true);
+    // Never roll, so that the edits are only in the in-progress segment
+    conf.setInt(DFSConfigKeys.DFS_HA_LOGROLL_PERIOD_KEY, -1);
+    HAUtil.setAllowStandbyReads(conf, true);
+
+    MiniJournalCluster journalCluster = new MiniJournalCluster.Builder(conf)
+      .build();
+    MiniDFSCluster cluster = null;
+    try {
+      conf.set(DFSConfigKeys.DFS_NAMENODE_SHARED_EDITS_DIR_KEY,
+          journalCluster.getQuorumJournalURI("ns1").toString());
+      cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology())
+        .manageNameDfsSharedDirs(false)
+        .numDataNodes(0)
+        .build();
+      cluster.waitActive();
+      cluster.transitionToActive(0);
+
+      NameNode active = cluster.getNameNode(0);
+      final NameNode standby = cluster.getNameNode(1);
+      for (int i = 0; i < DIRS_TO_MAKE; i++) {
+        NameNodeAdapter.mkdirs(active, getDirPath(i),
+            new PermissionStatus("test","test", new FsPermission((short)00755)),
+            true);
+      }
+
+      GenericTestUtils.waitFor(new Supplier<Boolean>() {
+        @Override
+        public Boolean get() {
+          try {
+            return NameNodeAdapter.getFileInfo(standby,
+                getDirPath(DIRS_TO_MAKE - 1), false) != null;
+          } catch (IOException ioe) {
+            throw new RuntimeException(ioe);
+          }
+        }
+      }, 100, 10000);
+      assertEquals(
+          active.getNamesystem().getFSImage().getLastAppliedOrWrittenTxId(),
+          standby.getNamesystem().getFSImage().getLastAppliedTxId());
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+      journalCluster.shutdown();
+    }
+  }
+
   @Test
   public void testNN0TriggersLogRolls() throws Exception {
     testStandbyTriggersLogRolls(0);
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.ha;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.FileNotFoundException;
+import java.util.Collections;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.HAUtil;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSNNTopology;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
+import org.apache.hadoop.ipc.RemoteException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that clients with standby reads enabled read from the standby
+ * NameNode, and fall back to the active one when the standby cannot serve
+ * them.
+ */
+public class TestStandbyReads {
+  private static final Path TEST_DIR = new Path("/test-dir");
+  private static final Path TEST_FILE = new Path("/test-file");
+  private static final int TEST_FILE_LEN = 1024;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+
+  @Before
+  public void setupConf() {
+    conf = new Configuration();
+    conf.setBoolean(DFSConfigKeys.DFS_CLIENT_STANDBY_READS_ENABLED_KEY, true);
+    conf.setLong(
+        DFSConfigKeys.DFS_CLIENT_STANDBY_READS_RECHECK_INTERVAL_KEY, 0);
+    // reads must not get to the standby through a failover
+    conf.setInt(DFSConfigKeys.DFS_CLIENT_FAILOVER_MAX_ATTEMPTS_KEY, 0);
+    // the standby only sees the edits once the active rolls its log
+    conf.setInt(DFSConfigKeys.DFS_HA_TAILEDITS_PERIOD_KEY, 1);
+  }
+
+  @After
+  public void shutdownCluster() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private void startCluster() throws Exception {
+    cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHATopology())
+        .numDataNodes(1)
+        .build();
+    cluster.waitActive();
+    cluster.transitionToActive(0);
+  }
+
+  @Test(timeout=60000)
+  public void testReadFromStandby() throws Exception {
+    HAUtil.setAllowStandbyReads(conf, true);
+    startCluster();
+    NameNode nn0 = cluster.getNameNode(0);
+    NameNode nn1 = cluster.getNameNode(1);
+    FileSystem fs = HATestUtil.configureFailoverFs(cluster, conf);
+
+    DFSTestUtil.createFile(fs, TEST_FILE, TEST_FILE_LEN, (short)1, 0);
+    fs.mkdirs(TEST_DIR);
+    // the standby has not seen the changes yet, the active serves the read
+    assertTrue(fs.getFileStatus(TEST_DIR).isDirectory());
+
+    HATestUtil.waitForStandbyToCatchUp(nn0, nn1);
+    cluster.shutdownNameNode(0);
+
+    // the standby alone serves the reads now
+    assertTrue(fs.getFileStatus(TEST_DIR).isDirectory());
+    assertEquals(2, fs.listStatus(new Path("/")).length);
+    assertEquals(TEST_FILE_LEN,
+        DFSTestUtil.readFile(fs, TEST_FILE).length());
+  }
+
+  @Test(timeout=60000)
+  public void testStandbyRejectsReads() throws Exception {
+    HAUtil.setAllowStandbyReads(conf, false);
+    startCluster();
+    FileSystem fs = HATestUtil.configureFailoverFs(cluster, conf);
+
+    fs.mkdirs(TEST_DIR);
+    HATestUtil.waitForStandbyToCatchUp(cluster.getNameNode(0),
+        cluster.getNameNode(1));
+
+    // the standby throws StandbyException, the active serves the read
+    assertTrue(fs.getFileStatus(TEST_DIR).isDirectory());
+    assertEquals(1, fs.listStatus(new Path("/")).length);
+  }
+
+  /**
+   * Test that an error other than a StandbyException from the standby is
+   * not passed to the caller, but the read is retried on the active.
+   */
+  @Test(timeout=60000)
+  @SuppressWarnings("unchecked")
+  public void testStandbyErrorFallsBackToActive() throws Throwable {
+    ClientProtocol active = mock(ClientProtocol.class);
+    ClientProtocol standby = mock(ClientProtocol.class);
+    ConfiguredFailoverProxyProvider<ClientProtocol> provider =
+        mock(ConfiguredFailoverProxyProvider.class);
+    when(provider.getStandbyProxies()).thenReturn(
+        Collections.singletonList(standby));
+    when(active.getAppliedTxId(anyLong())).thenReturn(5L);
+    when(standby.getAppliedTxId(anyLong())).thenReturn(5L);
+    HdfsFileStatus status = mock(HdfsFileStatus.class);
+    when(active.getFileInfo(anyString())).thenReturn(status);
+    when(standby.getFileInfo(anyString())).thenThrow(new RemoteException(
+        FileNotFoundException.class.getName(), "not there yet"));
+
+    StandbyReadInvocationHandler handler =
+        new StandbyReadInvocationHandler(active, provider, conf);
+    assertSame(status, handler.invoke(null,
+        ClientProtocol.class.getMethod("getFileInfo", String.class),
+        new Object[]{"/f"}));
+  }
+}
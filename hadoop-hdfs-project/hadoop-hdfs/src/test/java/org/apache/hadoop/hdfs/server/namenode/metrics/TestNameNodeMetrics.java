@@ -45,6 +45,7 @@
 import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.namenode.NameNodeAdapter;
 import org.apache.hadoop.metrics2.MetricsRecordBuilder;
 import org.apache.hadoop.test.MetricsAsserts;
@@ -450,4 +451,24 @@ public void testSyncAndBlockReportMetric() throws Exception {
     assertQuantileGauges("Syncs1s", rb);
     assertQuantileGauges("BlockReport1s", rb);
   }
+
+  /**
+   * Tests that the initial block reports are looked up under the read lock
+   * and that the startup phases are timed when the namenode restarts.
+   */
+  @Test
+  public void testStartupMetrics() throws Exception {
+    createFile(getTestPath("file"), 1000, (short)DATANODE_COUNT);
+    cluster.restartNameNode();
+
+    // The source of the restarted namenode is registered under another name
+    MetricsRecordBuilder rb = MetricsAsserts.mockMetricsRecordBuilder();
+    NameNode.getNameNodeMetrics().registry.snapshot(rb, true);
+    // The report reaching the threshold is in the startup safe mode
+    assertTrue(MetricsAsserts.getLongCounter(
+        "FirstBlockReportLookupNumOps", rb) > 0);
+    assertTrue(MetricsAsserts.getIntGauge("SafeModeThresholdTime", rb) > 0);
+    assertTrue(MetricsAsserts.getIntGauge("SafeModeTime", rb)
+        >= MetricsAsserts.getIntGauge("SafeModeThresholdTime", rb));
+  }
 }
@@ -0,0 +1,288 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.tools.offlineImageViewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileContext;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
+import org.apache.hadoop.hdfs.server.namenode.FSImageTestUtil;
+import org.apache.hadoop.hdfs.tools.offlineImageViewer.ImageIndex.GroupBy;
+import org.apache.hadoop.hdfs.tools.offlineImageViewer.ImageIndex.Stats;
+import org.apache.hadoop.hdfs.web.WebHdfsFileSystem;
+import org.apache.hadoop.net.NetUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test the index of an image written by {@link ImageIndexVisitor}, its
+ * queries and its WebHDFS server against the namespace of the image.
+ */
+public class TestImageIndex {
+  private static final String ROOT = System.getProperty("test.build.data",
+      "build/test/data");
+  private static final int NUM_DIRS = 3;
+  private static final int FILES_PER_DIR = 5;
+
+  private static File indexDir;
+  private static ImageIndex index;
+  /** The files and directories of the image, by path. */
+  private static final Map<String, FileStatus> statuses =
+      new TreeMap<String, FileStatus>();
+  private static final Map<String, ContentSummary> summaries =
+      new HashMap<String, ContentSummary>();
+
+  @BeforeClass
+  public static void createIndex() throws IOException {
+    final Configuration conf = new HdfsConfiguration();
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1).build();
+    File image;
+    try {
+      cluster.waitActive();
+      final DistributedFileSystem hdfs = cluster.getFileSystem();
+      long size = 0;
+      for (int i = 0; i < NUM_DIRS; i++) {
+        final Path dir = new Path("/user/u" + i + "/dir");
+        for (int j = 0; j < FILES_PER_DIR; j++) {
+          DFSTestUtil.createFile(hdfs, new Path(dir, "file" + j), size,
+              (short)1, 0L);
+          size = size * 2 + 1;
+        }
+        hdfs.setOwner(new Path("/user/u" + i), "u" + i, "g" + (i % 2));
+        hdfs.setOwner(dir, "u" + i, "g" + (i % 2));
+        for (int j = 0; j < FILES_PER_DIR; j++) {
+          hdfs.setOwner(new Path(dir, "file" + j), "u" + i, "g" + (i % 2));
+        }
+      }
+      hdfs.setQuota(new Path("/user/u0"), 1000, 1000000);
+      final FileContext fc = FileContext.getFileContext(cluster.getURI(0),
+          conf);
+      fc.createSymlink(new Path("/user/u0/dir/file0"),
+          new Path("/user/u0/link"), false);
+
+      final Path root = new Path("/");
+      statuses.put("/", fc.getFileStatus(root));
+      collect(fc, root);
+      for (String p : statuses.keySet()) {
+        summaries.put(p, hdfs.getContentSummary(new Path(p)));
+      }
+
+      cluster.getNameNodeRpc()
+          .setSafeMode(SafeModeAction.SAFEMODE_ENTER, false);
+      cluster.getNameNodeRpc().saveNamespace();
+      image = FSImageTestUtil.findLatestImageFile(FSImageTestUtil
+          .getFSImage(cluster.getNameNode()).getStorage().getStorageDir(0));
+    } finally {
+      cluster.shutdown();
+    }
+
+    indexDir = new File(ROOT, "imageIndex");
+    FileUtil.fullyDelete(indexDir);
+    new OfflineImageViewer(image.getPath(),
+        new ImageIndexVisitor(indexDir.getPath()), false).go();
+    index = new ImageIndex(indexDir);
+  }
+
+  private static void collect(FileContext fc, Path dir) throws IOException {
+    // the listings have the status of the links, not of their targets
+    for (FileStatus child : fc.util().listStatus(dir)) {
+      statuses.put(child.getPath().toUri().getPath(), child);
+      if (child.isDirectory()) {
+        collect(fc, child.getPath());
+      }
+    }
+  }
+
+  @AfterClass
+  public static void deleteIndex() {
+    FileUtil.fullyDelete(indexDir);
+  }
+
+  @Test
+  public void testInodes() throws IOException {
+    assertEquals(statuses.size(), index.getNumRows());
+    for (Map.Entry<String, FileStatus> e : statuses.entrySet()) {
+      final int row = index.lookup(e.getKey());
+      assertTrue(e.getKey(), row >= 0);
+      assertEquals(e.getKey(), index.getPath(row));
+      final FileStatus expected = e.getValue();
+      final byte type = index.getType(row);
+      assertEquals(expected.isDirectory(), type == ImageIndex.DIRECTORY);
+      assertEquals(expected.isSymlink(), type == ImageIndex.SYMLINK);
+      assertEquals(expected.getLen(), index.getLength(row));
+      assertEquals(expected.getOwner(), index.getOwner(row));
+      assertEquals(expected.getGroup(), index.getGroup(row));
+      assertEquals(expected.getPermission().toShort(),
+          index.getPermission(row));
+      if (!expected.isSymlink()) {
+        // the dates are indexed to the minute, the links have none
+        assertEquals(expected.getModificationTime() / 60000,
+            index.getModificationTime(row) / 60000);
+      }
+    }
+    assertEquals(-1, index.lookup("/user/nonexistent"));
+    assertEquals(-1, index.lookup("/user/u0/dir/file0/child"));
+  }
+
+  @Test
+  public void testAggregate() throws IOException {
+    final Map<String, Stats> expected = new TreeMap<String, Stats>();
+    for (FileStatus s : statuses.values()) {
+      if (s.isFile()) {
+        Stats stats = expected.get(s.getOwner());
+        if (stats == null) {
+          stats = new Stats();
+          expected.put(s.getOwner(), stats);
+        }
+        stats.files++;
+        stats.bytes += s.getLen();
+        stats.space += s.getLen() * s.getReplication();
+        stats.blocks += (s.getLen() + s.getBlockSize() - 1) / s.getBlockSize();
+      }
+    }
+    for (int threads = 1; threads <= 8; threads *= 2) {
+      assertEquals(expected.toString(),
+          index.aggregate(GroupBy.OWNER, 0, Long.MAX_VALUE, threads)
+              .toString());
+    }
+
+    // the file sizes are 0, 1, 3, 7, ...
+    final Map<String, Stats> bySize = index.aggregate(GroupBy.SIZE, 0,
+        Long.MAX_VALUE, 4);
+    assertEquals(FILES_PER_DIR * NUM_DIRS, bySize.size());
+    assertEquals(1, bySize.get("0").files);
+    assertEquals(1, bySize.get("4").files);
+
+    final Map<String, Stats> byDepth = index.aggregate(GroupBy.DEPTH, 0,
+        Long.MAX_VALUE, 4);
+    assertEquals(1, byDepth.size());
+    assertEquals(FILES_PER_DIR * NUM_DIRS, byDepth.get("4").files);
+
+    // the small files, by directory
+    final Map<String, Stats> small = index.aggregate(GroupBy.PARENT, 0,
+        511, 4);
+    assertEquals(2, small.size());
+    assertEquals(FILES_PER_DIR, small.get("/user/u0/dir").files);
+    assertEquals(FILES_PER_DIR, small.get("/user/u1/dir").files);
+  }
+
+  /** Index an image with full paths, as in {@link TestOIVCanReadOldVersions}. */
+  @Test
+  public void testOldImage() throws IOException {
+    final File dir = new File(ROOT, "oldImageIndex");
+    FileUtil.fullyDelete(dir);
+    try {
+      new OfflineImageViewer(TestOIVCanReadOldVersions.TEST_CACHE_DATA_DIR
+          + "/fsimageV19", new ImageIndexVisitor(dir.getPath()), false).go();
+      final ImageIndex old = new ImageIndex(dir);
+      assertEquals(22, old.getNumRows());
+      for (String p : new String[] {"/", "/bar/dir2", "/foo/dir1/file3"}) {
+        assertEquals(p, old.getPath(old.lookup(p)));
+      }
+      final ContentSummary summary = old.getContentSummary(old.lookup("/"));
+      assertEquals(1069548540L, summary.getLength());
+      assertEquals(14, summary.getFileCount());
+      assertEquals(8, summary.getDirectoryCount());
+    } finally {
+      FileUtil.fullyDelete(dir);
+    }
+  }
+
+  @Test
+  public void testWebHdfs() throws Exception {
+    final ImageIndexServer server = new ImageIndexServer(index);
+    server.start(NetUtils.createSocketAddr("localhost:0"));
+    try {
+      final Configuration conf = new Configuration();
+      final FileSystem webhdfs = FileSystem.newInstance(new URI(
+          WebHdfsFileSystem.SCHEME + "://"
+              + NetUtils.getHostPortString(server.getAddress())), conf);
+      try {
+        for (Map.Entry<String, FileStatus> e : statuses.entrySet()) {
+          final Path p = new Path(e.getKey());
+          final FileStatus expected = e.getValue();
+          final FileStatus status = webhdfs.getFileStatus(p);
+          assertEquals(expected.getLen(), status.getLen());
+          assertEquals(expected.isDirectory(), status.isDirectory());
+          assertEquals(expected.isSymlink(), status.isSymlink());
+          assertEquals(expected.getOwner(), status.getOwner());
+          assertEquals(expected.getPermission(), status.getPermission());
+          if (expected.isDirectory()) {
+            final FileStatus[] listing = webhdfs.listStatus(p);
+            final FileStatus[] expectedListing = new FileStatus[listing.length];
+            int n = 0;
+            for (FileStatus s : statuses.values()) {
+              if (s.getPath().getParent() != null
+                  && s.getPath().getParent().toUri().getPath()
+                      .equals(e.getKey())) {
+                expectedListing[n++] = s;
+              }
+            }
+            assertEquals(n, listing.length);
+            for (int i = 0; i < n; i++) {
+              assertEquals(expectedListing[i].getPath().getName(),
+                  listing[i].getPath().getName());
+            }
+          }
+          if (!expected.isSymlink()) {
+            assertEquals(summaries.get(e.getKey()).toString(),
+                webhdfs.getContentSummary(p).toString());
+          }
+        }
+        try {
+          webhdfs.getFileStatus(new Path("/user/nonexistent"));
+          fail();
+        } catch (FileNotFoundException e) {
+          // expected
+        }
+        try {
+          webhdfs.mkdirs(new Path("/user/new"));
+          fail();
+        } catch (IOException e) {
+          // read only
+        }
+      } finally {
+        webhdfs.close();
+      }
+    } finally {
+      server.close();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class TestByteArrayPool {
+
+  @Test
+  public void testBasics() {
+    ByteArrayPool pool = new ByteArrayPool(1000);
+    byte[] a = pool.getArray(100);
+    assertEquals(100, a.length);
+    pool.returnArray(a);
+    assertEquals(100, pool.getPooledBytes());
+
+    // Getting a new array should return the same one
+    byte[] b = pool.getArray(100);
+    assertSame(a, b);
+    assertEquals(0, pool.getPooledBytes());
+
+    // Getting a new array before returning "b" should
+    // not return the same one
+    byte[] c = pool.getArray(100);
+    assertNotSame(b, c);
+
+    // nor should an array of another length
+    pool.returnArray(b);
+    assertEquals(200, pool.getArray(200).length);
+
+    assertEquals(3, pool.getNumAllocations());
+    assertEquals(400, pool.getBytesAllocated());
+    assertEquals(1, pool.getNumReuses());
+  }
+
+  @Test
+  public void testCapacity() {
+    ByteArrayPool pool = new ByteArrayPool(250);
+    byte[] a = pool.getArray(100);
+    byte[] b = pool.getArray(100);
+    byte[] c = pool.getArray(100);
+    pool.returnArray(a);
+    pool.returnArray(b);
+    // the pool is full
+    pool.returnArray(c);
+    assertEquals(200, pool.getPooledBytes());
+
+    pool.getArray(100);
+    pool.getArray(100);
+    pool.getArray(100);
+    assertEquals(4, pool.getNumAllocations());
+    assertEquals(2, pool.getNumReuses());
+  }
+
+  @Test
+  public void testDisabled() {
+    ByteArrayPool pool = new ByteArrayPool(0);
+    byte[] a = pool.getArray(100);
+    pool.returnArray(a);
+    assertNotSame(a, pool.getArray(100));
+    assertEquals(0, pool.getNumReuses());
+  }
+}
@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.web;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.commons.logging.impl.Log4JLogger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.conf.Configured;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.hadoop.util.Time;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.apache.log4j.Level;
+
+/**
+ * This class benchmarks the reads and writes of a MiniDFSCluster, whose
+ * WebHDFS is served by the Jetty servers of the NameNode and the DataNode,
+ * through DistributedFileSystem and through WebHdfsFileSystem, with and
+ * without the redirect cache and the read-ahead of WebHdfsFileSystem.
+ * It prints the throughput of each run.
+ */
+public class BenchmarkWebHdfsThroughput extends Configured implements Tool {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static void printUsage() {
+    System.err.println("Usage: BenchmarkWebHdfsThroughput [#files]");
+    System.err.println("Config properties:\n" +
+      "  webhdfsbench.file.size:\tsize of each file (16MB)\n" +
+      "  webhdfsbench.seek.size:\tbytes read between two seeks (4KB)\n");
+  }
+
+  private static String toMBps(long bytes, long ms) {
+    return String.format("%.2fMB/s",
+        bytes * 1000.0 / (1 << 20) / Math.max(ms, 1));
+  }
+
+  private static void write(FileSystem fs, Path file, long fileSize)
+      throws IOException {
+    final byte[] data = new byte[BUFFER_SIZE];
+    final FSDataOutputStream out = fs.create(file, true);
+    try {
+      for (long n = 0; n < fileSize; n += data.length) {
+        out.write(data, 0, (int)Math.min(data.length, fileSize - n));
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /** Read the whole file, and return the number of bytes read. */
+  private static long scan(FileSystem fs, Path file) throws IOException {
+    final byte[] buf = new byte[BUFFER_SIZE];
+    long total = 0;
+    final FSDataInputStream in = fs.open(file);
+    try {
+      for (int n; (n = in.read(buf)) != -1; ) {
+        total += n;
+      }
+    } finally {
+      in.close();
+    }
+    return total;
+  }
+
+  /** Read chunks separated by short forward seeks. */
+  private static long skipScan(FileSystem fs, Path file, long fileSize,
+      int seekSize) throws IOException {
+    final byte[] buf = new byte[seekSize];
+    long total = 0;
+    final FSDataInputStream in = fs.open(file);
+    try {
+      for (long pos = 0; pos + seekSize <= fileSize; pos += 2 * seekSize) {
+        in.seek(pos);
+        in.readFully(buf);
+        total += buf.length;
+      }
+    } finally {
+      in.close();
+    }
+    return total;
+  }
+
+  private void run(String name, FileSystem fs, int files, long fileSize,
+      int seekSize) throws IOException {
+    try {
+      long start = Time.now();
+      for (int i = 0; i < files; i++) {
+        write(fs, new Path("/bench/" + name + "/" + i), fileSize);
+      }
+      final long writeTime = Time.now() - start;
+
+      start = Time.now();
+      long read = 0;
+      for (int i = 0; i < files; i++) {
+        read += scan(fs, new Path("/bench/" + name + "/" + i));
+      }
+      final long readTime = Time.now() - start;
+
+      start = Time.now();
+      long skipRead = 0;
+      for (int i = 0; i < files; i++) {
+        skipRead += skipScan(fs, new Path("/bench/" + name + "/" + i),
+            fileSize, seekSize);
+      }
+      final long skipReadTime = Time.now() - start;
+
+      System.out.println(name + ": " + files + " files of "
+          + StringUtils.byteDesc(fileSize));
+      System.out.println("  write: " + writeTime + " ms, "
+          + toMBps(files * fileSize, writeTime));
+      System.out.println("  sequential read: " + readTime + " ms, "
+          + toMBps(read, readTime));
+      System.out.println("  read with forward seeks: " + skipReadTime
+          + " ms, " + toMBps(skipRead, skipReadTime));
+    } finally {
+      fs.close();
+    }
+  }
+
+  @Override
+  public int run(String[] args) throws Exception {
+    // silence the minidfs cluster
+    Log hadoopLog = LogFactory.getLog("org");
+    if (hadoopLog instanceof Log4JLogger) {
+      ((Log4JLogger) hadoopLog).getLogger().setLevel(Level.WARN);
+    }
+    int files = 10;
+    if (args.length == 1) {
+      try {
+        files = Integer.parseInt(args[0]);
+      } catch (NumberFormatException e) {
+        printUsage();
+        return -1;
+      }
+    } else if (args.length > 1) {
+      printUsage();
+      return -1;
+    }
+    final Configuration conf = getConf();
+    conf.setBoolean(DFSConfigKeys.DFS_WEBHDFS_ENABLED_KEY, true);
+    final long fileSize = conf.getLong("webhdfsbench.file.size",
+        16L * 1024 * 1024);
+    final int seekSize = conf.getInt("webhdfsbench.seek.size", 4096);
+
+    MiniDFSCluster cluster = null;
+    try {
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+      run("hdfs", FileSystem.newInstance(cluster.getURI(), conf),
+          files, fileSize, seekSize);
+
+      final Configuration plain = new Configuration(conf);
+      plain.setInt(DFSConfigKeys.DFS_WEBHDFS_CLIENT_REDIRECT_CACHE_SIZE_KEY,
+          0);
+      plain.setInt(DFSConfigKeys.DFS_WEBHDFS_CLIENT_READ_AHEAD_KEY, 0);
+      run("webhdfs-without-cache", newWebHdfs(cluster, plain),
+          files, fileSize, seekSize);
+      run("webhdfs", newWebHdfs(cluster, conf), files, fileSize, seekSize);
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+    return 0;
+  }
+
+  private static FileSystem newWebHdfs(MiniDFSCluster cluster,
+      Configuration conf) throws Exception {
+    final String uri = WebHdfsFileSystem.SCHEME + "://"
+        + cluster.getConfiguration(0).get(
+            DFSConfigKeys.DFS_NAMENODE_HTTP_ADDRESS_KEY);
+    return FileSystem.newInstance(new URI(uri), conf);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int res = ToolRunner.run(new HdfsConfiguration(),
+        new BenchmarkWebHdfsThroughput(), args);
+    System.exit(res);
+  }
+}
@@ -19,6 +19,8 @@
 package org.apache.hadoop.hdfs.web;
 
 import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
 import java.util.Random;
 
 import org.apache.commons.logging.Log;
@@ -29,6 +31,7 @@
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.TestDFSClientRetries;
 import org.apache.hadoop.hdfs.server.namenode.web.resources.NamenodeWebHdfsMethods;
@@ -201,6 +204,61 @@ static void verifyPread(FileSystem fs, Path p, long offset, long length,
     t.end(checked);
   }
 
+  /**
+   * Test that reopening a file goes to the datanode cached for it, that a
+   * failed cached datanode is replaced by a redirect of the namenode, and
+   * that short forward seeks within the read-ahead read the right data.
+   */
+  @Test(timeout=300000)
+  public void testRedirectCacheAndReadAhead() throws Exception {
+    final Configuration conf = WebHdfsTestUtil.createConf();
+    conf.setInt(DFSConfigKeys.DFS_WEBHDFS_CLIENT_READ_AHEAD_KEY, 4096);
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .numDataNodes(1)
+        .build();
+    try {
+      cluster.waitActive();
+      final WebHdfsFileSystem fs = WebHdfsTestUtil.getWebHdfsFileSystem(conf);
+      final Path p = new Path("/test/readAhead");
+      final byte[] data = new byte[100 << 10];
+      RANDOM.nextBytes(data);
+      final FSDataOutputStream out = fs.create(p);
+      out.write(data);
+      out.close();
+
+      final String path = p.toUri().getPath();
+      Assert.assertNull(fs.redirectCache.get(path));
+      final byte[] buf = new byte[1000];
+      FSDataInputStream in = fs.open(p);
+      in.readFully(buf);
+      final URL datanodeUrl = fs.redirectCache.get(path);
+      Assert.assertNotNull(datanodeUrl);
+      Assert.assertEquals(cluster.getDataNodes().get(0).getInfoPort(),
+          datanodeUrl.getPort());
+
+      // forward seeks within and beyond the read-ahead, and a backward seek
+      for (long offset : new long[] {3000, 6000, 50000, 1000}) {
+        in.seek(offset);
+        in.readFully(buf);
+        Assert.assertArrayEquals(Arrays.copyOfRange(data, (int)offset,
+            (int)offset + buf.length), buf);
+      }
+      in.close();
+
+      // a cached datanode which cannot be reached
+      fs.redirectCache.put(path, new URL("http://localhost:1"
+          + datanodeUrl.getFile()));
+      in = fs.open(p);
+      final byte[] all = new byte[data.length];
+      in.readFully(all);
+      in.close();
+      Assert.assertArrayEquals(data, all);
+      Assert.assertEquals(datanodeUrl, fs.redirectCache.get(path));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
   /** Test client retry with namenode restarting. */
   @Test(timeout=300000)
   public void testNamenodeRestart() throws Exception {
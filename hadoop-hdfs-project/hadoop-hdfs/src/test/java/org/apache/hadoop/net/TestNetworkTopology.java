@@ -159,6 +159,68 @@ public void testPseudoSortByDistance() throws Exception {
     assertTrue(testNodes[2] == dataNodes[3]);
   }
   
+  @Test
+  public void testSortByDistance() throws Exception {
+    DatanodeDescriptor[] testNodes = new DatanodeDescriptor[4];
+
+    // local node, then local rack node, then by distance
+    testNodes[0] = dataNodes[6];
+    testNodes[1] = dataNodes[3];
+    testNodes[2] = dataNodes[1];
+    testNodes[3] = dataNodes[0];
+    cluster.sortByDistance(dataNodes[0], testNodes, null, 0);
+    assertTrue(testNodes[0] == dataNodes[0]);
+    assertTrue(testNodes[1] == dataNodes[1]);
+    assertTrue(testNodes[2] == dataNodes[3]);
+    assertTrue(testNodes[3] == dataNodes[6]);
+
+    // a reader which is not a datanode is near the nodes of its rack
+    Node client = new NodeBase("/d1/r2/client");
+    testNodes[0] = dataNodes[6];
+    testNodes[1] = dataNodes[0];
+    testNodes[2] = dataNodes[2];
+    testNodes[3] = dataNodes[5];
+    cluster.sortByDistance(client, testNodes, null, 0);
+    assertTrue(testNodes[0] == dataNodes[2]);
+    assertTrue(testNodes[1] == dataNodes[0]);
+
+    // a loaded local rack node comes after a further idle node
+    testNodes[0] = dataNodes[1];
+    testNodes[1] = dataNodes[0];
+    testNodes[2] = dataNodes[3];
+    testNodes[3] = dataNodes[6];
+    int[] loads = new int[] {20, 30, 5, 0};
+    cluster.sortByDistance(dataNodes[0], testNodes, loads, 8);
+    // weights: 8 + 20, 0 + 30, 16 + 5, 24 + 0
+    assertTrue(testNodes[0] == dataNodes[3]);
+    assertTrue(testNodes[1] == dataNodes[6]);
+    assertTrue(testNodes[2] == dataNodes[1]);
+    assertTrue(testNodes[3] == dataNodes[0]);
+    assertEquals(5, loads[0]);
+    assertEquals(30, loads[3]);
+  }
+
+  @Test
+  public void testDistanceAfterTopologyChange() throws Exception {
+    NetworkTopology topology = new NetworkTopology();
+    DatanodeDescriptor node1 =
+        DFSTestUtil.getDatanodeDescriptor("1.1.1.1", "/d1/r1");
+    DatanodeDescriptor node2 =
+        DFSTestUtil.getDatanodeDescriptor("2.2.2.2", "/d1/r1");
+    topology.add(node1);
+    topology.add(node2);
+    assertEquals(2, topology.getDistance(node1, node2));
+
+    // the distances follow a node moving to another rack
+    topology.remove(node2);
+    node2.setNetworkLocation("/d2/r2");
+    topology.add(node2);
+    assertEquals(6, topology.getDistance(node1, node2));
+
+    topology.remove(node2);
+    assertEquals(Integer.MAX_VALUE, topology.getDistance(node1, node2));
+  }
+
   @Test
   public void testRemove() throws Exception {
     for(int i=0; i<dataNodes.length; i++) {
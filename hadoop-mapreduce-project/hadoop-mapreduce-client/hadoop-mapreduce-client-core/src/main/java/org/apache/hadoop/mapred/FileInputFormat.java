@@ -36,8 +36,10 @@
 import org.apache.hadoop.fs.BlockLocation;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.mapreduce.security.TokenCache;
 import org.apache.hadoop.net.NetworkTopology;
 import org.apache.hadoop.net.Node;
@@ -160,13 +162,17 @@ public static PathFilter getInputPathFilter(JobConf conf) {
   protected void addInputPathRecursively(List<FileStatus> result,
       FileSystem fs, Path path, PathFilter inputFilter) 
       throws IOException {
-    for(FileStatus stat: fs.listStatus(path, inputFilter)) {
-      if (stat.isDirectory()) {
-        addInputPathRecursively(result, fs, stat.getPath(), inputFilter);
-      } else {
-        result.add(stat);
+    RemoteIterator<LocatedFileStatus> iter = fs.listLocatedStatus(path);
+    while (iter.hasNext()) {
+      LocatedFileStatus stat = iter.next();
+      if (inputFilter.accept(stat.getPath())) {
+        if (stat.isDirectory()) {
+          addInputPathRecursively(result, fs, stat.getPath(), inputFilter);
+        } else {
+          result.add(stat);
+        }
       }
-    }          
+    }
   }
   
   /** List input directories.
@@ -189,7 +195,6 @@ protected FileStatus[] listStatus(JobConf job) throws IOException {
     // Whether we need to recursive look into the directory structure
     boolean recursive = job.getBoolean("mapred.input.dir.recursive", false);
     
-    List<FileStatus> result = new ArrayList<FileStatus>();
     List<IOException> errors = new ArrayList<IOException>();
     
     // creates a MultiPathFilter with the hiddenFileFilter and the
@@ -202,28 +207,19 @@ protected FileStatus[] listStatus(JobConf job) throws IOException {
     }
     PathFilter inputFilter = new MultiPathFilter(filters);
 
-    for (Path p: dirs) {
-      FileSystem fs = p.getFileSystem(job); 
-      FileStatus[] matches = fs.globStatus(p, inputFilter);
-      if (matches == null) {
-        errors.add(new IOException("Input path does not exist: " + p));
-      } else if (matches.length == 0) {
-        errors.add(new IOException("Input Pattern " + p + " matches 0 files"));
+    int numThreads = job.getInt(org.apache.hadoop.mapreduce.lib.input.
+        FileInputFormat.LIST_STATUS_NUM_THREADS,
+        org.apache.hadoop.mapreduce.lib.input.
+        FileInputFormat.DEFAULT_LIST_STATUS_NUM_THREADS);
+    List<FileStatus> result = new ArrayList<FileStatus>();
+    for (FileStatus stat : new LocatedFileStatusFetcher(job, dirs,
+        inputFilter, numThreads).getFileStatuses(errors)) {
+      if (recursive && stat.isDirectory()) {
+        // the subclasses may prune the directories in addInputPathRecursively
+        addInputPathRecursively(result, stat.getPath().getFileSystem(job),
+            stat.getPath(), inputFilter);
       } else {
-        for (FileStatus globStat: matches) {
-          if (globStat.isDirectory()) {
-            for(FileStatus stat: fs.listStatus(globStat.getPath(),
-                inputFilter)) {
-              if (recursive && stat.isDirectory()) {
-                addInputPathRecursively(result, fs, stat.getPath(), inputFilter);
-              } else {
-                result.add(stat);
-              }
-            }          
-          } else {
-            result.add(globStat);
-          }
-        }
+        result.add(stat);
       }
     }
 
@@ -271,7 +267,12 @@ public InputSplit[] getSplits(JobConf job, int numSplits)
       Path path = file.getPath();
       FileSystem fs = path.getFileSystem(job);
       long length = file.getLen();
-      BlockLocation[] blkLocations = fs.getFileBlockLocations(file, 0, length);
+      BlockLocation[] blkLocations;
+      if (file instanceof LocatedFileStatus) {
+        blkLocations = ((LocatedFileStatus) file).getBlockLocations();
+      } else {
+        blkLocations = fs.getFileBlockLocations(file, 0, length);
+      }
       if ((length != 0) && isSplitable(fs, path)) { 
         long blockSize = file.getBlockSize();
         long splitSize = computeSplitSize(goalSize, minSize, blockSize);
@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.hadoop.mapred;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Fetches the statuses, including block locations, of the input files of a
+ * job.
+ * <p>
+ * Input paths are globbed, and the directories they match are listed with
+ * {@link FileSystem#listLocatedStatus(Path[], PathFilter)}, so that a file
+ * system supporting batched listing needs one call per batch of directories
+ * instead of one listing and one block location lookup per file. Globbing
+ * and listing are spread over a pool of threads. Only the directories
+ * matching the input paths are listed: the directories inside them are
+ * returned as they are.
+ */
+@InterfaceAudience.Private
+public class LocatedFileStatusFetcher {
+
+  private final Configuration conf;
+  private final Path[] inputDirs;
+  private final PathFilter inputFilter;
+  private final int numThreads;
+
+  /**
+   * @param conf configuration used to resolve file systems
+   * @param dirs the input paths, which may contain globs
+   * @param inputFilter the filter applied to globbed and listed paths
+   * @param numThreads the number of threads to list with
+   */
+  public LocatedFileStatusFetcher(Configuration conf, Path[] dirs,
+      PathFilter inputFilter, int numThreads) {
+    this.conf = conf;
+    this.inputDirs = dirs;
+    this.inputFilter = inputFilter;
+    this.numThreads = Math.max(1, numThreads);
+  }
+
+  /**
+   * Fetch the statuses of the input files. Input paths which do not exist or
+   * match no files are reported through <code>errors</code> rather than by
+   * throwing, so that the caller can report all of them at once.
+   *
+   * @param errors receives one exception per bad input path
+   * @return the statuses of the input files and of the directories inside
+   *         the input directories
+   * @throws IOException if listing fails
+   */
+  public List<FileStatus> getFileStatuses(List<IOException> errors)
+      throws IOException {
+    ExecutorService executor = null;
+    if (numThreads > 1) {
+      executor = Executors.newFixedThreadPool(numThreads,
+          new ThreadFactoryBuilder().setDaemon(true)
+          .setNameFormat("GetFileInfo #%d").build());
+    }
+    try {
+      return fetch(executor, errors);
+    } finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private List<FileStatus> fetch(ExecutorService executor,
+      List<IOException> errors) throws IOException {
+    List<FileStatus> result = new ArrayList<FileStatus>();
+
+    List<Callable<FileStatus[]>> globs =
+        new ArrayList<Callable<FileStatus[]>>(inputDirs.length);
+    for (final Path p : inputDirs) {
+      globs.add(new Callable<FileStatus[]>() {
+        @Override
+        public FileStatus[] call() throws IOException {
+          return p.getFileSystem(conf).globStatus(p, inputFilter);
+        }
+      });
+    }
+    List<FileStatus[]> matches = runAll(executor, globs);
+
+    Map<FileSystem, List<Path>> dirs =
+        new LinkedHashMap<FileSystem, List<Path>>();
+    for (int i = 0; i < inputDirs.length; i++) {
+      Path p = inputDirs[i];
+      FileStatus[] globStats = matches.get(i);
+      if (globStats == null) {
+        errors.add(new IOException("Input path does not exist: " + p));
+      } else if (globStats.length == 0) {
+        errors.add(new IOException("Input Pattern " + p + " matches 0 files"));
+      } else {
+        for (FileStatus globStat : globStats) {
+          if (globStat.isDirectory()) {
+            addDir(dirs, p.getFileSystem(conf), globStat.getPath());
+          } else {
+            result.add(globStat);
+          }
+        }
+      }
+    }
+
+    List<Callable<List<FileStatus>>> listings =
+        new ArrayList<Callable<List<FileStatus>>>();
+    for (Map.Entry<FileSystem, List<Path>> e : dirs.entrySet()) {
+      final FileSystem fs = e.getKey();
+      List<Path> fsDirs = e.getValue();
+      // one batch per thread; the file system splits it further into
+      // as many listing calls as it needs
+      int batchSize = (fsDirs.size() + numThreads - 1) / numThreads;
+      for (int start = 0; start < fsDirs.size(); start += batchSize) {
+        List<Path> batch = fsDirs.subList(start,
+            Math.min(fsDirs.size(), start + batchSize));
+        final Path[] batchDirs = batch.toArray(new Path[batch.size()]);
+        listings.add(new Callable<List<FileStatus>>() {
+          @Override
+          public List<FileStatus> call() throws IOException {
+            List<FileStatus> stats = new ArrayList<FileStatus>();
+            RemoteIterator<? extends FileStatus> itor =
+                fs.listLocatedStatus(batchDirs, inputFilter);
+            while (itor.hasNext()) {
+              stats.add(itor.next());
+            }
+            return stats;
+          }
+        });
+      }
+    }
+    for (List<FileStatus> stats : runAll(executor, listings)) {
+      result.addAll(stats);
+    }
+    return result;
+  }
+
+  private static void addDir(Map<FileSystem, List<Path>> dirs,
+      FileSystem fs, Path dir) {
+    List<Path> fsDirs = dirs.get(fs);
+    if (fsDirs == null) {
+      fsDirs = new ArrayList<Path>();
+      dirs.put(fs, fsDirs);
+    }
+    fsDirs.add(dir);
+  }
+
+  /**
+   * Run the given tasks, in the calling thread if there is no executor.
+   * @return the results, in the order of the tasks
+   */
+  private static <T> List<T> runAll(ExecutorService executor,
+      List<? extends Callable<T>> tasks) throws IOException {
+    List<T> results = new ArrayList<T>(tasks.size());
+    if (executor == null) {
+      for (Callable<T> task : tasks) {
+        try {
+          results.add(task.call());
+        } catch (IOException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IOException(e);
+        }
+      }
+      return results;
+    }
+
+    List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+    for (Callable<T> task : tasks) {
+      futures.add(executor.submit(task));
+    }
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while listing input paths", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+    return results;
+  }
+}
@@ -23,6 +23,10 @@
 
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeoutException;
 
 import junit.framework.TestCase;
@@ -32,7 +36,11 @@
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.io.Text;
@@ -195,6 +203,100 @@ public void testMultiLevelInput() throws Exception {
     assertEquals(splits.length, 2);
   }
 
+  /**
+   * A recursive input format that skips the directories named "skip".
+   */
+  private class PruningFileInputFormat extends DummyFileInputFormat {
+    @Override
+    protected void addInputPathRecursively(List<FileStatus> result,
+        FileSystem fs, Path path, PathFilter inputFilter) throws IOException {
+      if (!path.getName().equals("skip")) {
+        super.addInputPathRecursively(result, fs, path, inputFilter);
+      }
+    }
+  }
+
+  /**
+   * Test that an overridden addInputPathRecursively is still used when the
+   * input directories are listed by several threads.
+   */
+  public void testAddInputPathRecursivelyOverridden() throws Exception {
+    JobConf job = new JobConf(conf);
+    FileSystem localFs = FileSystem.getLocal(job);
+    Path dir = localFs.makeQualified(new Path(
+        System.getProperty("test.build.data", "/tmp"),
+        "testAddInputPathRecursivelyOverridden"));
+    localFs.delete(dir, true);
+    try {
+      localFs.create(new Path(dir, "a/skip/file1")).close();
+      localFs.create(new Path(dir, "a/keep/file2")).close();
+      localFs.create(new Path(dir, "a/file3")).close();
+
+      job.setBoolean("mapred.input.dir.recursive", true);
+      job.setInt(org.apache.hadoop.mapreduce.lib.input.
+          FileInputFormat.LIST_STATUS_NUM_THREADS, 4);
+      PruningFileInputFormat inFormat = new PruningFileInputFormat();
+      FileInputFormat.setInputPaths(job, dir);
+      FileStatus[] stats = inFormat.listStatus(job);
+      Set<String> names = new HashSet<String>();
+      for (FileStatus stat : stats) {
+        names.add(stat.getPath().getName());
+      }
+      assertEquals(new HashSet<String>(Arrays.asList("file2", "file3")),
+          names);
+    } finally {
+      localFs.delete(dir, true);
+    }
+  }
+
+  /**
+   * A local file system counting the batched listings.
+   */
+  public static class BatchCountingFileSystem extends LocalFileSystem {
+    static int batches = 0;
+
+    @Override
+    public RemoteIterator<LocatedFileStatus> listLocatedStatus(Path[] paths,
+        PathFilter filter) throws IOException {
+      batches++;
+      return super.listLocatedStatus(paths, filter);
+    }
+  }
+
+  /**
+   * Test that the input directories are listed in one batch when they are
+   * listed by a single thread.
+   */
+  public void testSingleThreadedBatchedListing() throws Exception {
+    JobConf job = new JobConf(conf);
+    job.setClass("fs.file.impl", BatchCountingFileSystem.class,
+        FileSystem.class);
+    // the cached local file system is not the counting one
+    FileSystem.closeAll();
+    FileSystem localFs = FileSystem.getLocal(job);
+    Path dir = localFs.makeQualified(new Path(
+        System.getProperty("test.build.data", "/tmp"),
+        "testSingleThreadedBatchedListing"));
+    localFs.delete(dir, true);
+    try {
+      Path[] inputDirs = new Path[3];
+      for (int i = 0; i < inputDirs.length; i++) {
+        inputDirs[i] = new Path(dir, "dir" + i);
+        localFs.create(new Path(inputDirs[i], "file" + i)).close();
+      }
+
+      BatchCountingFileSystem.batches = 0;
+      DummyFileInputFormat inFormat = new DummyFileInputFormat();
+      FileInputFormat.setInputPaths(job, inputDirs);
+      FileStatus[] stats = inFormat.listStatus(job);
+      assertEquals(3, stats.length);
+      assertEquals(1, BatchCountingFileSystem.batches);
+    } finally {
+      localFs.delete(dir, true);
+      FileSystem.closeAll();
+    }
+  }
+
   @SuppressWarnings("rawtypes")
   public void testLastInputSplitAtSplitBoundary() throws Exception {
     FileInputFormat fif = new FileInputFormatForTest(1024l * 1024 * 1024,
@@ -21,7 +21,9 @@
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -34,6 +36,7 @@
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.InputSplit;
@@ -166,6 +169,54 @@ public void testForEmptyFile() throws Exception {
       fileSys.delete(file.getParent(), true);
   }
 
+  /**
+   * Test that listing the input with several threads finds the same files,
+   * with block locations, as listing with a single thread.
+   */
+  @Test
+  public void testListStatusMultiThreaded() throws Exception {
+    Configuration conf = new Configuration();
+    FileSystem localFs = FileSystem.getLocal(conf);
+    Path root = localFs.makeQualified(new Path(
+        System.getProperty("test.build.data", "/tmp"),
+        "TestFileInputFormat-listStatus"));
+    localFs.delete(root, true);
+    Set<Path> expected = new HashSet<Path>();
+    for (int i = 0; i < 10; i++) {
+      Path dir = new Path(root, "part" + i);
+      for (int j = 0; j < 3; j++) {
+        Path file = new Path(dir, "file" + j);
+        FSDataOutputStream out = localFs.create(file);
+        out.write(new byte[10]);
+        out.close();
+        expected.add(file);
+      }
+      // hidden files are filtered out
+      localFs.create(new Path(dir, "_SUCCESS")).close();
+    }
+
+    try {
+      for (int numThreads : new int[] { 1, 4 }) {
+        Job job = Job.getInstance(conf);
+        job.getConfiguration().setInt(
+            FileInputFormat.LIST_STATUS_NUM_THREADS, numThreads);
+        FileInputFormat.setInputPaths(job, new Path(root, "part*"));
+        List<FileStatus> stats = new DummyInputFormat().listStatus(job);
+        Set<Path> found = new HashSet<Path>();
+        for (FileStatus stat : stats) {
+          assertTrue(stat instanceof LocatedFileStatus);
+          assertEquals(1,
+              ((LocatedFileStatus) stat).getBlockLocations().length);
+          found.add(stat.getPath());
+        }
+        assertEquals(expected.size(), stats.size());
+        assertEquals(expected, found);
+      }
+    } finally {
+      localFs.delete(root, true);
+    }
+  }
+
   /** Dummy class to extend FileInputFormat*/
   private class DummyInputFormat extends FileInputFormat<Text, Text> {
     @Override
@@ -61,6 +61,9 @@ public class DistCpConstants {
   /* SSL keystore resource */
   public static final String CONF_LABEL_SSL_KEYSTORE = "dfs.https.client.keystore.resource";
 
+  /* How the checksums of the chunks are combined into the compared checksums */
+  public static final String CONF_LABEL_CHECKSUM_COMBINE_MODE = "dfs.checksum.combine.mode";
+
   /* If input is based -f <<source listing>>, file containing the src paths */
   public static final String CONF_LABEL_LISTING_FILE_PATH = "distcp.listing.file.path";
 
@@ -105,7 +105,8 @@ private long doCopy(FileStatus sourceFileStatus, Path target,
       compareFileLengths(sourceFileStatus, tmpTargetPath, configuration, bytesRead);
       //At this point, src&dest lengths are same. if length==0, we skip checksum
       if ((bytesRead != 0) && (!skipCrc)) {
-        compareCheckSums(sourceFS, sourceFileStatus.getPath(), targetFS, tmpTargetPath);
+        compareCheckSums(sourceFS, sourceFileStatus.getPath(), targetFS,
+                         tmpTargetPath, configuration);
       }
       promoteTmpToTarget(tmpTargetPath, target, targetFS);
       return bytesRead;
@@ -138,11 +139,16 @@ private void compareFileLengths(FileStatus sourceFileStatus, Path target,
   }
 
   private void compareCheckSums(FileSystem sourceFS, Path source,
-                                FileSystem targetFS, Path target)
+                                FileSystem targetFS, Path target,
+                                Configuration configuration)
                                 throws IOException {
-    if (!DistCpUtils.checksumsAreEqual(sourceFS, source, targetFS, target))
+    if (!DistCpUtils.checksumsAreEqual(sourceFS, source, targetFS, target,
+                              DistCpUtils.getChecksumCombineMode(configuration)))
       throw new IOException("Check-sum mismatch between "
-                              + source + " and " + target);
+                              + source + " and " + target + ". The checksums"
+                              + " of files with different block sizes differ"
+                              + " unless the block size is preserved (-pb) or"
+                              + " dfs.checksum.combine.mode is COMPOSITE_CRC.");
 
   }
 
@@ -25,11 +25,13 @@
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.FileChecksum;
+import org.apache.hadoop.fs.Options.ChecksumCombineMode;
 import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.tools.DistCpOptions.FileAttribute;
 import org.apache.hadoop.tools.mapred.UniformSizeInputFormat;
 import org.apache.hadoop.tools.DistCpOptions;
+import org.apache.hadoop.tools.DistCpConstants;
 import org.apache.hadoop.mapreduce.InputFormat;
 
 import java.io.IOException;
@@ -271,6 +273,18 @@ public static String getStringDescriptionFor(long nBytes) {
     return getFormatter().format(prev) + units[index];
   }
 
+  /**
+   * Get how the checksums compared to verify the copies are combined.
+   *
+   * @param conf The configuration of the job.
+   * @return The checksum combine mode, MD5MD5CRC by default.
+   */
+  public static ChecksumCombineMode getChecksumCombineMode(Configuration conf) {
+    return ChecksumCombineMode.valueOf(conf.get(
+        DistCpConstants.CONF_LABEL_CHECKSUM_COMBINE_MODE,
+        ChecksumCombineMode.MD5MD5CRC.name()));
+  }
+
   /**
    * Utility to compare checksums for the paths specified.
    *
@@ -290,11 +304,31 @@ public static String getStringDescriptionFor(long nBytes) {
   public static boolean checksumsAreEqual(FileSystem sourceFS, Path source,
                                    FileSystem targetFS, Path target)
                                    throws IOException {
+    return checksumsAreEqual(sourceFS, source, targetFS, target,
+                             ChecksumCombineMode.MD5MD5CRC);
+  }
+
+  /**
+   * Utility to compare checksums for the paths specified, combining the
+   * checksums of their chunks as requested.
+   *
+   * @param sourceFS FileSystem for the source path.
+   * @param source The source path.
+   * @param targetFS FileSystem for the target path.
+   * @param target The target path.
+   * @param combineMode How the checksums of the chunks are combined.
+   * @return see {@link #checksumsAreEqual(FileSystem, Path, FileSystem, Path)}
+   * @throws IOException if there's an exception while retrieving checksums.
+   */
+  public static boolean checksumsAreEqual(FileSystem sourceFS, Path source,
+                                   FileSystem targetFS, Path target,
+                                   ChecksumCombineMode combineMode)
+                                   throws IOException {
     FileChecksum sourceChecksum = null;
     FileChecksum targetChecksum = null;
     try {
-      sourceChecksum = sourceFS.getFileChecksum(source);
-      targetChecksum = targetFS.getFileChecksum(target);
+      sourceChecksum = sourceFS.getFileChecksum(source, combineMode);
+      targetChecksum = targetFS.getFileChecksum(target, combineMode);
     } catch (IOException e) {
       LOG.error("Unable to retrieve checksum for " + source + " or " + target, e);
     }